@@ -104,6 +104,41 @@ public class EmbeddedNeo
 		return NodeManager.getManager().getNodeById( (int) id );
 	}
 	
+	/**
+	 * Looks up many nodes by id. Nodes not in cache are loaded in one go, 
+	 * which is faster than calling {@link #getNodeById(long)} for each id.
+	 * @param ids the ids of the nodes
+	 * @return the nodes in the same order as <code>ids</code>
+	 * @throws RuntimeException if any of the nodes isn't found
+	 */
+	public Node[] getNodesById( long ids[] )
+	{
+		return NodeManager.getManager().getNodesById( toIntIds( ids ) );
+	}
+	
+	/**
+	 * Looks up many relationships by id, relationships not in cache are 
+	 * loaded in one go.
+	 * @param ids the ids of the relationships
+	 * @return the relationships in the same order as <code>ids</code>
+	 * @throws RuntimeException if any of the relationships isn't found
+	 */
+	public Relationship[] getRelationshipsById( long ids[] )
+	{
+		return NodeManager.getManager().getRelationshipsById( 
+			toIntIds( ids ) );
+	}
+	
+	private static int[] toIntIds( long ids[] )
+	{
+		int intIds[] = new int[ ids.length ];
+		for ( int i = 0; i < ids.length; i++ )
+		{
+			intIds[i] = (int) ids[i];
+		}
+		return intIds;
+	}
+	
 	/**
 	 * Returns the reference node.
 	 * @return the reference node
@@ -56,11 +56,8 @@ class NeoJvmInstance
 		params.put( "neo_store", storeDir + "/neostore" );
 		params.put( "create", String.valueOf( create ) );
 		params.put( "logical_log", storeDir + "/nioneo_logical.log" );
-		params.put( "neostore.nodestore.db.mapped_memory", "500k" );
-		params.put( "neostore.propertystore.db.mapped_memory", "1M" );
-		params.put( "neostore.propertystore.db.keys.mapped_memory", "1M" );
-		params.put( "neostore.propertystore.db.strings.mapped_memory", "1M" );
-		params.put( "neostore.relationshipstore.db.mapped_memory", "1M" );
+		// shared by all stores, moved to the stores that need it most
+		params.put( "mapped_memory", "4500k" );
 		byte resourceId[] = "414141".getBytes();
 		config.getTxModule().registerDataSource( DEFAULT_DATA_SOURCE_NAME,
 			NIO_NEO_DB_CLASS, resourceId, params );
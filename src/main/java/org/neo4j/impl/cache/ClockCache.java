@@ -0,0 +1,292 @@
+package org.neo4j.impl.cache;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent cache approximating least-recently-used with the CLOCK
+ * algorithm. The cache has a <CODE>maxSize</CODE> set and when the number
+ * of cached elements exceeds that limit elements that haven't been
+ * referenced since the clock hand last passed them are removed.
+ * <p>
+ * Unlike {@link LruCache} a <CODE>get</CODE> is not a structural
+ * modification. Elements are kept in a {@link ConcurrentHashMap} and a hit
+ * only sets the referenced flag of the element (if not already set) so
+ * readers never block each other. Adding elements appends them to the
+ * clock queue and eviction is done by the thread that made the cache
+ * exceed its maximum size, holding the eviction lock.
+ * <p>
+ * As with {@link LruCache} the <CODE>elementCleaned</CODE> method is
+ * invoked for each element removed because of the size limit and if the
+ * cache is registered in the {@link AdaptiveCacheManager} it will be asked
+ * to adapt the cache when the size limit is reached.
+ */
+public class ClockCache<K,E> extends Cache<K,E>
+{
+	private final String name;
+	private volatile int maxSize;
+	private volatile boolean resizing = false;
+
+	private final ConcurrentHashMap<K,Entry<K,E>> cache;
+	private final Queue<Entry<K,E>> clock =
+		new ConcurrentLinkedQueue<Entry<K,E>>();
+	// entries removed from cache but still in the clock queue
+	private final AtomicInteger deadEntries = new AtomicInteger( 0 );
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	private static class Entry<K,E>
+	{
+		private final K key;
+		private final E element;
+		private volatile boolean referenced = false;
+		private volatile boolean dead = false;
+
+		Entry( K key, E element )
+		{
+			this.key = key;
+			this.element = element;
+		}
+	}
+
+	/**
+	 * Creates a CLOCK cache. If <CODE>maxSize < 1</CODE> an
+	 * IllegalArgumentException is thrown.
+	 *
+	 * @param name name of cache
+	 * @param maxSize maximum size of this cache
+	 */
+	public ClockCache( String name, int maxSize )
+	{
+		if ( name == null || maxSize < 1 )
+		{
+			throw new IllegalArgumentException( "maxSize=" + maxSize +
+				", name=" + name );
+		}
+		this.name = name;
+		this.maxSize = maxSize;
+		this.cache = new ConcurrentHashMap<K,Entry<K,E>>(
+			Math.min( maxSize, 500 ), 0.75f, 16 );
+	}
+
+	public String getName()
+	{
+		return this.name;
+	}
+
+	public void add( K key, E element )
+	{
+		if ( key == null || element == null )
+		{
+			throw new IllegalArgumentException( "key=" + key +
+				", elmenet=" + element );
+		}
+		Entry<K,E> entry = new Entry<K,E>( key, element );
+		Entry<K,E> oldEntry = cache.put( key, entry );
+		if ( oldEntry != null )
+		{
+			markDead( oldEntry );
+		}
+		clock.offer( entry );
+		if ( cache.size() > maxSize )
+		{
+			if ( isAdaptive() && !isResizing() )
+			{
+				adaptCache();
+			}
+			evict();
+		}
+		else if ( deadEntries.get() > maxSize )
+		{
+			evict();
+		}
+	}
+
+	void adaptCache()
+	{
+		AdaptiveCacheManager.getManager().adaptCache( this );
+	}
+
+	public E remove( K key )
+	{
+		if ( key == null )
+		{
+			throw new IllegalArgumentException( "Null parameter" );
+		}
+		Entry<K,E> entry = cache.remove( key );
+		if ( entry == null )
+		{
+			return null;
+		}
+		markDead( entry );
+		return entry.element;
+	}
+
+	public E get( K key )
+	{
+		if ( key == null )
+		{
+			throw new IllegalArgumentException();
+		}
+		Entry<K,E> entry = cache.get( key );
+		if ( entry == null )
+		{
+			return null;
+		}
+		// avoid writing to the entry if already referenced
+		if ( !entry.referenced )
+		{
+			entry.referenced = true;
+		}
+		return entry.element;
+	}
+
+	public void clear()
+	{
+		evictionLock.lock();
+		try
+		{
+			Iterator<Entry<K,E>> itr = cache.values().iterator();
+			while ( itr.hasNext() )
+			{
+				Entry<K,E> entry = itr.next();
+				itr.remove();
+				markDead( entry );
+			}
+			sweepDeadEntries();
+		}
+		finally
+		{
+			evictionLock.unlock();
+		}
+	}
+
+	public int size()
+	{
+		return cache.size();
+	}
+
+	/**
+	 * Returns the maximum size of this cache.
+	 *
+	 * @return maximum size
+	 */
+	public int maxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * Changes the max size of the cache. If <CODE>newMaxSize</CODE> is less
+	 * then <CODE>size()</CODE> the cache will shrink itself removing not
+	 * recently used elements untill <CODE>size()</CODE> equals
+	 * <CODE>newMaxSize</CODE>. For each element removed the
+	 * {@link #elementCleaned} method is invoked.
+	 * <p>
+	 * If <CODE>newMaxSize</CODE> is less then <CODE>1</CODE> an
+	 * {@link IllegalArgumentException} is thrown.
+	 *
+	 * @param newMaxSize the new maximum size of the cache
+	 */
+	public void resize( int newMaxSize )
+	{
+		if ( newMaxSize < 1 )
+		{
+			throw new IllegalArgumentException( "newMaxSize=" + newMaxSize );
+		}
+		evictionLock.lock();
+		resizing = true;
+		try
+		{
+			maxSize = newMaxSize;
+			evict();
+		}
+		finally
+		{
+			resizing = false;
+			evictionLock.unlock();
+		}
+	}
+
+	boolean isResizing()
+	{
+		return resizing;
+	}
+
+	private void markDead( Entry<K,E> entry )
+	{
+		entry.dead = true;
+		deadEntries.incrementAndGet();
+	}
+
+	/**
+	 * Moves the clock hand removing entries until <CODE>size()</CODE> is
+	 * less or equal to <CODE>maxSize</CODE>. Referenced entries get their
+	 * flag cleared and are moved to the tail of the queue. If concurrent
+	 * hits keeps setting the flag the hand will evict the next entry after
+	 * two full turns.
+	 */
+	private void evict()
+	{
+		evictionLock.lock();
+		try
+		{
+			int scanned = 0;
+			while ( cache.size() > maxSize )
+			{
+				Entry<K,E> entry = clock.poll();
+				if ( entry == null )
+				{
+					break;
+				}
+				if ( entry.dead )
+				{
+					deadEntries.decrementAndGet();
+					continue;
+				}
+				if ( entry.referenced &&
+					scanned++ < 2 * ( cache.size() + 1 ) )
+				{
+					entry.referenced = false;
+					clock.offer( entry );
+					continue;
+				}
+				if ( cache.remove( entry.key, entry ) )
+				{
+					entry.dead = true;
+					elementCleaned( entry.element );
+				}
+				else
+				{
+					// concurrently removed and counted as dead
+					deadEntries.decrementAndGet();
+				}
+			}
+			if ( deadEntries.get() > maxSize )
+			{
+				sweepDeadEntries();
+			}
+		}
+		finally
+		{
+			evictionLock.unlock();
+		}
+	}
+
+	// removes entries removed from cache by remove or replace from the queue
+	private void sweepDeadEntries()
+	{
+		Iterator<Entry<K,E>> itr = clock.iterator();
+		while ( itr.hasNext() )
+		{
+			if ( itr.next().dead )
+			{
+				itr.remove();
+				deadEntries.decrementAndGet();
+			}
+		}
+	}
+}
@@ -110,6 +110,19 @@ public class TransactionCache
 		return null;
 	}
 	
+	/**
+	 * Returns <CODE>true</CODE> if nodes or relationships have been added to 
+	 * the current transaction.
+	 * 
+	 * @return <CODE>true</CODE> if the current transaction has changes
+	 */
+	public boolean hasChanges()
+	{
+		Thread currentThread = Thread.currentThread();
+		return txToCacheMapNodes.containsKey( currentThread ) || 
+			txToCacheMapRels.containsKey( currentThread );
+	}
+	
 	/**
 	 * Removes all nodes and relationships added to the current transaction.
 	 */
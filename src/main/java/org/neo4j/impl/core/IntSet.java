@@ -0,0 +1,195 @@
+package org.neo4j.impl.core;
+
+/**
+ * Open addressing hash set of primitive <CODE>int</CODE>s used to hold 
+ * relationship ids in {@link NodeImpl}. Compared to a 
+ * <CODE>LinkedHashSet&lt;Integer&gt;</CODE> no <CODE>Integer</CODE> or 
+ * entry objects are created, each id takes between 4 and 16 bytes in the 
+ * table depending on fill. Negative values can't be stored (<CODE>-1</CODE> 
+ * marks a free slot). Iteration order is undefined.
+ * <p>
+ * No synchronization is done, callers are responsible for holding the 
+ * needed locks.
+ */
+class IntSet
+{
+	private static final int FREE = -1;
+	private static final int MIN_CAPACITY = 4;
+	
+	private int[] table;
+	private int size = 0;
+	
+	IntSet()
+	{
+		this( MIN_CAPACITY );
+	}
+	
+	IntSet( int expectedSize )
+	{
+		table = newTable( capacityFor( expectedSize ) );
+	}
+	
+	private static int capacityFor( int expectedSize )
+	{
+		// keep load factor under 0.75
+		int capacity = MIN_CAPACITY;
+		while ( capacity * 3 / 4 <= expectedSize )
+		{
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+	
+	private static int[] newTable( int capacity )
+	{
+		int[] newTable = new int[capacity];
+		java.util.Arrays.fill( newTable, FREE );
+		return newTable;
+	}
+	
+	private static int hash( int value, int mask )
+	{
+		int h = value * 0x9E3779B9;
+		return ( h ^ ( h >>> 16 ) ) & mask;
+	}
+	
+	/**
+	 * Adds <CODE>value</CODE> to the set.
+	 * 
+	 * @param value the value to add, must not be negative
+	 * @return <CODE>true</CODE> if the set didn't already contain the value
+	 */
+	boolean add( int value )
+	{
+		if ( value < 0 )
+		{
+			throw new IllegalArgumentException( "Negative value " + value );
+		}
+		if ( ( size + 1 ) * 4 > table.length * 3 )
+		{
+			rehash( table.length << 1 );
+		}
+		int mask = table.length - 1;
+		int i = hash( value, mask );
+		while ( table[i] != FREE )
+		{
+			if ( table[i] == value )
+			{
+				return false;
+			}
+			i = ( i + 1 ) & mask;
+		}
+		table[i] = value;
+		size++;
+		return true;
+	}
+	
+	boolean contains( int value )
+	{
+		if ( value < 0 )
+		{
+			return false;
+		}
+		int mask = table.length - 1;
+		int i = hash( value, mask );
+		while ( table[i] != FREE )
+		{
+			if ( table[i] == value )
+			{
+				return true;
+			}
+			i = ( i + 1 ) & mask;
+		}
+		return false;
+	}
+	
+	/**
+	 * Removes <CODE>value</CODE> from the set.
+	 * 
+	 * @param value the value to remove
+	 * @return <CODE>true</CODE> if the value was found
+	 */
+	boolean remove( int value )
+	{
+		if ( value < 0 )
+		{
+			return false;
+		}
+		int mask = table.length - 1;
+		int i = hash( value, mask );
+		while ( table[i] != value )
+		{
+			if ( table[i] == FREE )
+			{
+				return false;
+			}
+			i = ( i + 1 ) & mask;
+		}
+		// shift following entries of the probe sequence back
+		int free = i;
+		i = ( i + 1 ) & mask;
+		while ( table[i] != FREE )
+		{
+			int home = hash( table[i], mask );
+			if ( ( ( i - home ) & mask ) >= ( ( i - free ) & mask ) )
+			{
+				table[free] = table[i];
+				free = i;
+			}
+			i = ( i + 1 ) & mask;
+		}
+		table[free] = FREE;
+		size--;
+		return true;
+	}
+	
+	int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Copies the values into <CODE>target</CODE> starting at 
+	 * <CODE>offset</CODE>.
+	 * 
+	 * @return the offset after the last copied value
+	 */
+	int copyTo( int[] target, int offset )
+	{
+		int[] values = table;
+		for ( int i = 0; i < values.length; i++ )
+		{
+			if ( values[i] != FREE )
+			{
+				target[offset++] = values[i];
+			}
+		}
+		return offset;
+	}
+	
+	/**
+	 * Returns the values in a new array of length <CODE>size()</CODE>.
+	 * 
+	 * @return the values of this set
+	 */
+	int[] toArray()
+	{
+		int[] values = new int[size];
+		copyTo( values, 0 );
+		return values;
+	}
+	
+	private void rehash( int newCapacity )
+	{
+		int[] oldTable = table;
+		table = newTable( newCapacity );
+		size = 0;
+		for ( int value : oldTable )
+		{
+			if ( value != FREE )
+			{
+				add( value );
+			}
+		}
+	}
+}
@@ -288,14 +288,12 @@ class NeoConstraintsListener implements ProActiveEventListener
 			if ( deletedNodes != null && 
 					deletedNodes.containsKey( nodeIds[0] ) )
 			{
-				deletedNodes.get( nodeIds[0] ).removeRelationship( 
-					rel.getType(), (int) rel.getId() );
+				deletedNodes.get( nodeIds[0] ).removeRelationship( rel );
 			}
 			if ( deletedNodes != null &&
 					deletedNodes.containsKey( nodeIds[1] ) )
 			{
-				deletedNodes.get( nodeIds[1] ).removeRelationship( 
-					rel.getType(), (int) rel.getId() );
+				deletedNodes.get( nodeIds[1] ).removeRelationship( rel );
 			}
 
 			if ( deletedRelationships == null )
@@ -2,15 +2,11 @@ package org.neo4j.impl.core;
 
 // Java imports
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.NoSuchElementException;
 import java.util.logging.Logger;
 
 import org.neo4j.api.core.Direction;
@@ -31,8 +27,10 @@ import org.neo4j.impl.transaction.LockManager;
 import org.neo4j.impl.transaction.LockNotFoundException;
 import org.neo4j.impl.transaction.LockType;
 import org.neo4j.impl.transaction.NotInTransactionException;
+import org.neo4j.impl.transaction.ResourceVersion;
 import org.neo4j.impl.transaction.TransactionFactory;
 import org.neo4j.impl.transaction.TransactionIsolationLevel;
+import org.neo4j.impl.transaction.VersionedResource;
 import org.neo4j.impl.traversal.TraverserFactory;
 
 
@@ -61,8 +59,13 @@ import org.neo4j.impl.traversal.TraverserFactory;
  * This implementaiton of node does not rely on persistence storage to 
  * enforce contraints. This is done by {@link NeoConstraints} that evaluates
  * the events generated by modifying operations. 
+ * <p>
+ * If the transaction isolation level is 
+ * {@link TransactionIsolationLevel#READ_COMMITTED_OPTIMISTIC} reads of 
+ * properties and relationships already in memory are validated against 
+ * the {@link ResourceVersion} of the node instead of taking a read lock.
  */
-class NodeImpl implements Node, Comparable
+class NodeImpl implements Node, Comparable, VersionedResource
 {
 	private enum NodePhase { 
 		EMPTY_PROPERTY, 
@@ -74,12 +77,18 @@ class NodeImpl implements Node, Comparable
 	
 	private int id = -1;
 	private boolean isDeleted = false;
-	private NodePhase nodePropPhase;
-	private NodePhase nodeRelPhase;
-	private Map<String,Set<Integer>> relationshipMap = 
-		new HashMap<String,Set<Integer>>();
-	private Map<String,Property> propertyMap = 
+	// phases and maps are volatile since optimistic readers access them 
+	// without locks, the maps are replaced when loaded and only modified in 
+	// place holding the write lock which fails any overlapping optimistic 
+	// read (see OptimisticRead)
+	private volatile NodePhase nodePropPhase;
+	private volatile NodePhase nodeRelPhase;
+	// relationship type name -> relationship ids split on direction
+	private volatile Map<String,RelationshipIds> relationshipMap = 
+		new HashMap<String,RelationshipIds>();
+	private volatile Map<String,Property> propertyMap = 
 		new HashMap<String,Property>();
+	private final ResourceVersion version = new ResourceVersion();
 	
 	private static NodeManager nodeManager = 
 		NodeManager.getManager();
@@ -109,132 +118,32 @@ class NodeImpl implements Node, Comparable
 		return this.id;
 	}
 	
+	public ResourceVersion getResourceVersion()
+	{
+		return version;
+	}
+	
 	public Iterable<Relationship> getRelationships()
 	{
-		acquireLock( this, LockType.READ );
-		try
-		{
-			ensureFullRelationships();
-			if ( relationshipMap == null )
-			{
-				return Collections.emptyList();
-			}
-			// Iterate through relationshipMap's values (which are sets 
-			// of relationships ids) and merge them all into one list. 
-			// Convert it to array and return it.
-			// TODO: rewrite this with iterator wrapper
-			List<Relationship> allRelationships = 
-				new LinkedList<Relationship>();
-			Iterator<Set<Integer>> values = 
-				relationshipMap.values().iterator();
-			while ( values.hasNext() )
-			{
-				Set<Integer> relTypeSet = values.next();
-				for ( int relId : relTypeSet )
-				{
-					allRelationships.add( 
-						nodeManager.getRelationshipById( relId) );
-				}
-			}
-			return allRelationships;
-		}
-		finally
-		{
-			releaseLock( this, LockType.READ );
-		}
+		return new RelationshipIterable( getRelationshipIds( null, 
+			Direction.BOTH ) );
 	}
 	
 	public Iterable<Relationship> getRelationships( Direction dir )
 	{
-		if ( dir == Direction.BOTH )
-		{
-			return getRelationships();
-		}
-		acquireLock( this, LockType.READ );
-		try
-		{
-			ensureFullRelationships();
-			if ( relationshipMap == null )
-			{
-				return Collections.emptyList();
-			}
-			// Iterate through relationshipMap's values (which are lists 
-			// of relationships) and merge them all into one list. Convert it 
-			// to array and return it.
-			// TODO: rewrite this with iterator wrapper
-			List<Relationship> allRelationships = 
-				new LinkedList<Relationship>();
-			Iterator<Set<Integer>> values = 
-				relationshipMap.values().iterator();
-			while ( values.hasNext() )
-			{
-				Set<Integer> relTypeSet = values.next();
-				for ( int relId : relTypeSet )
-				{
-					Relationship rel = nodeManager.getRelationshipById( 
-						relId ); 
-					if ( dir == Direction.OUTGOING &&
-						rel.getStartNode().equals( this ) )
-					{
-						allRelationships.add( rel );
-					}
-					else if ( dir == Direction.INCOMING &&
-						rel.getEndNode().equals( this ) )
-					{
-						allRelationships.add( rel );
-					}
-				}
-			}
-			return allRelationships;
-		}
-		finally
-		{
-			releaseLock( this, LockType.READ );
-		}
+		return new RelationshipIterable( getRelationshipIds( null, dir ) );
 	}
 	
 	public Iterable<Relationship> getRelationships( RelationshipType type )
 	{
-		acquireLock( this, LockType.READ );
-		try
-		{
-			ensureFullRelationships();
-			if ( relationshipMap == null )
-			{
-				return Collections.emptyList();
-			}
-			// TODO: rewrite with iterator wrapper
-			Set<Integer> relationshipSet = relationshipMap.get( type.name() );
-			if ( relationshipSet == null )
-			{
-				return Collections.emptyList();
-			}
-			List<Relationship> rels = new LinkedList<Relationship>(); 
-			Iterator<Integer> values = relationshipSet.iterator();
-			while ( values.hasNext() )
-			{
-				rels.add( nodeManager.getRelationshipById( 
-					values.next() ) ); 
-			}
-			return rels;
-		}
-		finally
-		{
-			releaseLock( this, LockType.READ );
-		}
+		return new RelationshipIterable( getRelationshipIds( 
+			new RelationshipType[] { type }, Direction.BOTH ) );
 	}
 
 	public Iterable<Relationship> getRelationships( RelationshipType... types )
 	{
-		List<Relationship> rels = new LinkedList<Relationship>();
-		for ( RelationshipType type : types )
-		{
-			for ( Relationship rel : getRelationships( type ) )
-			{
-				rels.add( rel );
-			}
-		}
-		return rels;
+		return new RelationshipIterable( getRelationshipIds( types, 
+			Direction.BOTH ) );
 	}
 	
 	public Relationship getSingleRelationship( RelationshipType type, 
@@ -257,42 +166,27 @@ class NodeImpl implements Node, Comparable
 	public Iterable<Relationship> getRelationships( RelationshipType type, 
 		Direction dir )
 	{
-		if ( dir == Direction.BOTH )
+		return new RelationshipIterable( getRelationshipIds( 
+			new RelationshipType[] { type }, dir ) );
+	}
+	
+	/**
+	 * Returns a snapshot of the ids of the relationships of 
+	 * <CODE>types</CODE> (all relationships if <CODE>null</CODE>) in 
+	 * direction <CODE>dir</CODE>. The relationships are loaded if needed. 
+	 */
+	int[] getRelationshipIds( RelationshipType[] types, Direction dir )
+	{
+		int[] relIds = optimisticGetRelationshipIds( types, dir );
+		if ( relIds != null )
 		{
-			return getRelationships( type );
+			return relIds;
 		}
 		acquireLock( this, LockType.READ );
 		try
 		{
 			ensureFullRelationships();
-			if ( relationshipMap == null )
-			{
-				return Collections.emptyList();
-			}
-			// TODO: rewrite with iterator wrapper
-			Set<Integer> relationshipSet = relationshipMap.get( type.name() );
-			if ( relationshipSet == null )
-			{
-				return Collections.emptyList();
-			}
-			List<Relationship> rels = new LinkedList<Relationship>(); 
-			Iterator<Integer> values = relationshipSet.iterator();
-			while ( values.hasNext() )
-			{
-				Relationship rel = nodeManager.getRelationshipById( 
-					values.next() ); 
-				if ( dir == Direction.OUTGOING &&
-					rel.getStartNode().equals( this ) )
-				{
-					rels.add( rel );
-				}
-				else if ( dir == Direction.INCOMING &&
-					rel.getEndNode().equals( this ) )
-				{
-					rels.add( rel );
-				}
-			}
-			return rels;
+			return copyRelationshipIds( relationshipMap, types, dir );
 		}
 		finally
 		{
@@ -373,10 +267,35 @@ class NodeImpl implements Node, Comparable
 	 */
 	public Iterable<Object> getPropertyValues()
 	{
+		Iterable<Object> values = new OptimisticRead<Iterable<Object>>()
+		{
+			Iterable<Object> read()
+			{
+				if ( nodePropPhase != NodePhase.FULL_PROPERTY )
+				{
+					return null;
+				}
+				List<Object> properties = new ArrayList<Object>();
+				for ( Property property : propertyMap.values() )
+				{
+					if ( !property.isValueLoaded() )
+					{
+						// load all missing values at once below
+						return null;
+					}
+					properties.add( property.getValue() );
+				}
+				return properties;
+			}
+		}.run( version );
+		if ( values != null )
+		{
+			return values;
+		}
 		acquireLock( this, LockType.READ );
 		try
 		{
-			ensureFullProperties();
+			ensureFullProperties( true );
 			List<Object> properties = new ArrayList<Object>();
 			for ( Property property : propertyMap.values() )
 			{
@@ -399,10 +318,25 @@ class NodeImpl implements Node, Comparable
 	 */
 	public Iterable<String> getPropertyKeys()
 	{
+		Iterable<String> keys = new OptimisticRead<Iterable<String>>()
+		{
+			Iterable<String> read()
+			{
+				if ( nodePropPhase != NodePhase.FULL_PROPERTY )
+				{
+					return null;
+				}
+				return new ArrayList<String>( propertyMap.keySet() );
+			}
+		}.run( version );
+		if ( keys != null )
+		{
+			return keys;
+		}
 		acquireLock( this, LockType.READ );
 		try
 		{
-			ensureFullProperties();
+			ensureFullProperties( true );
 			List<String> propertyKeys = new ArrayList<String>();
 			for ( String key : propertyMap.keySet() )
 			{
@@ -427,9 +361,33 @@ class NodeImpl implements Node, Comparable
 	 * @return the property object
 	 * @throws NotFoundException if this property doesn't exist
 	 */
-	public Object getProperty( String key ) 
+	public Object getProperty( final String key ) 
 		throws NotFoundException
 	{
+		Object value = new OptimisticRead<Object>()
+		{
+			Object read()
+			{
+				// phase is read before the map, it is set after the map is 
+				// replaced when properties are loaded
+				boolean full = nodePropPhase == NodePhase.FULL_PROPERTY;
+				Property property = propertyMap.get( key );
+				if ( property != null )
+				{
+					return property.getValue();
+				}
+				return full ? OptimisticRead.NOT_FOUND : null;
+			}
+		}.run( version );
+		if ( value == OptimisticRead.NOT_FOUND )
+		{
+			throw new NotFoundException( "" + key + 
+				" property not found." );
+		}
+		if ( value != null )
+		{
+			return value;
+		}
 		acquireLock( this, LockType.READ );
 		try
 		{
@@ -469,8 +427,24 @@ class NodeImpl implements Node, Comparable
 	 * @param key the property key
 	 * @return true if <CODE>key</CODE> property exists
 	 */
-	public boolean hasProperty( String key )
+	public boolean hasProperty( final String key )
 	{
+		Boolean found = new OptimisticRead<Boolean>()
+		{
+			Boolean read()
+			{
+				boolean full = nodePropPhase == NodePhase.FULL_PROPERTY;
+				if ( propertyMap.containsKey( key ) )
+				{
+					return Boolean.TRUE;
+				}
+				return full ? Boolean.FALSE : null;
+			}
+		}.run( version );
+		if ( found != null )
+		{
+			return found;
+		}
 		acquireLock( this, LockType.READ );
 		try
 		{
@@ -820,33 +794,48 @@ class NodeImpl implements Node, Comparable
 	 // caller is responsible for acquiring lock
 	 // this method is only called when a relationship is created or 
 	 // a relationship delete is undone or when the full node is loaded
-	void addRelationship( RelationshipType type, Integer relId ) 
+	void addRelationship( RelationshipImpl rel ) 
 	{
-		Set<Integer> relationshipSet = relationshipMap.get( type.name() );
-		if ( relationshipSet == null )
+		addRelationship( relationshipMap, rel );
+	}
+	
+	private boolean addRelationship( Map<String,RelationshipIds> map, 
+		RelationshipImpl rel )
+	{
+		String typeName = rel.getType().name();
+		RelationshipIds relationshipIds = map.get( typeName );
+		if ( relationshipIds == null )
 		{
-			relationshipSet = new LinkedHashSet<Integer>();
-			relationshipMap.put( type.name(), relationshipSet );
+			relationshipIds = new RelationshipIds();
+			map.put( typeName, relationshipIds );
 		}
-		relationshipSet.add( relId );
+		return relationshipIds.add( (int) rel.getId(), getDirection( rel ) );
 	}
 	
 	 // caller is responsible for acquiring lock
 	 // this method is only called when a undo create relationship or
 	 // a relationship delete is invoked.
-	void removeRelationship( RelationshipType type, Integer relId )
+	void removeRelationship( RelationshipImpl rel )
 	{
-		Set<Integer> relationshipSet = relationshipMap.get( type.name() );
-		if ( relationshipSet != null )
+		String typeName = rel.getType().name();
+		RelationshipIds relationshipIds = relationshipMap.get( typeName );
+		if ( relationshipIds != null )
 		{
-			relationshipSet.remove( relId );
-			if ( relationshipSet.size() == 0 )
+			relationshipIds.remove( (int) rel.getId(), getDirection( rel ) );
+			if ( relationshipIds.isEmpty() )
 			{
-				relationshipMap.remove( type.name() );
+				relationshipMap.remove( typeName );
 			}
 		}
 	}
 	
+	// start node can't equal end node so there are no loops
+	private Direction getDirection( RelationshipImpl rel )
+	{
+		return rel.getStartNodeId() == id ? Direction.OUTGOING : 
+			Direction.INCOMING;
+	}
+	
 	boolean hasRelationships()
 	{
 		return ( relationshipMap.size() > 0 );
@@ -866,22 +855,32 @@ class NodeImpl implements Node, Comparable
 	}
 
 	private void ensureFullProperties()
+	{
+		ensureFullProperties( false );
+	}
+	
+	// if loadValues the property values are read in the same pass as the 
+	// keys instead of one round trip per value when they are requested
+	private void ensureFullProperties( boolean loadValues )
 	{
 		if ( nodePropPhase != NodePhase.FULL_PROPERTY )
 		{
-			RawPropertyData[] rawProperties = 
+			RawPropertyData[] rawProperties = loadValues ? 
+				NodeManager.getManager().loadFullProperties( this ) : 
 				NodeManager.getManager().loadProperties( this );
-			Set<Integer> addedProps = new LinkedHashSet<Integer>();
+			IntSet addedProps = new IntSet( rawProperties.length );
 			Map<String,Property> newPropertyMap = 
 				new HashMap<String,Property>();
 			for ( RawPropertyData propData : rawProperties )
 			{
 				int propId = propData.getId();
-				assert !addedProps.contains( propId );
-				addedProps.add( propId );
+				boolean added = addedProps.add( propId );
+				assert added;
 				Property property = new Property( propId, 
 					propData.getValue() );
-				newPropertyMap.put( propData.getKey(), property );
+				// keys read from store are new strings for every load, 
+				// share one instance between all cached nodes/relationships
+				newPropertyMap.put( propData.getKey().intern(), property );
 			}
 			for ( String key : this.propertyMap.keySet() )
 			{
@@ -894,6 +893,32 @@ class NodeImpl implements Node, Comparable
 			this.propertyMap = newPropertyMap;
 			nodePropPhase = NodePhase.FULL_PROPERTY;
 		}
+		else if ( loadValues && !propertyValuesLoaded() )
+		{
+			RawPropertyData[] rawProperties = 
+				NodeManager.getManager().loadFullProperties( this );
+			for ( RawPropertyData propData : rawProperties )
+			{
+				Property property = propertyMap.get( propData.getKey() );
+				if ( property != null && 
+					property.getId() == propData.getId() )
+				{
+					property.setLoadedValue( propData.getValue() );
+				}
+			}
+		}
+	}
+	
+	private boolean propertyValuesLoaded()
+	{
+		for ( Property property : propertyMap.values() )
+		{
+			if ( !property.isValueLoaded() )
+			{
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	private void ensureFullRelationships()
@@ -902,41 +927,36 @@ class NodeImpl implements Node, Comparable
 		{
 			List<Relationship> fullRelationshipList = 
 				NodeManager.getManager().loadRelationships( this );
-			Set<Integer> addedRels = new HashSet<Integer>();
-			Map<String,Set<Integer>> newRelationshipMap = 
-				new HashMap<String,Set<Integer>>();
+			Map<String,RelationshipIds> newRelationshipMap = 
+				new HashMap<String,RelationshipIds>();
 			for ( Relationship rel : fullRelationshipList )
 			{
-				int relId = (int) rel.getId();
-				assert !addedRels.contains( relId );
-				addedRels.add( relId );
-				RelationshipType type = rel.getType();
-				Set<Integer> relationshipSet = newRelationshipMap.get( type.name() );
-				if ( relationshipSet == null )
-				{
-					relationshipSet = new LinkedHashSet<Integer>();
-					newRelationshipMap.put( type.name(), relationshipSet );
-				}
-				relationshipSet.add( relId );
+				boolean added = addRelationship( newRelationshipMap, 
+					(RelationshipImpl) rel );
+				assert added;
 			}
+			// relationships created before the node was fully loaded,
+			// a relationship never changes type or direction so adding 
+			// them to the new sets takes care of duplicates
 			for ( String typeName : this.relationshipMap.keySet() )
 			{
-				Set<Integer> relationshipSet = 
+				RelationshipIds relationshipIds = 
 					this.relationshipMap.get( typeName );
-				for ( Integer relId : relationshipSet )
+				RelationshipIds newRelationshipIds = 
+					newRelationshipMap.get( typeName );
+				if ( newRelationshipIds == null )
 				{
-					if ( !addedRels.contains( relId ) )
+					newRelationshipIds = new RelationshipIds();
+					newRelationshipMap.put( typeName, newRelationshipIds );
+				}
+				for ( Direction dir : new Direction[] { Direction.OUTGOING, 
+					Direction.INCOMING } )
+				{
+					int[] relIds = new int[relationshipIds.size( dir )];
+					relationshipIds.copyTo( relIds, 0, dir );
+					for ( int relId : relIds )
 					{
-						Set<Integer> newRelationshipSet = 
-							newRelationshipMap.get( typeName );
-						if ( newRelationshipSet == null )
-						{
-							newRelationshipSet = new LinkedHashSet<Integer>();
-							newRelationshipMap.put( typeName, 
-								newRelationshipSet );
-						}
-						newRelationshipSet.add( relId );
-						addedRels.add( relId );
+						newRelationshipIds.add( relId, dir );
 					}
 				}
 			}
@@ -945,6 +965,146 @@ class NodeImpl implements Node, Comparable
 		}
 	}
 	
+	/**
+	 * Copies the relationship ids (of <CODE>types</CODE> or all if 
+	 * <CODE>null</CODE>) without taking a read lock. Returns 
+	 * <CODE>null</CODE> if the relationships aren't loaded or the read 
+	 * couldn't be validated.
+	 */
+	private int[] optimisticGetRelationshipIds( 
+		final RelationshipType[] types, final Direction dir )
+	{
+		return new OptimisticRead<int[]>()
+		{
+			int[] read()
+			{
+				if ( nodeRelPhase != NodePhase.FULL_REL )
+				{
+					return null;
+				}
+				return copyRelationshipIds( relationshipMap, types, dir );
+			}
+		}.run( version );
+	}
+	
+	// caller is responsible for acquiring lock or validating the read
+	private static int[] copyRelationshipIds( 
+		Map<String,RelationshipIds> map, RelationshipType[] types, 
+		Direction dir )
+	{
+		if ( map == null )
+		{
+			return new int[0];
+		}
+		List<RelationshipIds> relationshipIdsList = 
+			new ArrayList<RelationshipIds>();
+		if ( types == null )
+		{
+			relationshipIdsList.addAll( map.values() );
+		}
+		else
+		{
+			for ( RelationshipType type : types )
+			{
+				RelationshipIds relationshipIds = map.get( type.name() );
+				if ( relationshipIds != null )
+				{
+					relationshipIdsList.add( relationshipIds );
+				}
+			}
+		}
+		int size = 0;
+		for ( RelationshipIds relationshipIds : relationshipIdsList )
+		{
+			size += relationshipIds.size( dir );
+		}
+		int[] relIds = new int[size];
+		int offset = 0;
+		for ( RelationshipIds relationshipIds : relationshipIdsList )
+		{
+			offset = relationshipIds.copyTo( relIds, offset, dir );
+		}
+		return relIds;
+	}
+	
+	/**
+	 * Relationships of this node resolved as they are iterated over. The 
+	 * ids are a snapshot taken when the iterable was created, relationships 
+	 * deleted after that are skipped. 
+	 */
+	private class RelationshipIterable implements Iterable<Relationship>
+	{
+		private final int[] relIds;
+		
+		RelationshipIterable( int[] relIds )
+		{
+			this.relIds = relIds;
+		}
+		
+		public Iterator<Relationship> iterator()
+		{
+			return new RelationshipIterator( relIds );
+		}
+	}
+	
+	private class RelationshipIterator implements Iterator<Relationship>
+	{
+		private final int[] relIds;
+		private int position = 0;
+		private Relationship next = null;
+		
+		RelationshipIterator( int[] relIds )
+		{
+			this.relIds = relIds;
+		}
+		
+		public boolean hasNext()
+		{
+			while ( next == null && position < relIds.length )
+			{
+				next = resolve( relIds[position++] );
+			}
+			return next != null;
+		}
+		
+		public Relationship next()
+		{
+			if ( !hasNext() )
+			{
+				throw new NoSuchElementException();
+			}
+			Relationship rel = next;
+			next = null;
+			return rel;
+		}
+		
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		// returns null if relationship has been deleted
+		private Relationship resolve( int relId )
+		{
+			Relationship rel;
+			try
+			{
+				rel = nodeManager.getRelationshipById( relId );
+			}
+			catch ( NotFoundException e )
+			{
+				return null;
+			}
+			RelationshipImpl relImpl = 
+				(RelationshipImpl) nodeManager.getRelForProxy( relId );
+			if ( relImpl.isDeleted() )
+			{
+				return null;
+			}
+			return rel;
+		}
+	}
+	
 	private void acquireLock( Object resource, LockType lockType )
 	{
 		try
@@ -987,7 +1147,8 @@ class NodeImpl implements Node, Comparable
 		{
 			TransactionIsolationLevel level = 
 				TransactionFactory.getTransactionIsolationLevel();
-			if ( level == TransactionIsolationLevel.READ_COMMITTED )
+			if ( level == TransactionIsolationLevel.READ_COMMITTED || 
+				level == TransactionIsolationLevel.READ_COMMITTED_OPTIMISTIC )
 			{
 				if ( lockType == LockType.READ )
 				{
@@ -2,13 +2,16 @@ package org.neo4j.impl.core;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
+import org.neo4j.api.core.Direction;
 import org.neo4j.api.core.Node;
 import org.neo4j.api.core.Relationship;
 import org.neo4j.api.core.RelationshipType;
 import org.neo4j.impl.cache.AdaptiveCacheManager;
-import org.neo4j.impl.cache.LruCache;
+import org.neo4j.impl.cache.Cache;
+import org.neo4j.impl.cache.ClockCache;
 import org.neo4j.impl.command.CommandManager;
 import org.neo4j.impl.command.ExecuteFailedException;
 import org.neo4j.impl.command.TransactionCache;
@@ -60,10 +63,15 @@ public class NodeManager
 	
 	private int referenceNodeId = 0;
 	
-	private LruCache<Integer,Node> nodeCache = 
-		new LruCache<Integer,Node>( "NodeCache", 1500 );
-	private LruCache<Integer,Relationship> relCache = 
-		new LruCache<Integer,Relationship>( "RelationshipCache", 3500 );
+	private Cache<Integer,Node> nodeCache = 
+		new ClockCache<Integer,Node>( "NodeCache", 1500 );
+	private Cache<Integer,Relationship> relCache = 
+		new ClockCache<Integer,Relationship>( "RelationshipCache", 3500 );
+	
+	// cache hits and misses of threads recording them
+	private final ThreadLocal<long[]> cacheRecordings = 
+		new ThreadLocal<long[]>();
+	private final AtomicInteger cacheRecordingThreads = new AtomicInteger( 0 );
 	
 	private NodeManager()
 	{
@@ -276,11 +284,13 @@ public class NodeManager
 				throw new NotFoundException( 
 					"Node[" + nodeId + "] has been deleted (in this tx)" );
 			}
+			recordCacheAccess( true );
 			return new NodeProxy( nodeId );
 		}
 		node = nodeCache.get( nodeId );
 		if ( node != null )
 		{
+			recordCacheAccess( true );
 			return new NodeProxy( nodeId );
 		}
 		node = new NodeImpl( nodeId );
@@ -290,8 +300,10 @@ public class NodeManager
 			if ( nodeCache.get( nodeId ) != null )
 			{
 				node = nodeCache.get( nodeId );
+				recordCacheAccess( true );
 				return new NodeProxy( nodeId );
 			}
+			recordCacheAccess( false );
 			if ( PersistenceManager.getManager().loadLightNode( nodeId ) == 
 				null )
 			{
@@ -315,16 +327,133 @@ public class NodeManager
 		}
 	}
 	
+	/**
+	 * Gets many nodes by id at once.
+	 * <p>
+	 * Nodes found in cache are returned directly. The rest are sorted by id, 
+	 * which is their position in the store, and loaded from persistent 
+	 * storage in one operation then added to the cache.
+	 * 
+	 * @param nodeIds the node ids
+	 * @return the nodes in the same order as <CODE>nodeIds</CODE>
+	 * @throws NotFoundException if any of the nodes doesn't exist
+	 */
+	public Node[] getNodesById( int nodeIds[] ) throws NotFoundException
+	{
+		Node nodes[] = new Node[ nodeIds.length ];
+		int missing[] = new int[ nodeIds.length ];
+		int missingCount = 0;
+		for ( int i = 0; i < nodeIds.length; i++ )
+		{
+			int nodeId = nodeIds[i];
+			Node node = getTransactionCache().getNode( nodeId ); 
+			if ( node != null )
+			{
+				if ( ( ( NodeImpl ) node ).isDeleted() )
+				{
+					throw new NotFoundException( "Node[" + nodeId + 
+						"] has been deleted (in this tx)" );
+				}
+				nodes[i] = new NodeProxy( nodeId );
+			}
+			else if ( nodeCache.get( nodeId ) != null )
+			{
+				nodes[i] = new NodeProxy( nodeId );
+			}
+			else
+			{
+				missing[missingCount++] = nodeId;
+			}
+		}
+		if ( missingCount == 0 )
+		{
+			return nodes;
+		}
+		missing = sortedUnique( missing, missingCount );
+		// read locks taken in id order, as getNodeById does for each node
+		NodeImpl lockedNodes[] = new NodeImpl[ missing.length ];
+		int lockCount = 0;
+		try
+		{
+			for ( ; lockCount < missing.length; lockCount++ )
+			{
+				lockedNodes[lockCount] = new NodeImpl( missing[lockCount] );
+				acquireLock( lockedNodes[lockCount], LockType.READ );
+			}
+			boolean inUse[] = 
+				PersistenceManager.getManager().loadLightNodes( missing );
+			for ( int i = 0; i < missing.length; i++ )
+			{
+				if ( !inUse[i] )
+				{
+					throw new NotFoundException( "Node[" + missing[i] + "]" );
+				}
+			}
+			for ( NodeImpl node : lockedNodes )
+			{
+				if ( nodeCache.get( (int) node.getId() ) == null )
+				{
+					nodeCache.add( (int) node.getId(), node );
+				}
+			}
+		}
+		catch ( PersistenceException pe )
+		{
+			log.severe( "Persistence error while trying to get " + 
+				missing.length + " nodes by id. " + pe );
+			throw new NotFoundException( pe );
+		}
+		finally
+		{
+			for ( int i = 0; i < lockCount; i++ )
+			{
+				forceReleaseReadLock( lockedNodes[i] );
+			}
+		}
+		for ( int i = 0; i < nodeIds.length; i++ )
+		{
+			if ( nodes[i] == null )
+			{
+				nodes[i] = new NodeProxy( nodeIds[i] );
+			}
+		}
+		return nodes;
+	}
+	
+	private static int[] sortedUnique( int ids[], int count )
+	{
+		int sorted[] = new int[ count ];
+		System.arraycopy( ids, 0, sorted, 0, count );
+		java.util.Arrays.sort( sorted );
+		int uniqueCount = 0;
+		for ( int i = 0; i < count; i++ )
+		{
+			if ( i == 0 || sorted[i] != sorted[i - 1] )
+			{
+				sorted[uniqueCount++] = sorted[i];
+			}
+		}
+		if ( uniqueCount == count )
+		{
+			return sorted;
+		}
+		int unique[] = new int[ uniqueCount ];
+		System.arraycopy( sorted, 0, unique, 0, uniqueCount );
+		return unique;
+	}
+	
 	Node getNodeForProxy( int nodeId )
 	{
 		Node node = getTransactionCache().getNode( nodeId ); 
 		if ( node != null )
 		{
+			recordCacheAccess( true );
 			return node;
 		}
 		node = nodeCache.get( nodeId );
 		if ( node != null )
 		{
+			recordCacheAccess( true );
 			return node;
 		}
 		node = new NodeImpl( nodeId );
@@ -334,8 +463,10 @@ public class NodeManager
 			if ( nodeCache.get( nodeId ) != null )
 			{
 				node = nodeCache.get( nodeId );
+				recordCacheAccess( true );
 				return node;
 			}
+			recordCacheAccess( false );
 			if ( PersistenceManager.getManager().loadLightNode( nodeId ) == 
 				null )
 			{
@@ -380,18 +511,20 @@ public class NodeManager
 	}
 	
 	// checks the cache first, if not in cache load it using PM
-	Relationship getRelationshipById( int relId ) 
+	public Relationship getRelationshipById( int relId ) 
 		throws NotFoundException
 	{
 		Relationship relationship = getTransactionCache().getRelationship( 
 			relId ); 
 		if ( relationship != null )
 		{
+			recordCacheAccess( true );
 			return new RelationshipProxy( relId );
 		}
 		relationship = relCache.get( relId );
 		if ( relationship != null )
 		{
+			recordCacheAccess( true );
 			return new RelationshipProxy( relId );
 		}
 		Relationship dummyRel = new RelationshipImpl( relId );
@@ -401,9 +534,11 @@ public class NodeManager
 			if ( relCache.get( relId ) != null )
 			{
 				relationship = relCache.get( relId );
+				recordCacheAccess( true );
 				return new RelationshipProxy( relId );
 			}
 
+			recordCacheAccess( false );
 			RawRelationshipData data = 
 				PersistenceManager.getManager().loadLightRelationship( relId );
 			if ( data == null )
@@ -435,6 +570,146 @@ public class NodeManager
 		}
 	}
 	
+	/**
+	 * Gets many relationships by id at once, relationships not in cache are 
+	 * loaded sorted by id in one operation, see {@link #getNodesById(int[])}.
+	 * 
+	 * @param relIds the relationship ids
+	 * @return the relationships in the same order as <CODE>relIds</CODE>
+	 * @throws NotFoundException if any of the relationships doesn't exist
+	 */
+	public Relationship[] getRelationshipsById( int relIds[] ) 
+		throws NotFoundException
+	{
+		Relationship relationships[] = new Relationship[ relIds.length ];
+		int missing[] = new int[ relIds.length ];
+		int missingCount = 0;
+		for ( int i = 0; i < relIds.length; i++ )
+		{
+			int relId = relIds[i];
+			if ( getTransactionCache().getRelationship( relId ) != null || 
+				relCache.get( relId ) != null )
+			{
+				relationships[i] = new RelationshipProxy( relId );
+			}
+			else
+			{
+				missing[missingCount++] = relId;
+			}
+		}
+		if ( missingCount == 0 )
+		{
+			return relationships;
+		}
+		missing = sortedUnique( missing, missingCount );
+		Relationship lockedRels[] = new Relationship[ missing.length ];
+		int lockCount = 0;
+		try
+		{
+			for ( ; lockCount < missing.length; lockCount++ )
+			{
+				lockedRels[lockCount] = 
+					new RelationshipImpl( missing[lockCount] );
+				acquireLock( lockedRels[lockCount], LockType.READ );
+			}
+			RawRelationshipData data[] = PersistenceManager.getManager().
+				loadLightRelationships( missing );
+			Relationship loadedRels[] = new Relationship[ missing.length ];
+			for ( int i = 0; i < missing.length; i++ )
+			{
+				if ( data[i] == null )
+				{
+					throw new NotFoundException( "Relationship[" + 
+						missing[i] + "] not found" );
+				}
+				RelationshipType type = 
+					getRelationshipTypeById( data[i].getType() );
+				if ( type == null )
+				{
+					throw new NotFoundException( "Relationship[" + 
+						missing[i] + "] exist but relationship type[" + 
+						data[i].getType() + "] not registered." );
+				}
+				loadedRels[i] = new RelationshipImpl( missing[i], 
+					data[i].getFirstNode(), data[i].getSecondNode(), type, 
+					false );
+			}
+			for ( int i = 0; i < missing.length; i++ )
+			{
+				if ( relCache.get( missing[i] ) == null )
+				{
+					relCache.add( missing[i], loadedRels[i] );
+				}
+			}
+		}
+		catch ( PersistenceException e )
+		{
+			throw new NotFoundException( "Could not get " + missing.length + 
+				" relationships.", e );
+		}
+		finally
+		{
+			for ( int i = 0; i < lockCount; i++ )
+			{
+				forceReleaseReadLock( lockedRels[i] );
+			}
+		}
+		for ( int i = 0; i < relIds.length; i++ )
+		{
+			if ( relationships[i] == null )
+			{
+				relationships[i] = new RelationshipProxy( relIds[i] );
+			}
+		}
+		return relationships;
+	}
+	
+	/**
+	 * Returns a snapshot of the ids of the relationships of 
+	 * <CODE>types</CODE> (all relationships if <CODE>null</CODE>) connected 
+	 * to node <CODE>nodeId</CODE> in direction <CODE>dir</CODE>. No node 
+	 * or relationship proxies are created, this is meant for code such as 
+	 * traversers that walk the node space on ids.
+	 * 
+	 * @param nodeId the node id
+	 * @param types the relationship types or <CODE>null</CODE>
+	 * @param dir the direction
+	 * @return the relationship ids
+	 */
+	public int[] getRelationshipIds( int nodeId, RelationshipType[] types, 
+		Direction dir )
+	{
+		return ( ( NodeImpl ) getNodeForProxy( nodeId ) ).getRelationshipIds( 
+			types, dir );
+	}
+	
+	/**
+	 * Returns the id of the node at the other end of relationship 
+	 * <CODE>relId</CODE> seen from node <CODE>nodeId</CODE>.
+	 * 
+	 * @param relId the relationship id
+	 * @param nodeId id of one of the nodes of the relationship
+	 * @return id of the other node or -1 if the relationship has been 
+	 * deleted
+	 */
+	public int getOtherNodeId( int relId, int nodeId )
+	{
+		RelationshipImpl rel;
+		try
+		{
+			rel = ( RelationshipImpl ) getRelForProxy( relId );
+		}
+		catch ( RuntimeException e )
+		{
+			return -1;
+		}
+		if ( rel.isDeleted() )
+		{
+			return -1;
+		}
+		return rel.getOtherNodeId( nodeId );
+	}
+	
 	RelationshipType getRelationshipTypeById( int id )
 	{
 		return RelationshipTypeHolder.getHolder().getRelationshipType( id );
@@ -446,11 +721,13 @@ public class NodeManager
 			relId ); 
 		if ( relationship != null )
 		{
+			recordCacheAccess( true );
 			return relationship;
 		}
 		relationship = relCache.get( relId );
 		if ( relationship != null )
 		{
+			recordCacheAccess( true );
 			return relationship;
 		}
 		Relationship dummyRel = new RelationshipImpl( relId );
@@ -460,8 +737,10 @@ public class NodeManager
 			if ( relCache.get( relId ) != null )
 			{
 				relationship = relCache.get( relId );
+				recordCacheAccess( true );
 				return relationship;
 			}
+			recordCacheAccess( false );
 			RawRelationshipData data = 
 				PersistenceManager.getManager().loadLightRelationship( relId );
 			if ( data == null )
@@ -513,15 +792,13 @@ public class NodeManager
 			nodeCache.get( nodeIds[0] ) != null )
 		{
 			( ( NodeImpl ) getNodeForProxy( nodeIds[0].intValue() ) ).
-				removeRelationship( relationship.getType(),
-					(int) relationship.getId() );
+				removeRelationship( relationship );
 		}
 		if ( getTransactionCache().getNode( nodeIds[1] ) != null || 
 			nodeCache.get( nodeIds[1] ) != null )
 		{
 			( ( NodeImpl ) getNodeForProxy( nodeIds[1].intValue() ) ).
-				removeRelationship( relationship.getType(), 
-					(int) relationship.getId() );
+				removeRelationship( relationship );
 		}
 		relCache.remove( (int) relationship.getId() );
 	}
@@ -531,11 +808,9 @@ public class NodeManager
 	{
 		Integer nodeIds[] = relationship.getNodeIds();
 		( ( NodeImpl ) getNodeForProxy( nodeIds[0].intValue() ) ).
-			addRelationship( relationship.getType(), 
-				(int) relationship.getId() );
+			addRelationship( relationship );
 		( ( NodeImpl ) getNodeForProxy( nodeIds[1].intValue() ) ).
-			addRelationship( relationship.getType(), 
-				(int) relationship.getId() );
+			addRelationship( relationship );
 		relCache.add( (int) relationship.getId(), relationship );
 	}
 	
@@ -606,6 +881,22 @@ public class NodeManager
 		}
 	}
 	
+	RawPropertyData[] loadFullProperties( NodeImpl node )
+	{
+		try
+		{
+			RawPropertyData properties[]  = 
+				PersistenceManager.getManager().loadFullProperties( node );
+			return properties;
+		}
+		catch ( Exception e )
+		{
+			log.severe( "Failed loading properties for node[" +
+				node.getId() + "]" );
+			throw new RuntimeException( e );
+		}
+	}
+	
 	RawPropertyData[] loadProperties( RelationshipImpl relationship )
 	{
 		try
@@ -680,7 +971,8 @@ public class NodeManager
 		{
 			TransactionIsolationLevel level = 
 				TransactionFactory.getTransactionIsolationLevel();
-			if ( level == TransactionIsolationLevel.READ_COMMITTED )
+			if ( level == TransactionIsolationLevel.READ_COMMITTED || 
+				level == TransactionIsolationLevel.READ_COMMITTED_OPTIMISTIC )
 			{
 				if ( lockType == LockType.READ )
 				{
@@ -743,11 +1035,86 @@ public class NodeManager
 		}
 	}
 	
+	/**
+	 * Starts counting node and relationship cache hits and misses of the 
+	 * current thread, used to see what a single operation (such as a 
+	 * traversal) costs. Lookups that had to load from persistence count as 
+	 * misses, nodes and relationships of the current transaction as hits. 
+	 * Threads not recording only pay for a volatile read per lookup.
+	 * 
+	 * @return <CODE>true</CODE> if recording was started, 
+	 * <CODE>false</CODE> if the thread was already recording
+	 */
+	public boolean startCacheRecording()
+	{
+		if ( cacheRecordings.get() != null )
+		{
+			return false;
+		}
+		cacheRecordings.set( new long[2] );
+		cacheRecordingThreads.incrementAndGet();
+		return true;
+	}
+	
+	/**
+	 * Stops counting cache hits and misses of the current thread.
+	 */
+	public void stopCacheRecording()
+	{
+		if ( cacheRecordings.get() != null )
+		{
+			cacheRecordings.remove();
+			cacheRecordingThreads.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * Returns the number of cache hits of the current thread since 
+	 * {@link #startCacheRecording()}.
+	 * 
+	 * @return the number of hits or 0 if not recording
+	 */
+	public long getRecordedCacheHits()
+	{
+		long[] counts = cacheRecordings.get();
+		return counts != null ? counts[0] : 0;
+	}
+	
+	/**
+	 * Returns the number of cache misses of the current thread since 
+	 * {@link #startCacheRecording()}.
+	 * 
+	 * @return the number of misses or 0 if not recording
+	 */
+	public long getRecordedCacheMisses()
+	{
+		long[] counts = cacheRecordings.get();
+		return counts != null ? counts[1] : 0;
+	}
+	
+	private void recordCacheAccess( boolean hit )
+	{
+		if ( cacheRecordingThreads.get() == 0 )
+		{
+			return;
+		}
+		long[] counts = cacheRecordings.get();
+		if ( counts != null )
+		{
+			counts[ hit ? 0 : 1 ]++;
+		}
+	}
+	
 	public boolean isValidRelationship( Relationship rel )
+	{
+		return isValidRelationship( (int) rel.getId() );
+	}
+	
+	public boolean isValidRelationship( int relId )
 	{
 		try
 		{
-			return !( ( RelationshipImpl ) getRelForProxy( (int) rel.getId() ) 
+			return !( ( RelationshipImpl ) getRelForProxy( relId ) 
 				).isDeleted();
 		}
 		catch ( RuntimeException e )
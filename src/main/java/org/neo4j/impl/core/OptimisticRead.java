@@ -0,0 +1,79 @@
+package org.neo4j.impl.core;
+
+import org.neo4j.impl.transaction.NotInTransactionException;
+import org.neo4j.impl.transaction.ResourceVersion;
+import org.neo4j.impl.transaction.TransactionFactory;
+import org.neo4j.impl.transaction.TransactionIsolationLevel;
+
+/**
+ * A read of a {@link NodeImpl} or {@link RelationshipImpl} that is done
+ * without a read lock in
+ * {@link TransactionIsolationLevel#READ_COMMITTED_OPTIMISTIC} mode. The
+ * read is validated against the {@link ResourceVersion} of the resource,
+ * if a write lock was held during the read (the only time the cached maps
+ * are modified in place) the result is thrown away and the caller has to
+ * do the read again holding a read lock.
+ */
+abstract class OptimisticRead<T>
+{
+	/**
+	 * Result of a read of a property that doesn't exist.
+	 */
+	static final Object NOT_FOUND = new Object();
+	
+	/**
+	 * Reads the resource without holding any lock. Since the resource may
+	 * be modified during the read anything read is checked by
+	 * {@link #run} before it is used and a runtime exception thrown here
+	 * is treated as a failed read.
+	 *
+	 * @return the result or <CODE>null</CODE> if the read can't be done
+	 * from memory
+	 */
+	abstract T read();
+
+	/**
+	 * Invokes {@link #read} and returns the result if the transaction is
+	 * in optimistic mode and no write lock was held on the resource during
+	 * the read.
+	 *
+	 * @param version the version of the resource read
+	 * @return the validated result or <CODE>null</CODE> if the read has to
+	 * be done holding a read lock
+	 */
+	T run( ResourceVersion version )
+	{
+		try
+		{
+			if ( TransactionFactory.getTransactionIsolationLevel() !=
+				TransactionIsolationLevel.READ_COMMITTED_OPTIMISTIC )
+			{
+				return null;
+			}
+		}
+		catch ( NotInTransactionException e )
+		{
+			throw new RuntimeException(
+				"Unable to get transaction isolation level.", e );
+		}
+		long stamp = version.startRead();
+		if ( stamp == 0 )
+		{
+			// write locked
+			return null;
+		}
+		try
+		{
+			T result = read();
+			if ( result != null && version.validate( stamp ) )
+			{
+				return result;
+			}
+		}
+		catch ( RuntimeException e )
+		{
+			// concurrent write, take the lock
+		}
+		return null;
+	}
+}
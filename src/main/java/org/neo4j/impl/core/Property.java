@@ -25,6 +25,21 @@ class Property
 		return value;
 	}
 	
+	// sets a value loaded together with other properties, a value already 
+	// loaded or set is kept
+	synchronized void setLoadedValue( Object value )
+	{
+		if ( this.value == null )
+		{
+			this.value = value;
+		}
+	}
+	
+	synchronized boolean isValueLoaded()
+	{
+		return value != null;
+	}
+	
 	void setId( int id )
 	{
 		this.id = id;
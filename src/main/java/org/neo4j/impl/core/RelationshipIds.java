@@ -0,0 +1,90 @@
+package org.neo4j.impl.core;
+
+import org.neo4j.api.core.Direction;
+
+/**
+ * Ids of the relationships of one type connected to a {@link NodeImpl}, 
+ * split on direction so expanding a node in one direction is a scan of 
+ * the ids in that direction only. The sets are created when the first 
+ * relationship in that direction is added. No synchronization is done, 
+ * callers are responsible for holding the needed locks.
+ */
+class RelationshipIds
+{
+	private IntSet outgoing = null;
+	private IntSet incoming = null;
+	
+	/**
+	 * Adds a relationship id.
+	 * 
+	 * @param relId the relationship id
+	 * @param dir {@link Direction#OUTGOING} if the node is the start node 
+	 * else {@link Direction#INCOMING}
+	 * @return <CODE>true</CODE> if the id wasn't already added
+	 */
+	boolean add( int relId, Direction dir )
+	{
+		if ( dir == Direction.OUTGOING )
+		{
+			if ( outgoing == null )
+			{
+				outgoing = new IntSet();
+			}
+			return outgoing.add( relId );
+		}
+		if ( dir == Direction.INCOMING )
+		{
+			if ( incoming == null )
+			{
+				incoming = new IntSet();
+			}
+			return incoming.add( relId );
+		}
+		throw new IllegalArgumentException( "Illegal direction " + dir );
+	}
+	
+	boolean remove( int relId, Direction dir )
+	{
+		IntSet relationshipSet = 
+			dir == Direction.OUTGOING ? outgoing : incoming;
+		return relationshipSet != null && relationshipSet.remove( relId );
+	}
+	
+	boolean isEmpty()
+	{
+		return size( Direction.BOTH ) == 0;
+	}
+	
+	int size( Direction dir )
+	{
+		int size = 0;
+		if ( outgoing != null && dir != Direction.INCOMING )
+		{
+			size += outgoing.size();
+		}
+		if ( incoming != null && dir != Direction.OUTGOING )
+		{
+			size += incoming.size();
+		}
+		return size;
+	}
+	
+	/**
+	 * Copies the ids in direction <CODE>dir</CODE> into <CODE>target</CODE> 
+	 * starting at <CODE>offset</CODE>.
+	 * 
+	 * @return the offset after the last copied id
+	 */
+	int copyTo( int[] target, int offset, Direction dir )
+	{
+		if ( outgoing != null && dir != Direction.INCOMING )
+		{
+			offset = outgoing.copyTo( target, offset );
+		}
+		if ( incoming != null && dir != Direction.OUTGOING )
+		{
+			offset = incoming.copyTo( target, offset );
+		}
+		return offset;
+	}
+}
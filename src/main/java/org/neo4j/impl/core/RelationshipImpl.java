@@ -2,10 +2,8 @@ package org.neo4j.impl.core;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Logger;
 
 import org.neo4j.api.core.Node;
@@ -22,8 +20,10 @@ import org.neo4j.impl.transaction.LockManager;
 import org.neo4j.impl.transaction.LockNotFoundException;
 import org.neo4j.impl.transaction.LockType;
 import org.neo4j.impl.transaction.NotInTransactionException;
+import org.neo4j.impl.transaction.ResourceVersion;
 import org.neo4j.impl.transaction.TransactionFactory;
 import org.neo4j.impl.transaction.TransactionIsolationLevel;
+import org.neo4j.impl.transaction.VersionedResource;
 
 
 /**
@@ -51,9 +51,13 @@ import org.neo4j.impl.transaction.TransactionIsolationLevel;
  * <p>
  * This implementaiton of node does not rely on persistence storage to 
  * enforce contraints. This is done by the {@link NeoConstraintsListener}. 
+ * <p>
+ * In {@link TransactionIsolationLevel#READ_COMMITTED_OPTIMISTIC} mode 
+ * property reads that can be served from memory are validated against the 
+ * {@link ResourceVersion} of the relationship instead of taking a read lock.
  */
 class RelationshipImpl 
-	implements Relationship, Comparable
+	implements Relationship, Comparable, VersionedResource
 {
 	private enum RelationshipPhase { NORMAL, FULL }
 	
@@ -65,9 +69,11 @@ class RelationshipImpl
 	private int startNodeId = -1;
 	private int endNodeId = -1;
 	private Integer[] nodeIds = new Integer[2];
-	private RelationshipPhase phase = RelationshipPhase.NORMAL;
+	private volatile RelationshipPhase phase = RelationshipPhase.NORMAL;
 	private RelationshipType type = null;
-	private Map<String,Property> propertyMap = new HashMap<String,Property>();
+	private volatile Map<String,Property> propertyMap = 
+		new HashMap<String,Property>();
+	private final ResourceVersion version = new ResourceVersion();
 	private boolean isDeleted = false;
 	
 	/**
@@ -180,6 +186,27 @@ class RelationshipImpl
 			"] not connected to this relationship[" + getId() + "]" );
 	}
 	
+	/**
+	 * Returns the id of the other node in this relationship without 
+	 * creating a node proxy.
+	 *
+	 * @param nodeId id of a node in this relationship
+	 * @return id of the other node in this relationship
+	 */
+	int getOtherNodeId( int nodeId )
+	{
+		if ( startNodeId == nodeId )
+		{
+			return endNodeId;
+		}
+		if ( endNodeId == nodeId )
+		{
+			return startNodeId;
+		}
+		throw new RuntimeException( "Node[" + nodeId + 
+			"] not connected to this relationship[" + getId() + "]" );
+	}
+	
 	public Node getStartNode()
 	{
 		return nodeManager.getNodeById( startNodeId );
@@ -211,8 +238,32 @@ class RelationshipImpl
 	 * @return the property object
 	 * @throws NotFoundException if this property doesn't exist
 	 */
-	public Object getProperty( String key ) throws NotFoundException
+	public Object getProperty( final String key ) throws NotFoundException
 	{
+		Object value = new OptimisticRead<Object>()
+		{
+			Object read()
+			{
+				// phase is read before the map, it is set after the map is 
+				// replaced when properties are loaded
+				boolean full = phase == RelationshipPhase.FULL;
+				Property property = propertyMap.get( key );
+				if ( property != null )
+				{
+					return property.getValue();
+				}
+				return full ? OptimisticRead.NOT_FOUND : null;
+			}
+		}.run( version );
+		if ( value == OptimisticRead.NOT_FOUND )
+		{
+			throw new NotFoundException( "" + key + 
+				" property not found." );
+		}
+		if ( value != null )
+		{
+			return value;
+		}
 		acquireLock( this, LockType.READ );
 		try
 		{
@@ -252,6 +303,26 @@ class RelationshipImpl
 	 */
 	public Iterable<Object> getPropertyValues()
 	{
+		Iterable<Object> values = new OptimisticRead<Iterable<Object>>()
+		{
+			Iterable<Object> read()
+			{
+				if ( phase != RelationshipPhase.FULL )
+				{
+					return null;
+				}
+				List<Object> properties = new ArrayList<Object>();
+				for ( Property property : propertyMap.values() )
+				{
+					properties.add( property.getValue() );
+				}
+				return properties;
+			}
+		}.run( version );
+		if ( values != null )
+		{
+			return values;
+		}
 		acquireLock( this, LockType.READ );
 		try
 		{
@@ -279,6 +350,21 @@ class RelationshipImpl
 	 */
 	public Iterable<String> getPropertyKeys()
 	{
+		Iterable<String> keys = new OptimisticRead<Iterable<String>>()
+		{
+			Iterable<String> read()
+			{
+				if ( phase != RelationshipPhase.FULL )
+				{
+					return null;
+				}
+				return new ArrayList<String>( propertyMap.keySet() );
+			}
+		}.run( version );
+		if ( keys != null )
+		{
+			return keys;
+		}
 		acquireLock( this, LockType.READ );
 		try
 		{
@@ -306,8 +392,24 @@ class RelationshipImpl
 	 * @param key the property name
 	 * @return true if <CODE>key</CODE> property exists, else false
 	 */
-	public boolean hasProperty( String key )
+	public boolean hasProperty( final String key )
 	{
+		Boolean found = new OptimisticRead<Boolean>()
+		{
+			Boolean read()
+			{
+				boolean full = phase == RelationshipPhase.FULL;
+				if ( propertyMap.containsKey( key ) )
+				{
+					return Boolean.TRUE;
+				}
+				return full ? Boolean.FALSE : null;
+			}
+		}.run( version );
+		if ( found != null )
+		{
+			return found;
+		}
 		acquireLock( this, LockType.READ );
 		try
 		{
@@ -703,6 +805,16 @@ class RelationshipImpl
 	{
 		return nodeIds;
 	}
+	
+	int getStartNodeId()
+	{
+		return startNodeId;
+	}
+	
+	int getEndNodeId()
+	{
+		return endNodeId;
+	}
 
 	// caller responsible for acquiring lock
 	void doAddProperty( String key, Property property ) 
@@ -766,17 +878,19 @@ class RelationshipImpl
 		{
 			RawPropertyData[] rawProperties = 
 				NodeManager.getManager().loadProperties( this );
-			Set<Integer> addedProps = new LinkedHashSet<Integer>();
+			IntSet addedProps = new IntSet( rawProperties.length );
 			Map<String,Property> newPropertyMap = 
 				new HashMap<String,Property>();
 			for ( RawPropertyData propData : rawProperties )
 			{
 				int propId = propData.getId();
-				assert !addedProps.contains( propId );
-				addedProps.add( propId );
+				boolean added = addedProps.add( propId );
+				assert added;
 				Property property = new Property( propId, 
 					propData.getValue() );
-				newPropertyMap.put( propData.getKey(), property );
+				// keys read from store are new strings for every load, 
+				// share one instance between all cached nodes/relationships
+				newPropertyMap.put( propData.getKey().intern(), property );
 			}
 			for ( String key : this.propertyMap.keySet() )
 			{
@@ -791,6 +905,11 @@ class RelationshipImpl
 		}
 	}		
 
+	public ResourceVersion getResourceVersion()
+	{
+		return version;
+	}
+	
 	private void acquireLock( Object resource, LockType lockType )
 	{
 		try
@@ -833,7 +952,8 @@ class RelationshipImpl
 		{
 			TransactionIsolationLevel level = 
 				TransactionFactory.getTransactionIsolationLevel();
-			if ( level == TransactionIsolationLevel.READ_COMMITTED )
+			if ( level == TransactionIsolationLevel.READ_COMMITTED || 
+				level == TransactionIsolationLevel.READ_COMMITTED_OPTIMISTIC )
 			{
 				if ( lockType == LockType.READ )
 				{
@@ -6,7 +6,6 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -139,7 +138,8 @@ public abstract class AbstractDynamicStore extends CommonAbstractStore
 			setStoreNotOk();
 		}
 		setWindowPool( new PersistenceWindowPool( getStorageFileName(), 
-			getBlockSize(), getFileChannel(), getMappedMem() ) );
+			getBlockSize(), getFileChannel(), 
+			getMappedMemoryBudget() ) );
 	}
 
 	/**
@@ -333,6 +333,13 @@ public abstract class AbstractDynamicStore extends CommonAbstractStore
 		return recordList;
 	}
 	
+	// blocks are read into a per thread buffer, arrays larger than this 
+	// are not kept between reads
+	private static final int MAX_KEPT_READ_BUFFER_SIZE = 8 * 1024;
+	
+	private final ThreadLocal<ByteBuffer> readBuffers = 
+		new ThreadLocal<ByteBuffer>();
+	
 	/**
 	 * Reads a <CODE>byte array</CODE> stored in this dynamic store using
 	 * <CODE>blockId</CODE> as start block. 
@@ -343,7 +350,34 @@ public abstract class AbstractDynamicStore extends CommonAbstractStore
 	 */
 	protected byte[] get( int blockId ) throws IOException
 	{
-		LinkedList<byte[]> byteArrayList = new LinkedList<byte[]>();
+		ByteBuffer data = read( blockId );
+		byte allBytes[] = new byte[ data.limit() ];
+		System.arraycopy( data.array(), 0, allBytes, 0, allBytes.length );
+		return allBytes;
+	}
+	
+	/**
+	 * Reads the data stored in this dynamic store using <CODE>blockId</CODE> 
+	 * as start block. The data of each block is copied straight from the 
+	 * persistence window into a buffer reused by the calling thread, the 
+	 * returned buffer is positioned at zero with the limit set to the 
+	 * length of the data. It is only valid until the next read from the 
+	 * same thread so it has to be decoded before this store is read again.
+	 * 
+	 * @param blockId The starting block id
+	 * @return A heap buffer containing the data stored
+	 * @throws IOException If unable to read the data
+	 */
+	protected ByteBuffer read( int blockId ) throws IOException
+	{
+		ByteBuffer data = readBuffers.get();
+		if ( data == null )
+		{
+			data = ByteBuffer.allocate( getBlockSize() * 4 );
+			readBuffers.set( data );
+		}
+		byte dst[] = data.array();
+		int length = 0;
 		PersistenceWindow window = acquireWindow( blockId, 
 			OperationType.READ );
 		try
@@ -376,9 +410,15 @@ public abstract class AbstractDynamicStore extends CommonAbstractStore
 						"] current block illegal size[" +
 						nrOfBytes + "/" + dataSize + "]" );
 				}
-				byte byteArrayElement[] = new byte[ nrOfBytes ]; 
-				buffer.get( byteArrayElement );
-				byteArrayList.add( byteArrayElement );
+				if ( length + nrOfBytes > dst.length )
+				{
+					byte newDst[] = new byte[ 
+						Math.max( dst.length * 2, length + nrOfBytes ) ];
+					System.arraycopy( dst, 0, newDst, 0, length );
+					dst = newDst;
+				}
+				buffer.get( dst, length, nrOfBytes );
+				length += nrOfBytes;
 				if ( nextBlock != Record.NO_NEXT_BLOCK.intValue() ) 
 				{
 					releaseWindow( window );
@@ -404,23 +444,17 @@ public abstract class AbstractDynamicStore extends CommonAbstractStore
 		{
 			releaseWindow( window );
 		}
-		int totalSize = 0;
-		Iterator<byte[]> itr = byteArrayList.iterator();
-		while ( itr.hasNext() )
+		if ( dst != data.array() )
 		{
-			totalSize += itr.next().length;
-		}
-		byte allBytes[] = new byte[ totalSize ];
-		itr = byteArrayList.iterator();
-		int index = 0;
-		while ( itr.hasNext() )
-		{
-			byte currentArray[] = itr.next();
-			System.arraycopy( currentArray, 0, allBytes, index, 
-				currentArray.length );
-			index += currentArray.length;
+			data = ByteBuffer.wrap( dst );
+			if ( dst.length <= MAX_KEPT_READ_BUFFER_SIZE )
+			{
+				readBuffers.set( data );
+			}
 		}
-		return allBytes;
+		data.clear();
+		data.limit( length );
+		return data;
 	}
 	
 	/**
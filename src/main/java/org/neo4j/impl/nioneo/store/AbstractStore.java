@@ -115,7 +115,8 @@ public abstract class AbstractStore extends CommonAbstractStore
 			setStoreNotOk();
 		}
 		setWindowPool( new PersistenceWindowPool( getStorageFileName(), 
-			getRecordSize(), getFileChannel(), getMappedMem() ) );
+			getRecordSize(), getFileChannel(), 
+			getMappedMemoryBudget() ) );
 	}
 	
 	/**
@@ -188,4 +188,20 @@ public class Buffer
 		buf.get( dst );
 		return this;
 	}
+
+	/**
+	 * Reads <CODE>length</CODE> bytes into the <CODE>byte array</CODE> 
+	 * starting at <CODE>offset</CODE> in the array from the underlying 
+	 * buffer.
+	 * 
+	 * @param dst The byte array to read values into
+	 * @param offset The offset in the <CODE>byte array</CODE>
+	 * @param length The number of bytes to read
+	 * @return This buffer
+	 */
+	public Buffer get( byte dst[], int offset, int length )
+	{
+		buf.get( dst, offset, length );
+		return this;
+	}
 }
@@ -3,10 +3,14 @@ package org.neo4j.impl.nioneo.store;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Logger;
 
 import org.neo4j.impl.nioneo.store.AbstractDynamicStore;
@@ -68,6 +72,9 @@ public abstract class CommonAbstractStore
 	
 	// default node store id generator grab size
 	protected static final int DEFAULT_ID_GRAB_SIZE = 1024;
+	
+	// number of ids each thread takes from the id generator at a time
+	private static final int ID_BATCH_SIZE = 32;
 
 	private String storageFileName = null;
 	private IdGenerator idGenerator = null;
@@ -77,6 +84,65 @@ public abstract class CommonAbstractStore
 	private FileLock fileLock;
 	
 	private Map config = null;
+	
+	// ids reserved for each thread (if useIdBatches), handed out without 
+	// touching the id generator. The high id includes the reserved ids so it 
+	// may be up to ID_BATCH_SIZE ids per thread above the highest id in use.
+	// Unused reserved ids are freed in the id generator when the thread is 
+	// gone or the generator is closed (written as free ids to the .id file). 
+	// After a crash the .id file isn't trusted, rebuildIdGenerator scans the 
+	// records so reserved ids that were never used are free again.
+	private final ThreadLocal<IdBatch> idBatches = new ThreadLocal<IdBatch>();
+	private final Queue<IdBatch> allIdBatches = 
+		new ConcurrentLinkedQueue<IdBatch>();
+	
+	private static class IdBatch
+	{
+		private final int ids[] = new int[ ID_BATCH_SIZE ];
+		private int next = 0;
+		private int count = 0;
+		// weak so the batch doesn't keep a finished thread around
+		private final WeakReference<Thread> owner = 
+			new WeakReference<Thread>( Thread.currentThread() );
+		
+		boolean isOwnerAlive()
+		{
+			Thread thread = owner.get();
+			return thread != null && thread.isAlive();
+		}
+		
+		// only contended when the id generator is closed or rebuilt
+		synchronized int nextId( IdGenerator idGenerator ) throws IOException
+		{
+			if ( next == count )
+			{
+				idGenerator.nextIds( ids );
+				next = 0;
+				count = ids.length;
+			}
+			return ids[next++];
+		}
+		
+		synchronized void release( IdGenerator idGenerator ) 
+			throws IOException
+		{
+			while ( next < count )
+			{
+				idGenerator.freeId( ids[next++] );
+			}
+		}
+		
+		synchronized int remaining()
+		{
+			return count - next;
+		}
+		
+		synchronized void discard()
+		{
+			next = 0;
+			count = 0;
+		}
+	}
 
 	/**
 	 * Opens and validates the store contained in <CODE>fileName</CODE> 
@@ -184,6 +250,20 @@ public abstract class CommonAbstractStore
 		this.windowPool = pool;
 	}
 	
+	/**
+	 * Returns <CODE>true</CODE> if {@link #nextId()} should hand out ids 
+	 * from a batch reserved for the calling thread instead of going to the 
+	 * synchronized {@link IdGenerator} for every id. Only worth it for 
+	 * stores with many concurrent creates. This default implementation 
+	 * returns <CODE>false</CODE>.
+	 * 
+	 * @return <CODE>true</CODE> if ids are reserved per thread
+	 */
+	protected boolean useIdBatches()
+	{
+		return false;
+	}
+	
 	/**
 	 * Returns the next id for this store's {@link IdGenerator}.
 	 * 
@@ -192,7 +272,35 @@ public abstract class CommonAbstractStore
 	 */
 	protected int nextId() throws IOException
 	{
-		return idGenerator.nextId();
+		if ( !useIdBatches() )
+		{
+			return idGenerator.nextId();
+		}
+		IdBatch batch = idBatches.get();
+		if ( batch == null )
+		{
+			releaseDeadIdBatches();
+			batch = new IdBatch();
+			idBatches.set( batch );
+			allIdBatches.add( batch );
+		}
+		return batch.nextId( idGenerator );
+	}
+	
+	// returns the ids reserved by threads that are gone, done when a new 
+	// thread registers its batch so the queue only holds live threads
+	private void releaseDeadIdBatches() throws IOException
+	{
+		Iterator<IdBatch> itr = allIdBatches.iterator();
+		while ( itr.hasNext() )
+		{
+			IdBatch batch = itr.next();
+			if ( !batch.isOwnerAlive() )
+			{
+				batch.release( idGenerator );
+				itr.remove();
+			}
+		}
 	}
 
 	/**
@@ -223,6 +331,11 @@ public abstract class CommonAbstractStore
 	 */
 	protected void setHighId( int highId )
 	{
+		// ids reserved by threads may be above the new high id, drop them
+		for ( IdBatch batch : allIdBatches )
+		{
+			batch.discard();
+		}
 		idGenerator.setHighId( highId );
 	}
 	
@@ -230,7 +343,8 @@ public abstract class CommonAbstractStore
 	 * Returns memory assigned for 
 	 * {@link MappedPersistenceWindow memory mapped windows} in bytes. The
 	 * configuration map passed in one constructor is checked for an 
-	 * entry with this stores name.
+	 * entry with this stores name. Not used if the stores share a budget,
+	 * see {@link #getMappedMemoryBudget()}.
 	 * 
 	 * @return The number of bytes memory mapped windows this store has
 	 */
@@ -244,29 +358,70 @@ public abstract class CommonAbstractStore
 				realName + ".mapped_memory" );
 			if ( mem != null )
 			{
-				int multiplier = 1;
-				if ( mem.endsWith( "M" ) )
+				long size = MappedMemoryBudget.parseSize( mem );
+				if ( size >= 0 && size <= Integer.MAX_VALUE )
 				{
-					multiplier = 1024*1024;
-					mem = mem.substring( 0, mem.length() - 1 );
-				}
-				else if ( mem.endsWith( "k" ) )
-				{
-					multiplier = 1024;
-					mem = mem.substring( 0, mem.length() - 1 );
+					return (int) size;
 				}
+				logger.info(  "Unable to parse mapped memory[" +
+					mem + "] string for " + storageFileName );
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Returns the budget for memory mapped windows of this store. If the 
+	 * configuration map has a <CODE>mapped_memory</CODE> entry that memory 
+	 * is shared by all stores opened with the same configuration map and 
+	 * moved between them as needed. Else this store gets a budget of its 
+	 * own, see {@link #getMappedMem()}.
+	 * 
+	 * @return The memory mapped window budget for this store
+	 */
+	MappedMemoryBudget getMappedMemoryBudget()
+	{
+		MappedMemoryBudget budget = 
+			MappedMemoryBudget.getSharedBudget( getConfig() );
+		if ( budget != null )
+		{
+			return budget;
+		}
+		return new MappedMemoryBudget( getMappedMem() );
+	}
+
+	/**
+	 * Returns the number of records to keep in the record cache of this
+	 * store. The configuration map is checked for a
+	 * <CODE>&lt;store file name&gt;.record_cache_size</CODE> entry, if no
+	 * such entry exist (or it can't be parsed) <CODE>defaultSize</CODE> is
+	 * returned.
+	 *
+	 * @param defaultSize the cache size to use if not configured
+	 * @return The number of records to cache
+	 */
+	protected int getRecordCacheSize( int defaultSize )
+	{
+		if ( getConfig() != null )
+		{
+			String realName = storageFileName.replace( '\\', '/' ).substring(
+				storageFileName.lastIndexOf( '/' ) + 1 );
+			String size = ( String ) getConfig().get(
+				realName + ".record_cache_size" );
+			if ( size != null )
+			{
 				try
 				{
-					return Integer.parseInt( mem ) * multiplier;
+					return Integer.parseInt( size );
 				}
 				catch ( NumberFormatException e )
 				{
-					logger.info(  "Unable to parse mapped memory[" +
-						mem + "] string for " + storageFileName );
+					logger.info(  "Unable to parse record cache size[" +
+						size + "] string for " + storageFileName );
 				}
 			}
 		}
-		return 0;
+		return defaultSize;
 	}
 
 	/**
@@ -343,11 +498,38 @@ public abstract class CommonAbstractStore
 		windowPool.flush( identifier );
 	}
 	
+	/**
+	 * Writes the records changed by <CODE>identifier</CODE> that has not 
+	 * been written to the file channel yet, without forcing it. Invoked 
+	 * when a transaction has executed all its commands.
+	 * 
+	 * @param identifier The (transaction) identifier
+	 * @throws IOException If some I/O error occurs writing to the file 
+	 * channel of this store
+	 */
+	public void writeOutRows( int identifier ) throws IOException
+	{
+		windowPool.writeOutRows( identifier );
+	}
+	
+	/**
+	 * Flushes all changes made to this store to disk, used when the 
+	 * logical log is checkpointed.
+	 * 
+	 * @throws IOException If some I/O error occurs flushing the file channel
+	 * of this store
+	 */
+	public void flushAll() throws IOException
+	{
+		windowPool.flushAll();
+	}
+	
 	/**
 	 * Forgets about all changes made by <CODE>identifier</CODE>. This does
 	 * not mean that the changes will be reverted. Instead the mapping between
 	 * <CODE>identifier</CODE> and {@link PersistenceWindow persistence 
-	 * windows} used is removed.
+	 * windows} used is removed and records not yet written out (see 
+	 * {@link #writeOutRows(int)}) are discarded.
 	 * 
 	 * @param identifier The (transaction) identifier
 	 */
@@ -397,6 +579,11 @@ public abstract class CommonAbstractStore
 	{
 		if ( idGenerator != null )
 		{
+			for ( IdBatch batch : allIdBatches )
+			{
+				batch.release( idGenerator );
+			}
+			allIdBatches.clear();
 			idGenerator.close();
 		}
 	}
@@ -470,11 +657,18 @@ public abstract class CommonAbstractStore
 	}
 	
 	/**
+	 * Ids reserved by threads but not handed out yet are not counted.
+	 * 
 	 * @return The total number of ids in use.
 	 */
 	public int getNumberOfIdsInUse()
 	{
-		return idGenerator.getNumberOfIdsInUse();
+		int reserved = 0;
+		for ( IdBatch batch : allIdBatches )
+		{
+			reserved += batch.remaining();
+		}
+		return idGenerator.getNumberOfIdsInUse() - reserved;
 	}
 
 }
@@ -370,13 +370,14 @@ class DynamicArrayStore extends AbstractDynamicStore
 	
 	public Object getArray( int blockId ) throws IOException
 	{
-		byte bArray[] = get( blockId );
-		ByteBuffer buf = ByteBuffer.wrap( bArray );
+		// decoded straight from the read buffer, no copy of the data
+		ByteBuffer buf = read( blockId );
+		int length = buf.limit();
 		byte type = buf.get();
 		if ( type == ArrayType.INT.byteValue() )
 		{
-			int size = ( bArray.length - 1 ) / 4;
-			assert ( bArray.length - 1 ) % 4 == 0;
+			int size = ( length - 1 ) / 4;
+			assert ( length - 1 ) % 4 == 0;
 			int[] array = new int[size];
 			for ( int i = 0; i < size; i++ )
 			{
@@ -389,9 +390,10 @@ class DynamicArrayStore extends AbstractDynamicStore
 			String[] array = new String[ buf.getInt() ];
 			for ( int i = 0; i < array.length; i++ )
 			{
-				byte strBuffer[] = new byte[ buf.getInt() ];
-				buf.get( strBuffer );
-				array[i] = new String( strBuffer );
+				int strLength = buf.getInt();
+				array[i] = new String( buf.array(), buf.position(), 
+					strLength );
+				buf.position( buf.position() + strLength );
 			}
 			return array;
 		}
@@ -404,9 +406,9 @@ class DynamicArrayStore extends AbstractDynamicStore
 			{
 				array[i] = ( currentValue & byteItr ) > 0 ? true : false;
 				byteItr *= 2;
-				if ( byteItr == 256 )
+				if ( byteItr == 256 && i + 1 < array.length )
 				{
-					byteItr = 0;
+					byteItr = 1;
 					currentValue = buf.get();
 				}
 			}
@@ -414,8 +416,8 @@ class DynamicArrayStore extends AbstractDynamicStore
 		}
 		if ( type == ArrayType.DOUBLE.byteValue() )
 		{
-			int size = ( bArray.length - 1 ) / 8;
-			assert ( bArray.length - 1 ) % 8 == 0;
+			int size = ( length - 1 ) / 8;
+			assert ( length - 1 ) % 8 == 0;
 			double[] array = new double[size];
 			for ( int i = 0; i < size; i++ )
 			{
@@ -425,8 +427,8 @@ class DynamicArrayStore extends AbstractDynamicStore
 		}
 		if ( type == ArrayType.FLOAT.byteValue() )
 		{
-			int size = ( bArray.length - 1 ) / 4;
-			assert ( bArray.length - 1 ) % 4 == 0;
+			int size = ( length - 1 ) / 4;
+			assert ( length - 1 ) % 4 == 0;
 			float[] array = new float[size];
 			for ( int i = 0; i < size; i++ )
 			{
@@ -436,8 +438,8 @@ class DynamicArrayStore extends AbstractDynamicStore
 		}
 		if ( type == ArrayType.LONG.byteValue() )
 		{
-			int size = ( bArray.length - 1 ) / 8;
-			assert ( bArray.length - 1 ) % 8 == 0;
+			int size = ( length - 1 ) / 8;
+			assert ( length - 1 ) % 8 == 0;
 			long[] array = new long[size];
 			for ( int i = 0; i < size; i++ )
 			{
@@ -447,15 +449,15 @@ class DynamicArrayStore extends AbstractDynamicStore
 		}
 		if ( type == ArrayType.BYTE.byteValue() )
 		{
-			int size = ( bArray.length - 1 );
+			int size = ( length - 1 );
 			byte[] array = new byte[size];
 			buf.get( array );
 			return array;
 		}
 		if ( type == ArrayType.CHAR.byteValue() )
 		{
-			int size = ( bArray.length - 1 ) / 2;
-			assert ( bArray.length - 1 ) % 2 == 0;
+			int size = ( length - 1 ) / 2;
+			assert ( length - 1 ) % 2 == 0;
 			char[] array = new char[size];
 			for ( int i = 0; i < size; i++ )
 			{
@@ -2,6 +2,7 @@ package org.neo4j.impl.nioneo.store;
 
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.neo4j.impl.nioneo.store.AbstractDynamicStore;
@@ -39,7 +40,8 @@ class DynamicStringStore extends AbstractDynamicStore
 	
 	public String getString( int blockId ) throws IOException
 	{
-		return new String( get( blockId ) );
+		ByteBuffer data = read( blockId );
+		return new String( data.array(), 0, data.limit() );
 	}
 }
 
@@ -1,12 +1,13 @@
 package org.neo4j.impl.nioneo.store;
 
-import java.util.LinkedList;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.RandomAccessFile;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class generates unique ids for a resource type. For exmaple, nodes 
@@ -37,6 +38,11 @@ import java.nio.channels.FileChannel;
  * same file. Also you can only have one <CODE>IdGenerator</CODE> instance per 
  * id generator file at the same time. 
  * <p>
+ * New ids (never used before) are handed out without taking the monitor of 
+ * the generator, only defraged ids and freed ids are handled while holding
+ * it. Free ids are kept in primitive ring buffers and written/read to/from 
+ * file in bulk.
+ * <p>
  * In case of disk/file I/O failure an <CODE>IOException</CODE> is thrown.
  */
 public class IdGenerator
@@ -51,7 +57,8 @@ public class IdGenerator
 
 	//  number of defraged ids to grab form file in batch (also used for write)
 	private int grabSize 				= -1;
-	private int nextFreeId 				= -1;
+	// next new id, negative if closed or capacity exceeded
+	private final AtomicInteger nextFreeId = new AtomicInteger( -1 );
 	// total bytes read from file, used in writeIdBatch() and close() 
 	private long totalBytesRead 		= 0;
 	// true if more defragged ids can be read from file
@@ -59,18 +66,23 @@ public class IdGenerator
 	// marks where this sessions released ids will be written 
 	private long readBlocksTo 			= HEADER_SIZE;	
 	// used to calculate number of ids actually in use
-	private int defragedIdCount = -1;
+	private volatile int defragedIdCount = -1;
 
 	private String fileName 			= null;
 	private FileChannel fileChannel 	= null; 
 	// in memory defraged ids read from file (and from freeId)
-	private LinkedList<Integer> defragedIdList = new LinkedList<Integer>();
+	private IdQueue defragedIdList = null;
 	// in memory newly free defraged ids that havn't been flushed to disk yet
-	private LinkedList<Integer> releasedIdList = new LinkedList<Integer>();
+	private IdQueue releasedIdList = null;
+	// true if defragedIdList has ids, read without the monitor in nextId()
+	private volatile boolean haveDefragedIds = false;
 	// buffer used in readIdBatch()
 	private ByteBuffer readBuffer = null;
 	// buffer used in writeIdBatch() and close()
 	private ByteBuffer writeBuffer = null;
+	// int views of the read and write buffers
+	private IntBuffer readIntBuffer = null;
+	private IntBuffer writeIntBuffer = null;
 	
 	
 	/**
@@ -104,6 +116,10 @@ public class IdGenerator
 		this.grabSize = grabSize;
 		readBuffer = ByteBuffer.allocate( grabSize * 4 );
 		writeBuffer = ByteBuffer.allocate( grabSize * 4 );
+		readIntBuffer = readBuffer.asIntBuffer();
+		writeIntBuffer = writeBuffer.asIntBuffer();
+		defragedIdList = new IdQueue( grabSize );
+		releasedIdList = new IdQueue( grabSize );
 		initGenerator();
 	}
 	
@@ -116,27 +132,87 @@ public class IdGenerator
 	 * @return The next free id
 	 * @throws IOException If the capcity is exceeded or closed generator
 	 */
-	public synchronized int nextId() throws IOException
+	public int nextId() throws IOException
 	{
-		if ( fileChannel == null )
+		if ( haveDefragedIds )
 		{
-			throw new IOException( "Closed id generator" );
+			synchronized ( this )
+			{
+				if ( fileChannel == null )
+				{
+					throw new IOException( "Closed id generator" );
+				}
+				if ( defragedIdList.size() > 0 )
+				{
+					return nextDefragedId();
+				}
+			}
 		}
-		if ( defragedIdList.size() > 0 )
+		return nextHighId( 1 );
+	}
+	
+	/**
+	 * Fills <CODE>ids</CODE> with free ids, see {@link #nextId()}. Defraged 
+	 * ids are taken first, the rest is a range of new ids reserved at once.
+	 * 
+	 * @param ids The array to fill with free ids
+	 * @throws IOException If the capcity is exceeded or closed generator
+	 */
+	public void nextIds( int ids[] ) throws IOException
+	{
+		int count = 0;
+		if ( haveDefragedIds )
 		{
-			int id = defragedIdList.removeFirst();
-			if ( haveMore && defragedIdList.size() == 0 )
+			synchronized ( this )
 			{
-				readIdBatch();
+				if ( fileChannel == null )
+				{
+					throw new IOException( "Closed id generator" );
+				}
+				while ( count < ids.length && defragedIdList.size() > 0 )
+				{
+					ids[count++] = nextDefragedId();
+				}
 			}
-			defragedIdCount--;
-			return id;
 		}
-		if ( nextFreeId < 0 )
+		if ( count < ids.length )
+		{
+			int id = nextHighId( ids.length - count );
+			while ( count < ids.length )
+			{
+				ids[count++] = id++;
+			}
+		}
+	}
+	
+	// must hold the monitor
+	private int nextDefragedId() throws IOException
+	{
+		int id = defragedIdList.removeFirst();
+		if ( haveMore && defragedIdList.size() == 0 )
+		{
+			readIdBatch();
+		}
+		haveDefragedIds = defragedIdList.size() > 0;
+		defragedIdCount--;
+		return id;
+	}
+	
+	// reserves count new ids and returns the first one
+	private int nextHighId( int count ) throws IOException
+	{
+		while ( true )
 		{
-			throw new IOException( "Capacity exceeded" );
+			int id = nextFreeId.get();
+			if ( id < 0 || (long) id + count > (long) Integer.MAX_VALUE + 1 )
+			{
+				throw new IOException( "Capacity exceeded or closed" );
+			}
+			if ( nextFreeId.compareAndSet( id, id + count ) )
+			{
+				return id;
+			}
 		}
-		return nextFreeId++;
 	}
 	
 	/**
@@ -145,9 +221,9 @@ public class IdGenerator
 	 * 
 	 * @param id The next free id
 	 */
-	synchronized void setHighId( int id )
+	void setHighId( int id )
 	{
-		nextFreeId = id;
+		nextFreeId.set( id );
 	}
 	
 	/**
@@ -156,9 +232,9 @@ public class IdGenerator
 	 * 
 	 * @return The next free "high" id
 	 */
-	public synchronized int getHighId()
+	public int getHighId()
 	{
-		return nextFreeId;
+		return nextFreeId.get();
 	}
 	
 	/**
@@ -176,7 +252,7 @@ public class IdGenerator
 	 */
 	public synchronized void freeId( int id ) throws IOException
 	{
-		if ( id < 0 || id >= nextFreeId )
+		if ( id < 0 || id >= nextFreeId.get() )
 		{
 			throw new IOException( "Illegal id[" + id +	"]" );
 		}
@@ -201,7 +277,9 @@ public class IdGenerator
 	 */
 	public synchronized void close() throws IOException
 	{
-		if ( nextFreeId == -1 )
+		// concurrent nextId calls fail from here on
+		int highId = nextFreeId.getAndSet( -1 );
+		if ( highId == -1 )
 		{
 		 	return;
 		}
@@ -213,17 +291,15 @@ public class IdGenerator
 		}
 		if ( defragedIdList.size() > 0 )
 		{
-			while ( defragedIdList.size() > 0 )
-			{
-				releasedIdList.add( defragedIdList.removeFirst() );
-			}
+			releasedIdList.addAll( defragedIdList );
+			haveDefragedIds = false;
 			writeIdBatch();
 		}
 		
 		// write header
 		fileChannel.position( 0 );
 		ByteBuffer buffer = ByteBuffer.allocate( HEADER_SIZE );
-		buffer.put( STICKY_GENERATOR ).putInt( nextFreeId );
+		buffer.put( STICKY_GENERATOR ).putInt( highId );
 		buffer.flip();
 		fileChannel.write( buffer );
 		// move data to remove fragmentation in file
@@ -262,8 +338,6 @@ public class IdGenerator
 		fileChannel.force( false );
 		fileChannel.close();
 		fileChannel = null;
-		// make this generator unsuable
-		nextFreeId = -1;
 	}
 
 	/**
@@ -325,7 +399,7 @@ public class IdGenerator
 			throw new IOException( "Sticky generator[ " + fileName + "]" + 
 				"delete this id generator and build a new one" ); 
 		}
-		this.nextFreeId = buffer.getInt();
+		this.nextFreeId.set( buffer.getInt() );
 		buffer.flip();
 		buffer.put( STICKY_GENERATOR ).limit( 1 ).flip();
 		fileChannel.position( 0 );
@@ -361,17 +435,14 @@ public class IdGenerator
 		int bytesRead = fileChannel.read( readBuffer );
 		assert fileChannel.position() <= readBlocksTo;
 		totalBytesRead += bytesRead;
-		readBuffer.flip();
-		int defragedIdCount = bytesRead / 4;
 		if ( bytesRead % 4 != 0 )
 		{
 			throw new RuntimeException( "azzert" );
 		}
-		for ( int i = 0; i < defragedIdCount; i++ )
-		{
-			int id = readBuffer.getInt();
-			defragedIdList.add( id );
-		}
+		readIntBuffer.clear();
+		readIntBuffer.limit( bytesRead / 4 );
+		defragedIdList.addAll( readIntBuffer );
+		haveDefragedIds = defragedIdList.size() > 0;
 	}
 	
 	// writes a batch of defraged ids to file
@@ -379,19 +450,18 @@ public class IdGenerator
 	{
 		// position at end
 		fileChannel.position( fileChannel.size() );
-		writeBuffer.clear();
+		// one write for each full write buffer
 		while ( releasedIdList.size() > 0 )
 		{
-			writeBuffer.putInt( releasedIdList.removeFirst() );
-			if ( writeBuffer.position() == writeBuffer.capacity() )
+			writeIntBuffer.clear();
+			releasedIdList.drainTo( writeIntBuffer );
+			writeBuffer.clear();
+			writeBuffer.limit( writeIntBuffer.position() * 4 );
+			while ( writeBuffer.hasRemaining() )
 			{
-				writeBuffer.flip();
 				fileChannel.write( writeBuffer );
-				writeBuffer.clear();
 			}
 		}
-		writeBuffer.flip();
-		fileChannel.write( writeBuffer );
 		// position for next readIdBatch
 		fileChannel.position( totalBytesRead );
 	}
@@ -410,10 +480,9 @@ public class IdGenerator
 		{
 			readIdBatch();
 		}
-		java.util.Iterator itr = defragedIdList.iterator();
-		while ( itr.hasNext() )
+		for ( int i = 0; i < defragedIdList.size(); i++ )
 		{
-			System.out.print( " " + itr.next() );
+			System.out.print( " " + defragedIdList.get( i ) );
 		}
 		System.out.println( "\nNext free id: " + nextFreeId );
 		close();
@@ -421,6 +490,89 @@ public class IdGenerator
 	
 	public int getNumberOfIdsInUse()
 	{
-		return nextFreeId - defragedIdCount;
+		return nextFreeId.get() - defragedIdCount;
+	}
+	
+	// fifo ring buffer of ids, grows when full
+	private static final class IdQueue
+	{
+		private int ids[];
+		private int head = 0;
+		private int size = 0;
+		
+		IdQueue( int capacity )
+		{
+			ids = new int[ capacity ];
+		}
+		
+		int size()
+		{
+			return size;
+		}
+		
+		int get( int index )
+		{
+			return ids[ ( head + index ) % ids.length ];
+		}
+		
+		void add( int id )
+		{
+			ensureCapacity( size + 1 );
+			ids[ ( head + size ) % ids.length ] = id;
+			size++;
+		}
+		
+		int removeFirst()
+		{
+			int id = ids[head];
+			head = ( head + 1 ) % ids.length;
+			size--;
+			return id;
+		}
+		
+		void addAll( IntBuffer src )
+		{
+			int count = src.remaining();
+			ensureCapacity( size + count );
+			int tail = ( head + size ) % ids.length;
+			int first = Math.min( count, ids.length - tail );
+			src.get( ids, tail, first );
+			src.get( ids, 0, count - first );
+			size += count;
+		}
+		
+		void addAll( IdQueue queue )
+		{
+			while ( queue.size() > 0 )
+			{
+				add( queue.removeFirst() );
+			}
+		}
+		
+		// moves as many ids as fits in dst
+		void drainTo( IntBuffer dst )
+		{
+			int count = Math.min( size, dst.remaining() );
+			int first = Math.min( count, ids.length - head );
+			dst.put( ids, head, first );
+			dst.put( ids, 0, count - first );
+			head = ( head + count ) % ids.length;
+			size -= count;
+		}
+		
+		private void ensureCapacity( int capacity )
+		{
+			if ( capacity <= ids.length )
+			{
+				return;
+			}
+			int newIds[] = new int[ Math.max( capacity, ids.length * 2 ) ];
+			for ( int i = 0; i < size; i++ )
+			{
+				newIds[i] = get( i );
+			}
+			ids = newIds;
+			head = 0;
+		}
 	}
 }
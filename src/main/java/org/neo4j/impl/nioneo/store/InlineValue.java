@@ -0,0 +1,308 @@
+package org.neo4j.impl.nioneo.store;
+
+/**
+ * Encodes short strings and tiny primitive arrays into the 64 bit
+ * <CODE>prop_blockId</CODE> of a property record so they can be stored
+ * and loaded without touching the dynamic string and array stores.
+ * <p>
+ * A {@link PropertyType#SHORT_STRING} has the length in the lowest 4 bits
+ * followed by 4 bits telling how the characters are coded. Latin-1 strings
+ * of up to 7 characters are stored 8 bits per character and strings made
+ * of digits and the characters <CODE>" -.+,:"</CODE> of up to 14 characters
+ * are stored 4 bits per character.
+ * <p>
+ * A {@link PropertyType#SHORT_ARRAY} has a 16 bit header of element type
+ * (4 bits), length (6 bits) and bits per element minus one (6 bits)
+ * followed by the elements in the remaining 48 bits. Each element uses
+ * the number of bits needed by the largest element so arrays of small
+ * numbers get to be longer. Only <CODE>int[]</CODE>, <CODE>long[]</CODE>,
+ * <CODE>byte[]</CODE>, <CODE>char[]</CODE> and <CODE>boolean[]</CODE>
+ * are inlined.
+ */
+final class InlineValue
+{
+	private static final int LATIN1 = 0;
+	private static final int NUMERIC = 1;
+	private static final String NUMERIC_CHARS = "0123456789 -.+,:";
+
+	private static final int MAX_LATIN1_LENGTH = 7;
+	private static final int MAX_NUMERIC_LENGTH = 14;
+
+	private static final int ARRAY_PAYLOAD_BITS = 48;
+	private static final int INT_ARRAY = 1;
+	private static final int BOOL_ARRAY = 3;
+	private static final int LONG_ARRAY = 6;
+	private static final int BYTE_ARRAY = 7;
+	private static final int CHAR_ARRAY = 8;
+
+	private InlineValue()
+	{
+	}
+
+	/**
+	 * Returns <CODE>true</CODE> if <CODE>string</CODE> fits in a
+	 * {@link PropertyType#SHORT_STRING}.
+	 */
+	static boolean canInline( String string )
+	{
+		int length = string.length();
+		if ( length <= MAX_LATIN1_LENGTH && isLatin1( string ) )
+		{
+			return true;
+		}
+		return length <= MAX_NUMERIC_LENGTH && isNumeric( string );
+	}
+
+	/**
+	 * Returns <CODE>true</CODE> if <CODE>array</CODE> fits in a
+	 * {@link PropertyType#SHORT_ARRAY}.
+	 */
+	static boolean canInline( Object array )
+	{
+		int type = getArrayType( array );
+		if ( type == 0 )
+		{
+			return false;
+		}
+		long values[] = getArrayValues( type, array );
+		return values.length * bitsPerElement( type, values ) <=
+			ARRAY_PAYLOAD_BITS;
+	}
+
+	static long encodeString( String string )
+	{
+		int length = string.length();
+		long value = length;
+		if ( length <= MAX_LATIN1_LENGTH && isLatin1( string ) )
+		{
+			value |= LATIN1 << 4;
+			for ( int i = 0; i < length; i++ )
+			{
+				value |= ( (long) string.charAt( i ) ) << ( 8 + i * 8 );
+			}
+		}
+		else
+		{
+			assert length <= MAX_NUMERIC_LENGTH && isNumeric( string );
+			value |= NUMERIC << 4;
+			for ( int i = 0; i < length; i++ )
+			{
+				long code = NUMERIC_CHARS.indexOf( string.charAt( i ) );
+				value |= code << ( 8 + i * 4 );
+			}
+		}
+		return value;
+	}
+
+	static String decodeString( long value )
+	{
+		int length = (int) ( value & 0xF );
+		int coding = (int) ( ( value >>> 4 ) & 0xF );
+		char chars[] = new char[ length ];
+		if ( coding == LATIN1 )
+		{
+			for ( int i = 0; i < length; i++ )
+			{
+				chars[i] = (char) ( ( value >>> ( 8 + i * 8 ) ) & 0xFF );
+			}
+		}
+		else if ( coding == NUMERIC )
+		{
+			for ( int i = 0; i < length; i++ )
+			{
+				chars[i] = NUMERIC_CHARS.charAt(
+					(int) ( ( value >>> ( 8 + i * 4 ) ) & 0xF ) );
+			}
+		}
+		else
+		{
+			throw new RuntimeException( "Unkown string coding[" + coding +
+				"]" );
+		}
+		return new String( chars );
+	}
+
+	static long encodeArray( Object array )
+	{
+		int type = getArrayType( array );
+		long values[] = getArrayValues( type, array );
+		int bits = bitsPerElement( type, values );
+		assert type != 0 && values.length * bits <= ARRAY_PAYLOAD_BITS;
+		long mask = ( 1l << bits ) - 1;
+		long value = type | ( values.length << 4 ) | ( ( bits - 1 ) << 10 );
+		for ( int i = 0; i < values.length; i++ )
+		{
+			value |= ( values[i] & mask ) << ( 16 + i * bits );
+		}
+		return value;
+	}
+
+	static Object decodeArray( long value )
+	{
+		int type = (int) ( value & 0xF );
+		int length = (int) ( ( value >>> 4 ) & 0x3F );
+		int bits = (int) ( ( value >>> 10 ) & 0x3F ) + 1;
+		long mask = ( 1l << bits ) - 1;
+		long values[] = new long[ length ];
+		for ( int i = 0; i < length; i++ )
+		{
+			long element = ( value >>> ( 16 + i * bits ) ) & mask;
+			if ( type != CHAR_ARRAY && type != BOOL_ARRAY )
+			{
+				// sign extend
+				element = ( element << ( 64 - bits ) ) >> ( 64 - bits );
+			}
+			values[i] = element;
+		}
+		switch ( type )
+		{
+			case INT_ARRAY:
+				int intArray[] = new int[ length ];
+				for ( int i = 0; i < length; i++ )
+				{
+					intArray[i] = (int) values[i];
+				}
+				return intArray;
+			case LONG_ARRAY:
+				return values;
+			case BYTE_ARRAY:
+				byte byteArray[] = new byte[ length ];
+				for ( int i = 0; i < length; i++ )
+				{
+					byteArray[i] = (byte) values[i];
+				}
+				return byteArray;
+			case CHAR_ARRAY:
+				char charArray[] = new char[ length ];
+				for ( int i = 0; i < length; i++ )
+				{
+					charArray[i] = (char) values[i];
+				}
+				return charArray;
+			case BOOL_ARRAY:
+				boolean boolArray[] = new boolean[ length ];
+				for ( int i = 0; i < length; i++ )
+				{
+					boolArray[i] = values[i] != 0;
+				}
+				return boolArray;
+			default:
+				throw new RuntimeException( "Unkown array type[" + type +
+					"]" );
+		}
+	}
+
+	private static boolean isLatin1( String string )
+	{
+		for ( int i = 0; i < string.length(); i++ )
+		{
+			if ( string.charAt( i ) > 0xFF )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isNumeric( String string )
+	{
+		for ( int i = 0; i < string.length(); i++ )
+		{
+			if ( NUMERIC_CHARS.indexOf( string.charAt( i ) ) == -1 )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int getArrayType( Object array )
+	{
+		if ( array instanceof int[] )
+		{
+			return INT_ARRAY;
+		}
+		if ( array instanceof long[] )
+		{
+			return LONG_ARRAY;
+		}
+		if ( array instanceof byte[] )
+		{
+			return BYTE_ARRAY;
+		}
+		if ( array instanceof char[] )
+		{
+			return CHAR_ARRAY;
+		}
+		if ( array instanceof boolean[] )
+		{
+			return BOOL_ARRAY;
+		}
+		return 0;
+	}
+
+	private static long[] getArrayValues( int type, Object array )
+	{
+		switch ( type )
+		{
+			case INT_ARRAY:
+				int intArray[] = (int[]) array;
+				long intValues[] = new long[ intArray.length ];
+				for ( int i = 0; i < intArray.length; i++ )
+				{
+					intValues[i] = intArray[i];
+				}
+				return intValues;
+			case LONG_ARRAY:
+				return (long[]) array;
+			case BYTE_ARRAY:
+				byte byteArray[] = (byte[]) array;
+				long byteValues[] = new long[ byteArray.length ];
+				for ( int i = 0; i < byteArray.length; i++ )
+				{
+					byteValues[i] = byteArray[i];
+				}
+				return byteValues;
+			case CHAR_ARRAY:
+				char charArray[] = (char[]) array;
+				long charValues[] = new long[ charArray.length ];
+				for ( int i = 0; i < charArray.length; i++ )
+				{
+					charValues[i] = charArray[i];
+				}
+				return charValues;
+			case BOOL_ARRAY:
+				boolean boolArray[] = (boolean[]) array;
+				long boolValues[] = new long[ boolArray.length ];
+				for ( int i = 0; i < boolArray.length; i++ )
+				{
+					boolValues[i] = boolArray[i] ? 1 : 0;
+				}
+				return boolValues;
+			default:
+				throw new RuntimeException( "Unkown array type[" + type +
+					"]" );
+		}
+	}
+
+	private static int bitsPerElement( int type, long values[] )
+	{
+		int bits = 1;
+		for ( long value : values )
+		{
+			int valueBits;
+			if ( type == CHAR_ARRAY || type == BOOL_ARRAY )
+			{
+				valueBits = 64 - Long.numberOfLeadingZeros( value );
+			}
+			else
+			{
+				// two's complement, one bit for the sign
+				valueBits = 65 - Long.numberOfLeadingZeros(
+					value ^ ( value >> 63 ) );
+			}
+			bits = Math.max( bits, valueBits );
+		}
+		return bits;
+	}
+}
@@ -55,6 +55,11 @@ abstract class LockableWindow implements PersistenceWindow
 		this.marked++;
 	}
 	
+	synchronized void unMark()
+	{
+		this.marked--;
+	}
+	
 	synchronized boolean isMarked()
 	{
 		return marked > 0;
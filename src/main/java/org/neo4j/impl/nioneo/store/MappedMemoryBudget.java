@@ -0,0 +1,323 @@
+package org.neo4j.impl.nioneo.store;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Memory available for memory mapped windows, shared by the
+ * {@link PersistenceWindowPool pools} of one or more stores.
+ * <p>
+ * Each pool is given a quota of the budget. The quotas are recalculated by
+ * {@link #rebalance()} (invoked by the pools when they refresh their bricks)
+ * so that memory moves to the pools with the most brick misses. A pool never
+ * gets a quota bigger than its store needs, memory not needed by one pool
+ * is handed to the others. Independent of the quotas the total amount of
+ * mapped memory can never exceed the budget, a pool has to
+ * {@link #allocate(int) allocate} memory before mapping a window.
+ * <p>
+ * Stores using the same configuration map share one budget if the map has
+ * a <CODE>mapped_memory</CODE> entry, see {@link #getSharedBudget(Map)}.
+ */
+class MappedMemoryBudget
+{
+	static final String CONFIG_KEY = "mapped_memory";
+
+	private static Logger log = Logger.getLogger(
+		MappedMemoryBudget.class.getName() );
+
+	private static final Map<Map<?,?>,MappedMemoryBudget> sharedBudgets =
+		new IdentityHashMap<Map<?,?>,MappedMemoryBudget>();
+
+	private final long total;
+	// the configuration this budget is shared by, null if not shared
+	private final Map<?,?> config;
+	private final List<Member> members = new ArrayList<Member>();
+	private long used = 0;
+
+	private static class Member
+	{
+		private final PersistenceWindowPool pool;
+		// decaying sum of brick misses
+		private long missScore = 0;
+
+		Member( PersistenceWindowPool pool )
+		{
+			this.pool = pool;
+		}
+	}
+
+	/**
+	 * Creates a budget that is not shared by other stores.
+	 *
+	 * @param total the number of bytes that may be memory mapped
+	 */
+	MappedMemoryBudget( long total )
+	{
+		this( total, null );
+	}
+
+	private MappedMemoryBudget( long total, Map<?,?> config )
+	{
+		this.total = Math.max( total, 0 );
+		this.config = config;
+	}
+
+	/**
+	 * Returns the budget shared by all stores using <CODE>config</CODE>.
+	 * The budget is created the first time it is asked for and removed when
+	 * the last pool using it has been closed.
+	 *
+	 * @param config the configuration map of the stores
+	 * @return the shared budget or <CODE>null</CODE> if <CODE>config</CODE>
+	 * has no (or an unparsable) <CODE>mapped_memory</CODE> entry
+	 */
+	static MappedMemoryBudget getSharedBudget( Map<?,?> config )
+	{
+		if ( config == null )
+		{
+			return null;
+		}
+		Object value = config.get( CONFIG_KEY );
+		if ( !( value instanceof String ) )
+		{
+			return null;
+		}
+		long size = parseSize( ( String ) value );
+		if ( size < 0 )
+		{
+			log.info( "Unable to parse mapped memory[" + value + "] string" );
+			return null;
+		}
+		synchronized ( sharedBudgets )
+		{
+			MappedMemoryBudget budget = sharedBudgets.get( config );
+			if ( budget == null )
+			{
+				budget = new MappedMemoryBudget( size, config );
+				sharedBudgets.put( config, budget );
+			}
+			return budget;
+		}
+	}
+
+	/**
+	 * Parses a memory size string, a number optionally followed by
+	 * <CODE>k</CODE> (kilobytes) or <CODE>M</CODE> (megabytes).
+	 *
+	 * @param size the size string
+	 * @return the size in bytes or -1 if not parsable
+	 */
+	static long parseSize( String size )
+	{
+		long multiplier = 1;
+		if ( size.endsWith( "M" ) )
+		{
+			multiplier = 1024*1024;
+			size = size.substring( 0, size.length() - 1 );
+		}
+		else if ( size.endsWith( "k" ) )
+		{
+			multiplier = 1024;
+			size = size.substring( 0, size.length() - 1 );
+		}
+		try
+		{
+			long value = Long.parseLong( size );
+			return value < 0 ? -1 : value * multiplier;
+		}
+		catch ( NumberFormatException e )
+		{
+			return -1;
+		}
+	}
+
+	long getTotal()
+	{
+		return total;
+	}
+
+	synchronized long getUsed()
+	{
+		return used;
+	}
+
+	/**
+	 * Adds a pool to this budget and gives it a quota.
+	 *
+	 * @param pool the pool
+	 */
+	synchronized void register( PersistenceWindowPool pool )
+	{
+		members.add( new Member( pool ) );
+		rebalance();
+	}
+
+	/**
+	 * Removes a pool from this budget, all memory used by the pool is
+	 * returned.
+	 *
+	 * @param pool the pool
+	 * @param memUsed the memory still mapped by the pool
+	 */
+	void unregister( PersistenceWindowPool pool, int memUsed )
+	{
+		boolean empty;
+		synchronized ( this )
+		{
+			for ( int i = 0; i < members.size(); i++ )
+			{
+				if ( members.get( i ).pool == pool )
+				{
+					members.remove( i );
+					used -= memUsed;
+					break;
+				}
+			}
+			empty = members.isEmpty();
+		}
+		if ( empty && config != null )
+		{
+			synchronized ( sharedBudgets )
+			{
+				if ( sharedBudgets.get( config ) == this )
+				{
+					sharedBudgets.remove( config );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reserves <CODE>bytes</CODE> of memory.
+	 *
+	 * @param bytes the number of bytes to reserve
+	 * @return <CODE>true</CODE> if the memory was available
+	 */
+	synchronized boolean allocate( int bytes )
+	{
+		if ( used + bytes > total )
+		{
+			return false;
+		}
+		used += bytes;
+		return true;
+	}
+
+	/**
+	 * Returns <CODE>bytes</CODE> of memory reserved with
+	 * {@link #allocate(int)}.
+	 *
+	 * @param bytes the number of bytes to return
+	 */
+	synchronized void free( int bytes )
+	{
+		used -= bytes;
+	}
+
+	/**
+	 * Recalculates the quota of each pool. Pools that need less than their
+	 * share get what they need, the rest of the memory is split between the
+	 * other pools by their (decaying) number of brick misses. To avoid
+	 * moving memory back and forth a quota is only moved half way towards
+	 * its new value.
+	 */
+	synchronized void rebalance()
+	{
+		int count = members.size();
+		if ( count == 0 )
+		{
+			return;
+		}
+		long weights[] = new long[count];
+		long demands[] = new long[count];
+		double quotas[] = new double[count];
+		boolean capped[] = new boolean[count];
+		for ( int i = 0; i < count; i++ )
+		{
+			Member member = members.get( i );
+			member.missScore = member.missScore / 2 +
+				member.pool.takeBrickMisses();
+			weights[i] = member.missScore + 1;
+			demands[i] = member.pool.getMemoryDemand();
+		}
+		double remaining = total;
+		boolean changed = true;
+		while ( changed )
+		{
+			changed = false;
+			double weightSum = 0;
+			for ( int i = 0; i < count; i++ )
+			{
+				if ( !capped[i] )
+				{
+					weightSum += weights[i];
+				}
+			}
+			double roundRemaining = remaining;
+			for ( int i = 0; i < count && weightSum > 0; i++ )
+			{
+				if ( !capped[i] &&
+					roundRemaining * weights[i] / weightSum >= demands[i] )
+				{
+					quotas[i] = demands[i];
+					capped[i] = true;
+					remaining -= demands[i];
+					changed = true;
+				}
+			}
+		}
+		// split what is left, if all pools got what they need the rest is
+		// kept as slack for growth
+		double weightSum = 0;
+		boolean allCapped = true;
+		for ( int i = 0; i < count; i++ )
+		{
+			allCapped &= capped[i];
+		}
+		for ( int i = 0; i < count; i++ )
+		{
+			if ( allCapped || !capped[i] )
+			{
+				weightSum += weights[i];
+			}
+		}
+		for ( int i = 0; i < count; i++ )
+		{
+			if ( allCapped || !capped[i] )
+			{
+				quotas[i] += remaining * weights[i] / weightSum;
+			}
+		}
+		for ( int i = 0; i < count; i++ )
+		{
+			PersistenceWindowPool pool = members.get( i ).pool;
+			long quota = (long) quotas[i];
+			int oldQuota = pool.getQuota();
+			if ( oldQuota > 0 )
+			{
+				quota = ( oldQuota + quota ) / 2;
+			}
+			pool.setQuota( (int) Math.min( quota, Integer.MAX_VALUE ) );
+		}
+		if ( log.isLoggable( java.util.logging.Level.FINE ) )
+		{
+			log.fine( toString() );
+		}
+	}
+
+	public synchronized String toString()
+	{
+		StringBuffer buf = new StringBuffer( "MappedMemoryBudget[total=" +
+			total + ",used=" + used );
+		for ( Member member : members )
+		{
+			buf.append( "," ).append( member.pool.getStoreName() ).append(
+				"=" ).append( member.pool.getQuota() ).append( "/" ).append(
+				member.missScore );
+		}
+		return buf.append( "]" ).toString();
+	}
+}
@@ -66,6 +66,14 @@ class MappedPersistenceWindow extends LockableWindow
 		( ( java.nio.MappedByteBuffer ) buffer.getBuffer() ).force();
 	}
 	
+	/**
+	 * Loads the content of this window into physical memory.
+	 */
+	void load()
+	{
+		( ( java.nio.MappedByteBuffer ) buffer.getBuffer() ).load();
+	}
+	
 	public boolean equals( Object o )
 	{
 		if ( !( o instanceof MappedPersistenceWindow ) )
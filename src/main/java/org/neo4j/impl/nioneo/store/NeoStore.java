@@ -77,6 +77,33 @@ public class NeoStore extends AbstractStore
 		nodeStore.flush( txIdentifier );
 	}
 	
+	/**
+	 * Passes a write out of rows to the node,relationship,property and 
+	 * relationship type store.
+	 */
+	@Override
+	public void writeOutRows( int txIdentifier ) throws IOException
+	{
+		relTypeStore.writeOutRows( txIdentifier );
+		propStore.writeOutRows( txIdentifier );
+		relStore.writeOutRows( txIdentifier );
+		nodeStore.writeOutRows( txIdentifier );
+	}
+	
+	/**
+	 * Passes a flush of all changes to the node,relationship,property and 
+	 * relationship type store and then flushes the neo store's own records.
+	 */
+	@Override
+	public void flushAll() throws IOException
+	{
+		relTypeStore.flushAll();
+		propStore.flushAll();
+		relStore.flushAll();
+		nodeStore.flushAll();
+		super.flushAll();
+	}
+	
 	/**
 	 * Passes a forget to the node,relationship,property and relationship type
 	 * store.
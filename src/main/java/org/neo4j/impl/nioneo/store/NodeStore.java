@@ -2,8 +2,6 @@ package org.neo4j.impl.nioneo.store;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -18,8 +16,13 @@ public class NodeStore extends AbstractStore implements Store
 	// in_use(byte)+next_rel_id(int)+next_prop_id(int)
 	private static final int RECORD_SIZE = 9;
 	 
-	private Map<Integer,NodeRecord> cache = 
-		Collections.synchronizedMap( new HashMap<Integer,NodeRecord>() );
+	// next_rel_id(int)+next_prop_id(int) of in use records
+	private static final int CACHE_FIELDS = 2;
+	
+	private static final int DEFAULT_CACHE_SIZE = 16384;
+	
+	// created in initStorage, called from the super constructor
+	private RecordCache cache;
 
 	private PropertyStore propStore = null;
 	private RelationshipStore relStore = null;
@@ -62,6 +65,25 @@ public class NodeStore extends AbstractStore implements Store
 		return RECORD_SIZE;
 	}
 	
+	@Override
+	protected boolean useIdBatches()
+	{
+		return true;
+	}
+	
+	@Override
+	protected void initStorage()
+	{
+		cache = new RecordCache( getRecordCacheSize( DEFAULT_CACHE_SIZE ), 
+			CACHE_FIELDS );
+	}
+	
+	@Override
+	protected void closeStorage()
+	{
+		logger.fine( this + " " + cache );
+	}
+	
 	@Override
 	public void close() throws IOException
 	{
@@ -89,20 +111,22 @@ public class NodeStore extends AbstractStore implements Store
 	
 	public NodeRecord getRecord( int id ) throws IOException
 	{
-		NodeRecord record = cache.get( id );
-		if ( record != null )
+		int fields[] = new int[ CACHE_FIELDS ];
+		if ( cache.get( id, fields ) )
 		{
-			if ( !record.inUse() )
-			{
-				throw new IOException( "Record[" + id + "] not in use" );
-			}
+			NodeRecord record = new NodeRecord( id );
+			record.setInUse( true );
+			record.setNextRel( fields[0] );
+			record.setNextProp( fields[1] );
 			return record;
 		}
 		PersistenceWindow window = acquireWindow( id, OperationType.READ );
 		try
 		{
-			record = getRecord( id, window.getBuffer(), false );
-			cache.put( id, record );
+			NodeRecord record = getRecord( id, window.getBuffer(), false );
+			fields[0] = record.getNextRel();
+			fields[1] = record.getNextProp();
+			cache.put( id, fields );
 			return record;
 		}
 		finally 
@@ -139,8 +163,70 @@ public class NodeStore extends AbstractStore implements Store
 		}
 	}
 	
+	/**
+	 * Checks if the nodes in <CODE>nodeIds</CODE> exist. The ids should be 
+	 * sorted, records in the same persistence window as the previous id are 
+	 * read without acquiring the window again. Ids outside of the store are 
+	 * reported as not in use.
+	 * 
+	 * @param nodeIds the node ids in ascending order
+	 * @return <CODE>true</CODE> at the index of each node in use
+	 * @throws IOException if unable to read the nodes
+	 */
+	public boolean[] loadLightNodes( int nodeIds[] ) throws IOException
+	{
+		boolean inUse[] = new boolean[ nodeIds.length ];
+		int highId = getHighId();
+		PersistenceWindow window = null;
+		try
+		{
+			for ( int i = 0; i < nodeIds.length; i++ )
+			{
+				int nodeId = nodeIds[i];
+				if ( nodeId < 0 || nodeId >= highId )
+				{
+					continue;
+				}
+				if ( window == null || nodeId < window.position() || 
+					nodeId >= window.position() + window.size() )
+				{
+					if ( window != null )
+					{
+						releaseWindow( window );
+						window = null;
+					}
+					window = acquireWindow( nodeId, OperationType.READ );
+				}
+				inUse[i] = checkNode( nodeId, window.getBuffer() );
+			}
+		}
+		finally
+		{
+			if ( window != null )
+			{
+				releaseWindow( window );
+			}
+		}
+		return inUse;
+	}
+	
 	public PropertyData[] getProperties( int nodeId )
 		throws IOException
+	{
+		return getProperties( nodeId, false );
+	}
+	
+	/**
+	 * Returns the properties of a node, see 
+	 * {@link PropertyStore#getProperties(int, boolean)}.
+	 * 
+	 * @param nodeId the id of the node
+	 * @param loadValues if property values should be loaded
+	 * @return the properties of the node
+	 * @throws IOException if unable to read the properties
+	 */
+	public PropertyData[] getProperties( int nodeId, boolean loadValues )
+		throws IOException
 	{
 		PersistenceWindow window = acquireWindow( nodeId, OperationType.READ );
 		try
@@ -149,7 +235,7 @@ public class NodeStore extends AbstractStore implements Store
 				window.getBuffer() );
 			if ( nextPropertyId != Record.NO_NEXT_PROPERTY.intValue() )
 			{
-				return propStore.getProperties( nextPropertyId );
+				return propStore.getProperties( nextPropertyId, loadValues );
 			}
 			return new PropertyData[0];
 		}
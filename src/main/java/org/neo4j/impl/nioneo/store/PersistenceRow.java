@@ -15,6 +15,11 @@ class PersistenceRow extends LockableWindow
 	private int recordSize = -1;
 	private int position = -1;
 	private Buffer buffer = null;
+	// transaction of the current write, set while locked
+	private int txIdentifier = -1;
+	// number of transactions that has written this row but not yet written
+	// it out, guarded by the row stripe of the pool
+	private int pendingWrites = 0;
 	
 	PersistenceRow( int recordSize, FileChannel channel ) 
 		throws IOException
@@ -68,6 +73,29 @@ class PersistenceRow extends LockableWindow
 		byteBuffer.rewind();
 	}
 	
+	/**
+	 * Positions this row at <CODE>id</CODE>. The record is copied from 
+	 * <CODE>readAhead</CODE> if it has been prefetched, else it is read 
+	 * from the file.
+	 * 
+	 * @param id the record id
+	 * @param readAhead the read-ahead of the store
+	 * @throws IOException if unable to read the record
+	 */
+	void position( int id, ReadAhead readAhead ) throws IOException
+	{
+		if ( id >= 0 && position != id )
+		{
+			readAhead.accessed( id );
+			if ( readAhead.read( id, buffer.getBuffer() ) )
+			{
+				position = id;
+				return;
+			}
+		}
+		position( id );
+	}
+	
 	void writeOut() throws IOException
 	{
 		if ( getOperationType() == OperationType.WRITE )
@@ -78,6 +106,52 @@ class PersistenceRow extends LockableWindow
 		}
 	}
 	
+	/**
+	 * Copies the record of this row into <CODE>target</CODE>. The row is
+	 * locked during the copy so a concurrent write isn't half copied, the 
+	 * caller must have marked the row (holding its row stripe) since the 
+	 * lock takes the mark back.
+	 * 
+	 * @param target the buffer to copy the record to
+	 */
+	void copyTo( ByteBuffer target )
+	{
+		lock();
+		try
+		{
+			target.put( buffer.getBuffer().array(), 0, recordSize );
+		}
+		finally
+		{
+			unLock();
+		}
+	}
+	
+	int getTxIdentifier()
+	{
+		return txIdentifier;
+	}
+	
+	void setTxIdentifier( int txIdentifier )
+	{
+		this.txIdentifier = txIdentifier;
+	}
+	
+	void addPendingWrite()
+	{
+		pendingWrites++;
+	}
+	
+	void removePendingWrite()
+	{
+		pendingWrites--;
+	}
+	
+	boolean hasPendingWrites()
+	{
+		return pendingWrites > 0;
+	}
+	
 	public int size()
 	{
 		return 1;
@@ -1,8 +1,10 @@
 package org.neo4j.impl.nioneo.store;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -10,6 +12,9 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.neo4j.impl.cache.LruCache;
@@ -17,44 +22,89 @@ import org.neo4j.impl.nioneo.xa.TxInfoManager;
 
 
 /**
- * Manages {@link PersistenceWindow persistence windows} for a store. Each
- * store can configure how much memory it has for  
- * {@link MappedPersistenceWindow memory mapped windows}. This class tries
- * to make the most efficient use of those windows by allocating them in 
- * such a way that the most frequently used records/blocks (be it for read or
- * write operations) are encapsulated by a memory mapped persistence window.
+ * Manages {@link PersistenceWindow persistence windows} for a store. The
+ * memory available for {@link MappedPersistenceWindow memory mapped windows}
+ * is given by a {@link MappedMemoryBudget} that may be shared with other
+ * stores, the quota of this pool changes as the budget moves memory to the
+ * stores with the most brick misses. This class tries to make the most 
+ * efficient use of the quota by allocating windows in such a way that the 
+ * most frequently used records/blocks (be it for read or write operations) 
+ * are encapsulated by a memory mapped persistence window.
+ * <p>
+ * The store is divided into bricks of equal size. The brick size is picked
+ * from the store size and the quota, if the store grows or the quota 
+ * changes so much that another brick size is wanted all bricks are 
+ * remapped with the new size.
+ * <p>
+ * There is no pool wide lock on the acquire/release path. Looking up a 
+ * memory mapped brick only reads the (volatile) brick array, row windows 
+ * are kept in a number of lock stripes selected by position and the 
+ * bricks are only rearranged by one thread at a time. This means that 
+ * threads working on different bricks or rows never wait for each other.
+ * <p>
+ * Rows written by a transaction are not written to the file when released.
+ * They are kept (and used by other threads) until the transaction invokes 
+ * {@link #writeOutRows(int)}, then all rows of the transaction are sorted 
+ * and adjacent records are written to the file with one write. Until then 
+ * the record is acquired through the row even if a brick covering it has 
+ * been mapped, the brick has the record as it was in the file.
  */
 class PersistenceWindowPool
 {
 	private static final int MAX_BRICK_COUNT = 10000;
+	// bricks are remapped when the wanted brick size is this many times
+	// bigger or smaller than the current brick size
+	private static final int REMAP_FACTOR = 4;
+	
+	// must be a power of two
+	private static final int ROW_STRIPE_COUNT = 32;
+	private static final int ROW_POOL_SIZE_PER_STRIPE = 8;
+	// max number of bytes in one write of adjacent rows
+	private static final int MAX_ROW_RUN_SIZE = 1024 * 1024;
 	
 	private String storeName;
 	private int blockSize;
 	private FileChannel fileChannel;
-	private LruCache<Integer,PersistenceWindow> rowWindowPool = 
-		new LruCache<Integer,PersistenceWindow>( "RowWindows", 100 );
-	private Map<Integer,LockableWindow> activeRowWindows = 
-		new HashMap<Integer,LockableWindow>();
-	private Map<Integer,Set<LockableWindow>> txIdentifiers = 
-		new HashMap<Integer,Set<LockableWindow>>();
-	private int mappedMem = 0;
-	private int memUsed = 0;
-	private int brickCount = 0;
-	private int brickSize = 0;
-	private BrickElement brickArray[] = new BrickElement[0];
-	private int brickMiss = 0;
+	private RowWindowStripe rowStripes[] = 
+		new RowWindowStripe[ROW_STRIPE_COUNT];
+	private ConcurrentHashMap<Integer,Set<LockableWindow>> txIdentifiers = 
+		new ConcurrentHashMap<Integer,Set<LockableWindow>>();
+	// rows written but not yet written out per transaction identifier
+	private ConcurrentHashMap<Integer,Set<PersistenceRow>> dirtyRows = 
+		new ConcurrentHashMap<Integer,Set<PersistenceRow>>();
+	// held while dirty rows are copied and written, keeps an older copy of
+	// a row from being written after a newer one
+	private final Object rowWriteLock = new Object();
+	// number of rows with pending writes, changed holding the row stripe
+	private final AtomicInteger pendingRowCount = new AtomicInteger( 0 );
+	private final MappedMemoryBudget budget;
+	// memory this pool may map, set by the budget
+	private volatile int quota = 0;
+	private volatile boolean shrinkRequested = false;
+	// only changed when holding the brick lock
+	private volatile int memUsed = 0;
+	private volatile long storeSize = 0;
+	private volatile Bricks bricks = new Bricks( 0, new BrickElement[0] );
+	private final AtomicInteger brickMiss = new AtomicInteger( 0 );
+	// brick misses not yet reported to the budget
+	private final AtomicInteger unbalancedMiss = new AtomicInteger( 0 );
+	private final AtomicBoolean refreshing = new AtomicBoolean( false );
+	private final ReadAhead readAhead;
+	// guards setup, refresh and expand of the brick array
+	private final Object brickLock = new Object();
 	
 	private static Logger log = Logger.getLogger( 
 		PersistenceWindowPool.class.getName() );
 	private static final int REFRESH_BRICK_COUNT = 500;
 	
-	private int hit = 0;
-	private int miss = 0;
+	private final AtomicInteger hit = new AtomicInteger( 0 );
+	private final AtomicInteger miss = new AtomicInteger( 0 );
 	private int switches = 0;
+	private int remaps = 0;
 	private int ooe = 0;
 	
 	/**
-	 * Create new pool for a store.
+	 * Create new pool for a store with memory mapped windows of its own.
 	 * 
 	 * @param storeName Name of store that use this pool
 	 * @param blockSize The size of each record/block in the store
@@ -64,12 +114,42 @@ class PersistenceWindowPool
 	 */
 	PersistenceWindowPool( String storeName, int blockSize, 
 		FileChannel fileChannel, int mappedMem ) throws IOException
+	{
+		this( storeName, blockSize, fileChannel, 
+			new MappedMemoryBudget( mappedMem ) );
+	}
+	
+	/**
+	 * Create new pool for a store.
+	 * 
+	 * @param storeName Name of store that use this pool
+	 * @param blockSize The size of each record/block in the store
+	 * @param fileChannel A fileChannel to the store
+	 * @param budget The memory available for memory mapped windows
+	 * @throws IOException If unable to create pool
+	 */
+	PersistenceWindowPool( String storeName, int blockSize, 
+		FileChannel fileChannel, MappedMemoryBudget budget ) 
+		throws IOException
 	{
 		this.storeName = storeName;
 		this.blockSize = blockSize;
 		this.fileChannel = fileChannel;
-		this.mappedMem = mappedMem;
-		setupBricks();
+		this.budget = budget;
+		for ( int i = 0; i < ROW_STRIPE_COUNT; i++ )
+		{
+			rowStripes[i] = new RowWindowStripe();
+		}
+		storeSize = fileChannel.size();
+		readAhead = new ReadAhead( Math.max( blockSize, 1 ), fileChannel );
+		if ( blockSize > 0 )
+		{
+			budget.register( this );
+		}
+		synchronized ( brickLock )
+		{
+			setupBricks();
+		}
 		dumpStatus();
 	}
 	
@@ -86,84 +166,287 @@ class PersistenceWindowPool
 	PersistenceWindow acquire( int position, OperationType operationType ) 
 		throws IOException
 	{
-		LockableWindow window = null;
-		synchronized ( activeRowWindows )
+		int txIdentifier = -1;
+		if ( operationType == OperationType.WRITE )
 		{
-			int txIdentifier = 
-				TxInfoManager.getManager().getCurrentTxIdentifier();
-			Set<LockableWindow> windowSet = null;
-			if ( txIdentifier != -1 && operationType == OperationType.WRITE )
+			txIdentifier = TxInfoManager.getManager().getCurrentTxIdentifier();
+		}
+		return acquire( position, operationType, txIdentifier );
+	}
+	
+	/**
+	 * Acquires a window as {@link #acquire(int, OperationType)} for a write
+	 * made by the transaction identified by <CODE>txIdentifier</CODE>.
+	 * 
+	 * @param position The position the needs to be encapsulated by the window
+	 * @param operationType The type of operation (READ or WRITE)
+	 * @param txIdentifier The (transaction) identifier of a write or -1
+	 * @return A locked window encapsulating the position
+	 * @throws IOException If unable to acquire the window
+	 */
+	PersistenceWindow acquire( int position, OperationType operationType, 
+		int txIdentifier ) throws IOException
+	{
+		Set<LockableWindow> windowSet = null;
+		if ( operationType == OperationType.WRITE && txIdentifier != -1 )
+		{
+			windowSet = getWindowSet( txIdentifier );
+		}
+		if ( ( brickMiss.get() >= REFRESH_BRICK_COUNT || shrinkRequested ) && 
+			refreshing.compareAndSet( false, true ) )
+		{
+			try
 			{
-				windowSet = txIdentifiers.get( txIdentifier );
-				if ( windowSet == null )
+				synchronized ( brickLock )
 				{
-					windowSet = new HashSet<LockableWindow>();
-					txIdentifiers.put( txIdentifier, windowSet );
+					brickMiss.set( 0 );
+					shrinkRequested = false;
+					refreshBricks();
 				}
 			}
-			if ( brickMiss >= REFRESH_BRICK_COUNT )
+			finally
 			{
-				brickMiss = 0;
-				refreshBricks();
+				refreshing.set( false );
 			}
-			if ( brickSize > 0 )
+		}
+		LockableWindow window = null;
+		// size and elements are read from the same snapshot, they change 
+		// together when the bricks are remapped
+		Bricks currentBricks = bricks;
+		int currentBrickSize = currentBricks.size;
+		if ( currentBrickSize > 0 )
+		{
+			int brickIndex = 
+				(int) ( (long) position * blockSize / currentBrickSize );
+			BrickElement elements[] = currentBricks.elements;
+			if ( brickIndex < elements.length )
 			{
-				int brickIndex = position * blockSize / brickSize;
-				if ( brickIndex < brickArray.length )
+				BrickElement brick = elements[brickIndex];
+				window = brick.getWindow();
+				if ( window != null )
 				{
-					window = brickArray[brickIndex].getWindow();
-					if ( window != null && !window.encapsulates( position ) )
-					{
-						log.severe( "NIONEO: FOR pos=" + position + 
-							" brickIndex=" + brickIndex + " blockSize=" + 
-							blockSize + " brickSize=" + brickSize + 
-							" window=" + window );
-						throw new RuntimeException( "assssert" );
-					}
-					brickArray[brickIndex].setHit();
-					if ( window != null && windowSet != null )
+					window.mark();
+					// refreshBricks may have unmapped the brick before we
+					// marked the window, if so use a row instead. A row not
+					// yet written out is newer than the brick, use it too
+					if ( brick.getWindow() != window || 
+						( pendingRowCount.get() > 0 && 
+							hasPendingRow( position ) ) )
 					{
-						windowSet.add( window );
+						window.unMark();
+						window = null;
 					}
 				}
-				else
+				if ( window != null && !window.encapsulates( position ) )
+				{
+					log.severe( "NIONEO: FOR pos=" + position + 
+						" brickIndex=" + brickIndex + " blockSize=" + 
+						blockSize + " brickSize=" + currentBrickSize + 
+						" window=" + window );
+					throw new RuntimeException( "assssert" );
+				}
+				brick.setHit();
+				if ( window != null && windowSet != null )
+				{
+					windowSet.add( window );
+				}
+				if ( window != null && brickIndex + 1 < elements.length )
+				{
+					readAhead.brickAccessed( brickIndex, 
+						( MappedPersistenceWindow ) 
+						elements[brickIndex + 1].getWindow() );
+				}
+			}
+			else
+			{
+				synchronized ( brickLock )
 				{
 					expandBricks();
 				}
 			}
+		}
+		if ( window != null )
+		{
+			hit.incrementAndGet();
+			window.lock();
+		}
+		else
+		{
+			miss.incrementAndGet();
+			brickMiss.incrementAndGet();
+			unbalancedMiss.incrementAndGet();
+			window = acquireRow( position );
+			( ( PersistenceRow ) window ).setTxIdentifier( 
+				operationType == OperationType.WRITE ? txIdentifier : -1 );
+		}
+		window.setOperationType( operationType );
+		return window;
+	}
+	
+	private Set<LockableWindow> getWindowSet( int txIdentifier )
+	{
+		Set<LockableWindow> windowSet = txIdentifiers.get( txIdentifier );
+		if ( windowSet == null )
+		{
+			windowSet = Collections.synchronizedSet( 
+				new HashSet<LockableWindow>() );
+			Set<LockableWindow> existing = 
+				txIdentifiers.putIfAbsent( txIdentifier, windowSet );
+			if ( existing != null )
+			{
+				windowSet = existing;
+			}
+		}
+		return windowSet;
+	}
+	
+	private Set<PersistenceRow> getDirtyRowSet( int txIdentifier )
+	{
+		Set<PersistenceRow> rowSet = dirtyRows.get( txIdentifier );
+		if ( rowSet == null )
+		{
+			rowSet = Collections.synchronizedSet( 
+				new HashSet<PersistenceRow>() );
+			Set<PersistenceRow> existing = 
+				dirtyRows.putIfAbsent( txIdentifier, rowSet );
+			if ( existing != null )
+			{
+				rowSet = existing;
+			}
+		}
+		return rowSet;
+	}
+	
+	private RowWindowStripe getStripe( int position )
+	{
+		return rowStripes[position & ( ROW_STRIPE_COUNT - 1 )];
+	}
+	
+	// true if the row of position has writes not yet written out
+	private boolean hasPendingRow( int position )
+	{
+		RowWindowStripe stripe = getStripe( position );
+		synchronized ( stripe )
+		{
+			LockableWindow row = stripe.activeRowWindows.get( position );
+			return row != null && ( ( PersistenceRow ) row ).hasPendingWrites();
+		}
+	}
+	
+	private LockableWindow acquireRow( int position ) throws IOException
+	{
+		RowWindowStripe stripe = getStripe( position );
+		PersistenceRow newRow = null;
+		LockableWindow window = null;
+		synchronized ( stripe )
+		{
+			window = stripe.activeRowWindows.get( position );
 			if ( window == null )
 			{
-				miss++;
-				brickMiss++;
-				window = activeRowWindows.get( position );
+				window = ( LockableWindow ) stripe.rowWindowPool.get( 
+					position );
 				if ( window == null )
 				{
-					window = ( LockableWindow ) rowWindowPool.get( position );
-					if ( window == null )
-					{
-						PersistenceRow dpw = new PersistenceRow( 
-							blockSize, fileChannel );
-						dpw.position( position );
-						window = dpw;
-					}
-					activeRowWindows.put( position, window );
+					newRow = new PersistenceRow( blockSize, fileChannel );
+					window = newRow;
 				}
+				stripe.activeRowWindows.put( position, window );
 			}
-			else
+			window.mark();
+			if ( newRow != null )
 			{
-				hit++;
+				// lock before the stripe is released so no other thread 
+				// can use the row before it has been read
+				newRow.lock();
 			}
-			window.mark();
 		}
-		window.lock();
-		window.setOperationType( operationType );
-		return window;
+		if ( newRow == null )
+		{
+			window.lock();
+			return window;
+		}
+		try
+		{
+			newRow.position( position, readAhead );
+		}
+		catch ( IOException e )
+		{
+			synchronized ( stripe )
+			{
+				stripe.activeRowWindows.remove( position );
+				newRow.unLock();
+			}
+			throw e;
+		}
+		return newRow;
 	}
 	
 	void dumpStatistics()
 	{
 		log.finest( storeName + " hit=" + hit + " miss=" + miss + 
-			" switches=" + switches + " ooe=" + ooe );
+			" switches=" + switches + " remaps=" + remaps + " ooe=" + ooe + 
+			" " + readAhead );
+	}
+	
+	ReadAhead getReadAhead()
+	{
+		return readAhead;
+	}
+	
+	String getStoreName()
+	{
+		return storeName;
+	}
+	
+	int getQuota()
+	{
+		return quota;
+	}
+	
+	/**
+	 * Sets the number of bytes this pool may memory map. If lower than what
+	 * is currently mapped the next acquire will unmap bricks.
+	 * 
+	 * @param quota the new quota
+	 */
+	void setQuota( int quota )
+	{
+		this.quota = quota;
+		if ( memUsed > quota )
+		{
+			shrinkRequested = true;
+		}
+	}
+	
+	/**
+	 * Returns the number of bytes needed to map the whole store.
+	 * 
+	 * @return store size plus one brick (or block) for growth
+	 */
+	long getMemoryDemand()
+	{
+		int brickSize = bricks.size;
+		return storeSize + ( brickSize > 0 ? brickSize : blockSize );
+	}
+	
+	/**
+	 * Returns the number of brick misses since last invoked.
+	 * 
+	 * @return number of brick misses
+	 */
+	int takeBrickMisses()
+	{
+		return unbalancedMiss.getAndSet( 0 );
+	}
+	
+	int getMappedMemory()
+	{
+		return memUsed;
+	}
+	
+	int getBrickSize()
+	{
+		return bricks.size;
 	}
 	
 	/**
@@ -175,22 +458,54 @@ class PersistenceWindowPool
 	 */
 	void release( PersistenceWindow window ) throws IOException
 	{
-		synchronized ( activeRowWindows )
+		if ( window instanceof PersistenceRow )
 		{
-			if ( window instanceof PersistenceRow )
+			PersistenceRow dpw = ( PersistenceRow ) window;
+			int txIdentifier = dpw.getTxIdentifier();
+			try
+			{
+				if ( txIdentifier == -1 )
+				{
+					dpw.writeOut();
+					if ( dpw.getOperationType() == OperationType.WRITE )
+					{
+						// after the write, a chunk read before it is 
+						// discarded
+						readAhead.invalidate( dpw.position(), 
+							dpw.position() + 1 );
+					}
+				}
+			}
+			finally
 			{
-				PersistenceRow dpw = ( PersistenceRow ) window;
-				dpw.writeOut();
-				if ( dpw.getWaitingThreadsCount() == 0 && !dpw.isMarked() )
+				int key = dpw.position();
+				RowWindowStripe stripe = getStripe( key );
+				synchronized ( stripe )
 				{
-					int key = dpw.position();
-					if ( activeRowWindows.remove( key ) == null )
+					if ( txIdentifier != -1 && 
+						getDirtyRowSet( txIdentifier ).add( dpw ) )
 					{
-						assert true;
+						if ( !dpw.hasPendingWrites() )
+						{
+							pendingRowCount.incrementAndGet();
+						}
+						dpw.addPendingWrite();
 					}
-					rowWindowPool.add( key, window );
+					// rows not written out stay active so they are used
+					// instead of reading the record from the file
+					if ( !dpw.hasPendingWrites() && 
+						dpw.getWaitingThreadsCount() == 0 && 
+						!dpw.isMarked() )
+					{
+						stripe.activeRowWindows.remove( key );
+						stripe.rowWindowPool.add( key, dpw );
+					}
+					dpw.unLock();
 				}
 			}
+		}
+		else
+		{
 			( ( LockableWindow ) window ).unLock();
 		}
 	}
@@ -198,34 +513,213 @@ class PersistenceWindowPool
 	void close() throws IOException
 	{
 		flushAll();
-		synchronized ( activeRowWindows )
+		synchronized ( brickLock )
 		{
-			txIdentifiers = null;
+			for ( RowWindowStripe stripe : rowStripes )
+			{
+				synchronized ( stripe )
+				{
+					stripe.activeRowWindows.clear();
+					stripe.rowWindowPool.clear();
+				}
+			}
+			txIdentifiers.clear();
 			fileChannel = null;
-			activeRowWindows = null;
 			// cleanRowWindows();
+			budget.unregister( this, memUsed );
+			memUsed = 0;
+			readAhead.close();
 		}
 		dumpStatistics();
 	}
 	
-	private void flushAll() throws IOException
+	/**
+	 * Writes the rows written by <CODE>identifier</CODE> to the file 
+	 * channel. The rows are sorted by position and each run of adjacent
+	 * records is written with one write. The file channel is not forced.
+	 * 
+	 * @param identifier The (transaction) identifier
+	 * @throws IOException If unable to write the rows
+	 */
+	void writeOutRows( int identifier ) throws IOException
+	{
+		if ( identifier == -1 )
+		{
+			return;
+		}
+		Set<PersistenceRow> rowSet = dirtyRows.remove( identifier );
+		if ( rowSet != null )
+		{
+			synchronized ( rowSet )
+			{
+				writeOutRows( rowSet.toArray( 
+					new PersistenceRow[ rowSet.size() ] ) );
+			}
+		}
+	}
+	
+	private void writeOutAllRows() throws IOException
 	{
-		synchronized ( activeRowWindows )
+		ArrayList<PersistenceRow> rows = new ArrayList<PersistenceRow>();
+		for ( Integer identifier : dirtyRows.keySet() )
 		{
-			for ( Set windowSet : txIdentifiers.values() )
+			Set<PersistenceRow> rowSet = dirtyRows.remove( identifier );
+			if ( rowSet != null )
 			{
-				if ( windowSet != null )
+				synchronized ( rowSet )
 				{
-					Iterator itr = windowSet.iterator();
-					while ( itr.hasNext() )
+					rows.addAll( rowSet );
+				}
+			}
+		}
+		if ( !rows.isEmpty() )
+		{
+			writeOutRows( rows.toArray( new PersistenceRow[ rows.size() ] ) );
+		}
+	}
+	
+	private static final Comparator<PersistenceRow> ROW_POSITION_ORDER = 
+		new Comparator<PersistenceRow>()
+		{
+			public int compare( PersistenceRow o1, PersistenceRow o2 )
+			{
+				return o1.position() < o2.position() ? -1 : 
+					( o1.position() == o2.position() ? 0 : 1 );
+			}
+		};
+	
+	private void writeOutRows( PersistenceRow rows[] ) throws IOException
+	{
+		Arrays.sort( rows, ROW_POSITION_ORDER );
+		int maxRunLength = Math.max( MAX_ROW_RUN_SIZE / blockSize, 1 );
+		try
+		{
+			synchronized ( rowWriteLock )
+			{
+				int runStart = 0;
+				while ( runStart < rows.length )
+				{
+					int runEnd = runStart + 1;
+					while ( runEnd < rows.length && 
+						runEnd - runStart < maxRunLength && 
+						rows[runEnd].position() <= 
+							rows[runEnd - 1].position() + 1 )
+					{
+						runEnd++;
+					}
+					writeRun( rows, runStart, runEnd );
+					runStart = runEnd;
+				}
+			}
+		}
+		finally
+		{
+			removePendingWrites( rows, false );
+		}
+	}
+	
+	// takes back one pending write from each row, rows with no pending 
+	// writes left and not in use are pooled or, if discarded, dropped so 
+	// the record is read from the file again
+	private void removePendingWrites( PersistenceRow rows[], 
+		boolean discard )
+	{
+		for ( PersistenceRow row : rows )
+		{
+			int key = row.position();
+			RowWindowStripe stripe = getStripe( key );
+			synchronized ( stripe )
+			{
+				row.removePendingWrite();
+				if ( !row.hasPendingWrites() )
+				{
+					pendingRowCount.decrementAndGet();
+				}
+				if ( !row.hasPendingWrites() && 
+					row.getWaitingThreadsCount() == 0 && 
+					!row.isMarked() && 
+					stripe.activeRowWindows.get( key ) == row )
+				{
+					stripe.activeRowWindows.remove( key );
+					if ( !discard )
 					{
-						( ( MappedPersistenceWindow ) itr.next() ).force();
+						stripe.rowWindowPool.add( key, row );
 					}
 				}
 			}
 		}
+	}
+	
+	// writes rows[start,end) that are sorted and adjacent (a row written 
+	// by more than one transaction may be included twice)
+	private void writeRun( PersistenceRow rows[], int start, int end ) 
+		throws IOException
+	{
+		int firstPosition = rows[start].position();
+		int lastPosition = rows[end - 1].position();
+		ByteBuffer run = ByteBuffer.allocate( 
+			( lastPosition - firstPosition + 1 ) * blockSize );
+		for ( int i = start; i < end; i++ )
+		{
+			// marked as in acquireRow, lock() takes the mark back
+			RowWindowStripe stripe = getStripe( rows[i].position() );
+			synchronized ( stripe )
+			{
+				rows[i].mark();
+			}
+			run.position( ( rows[i].position() - firstPosition ) * blockSize );
+			rows[i].copyTo( run );
+		}
+		run.clear();
+		long offset = (long) firstPosition * blockSize;
+		while ( run.hasRemaining() )
+		{
+			fileChannel.write( run, offset + run.position() );
+		}
+		// after the write, a chunk read before it is discarded
+		readAhead.invalidate( firstPosition, lastPosition + 1 );
+	}
+	
+	/**
+	 * Writes out all rows and forces all memory mapped windows and the file 
+	 * channel to disk. After this call all changes made in released windows
+	 * are on disk.
+	 * 
+	 * @throws IOException If unable to force the file channel
+	 */
+	void flushAll() throws IOException
+	{
+		writeOutAllRows();
+		// hold brick lock so windows aren't switched during the force
+		synchronized ( brickLock )
+		{
+			for ( BrickElement element : bricks.elements )
+			{
+				LockableWindow window = element.getWindow();
+				if ( window != null )
+				{
+					( ( MappedPersistenceWindow ) window ).force();
+				}
+			}
+		}
 		fileChannel.force( false );
 	}
+	
+	private void forceWindows( Set<LockableWindow> windowSet )
+	{
+		if ( windowSet == null )
+		{
+			return;
+		}
+		synchronized ( windowSet )
+		{
+			Iterator<LockableWindow> itr = windowSet.iterator();
+			while ( itr.hasNext() )
+			{
+				( ( MappedPersistenceWindow ) itr.next() ).force();
+			}
+		}
+	}
 
 	/**
 	 * Flushes all windows that has had anything to do with 
@@ -236,45 +730,78 @@ class PersistenceWindowPool
 	 */
 	void flush( int identifier ) throws IOException
 	{
-		synchronized ( activeRowWindows )
+		if ( identifier != -1 )
 		{
-			if ( identifier != -1 )
-			{
-				Set windowSet = txIdentifiers.remove( identifier );
-				if ( windowSet != null )
-				{
-					Iterator itr = windowSet.iterator();
-					while ( itr.hasNext() )
-					{
-						( ( MappedPersistenceWindow ) itr.next() ).force();
-					}
-				}
-			}
+			writeOutRows( identifier );
+			forceWindows( txIdentifiers.remove( identifier ) );
 		}
 		fileChannel.force( false );
 	}
 
 	/**
-	 * Removes the mapping between windows and <CODE>identifier</CODE>.
+	 * Removes the mapping between windows and <CODE>identifier</CODE>. Rows
+	 * written by <CODE>identifier</CODE> that has not been written out are
+	 * discarded, a row not in use is dropped so the record is read from 
+	 * the file again. A row also written by another transaction that has 
+	 * not been written out is kept and written with that transaction.
 	 * 
 	 * @param identifier The (transaction) identifier
 	 */
 	void forget( int identifier )
 	{
-		synchronized ( activeRowWindows )
+		if ( identifier != -1 )
 		{
-			if ( identifier != -1 )
+			txIdentifiers.remove( identifier );
+			Set<PersistenceRow> rowSet = dirtyRows.remove( identifier );
+			if ( rowSet != null )
 			{
-				txIdentifiers.remove( identifier );
+				synchronized ( rowSet )
+				{
+					removePendingWrites( rowSet.toArray( 
+						new PersistenceRow[ rowSet.size() ] ), true );
+				}
 			}
 		}
 	}
+	
+	/**
+	 * A lock stripe of row windows. Rows currently in use are kept in 
+	 * <CODE>activeRowWindows</CODE> and released rows are kept around in 
+	 * a small LRU pool. Both are guarded by the stripe monitor.
+	 */
+	private static class RowWindowStripe
+	{
+		private final Map<Integer,LockableWindow> activeRowWindows = 
+			new HashMap<Integer,LockableWindow>();
+		private final LruCache<Integer,PersistenceWindow> rowWindowPool = 
+			new LruCache<Integer,PersistenceWindow>( "RowWindows", 
+				ROW_POOL_SIZE_PER_STRIPE );
+	}
+
+	/**
+	 * The brick size and the bricks covering the store, replaced as a whole 
+	 * so a reader never sees a brick size that doesn't match the bricks.
+	 */
+	private static class Bricks
+	{
+		private final int size;
+		private final BrickElement elements[];
+		
+		Bricks( int size, BrickElement elements[] )
+		{
+			this.size = size;
+			this.elements = elements;
+		}
+	}
 
 	private static class BrickElement
 	{
 		private int index;
+		// updated without synchronization, a lost hit now and then is ok
 		private int hitCount;
-		private LockableWindow window = null;
+		// hit count at last refresh, stable while the bricks are sorted
+		private int refreshedHitCount;
+		private volatile LockableWindow window = null;
 		
 		BrickElement( int index )
 		{
@@ -305,21 +832,24 @@ class PersistenceWindowPool
 			}
 		}
 		
-		int getHit()
-		{
-			return hitCount;
-		}
-		
 		void refresh()
 		{
+			int newHitCount = hitCount;
 			if ( window == null )
 			{
-				hitCount /= 1.25;
+				newHitCount /= 1.25;
 			}
 			else
 			{
-				hitCount /= 1.15;
+				newHitCount /= 1.15;
 			}
+			hitCount = newHitCount;
+			refreshedHitCount = newHitCount;
+		}
+		
+		int getRefreshedHit()
+		{
+			return refreshedHitCount;
 		}
 		
 		public String toString()
@@ -328,86 +858,174 @@ class PersistenceWindowPool
 		}
 	}
 
-	private void setupBricks() throws IOException
+	/**
+	 * Returns the brick size to use for a store of <CODE>fileSize</CODE> 
+	 * bytes with the current quota. If the whole store fits the quota is 
+	 * split in 10 bricks, else the quota is split in 100 bricks (so the hot 
+	 * parts of the store can be tracked) but never more than 
+	 * <CODE>MAX_BRICK_COUNT</CODE> bricks are used for the store.
+	 * 
+	 * @param fileSize the size of the store
+	 * @return the brick size or 0 if no brick can be mapped
+	 */
+	private int getWantedBrickSize( long fileSize )
 	{
-		long fileSize = fileChannel.size();
-		if ( blockSize == 0 )
+		int mem = quota;
+		if ( blockSize == 0 || mem < blockSize )
 		{
-			return;
+			return 0;
 		}
-		if ( mappedMem > 0 && mappedMem < blockSize * 10 )
+		long size;
+		if ( fileSize <= mem )
 		{
-			logWarn( "Unable to use " + mappedMem + 
-				"b as memory mapped windows, need at least " + 
-				blockSize * 10 + "b (block size * 10)" );
-			logWarn( "Memory mapped windows have been turned off" );
-			mappedMem = 0;
-			brickCount = 0;
-			brickSize = 0;
-			return;
+			size = mem / 10;
+		}
+		else
+		{
+			size = Math.max( mem / 100, fileSize / MAX_BRICK_COUNT );
 		}
-		if ( mappedMem > 0 && fileSize > 0 )
+		size = Math.max( ( size / blockSize ) * blockSize, blockSize );
+		if ( size > mem )
 		{
-			float ratio = ( mappedMem + 0.0f ) / fileSize;
-			if ( ratio >= 1 )
+			return 0;
+		}
+		return (int) size;
+	}
+	
+	private boolean needsRemap( int currentSize, int wantedSize )
+	{
+		if ( wantedSize == 0 )
+		{
+			// keep the bricks, refresh will unmap them if over quota
+			return false;
+		}
+		if ( currentSize == 0 )
+		{
+			return true;
+		}
+		return wantedSize >= currentSize * REMAP_FACTOR || 
+			wantedSize * REMAP_FACTOR <= currentSize;
+	}
+
+	private void setupBricks() throws IOException
+	{
+		long fileSize = fileChannel.size();
+		storeSize = fileSize;
+		int brickSize = getWantedBrickSize( fileSize );
+		if ( brickSize == 0 )
+		{
+			if ( quota > 0 )
 			{
-				brickSize = mappedMem / 10;
-				brickSize = ( brickSize / blockSize ) * blockSize;
-				brickCount = (int) fileSize / brickSize;
+				logWarn( "Unable to use " + quota + 
+					"b as memory mapped windows for " + fileSize + 
+					"b store, using rows until the quota grows" );
 			}
-			else
+			bricks = new Bricks( 0, new BrickElement[0] );
+			return;
+		}
+		int brickCount = (int) ( fileSize / brickSize );
+		// if not all fit the bricks will be mapped by refresh as they are hit
+		boolean mapAll = quota >= (long) brickCount * brickSize;
+		BrickElement elements[] = new BrickElement[brickCount];
+		for ( int i = 0; i < brickCount; i++ )
+		{
+			BrickElement element = new BrickElement( i );
+			if ( mapAll )
 			{
-				brickCount = (int) ( 100.0 / ratio );
-				if ( brickCount > MAX_BRICK_COUNT )
-				{
-					brickCount = MAX_BRICK_COUNT;
-				}
-				if ( fileSize / brickCount > mappedMem )
-				{
-					logWarn( "Unable to use " + ( mappedMem / 1024 ) + 
-						"kb as memory mapped windows, need at least " + 
-						( fileSize / brickCount / 1024 ) + "kb" );
-					logWarn( "Memory mapped windows have been turned off" );
-					mappedMem = 0;
-					brickCount = 0;
-					brickSize = 0;
-					return;
-				}
-				brickSize = (int) fileSize / brickCount;
-				brickSize = ( brickSize / blockSize ) * blockSize;
-				assert brickSize > blockSize;
+				mapBrick( element, brickSize );
 			}
+			elements[i] = element;
 		}
-		else if ( mappedMem > 0 )
+		bricks = new Bricks( brickSize, elements );
+	}
+	
+	private boolean mapBrick( BrickElement element, int brickSize ) 
+		throws IOException
+	{
+		if ( memUsed + brickSize > quota || !budget.allocate( brickSize ) )
 		{
-			brickSize = mappedMem / 10;
-			brickSize = ( brickSize / blockSize ) * blockSize;
+			return false;
 		}
-		brickArray = new BrickElement[brickCount];
-		for ( int i = 0; i < brickCount; i++ )
+		try
 		{
-			BrickElement element = new BrickElement( i );
-			if ( mappedMem >= brickCount * brickSize )
+			element.setWindow( new MappedPersistenceWindow( 
+				(int) ( (long) element.index() * brickSize / blockSize ), 
+				blockSize, brickSize, fileChannel ) );
+			memUsed += brickSize;
+			return true;
+		}
+		catch ( MappedMemException e )
+		{
+			budget.free( brickSize );
+			ooe++;
+			logWarn( "Unable to memory map" );
+			return false;
+		}
+	}
+	
+	private boolean unmapBrick( BrickElement element, int brickSize )
+	{
+		LockableWindow window = element.getWindow();
+		// unmap first, then check for marks. An acquiring thread marks 
+		// the window before it checks that the brick still has it
+		element.setWindow( null );
+		if ( window.getWaitingThreadsCount() != 0 || window.isMarked() )
+		{
+			element.setWindow( window );
+			return false;
+		}
+		memUsed -= brickSize;
+		budget.free( brickSize );
+		// records may have changed through the window
+		readAhead.invalidate( window.position(), 
+			window.position() + window.size() );
+		return true;
+	}
+	
+	/**
+	 * Unmaps all bricks and sets them up again using the brick size wanted 
+	 * for current store size and quota. If a window is in use nothing is 
+	 * changed, the remap is retried on next refresh or expand.
+	 * 
+	 * @return <CODE>true</CODE> if the bricks were remapped
+	 */
+	private boolean remapBricks() throws IOException
+	{
+		Bricks currentBricks = bricks;
+		ArrayList<BrickElement> unmapped = new ArrayList<BrickElement>();
+		for ( BrickElement element : currentBricks.elements )
+		{
+			if ( element.getWindow() == null )
 			{
-				try
-				{
-					element.setWindow( new MappedPersistenceWindow( 
-						i * brickSize / blockSize, blockSize, brickSize, 
-						fileChannel ) );
-					memUsed += brickSize;
-				}
-				catch ( MappedMemException e )
+				continue;
+			}
+			if ( !unmapBrick( element, currentBricks.size ) )
+			{
+				for ( BrickElement unmappedElement : unmapped )
 				{
-					// ok...
-					logWarn( "Unable to memory map" );
+					mapBrick( unmappedElement, currentBricks.size );
 				}
+				return false;
 			}
-			brickArray[i] = element;
+			unmapped.add( element );
 		}
+		setupBricks();
+		remaps++;
+		dumpStatus();
+		return true;
 	}
 
 	private void refreshBricks() throws IOException
 	{
+		budget.rebalance();
+		storeSize = fileChannel.size();
+		if ( needsRemap( bricks.size, getWantedBrickSize( storeSize ) ) && 
+			remapBricks() )
+		{
+			return;
+		}
+		Bricks currentBricks = bricks;
+		int brickSize = currentBricks.size;
 		if ( brickSize <= 0 )
 		{
 			// memory mapped turned off
@@ -416,9 +1034,8 @@ class PersistenceWindowPool
 		ArrayList<BrickElement> nonMappedBricks = 
 			new ArrayList<BrickElement>();
 		ArrayList<BrickElement> mappedBricks = new ArrayList<BrickElement>();
-		for ( int i = 0; i < brickCount; i++ )
+		for ( BrickElement be : currentBricks.elements )
 		{
-			BrickElement be = brickArray[i];
 			if ( be.getWindow() != null )
 			{
 				mappedBricks.add( be );
@@ -433,23 +1050,16 @@ class PersistenceWindowPool
 		Collections.sort( mappedBricks, new BrickSorter() );
 		int mappedIndex = 0;
 		int nonMappedIndex = nonMappedBricks.size() - 1;
+		// give back memory above the quota, least used bricks first
+		while ( memUsed > quota && mappedIndex < mappedBricks.size() )
+		{
+			unmapBrick( mappedBricks.get( mappedIndex++ ), brickSize );
+		}
 		// fill up unused memory
-		while ( memUsed + brickSize <= mappedMem && nonMappedIndex >= 0 )
+		while ( nonMappedIndex >= 0 && 
+			mapBrick( nonMappedBricks.get( nonMappedIndex ), brickSize ) )
 		{
-			BrickElement nonMappedBrick = nonMappedBricks.get( 
-				nonMappedIndex-- );
-			try
-			{
-				nonMappedBrick.setWindow( new MappedPersistenceWindow( 
-					nonMappedBrick.index() * brickSize / blockSize, 
-					blockSize, brickSize, fileChannel ) );
-				memUsed += brickSize;
-			}
-			catch ( MappedMemException e )
-			{
-				ooe++;
-				logWarn( "Unable to memory map" );
-			}
+			nonMappedIndex--;
 		}
 		// switch bad mappings
 		while ( nonMappedIndex >= 0 && mappedIndex < mappedBricks.size() )
@@ -457,81 +1067,58 @@ class PersistenceWindowPool
 			BrickElement mappedBrick = mappedBricks.get( mappedIndex++ );
 			BrickElement nonMappedBrick = nonMappedBricks.get( 
 				nonMappedIndex-- );
-			if ( mappedBrick.getHit() >= nonMappedBrick.getHit() )
+			if ( mappedBrick.getRefreshedHit() >= 
+				nonMappedBrick.getRefreshedHit() )
 			{
 				break;
 			}
-			LockableWindow window = mappedBrick.getWindow();
-			if ( window.getWaitingThreadsCount() == 0 && !window.isMarked() )
+			if ( unmapBrick( mappedBrick, brickSize ) && 
+				mapBrick( nonMappedBrick, brickSize ) )
 			{
-				mappedBrick.setWindow( null );
-				memUsed -= brickSize;
-				try
-				{
-					nonMappedBrick.setWindow( new MappedPersistenceWindow( 
-						nonMappedBrick.index() * brickSize / blockSize, 
-						blockSize, brickSize, fileChannel ) );
-					memUsed += brickSize;
-					switches++;
-				}
-				catch ( MappedMemException e )
-				{
-					ooe++;
-					logWarn( "Unable to memory map" );
-				}
+				switches++;
 			}
 		}
 	}
 	
 	private void expandBricks() throws IOException
 	{
-		int diff = (int) fileChannel.size() - ( brickCount * brickSize );
+		Bricks currentBricks = bricks;
+		int brickSize = currentBricks.size;
+		int brickCount = currentBricks.elements.length;
+		long fileSize = fileChannel.size();
+		if ( brickSize <= 0 || fileSize <= (long) brickCount * brickSize )
+		{
+			// already expanded (or remapped) by another thread
+			return;
+		}
+		storeSize = fileSize;
+		// the store has grown so much that bigger bricks are wanted
+		if ( needsRemap( brickSize, getWantedBrickSize( fileSize ) ) && 
+			remapBricks() )
+		{
+			return;
+		}
+		long diff = fileSize - (long) brickCount * brickSize;
 		if ( diff > 0 && diff < brickSize )
 		{
-			byte zeroBuf[] = new byte[ brickSize - diff ];
+			byte zeroBuf[] = new byte[ (int) ( brickSize - diff ) ];
 			java.util.Arrays.fill( zeroBuf, (byte) 0 );
 			fileChannel.write( java.nio.ByteBuffer.wrap( zeroBuf ), 
-				fileChannel.size() );
+				fileSize );
 		}
-		int newBrickCount = (int) fileChannel.size() / brickSize;
-		/*if ( newBrickCount > MAX_BRICK_COUNT )
-		{
-			logWarn( "Max brick count exceeded, need more memory then " + 
-				mappedMem ); 
-			logWarn( "Memory mapped windows have been turned off" );
-			mappedMem = 0;
-			brickCount = 0;
-			brickSize = 0;
-			memUsed = 0;
-			brickArray = new BrickElement[0];
-			return;
-		}*/
+		int newBrickCount = (int) ( fileChannel.size() / brickSize );
 		if ( newBrickCount > brickCount )
 		{
 			BrickElement tmpArray[] = new BrickElement[ newBrickCount ];
-			System.arraycopy( brickArray, 0, tmpArray, 0, brickArray.length );
-			for ( int i = brickArray.length; i < tmpArray.length; i++ )
+			System.arraycopy( currentBricks.elements, 0, tmpArray, 0, 
+				brickCount );
+			for ( int i = brickCount; i < tmpArray.length; i++ )
 			{
 				BrickElement be = new BrickElement( i );
-				tmpArray[i] = new BrickElement( i );
-				if ( memUsed + brickSize <= mappedMem )
-				{
-					try
-					{
-						be.setWindow( new MappedPersistenceWindow( 
-							i * brickSize / blockSize, blockSize, brickSize, 
-							fileChannel ) );
-						memUsed += brickSize;
-					}
-					catch ( MappedMemException e )
-					{
-						ooe++;
-						logWarn( "Unable to memory map" );
-					}
-				}
+				tmpArray[i] = be;
+				mapBrick( be, brickSize );
 			}
-			brickArray = tmpArray;
-			brickCount = tmpArray.length;
+			bricks = new Bricks( brickSize, tmpArray );
 		}
 	}
 	
@@ -539,7 +1126,7 @@ class PersistenceWindowPool
 	{
 		public int compare( BrickElement o1, BrickElement o2 )
 		{
-			return o1.getHit() - o2.getHit();
+			return o1.getRefreshedHit() - o2.getRefreshedHit();
 		}
 		
 		public boolean equals( Object o )
@@ -559,9 +1146,11 @@ class PersistenceWindowPool
 
 	private void dumpStatus() throws IOException
 	{
-		log.finest( "[" + storeName + "] brickCount=" + brickCount + 
-			" brickSize=" + brickSize + "b mappedMem=" + mappedMem + 
-			"b (storeSize=" + fileChannel.size() + "b)" );
+		Bricks currentBricks = bricks;
+		log.finest( "[" + storeName + "] brickCount=" + 
+			currentBricks.elements.length + " brickSize=" + 
+			currentBricks.size + "b quota=" + quota + "b memUsed=" + 
+			memUsed + "b (storeSize=" + fileChannel.size() + "b)" );
 	}
 	
 	private void logWarn( String logMessage )
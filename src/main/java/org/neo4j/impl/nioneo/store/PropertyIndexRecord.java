@@ -0,0 +1,74 @@
+package org.neo4j.impl.nioneo.store;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PropertyIndexRecord
+{
+	private int id;
+	private boolean inUse = false;
+	private int keyBlock = Record.NO_NEXT_BLOCK.intValue();
+	private Map<Integer,DynamicRecord> keyRecords =
+		new HashMap<Integer,DynamicRecord>();
+
+	public PropertyIndexRecord( int id )
+	{
+		this.id = id;
+	}
+
+	public DynamicRecord getKeyRecord( int blockId )
+	{
+		return keyRecords.get( blockId );
+	}
+
+	public void addKeyRecord( DynamicRecord record )
+	{
+		keyRecords.put( record.getId(), record );
+	}
+
+	public int getId()
+	{
+		return id;
+	}
+
+	public boolean inUse()
+	{
+		return inUse;
+	}
+
+	public void setInUse( boolean inUse )
+	{
+		this.inUse = inUse;
+	}
+
+	public int getKeyBlock()
+	{
+		return keyBlock;
+	}
+
+	public void setKeyBlock( int keyBlock )
+	{
+		this.keyBlock = keyBlock;
+	}
+
+	public Collection<DynamicRecord> getKeyRecords()
+	{
+		return keyRecords.values();
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuffer buf = new StringBuffer();
+		buf.append( "PropertyIndexRecord[" ).append( id ).append(
+			"," ).append( inUse ).append( "," ).append( keyBlock );
+		buf.append( ", blocks[" );
+		for ( DynamicRecord record : keyRecords.values() )
+		{
+			buf.append( record );
+		}
+		buf.append( "]]" );
+		return buf.toString();
+	}
+}
@@ -0,0 +1,325 @@
+package org.neo4j.impl.nioneo.store;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Implementation of the property key index store. Each record holds a
+ * property key (stored in a dynamic store) and the record id is used as
+ * key id in the property records. All keys are kept in memory so getting
+ * the key of a property never touches the dynamic store.
+ */
+public class PropertyIndexStore extends AbstractStore implements Store
+{
+	// store version, each store ends with this string (byte encoded)
+	private static final String VERSION = "PropertyIndexStore v0.9.1";
+
+	// record header size
+	// in_use(byte)+key_blockId(int)
+	private static final int RECORD_SIZE = 5;
+
+	private static final int KEY_STORE_BLOCK_SIZE = 30;
+
+	private DynamicStringStore keyStore;
+
+	// created in initStorage, called from the super constructor
+	private Map<Integer,String> keys;
+	private Map<String,Integer> keyIds;
+
+	/**
+	 * See {@link AbstractStore#AbstractStore(String, Map)}
+	 */
+	public PropertyIndexStore( String fileName, Map config )
+		throws IOException
+	{
+		super( fileName, config );
+	}
+
+	/**
+	 * See {@link AbstractStore#AbstractStore(String)}
+	 */
+	public PropertyIndexStore( String fileName ) throws IOException
+	{
+		super( fileName );
+	}
+
+	@Override
+	protected void initStorage() throws IOException
+	{
+		keyStore = new DynamicStringStore( getStorageFileName() + ".keys",
+			getConfig() );
+		keys = new ConcurrentHashMap<Integer,String>();
+		keyIds = new ConcurrentHashMap<String,Integer>();
+		if ( getStoreOk() )
+		{
+			loadKeys();
+		}
+	}
+
+	@Override
+	protected void closeStorage() throws IOException
+	{
+		keyStore.close();
+		keyStore = null;
+		keys.clear();
+		keyIds.clear();
+	}
+
+	@Override
+	public void flush( int txIdentifier ) throws IOException
+	{
+		keyStore.flush( txIdentifier );
+		super.flush( txIdentifier );
+	}
+
+	@Override
+	public void writeOutRows( int txIdentifier ) throws IOException
+	{
+		keyStore.writeOutRows( txIdentifier );
+		super.writeOutRows( txIdentifier );
+	}
+
+	@Override
+	public void flushAll() throws IOException
+	{
+		keyStore.flushAll();
+		super.flushAll();
+	}
+
+	@Override
+	public void forget( int txIdentifier )
+	{
+		keyStore.forget( txIdentifier );
+		super.forget( txIdentifier );
+	}
+
+	public String getTypeAndVersionDescriptor()
+	{
+		return VERSION;
+	}
+
+	public int getRecordSize()
+	{
+		return RECORD_SIZE;
+	}
+
+	/**
+	 * Creates a new property index store contained in <CODE>fileName</CODE>
+	 * If filename is <CODE>null</CODE> or the file already exists an
+	 * <CODE>IOException</CODE> is thrown.
+	 *
+	 * @param fileName File name of the new property index store
+	 * @throws IOException If unable to create store or name null
+	 */
+	public static void createStore( String fileName )
+		throws IOException
+	{
+		createEmptyStore( fileName, VERSION );
+		DynamicStringStore.createStore( fileName + ".keys",
+			KEY_STORE_BLOCK_SIZE );
+	}
+
+	// reads all keys into memory, records that can't be read are written
+	// again if found during recovery
+	private void loadKeys() throws IOException
+	{
+		int recordCount = (int) ( getFileChannel().size() / RECORD_SIZE );
+		for ( int i = 0; i < recordCount; i++ )
+		{
+			int keyBlockId;
+			PersistenceWindow window = acquireWindow( i, OperationType.READ );
+			try
+			{
+				keyBlockId = getKeyBlockId( i, window.getBuffer() );
+			}
+			finally
+			{
+				releaseWindow( window );
+			}
+			if ( keyBlockId == Record.NO_NEXT_BLOCK.intValue() )
+			{
+				continue;
+			}
+			try
+			{
+				addKey( i, keyStore.getString( keyBlockId ) );
+			}
+			catch ( IOException e )
+			{
+				logger.log( Level.WARNING, "Unable to load property key[" +
+					i + "]", e );
+			}
+		}
+	}
+
+	private void addKey( int keyId, String key )
+	{
+		keys.put( keyId, key );
+		if ( !keyIds.containsKey( key ) )
+		{
+			keyIds.put( key, keyId );
+		}
+	}
+
+	/**
+	 * Returns the key with id <CODE>keyId</CODE>.
+	 *
+	 * @param keyId the key id
+	 * @return the key
+	 * @throws IOException if no such key exist
+	 */
+	public String getKey( int keyId ) throws IOException
+	{
+		String key = keys.get( keyId );
+		if ( key == null )
+		{
+			throw new IOException( "No such property key[" + keyId + "]" );
+		}
+		return key;
+	}
+
+	/**
+	 * Returns the id of <CODE>key</CODE> or <CODE>-1</CODE> if the key
+	 * hasn't been committed to this store.
+	 *
+	 * @param key the key
+	 * @return the key id or <CODE>-1</CODE>
+	 */
+	public int getKeyId( String key )
+	{
+		Integer keyId = keyIds.get( key );
+		if ( keyId == null )
+		{
+			return -1;
+		}
+		return keyId;
+	}
+
+	/**
+	 * Returns the number of keys in this store.
+	 *
+	 * @return the number of keys
+	 */
+	public int getKeyCount()
+	{
+		return keys.size();
+	}
+
+	/**
+	 * Returns the id of <CODE>key</CODE>, creating the key if it doesn't
+	 * exist. Keys are created one at a time and a new key is written and 
+	 * forced to disk before its id is returned. It is not part of the 
+	 * transaction using it, so concurrent transactions get the same id and 
+	 * the key is kept if the transaction that created it rolls back.
+	 *
+	 * @param key the key
+	 * @return the key id
+	 * @throws IOException if unable to create the key
+	 */
+	public synchronized int createKey( String key ) throws IOException
+	{
+		int keyId = getKeyId( key );
+		if ( keyId != -1 )
+		{
+			return keyId;
+		}
+		keyId = nextId();
+		PropertyIndexRecord record = new PropertyIndexRecord( keyId );
+		record.setInUse( true );
+		int keyBlockId = nextKeyBlockId();
+		record.setKeyBlock( keyBlockId );
+		for ( DynamicRecord keyRecord : allocateKeyRecords( keyBlockId, 
+			key.getBytes() ) )
+		{
+			record.addKeyRecord( keyRecord );
+		}
+		updateRecord( record );
+		flushAll();
+		return keyId;
+	}
+
+	public int nextKeyBlockId() throws IOException
+	{
+		return keyStore.nextBlockId();
+	}
+
+	public Collection<DynamicRecord> allocateKeyRecords( int keyBlockId,
+		byte src[] ) throws IOException
+	{
+		return keyStore.allocateRecords( keyBlockId, src );
+	}
+
+	public void updateRecord( PropertyIndexRecord record )
+		throws IOException
+	{
+		PersistenceWindow window = acquireWindow( record.getId(),
+			OperationType.WRITE );
+		try
+		{
+			updateRecord( record, window.getBuffer() );
+			for ( DynamicRecord keyRecord : record.getKeyRecords() )
+			{
+				keyStore.updateRecord( keyRecord );
+			}
+		}
+		finally
+		{
+			releaseWindow( window );
+		}
+		if ( record.inUse() )
+		{
+			addKey( record.getId(), keyStore.getString(
+				record.getKeyBlock() ) );
+		}
+	}
+
+	private void updateRecord( PropertyIndexRecord record, Buffer buffer )
+	{
+		int id = record.getId();
+		int offset = ( id - buffer.position() ) * getRecordSize();
+		buffer.setOffset( offset );
+		if ( record.inUse() )
+		{
+			buffer.put( Record.IN_USE.byteValue() ).putInt(
+				record.getKeyBlock() );
+		}
+		else
+		{
+			buffer.put( Record.NOT_IN_USE.byteValue() ).putInt(
+				Record.NO_NEXT_BLOCK.intValue() );
+		}
+	}
+
+	private int getKeyBlockId( int id, Buffer buffer )
+	{
+		int offset = ( id - buffer.position() ) * getRecordSize();
+		buffer.setOffset( offset );
+		if ( buffer.get() != Record.IN_USE.byteValue() )
+		{
+			return Record.NO_NEXT_BLOCK.intValue();
+		}
+		return buffer.getInt();
+	}
+
+	@Override
+	public void makeStoreOk() throws IOException
+	{
+		boolean storeOk = getStoreOk();
+		keyStore.makeStoreOk();
+		super.makeStoreOk();
+		if ( !storeOk )
+		{
+			loadKeys();
+		}
+	}
+
+	@Override
+	public void validate()
+	{
+		keyStore.validate();
+		super.validate();
+	}
+}
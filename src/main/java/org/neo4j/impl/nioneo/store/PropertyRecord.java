@@ -75,6 +75,11 @@ public class PropertyRecord
 		return type;
 	}
 	
+	public void setType( PropertyType type )
+	{
+		this.type = type;
+	}
+	
 	public int getKeyBlock()
 	{
 		return keyBlock;
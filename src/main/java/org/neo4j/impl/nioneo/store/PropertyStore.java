@@ -11,6 +11,13 @@ import java.util.logging.Logger;
 /**
  * Implementation of the property store. This implementation has two dynamic 
  * stores. One used to store keys and another for string property values.
+ * Stores created with a {@link PropertyIndexStore} (the <CODE>.index</CODE>
+ * file) don't use the dynamic key store, the key field of each record then
+ * holds a key id in the index store. Older stores keep using the dynamic 
+ * key store until migrated with 
+ * {@link org.neo4j.impl.nioneo.util.AdminStore}.
+ * Short strings and tiny arrays are inlined in the property record and 
+ * never touch the dynamic stores.
  */
 public class PropertyStore extends AbstractStore implements Store
 {
@@ -29,6 +36,7 @@ public class PropertyStore extends AbstractStore implements Store
 	private DynamicStringStore stringPropertyStore;
 	private DynamicStringStore keyPropertyStore;
 	private DynamicArrayStore arrayPropertyStore;
+	private PropertyIndexStore propertyIndexStore;
 	
 	/**
 	 * See {@link AbstractStore#AbstractStore(String, Map)}
@@ -63,6 +71,12 @@ public class PropertyStore extends AbstractStore implements Store
 		}
 		arrayPropertyStore = new DynamicArrayStore( 
 			getStorageFileName() + ".arrays", getConfig() );
+		// old store without index keeps using the dynamic key store
+		if ( new File( getStorageFileName() + ".index" ).exists() )
+		{
+			propertyIndexStore = new PropertyIndexStore( 
+				getStorageFileName() + ".index", getConfig() );
+		}
 	}
 	
 	@Override
@@ -74,6 +88,11 @@ public class PropertyStore extends AbstractStore implements Store
 		keyPropertyStore = null;
 		arrayPropertyStore.close();
 		arrayPropertyStore = null;
+		if ( propertyIndexStore != null )
+		{
+			propertyIndexStore.close();
+			propertyIndexStore = null;
+		}
 	}
 	
 	@Override
@@ -82,15 +101,49 @@ public class PropertyStore extends AbstractStore implements Store
 		stringPropertyStore.flush( txIdentifier );
 		keyPropertyStore.flush( txIdentifier );
 		arrayPropertyStore.flush( txIdentifier );
+		if ( propertyIndexStore != null )
+		{
+			propertyIndexStore.flush( txIdentifier );
+		}
 		super.flush( txIdentifier );
 	}
 	
+	@Override
+	public void writeOutRows( int txIdentifier ) throws IOException
+	{
+		stringPropertyStore.writeOutRows( txIdentifier );
+		keyPropertyStore.writeOutRows( txIdentifier );
+		arrayPropertyStore.writeOutRows( txIdentifier );
+		if ( propertyIndexStore != null )
+		{
+			propertyIndexStore.writeOutRows( txIdentifier );
+		}
+		super.writeOutRows( txIdentifier );
+	}
+	
+	@Override
+	public void flushAll() throws IOException
+	{
+		stringPropertyStore.flushAll();
+		keyPropertyStore.flushAll();
+		arrayPropertyStore.flushAll();
+		if ( propertyIndexStore != null )
+		{
+			propertyIndexStore.flushAll();
+		}
+		super.flushAll();
+	}
+	
 	@Override
 	public void forget( int txIdentifier )
 	{
 		stringPropertyStore.forget( txIdentifier );
 		keyPropertyStore.forget( txIdentifier );
 		arrayPropertyStore.forget( txIdentifier );
+		if ( propertyIndexStore != null )
+		{
+			propertyIndexStore.forget( txIdentifier );
+		}
 		super.forget( txIdentifier );
 	}
 
@@ -104,6 +157,12 @@ public class PropertyStore extends AbstractStore implements Store
 		return RECORD_SIZE;
 	}
 	
+	@Override
+	protected boolean useIdBatches()
+	{
+		return true;
+	}
+	
 	/**
 	 * Creates a new property store contained in <CODE>fileName</CODE> 
 	 * If filename is <CODE>null</CODE> or the file already exists an 
@@ -122,6 +181,18 @@ public class PropertyStore extends AbstractStore implements Store
 			KEY_STORE_BLOCK_SIZE );
 		DynamicArrayStore.createStore( fileName + ".arrays", 
 			STRING_STORE_BLOCK_SIZE );
+		PropertyIndexStore.createStore( fileName + ".index" );
+	}
+	
+	/**
+	 * Returns the property key index store or <CODE>null</CODE> if this 
+	 * is an old store that keeps keys in the dynamic key store.
+	 * 
+	 * @return the property index store or <CODE>null</CODE>
+	 */
+	public PropertyIndexStore getIndexStore()
+	{
+		return propertyIndexStore;
 	}
 	
 	public int nextKeyBlockId() throws IOException
@@ -152,6 +223,12 @@ public class PropertyStore extends AbstractStore implements Store
 		{
 			releaseWindow( window );
 		}
+		return getValue( id, storeData );
+	}
+	
+	private Object getValue( int id, PropertyStoreData storeData ) 
+		throws IOException
+	{
 		String key = null;
 		PropertyType propertyType = getEnumType( storeData.type() );
 		switch ( propertyType )
@@ -182,13 +259,20 @@ public class PropertyStore extends AbstractStore implements Store
 			case ARRAY:
 				return arrayPropertyStore.getArray( 
 					(int) storeData.propertyStoreBlockId() );
+			case SHORT_STRING:
+				return InlineValue.decodeString( 
+					storeData.propertyStoreBlockId() );
+			case SHORT_ARRAY:
+				return InlineValue.decodeArray( 
+					storeData.propertyStoreBlockId() );
 			default:
 				throw new IOException( "Unkown type[" + storeData.type() + 
 					"] on property[" + id + "] key[" + key + "]" );
 		}
 	}
 	
-	private PropertyData getLightProperty( int id ) throws IOException
+	private PropertyData getPropertyData( int id, boolean loadValue ) 
+		throws IOException
 	{
 		PersistenceWindow window = acquireWindow( id, OperationType.READ );
 		PropertyStoreData storeData = null;
@@ -203,7 +287,7 @@ public class PropertyStore extends AbstractStore implements Store
 		String key = null;
 		try
 		{
-			key = keyPropertyStore.getString( storeData.keyStoreBlockId() );
+			key = getKey( storeData.keyStoreBlockId() );
 		}
 		catch ( IOException e )
 		{
@@ -217,19 +301,52 @@ public class PropertyStore extends AbstractStore implements Store
 			throw e;
 		}
 		// check statistics if low
-		return new PropertyData( id, key, null, storeData.nextPropertyId() );
+		Object value = null;
+		if ( loadValue )
+		{
+			value = getValue( id, storeData );
+		}
+		return new PropertyData( id, key, value, storeData.nextPropertyId() );
 		// if high load property
 	}
 	
+	// key field is a key id if store has index else a dynamic key block
+	private String getKey( int keyField ) throws IOException
+	{
+		if ( propertyIndexStore != null )
+		{
+			return propertyIndexStore.getKey( keyField );
+		}
+		return keyPropertyStore.getString( keyField );
+	}
+	
 	public PropertyData[] getProperties( int startPropertyId )
 		throws IOException
+	{
+		return getProperties( startPropertyId, false );
+	}
+	
+	/**
+	 * Returns all properties in the property chain starting at 
+	 * <CODE>startPropertyId</CODE>. If <CODE>loadValues</CODE> is 
+	 * <CODE>true</CODE> the value of each property is decoded in the same 
+	 * pass over the chain, else only keys are returned and the values have 
+	 * to be loaded with {@link #getPropertyValue(int)}.
+	 * 
+	 * @param startPropertyId the first property in the chain
+	 * @param loadValues if property values should be loaded
+	 * @return the properties in the chain
+	 * @throws IOException if unable to read the properties
+	 */
+	public PropertyData[] getProperties( int startPropertyId, 
+		boolean loadValues ) throws IOException
 	{
 		ArrayList<PropertyData> propertyDataList = 
 			new ArrayList<PropertyData>();
 		int nextPropertyId = startPropertyId;
 		while ( nextPropertyId != Record.NO_NEXT_PROPERTY.intValue() ) 
 		{
-			PropertyData data = getLightProperty( nextPropertyId );
+			PropertyData data = getPropertyData( nextPropertyId, loadValues );
 			propertyDataList.add( data );
 			nextPropertyId = data.nextPropertyId();
 		}
@@ -305,11 +422,14 @@ public class PropertyStore extends AbstractStore implements Store
 		try
 		{
 			PropertyRecord record = getRecord( id, window.getBuffer() );
-			Collection<DynamicRecord> keyRecords = 
-				keyPropertyStore.getRecords( record.getKeyBlock() );
-			for ( DynamicRecord keyRecord : keyRecords )
+			if ( propertyIndexStore == null )
 			{
-				record.addKeyRecord( keyRecord );
+				Collection<DynamicRecord> keyRecords = 
+					keyPropertyStore.getRecords( record.getKeyBlock() );
+				for ( DynamicRecord keyRecord : keyRecords )
+				{
+					record.addKeyRecord( keyRecord );
+				}
 			}
 			if ( record.getType() == PropertyType.STRING )
 			{
@@ -339,6 +459,65 @@ public class PropertyStore extends AbstractStore implements Store
 		}
 	}
 	
+	/**
+	 * Moves the keys of an old store from the dynamic key store to a new 
+	 * {@link PropertyIndexStore}. Each distinct key is stored once in the 
+	 * index and the key field of every property record is set to the key 
+	 * id, the dynamic key records are freed. The store must have been shut 
+	 * down cleanly and since the records are rewritten in place a backup 
+	 * should be made first.
+	 * 
+	 * @return the number of distinct keys found
+	 * @throws IOException if this store already has an index or if unable 
+	 * to read or write the store
+	 */
+	public int migrateToIndexStore() throws IOException
+	{
+		if ( propertyIndexStore != null )
+		{
+			throw new IOException( "Property index already exist for " + 
+				getStorageFileName() );
+		}
+		String indexFileName = getStorageFileName() + ".index";
+		PropertyIndexStore.createStore( indexFileName );
+		PropertyIndexStore indexStore = 
+			new PropertyIndexStore( indexFileName, getConfig() );
+		int highId = getHighId();
+		for ( int i = 0; i < highId; i++ )
+		{
+			if ( !isRecordInUse( i ) )
+			{
+				continue;
+			}
+			PropertyRecord record = getRecord( i );
+			String key = keyPropertyStore.getString( record.getKeyBlock() );
+			record.setKeyBlock( indexStore.createKey( key ) );
+			for ( DynamicRecord keyRecord : record.getKeyRecords() )
+			{
+				keyRecord.setInUse( false );
+			}
+			updateRecord( record );
+		}
+		indexStore.flushAll();
+		propertyIndexStore = indexStore;
+		return indexStore.getKeyCount();
+	}
+	
+	private boolean isRecordInUse( int id ) throws IOException
+	{
+		PersistenceWindow window = acquireWindow( id, OperationType.READ );
+		try
+		{
+			Buffer buffer = window.getBuffer();
+			buffer.setOffset( ( id - buffer.position() ) * getRecordSize() );
+			return buffer.get() == Record.IN_USE.byteValue();
+		}
+		finally
+		{
+			releaseWindow( window );
+		}
+	}
+	
 	private static class PropertyStoreData
 	{
 		private int type;
@@ -415,6 +594,8 @@ public class PropertyStore extends AbstractStore implements Store
 			case 7: return PropertyType.BYTE;
 			case 8: return PropertyType.CHAR;
 			case 9: return PropertyType.ARRAY;
+			case 10: return PropertyType.SHORT_STRING;
+			case 11: return PropertyType.SHORT_ARRAY;
 			default: throw new IOException( "Unkown enum type:" +
 				type );
 		}
@@ -439,6 +620,10 @@ public class PropertyStore extends AbstractStore implements Store
 		keyPropertyStore.makeStoreOk();
 		stringPropertyStore.makeStoreOk();
 		arrayPropertyStore.makeStoreOk();
+		if ( propertyIndexStore != null )
+		{
+			propertyIndexStore.makeStoreOk();
+		}
 		super.makeStoreOk();
 	}
 	
@@ -448,13 +633,30 @@ public class PropertyStore extends AbstractStore implements Store
 		keyPropertyStore.validate();
 		stringPropertyStore.validate();
 		arrayPropertyStore.validate();
+		if ( propertyIndexStore != null )
+		{
+			propertyIndexStore.validate();
+		}
 		super.validate();
 	}
 
+	/**
+	 * Returns the property type <CODE>value</CODE> will be stored as. 
+	 * Short strings and tiny primitive arrays get the inlined 
+	 * {@link PropertyType#SHORT_STRING} and {@link PropertyType#SHORT_ARRAY} 
+	 * types that don't use the dynamic stores.
+	 * 
+	 * @param value the property value
+	 * @return the property type to use for <CODE>value</CODE>
+	 */
 	public PropertyType getType( Object value )
 	{
 		if ( value instanceof String )
 		{
+			if ( InlineValue.canInline( ( String ) value ) )
+			{
+				return PropertyType.SHORT_STRING;
+			}
 			return PropertyType.STRING;
 		}
 		else if ( value instanceof Integer )
@@ -488,6 +690,10 @@ public class PropertyStore extends AbstractStore implements Store
 		else if ( value.getClass().isArray() )
 		{
 			validatePrimitiveArray( value );
+			if ( InlineValue.canInline( value ) )
+			{
+				return PropertyType.SHORT_ARRAY;
+			}
 			return PropertyType.ARRAY;
 		}
 		throw new RuntimeException( "Unkown property type on: " + value );
@@ -599,6 +805,13 @@ public class PropertyStore extends AbstractStore implements Store
 					record.addValueRecord( valueRecord );
 				}
 				break;
+			case SHORT_STRING:
+				record.setPropBlock( 
+					InlineValue.encodeString( ( String ) value ) );
+				break;
+			case SHORT_ARRAY:
+				record.setPropBlock( InlineValue.encodeArray( value ) );
+				break;
 			default:
 				throw new RuntimeException( "Unkown property type: " + type );
 		}
@@ -14,7 +14,9 @@ public enum PropertyType
 	LONG(6), 	
 	BYTE(7),
 	CHAR(8),
-	ARRAY(9);
+	ARRAY(9),
+	SHORT_STRING(10),
+	SHORT_ARRAY(11);
 	
 	private int type;
 	
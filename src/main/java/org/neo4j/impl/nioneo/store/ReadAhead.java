@@ -0,0 +1,293 @@
+package org.neo4j.impl.nioneo.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Read-ahead for the {@link PersistenceWindowPool} of a store. Records that
+ * are not memory mapped are read one at a time by {@link PersistenceRow}s,
+ * a scan or chain walk in increasing id order over a cold store is then
+ * bound by the latency of each read.
+ * <p>
+ * The pool reports every record read from the file to
+ * {@link #accessed(int)}. When a number of reads in a row have been at or
+ * slightly after the previous one the access is considered sequential and
+ * the following chunks of the file are read on a background I/O thread. A
+ * row positioned on a prefetched record copies it from the chunk, see
+ * {@link #read(int, ByteBuffer)}. Chunks are invalidated when records in
+ * them are written or when they may have been changed through a memory
+ * mapped window.
+ * <p>
+ * The background thread is also used to load the pages of the next memory
+ * mapped brick when bricks are accessed in order, see
+ * {@link #brickAccessed(int, MappedPersistenceWindow)}.
+ */
+class ReadAhead
+{
+	// reads in a row at or just after previous read to be sequential
+	private static final int SEQUENTIAL_THRESHOLD = 4;
+	// max number of records between two reads still considered sequential
+	private static final int MAX_GAP = 8;
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final int MAX_CHUNK_COUNT = 8;
+
+	private static Logger log = Logger.getLogger( ReadAhead.class.getName() );
+
+	private static final ExecutorService ioThread =
+		Executors.newSingleThreadExecutor( new ThreadFactory()
+		{
+			public Thread newThread( Runnable r )
+			{
+				Thread thread = new Thread( r, "NioNeoReadAhead" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		} );
+
+	private final int recordSize;
+	private final int recordsPerChunk;
+	private final FileChannel fileChannel;
+
+	// chunk index -> prefetched chunk, guarded by this
+	private final Map<Integer,ByteBuffer> chunks =
+		new LinkedHashMap<Integer,ByteBuffer>( 16, 0.75f, true )
+		{
+			protected boolean removeEldestEntry(
+				Map.Entry<Integer,ByteBuffer> eldest )
+			{
+				return size() > MAX_CHUNK_COUNT;
+			}
+		};
+	// chunk index -> true if written while being read, guarded by this
+	private final Map<Integer,Boolean> pending =
+		new HashMap<Integer,Boolean>();
+	private boolean closed = false;
+
+	// updated without synchronization, a lost update only delays detection
+	private int lastPosition = -1;
+	private int sequentialCount = 0;
+	private volatile int lastBrickIndex = -1;
+
+	private final AtomicInteger hits = new AtomicInteger( 0 );
+	private final AtomicInteger chunkReads = new AtomicInteger( 0 );
+
+	ReadAhead( int recordSize, FileChannel fileChannel )
+	{
+		this.recordSize = recordSize;
+		this.recordsPerChunk = Math.max( CHUNK_SIZE / recordSize, 1 );
+		this.fileChannel = fileChannel;
+	}
+
+	/**
+	 * Invoked when a record is about to be read from the file. If the
+	 * access looks sequential the chunk containing <CODE>position</CODE>
+	 * and the chunk after it are prefetched.
+	 *
+	 * @param position the record about to be read
+	 */
+	void accessed( int position )
+	{
+		int last = lastPosition;
+		lastPosition = position;
+		if ( position <= last || position > last + MAX_GAP )
+		{
+			sequentialCount = 0;
+			return;
+		}
+		if ( ++sequentialCount < SEQUENTIAL_THRESHOLD )
+		{
+			return;
+		}
+		int chunk = position / recordsPerChunk;
+		prefetch( chunk );
+		prefetch( chunk + 1 );
+	}
+
+	/**
+	 * Invoked when a memory mapped brick is accessed. If it is the brick
+	 * after the previously accessed one the pages of <CODE>next</CODE>
+	 * are loaded in the background.
+	 *
+	 * @param brickIndex index of the accessed brick
+	 * @param next the window of the following brick or <CODE>null</CODE>
+	 */
+	void brickAccessed( int brickIndex, final MappedPersistenceWindow next )
+	{
+		int last = lastBrickIndex;
+		if ( brickIndex == last )
+		{
+			return;
+		}
+		lastBrickIndex = brickIndex;
+		if ( brickIndex == last + 1 && next != null )
+		{
+			ioThread.execute( new Runnable()
+			{
+				public void run()
+				{
+					next.load();
+				}
+			} );
+		}
+	}
+
+	private void prefetch( final int chunk )
+	{
+		synchronized ( this )
+		{
+			if ( closed || chunks.containsKey( chunk ) ||
+				pending.containsKey( chunk ) )
+			{
+				return;
+			}
+			pending.put( chunk, Boolean.FALSE );
+		}
+		ioThread.execute( new Runnable()
+		{
+			public void run()
+			{
+				load( chunk );
+			}
+		} );
+	}
+
+	private void load( int chunk )
+	{
+		ByteBuffer buffer = null;
+		try
+		{
+			buffer = ByteBuffer.allocate( recordsPerChunk * recordSize );
+			long offset = (long) chunk * recordsPerChunk * recordSize;
+			while ( buffer.hasRemaining() )
+			{
+				int read = fileChannel.read( buffer,
+					offset + buffer.position() );
+				if ( read <= 0 )
+				{
+					break;
+				}
+			}
+			buffer.flip();
+			chunkReads.incrementAndGet();
+		}
+		catch ( IOException e )
+		{
+			// store closed or failing, rows will read from the file
+			log.fine( "Unable to read ahead chunk " + chunk + ": " + e );
+			buffer = null;
+		}
+		synchronized ( this )
+		{
+			Boolean written = pending.remove( chunk );
+			if ( buffer != null && buffer.hasRemaining() && !closed &&
+				!Boolean.TRUE.equals( written ) )
+			{
+				chunks.put( chunk, buffer );
+			}
+		}
+	}
+
+	/**
+	 * Copies record <CODE>position</CODE> into <CODE>target</CODE> if it
+	 * has been prefetched.
+	 *
+	 * @param position the record to read
+	 * @param target buffer of record size to copy the record into
+	 * @return <CODE>true</CODE> if the record was copied
+	 */
+	synchronized boolean read( int position, ByteBuffer target )
+	{
+		ByteBuffer chunk = chunks.get( position / recordsPerChunk );
+		if ( chunk == null )
+		{
+			return false;
+		}
+		int offset = ( position % recordsPerChunk ) * recordSize;
+		if ( offset + recordSize > chunk.limit() )
+		{
+			return false;
+		}
+		target.clear();
+		target.put( chunk.array(), offset, recordSize );
+		target.rewind();
+		hits.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Drops prefetched data for records from <CODE>fromPosition</CODE> up
+	 * to (not including) <CODE>toPosition</CODE>. Chunks being read are
+	 * discarded when the read completes.
+	 *
+	 * @param fromPosition the first record changed
+	 * @param toPosition the record after the last record changed
+	 */
+	synchronized void invalidate( int fromPosition, int toPosition )
+	{
+		if ( chunks.isEmpty() && pending.isEmpty() )
+		{
+			return;
+		}
+		int lastChunk = ( toPosition - 1 ) / recordsPerChunk;
+		for ( int chunk = fromPosition / recordsPerChunk; chunk <= lastChunk;
+			chunk++ )
+		{
+			chunks.remove( chunk );
+			if ( pending.containsKey( chunk ) )
+			{
+				pending.put( chunk, Boolean.TRUE );
+			}
+		}
+	}
+
+	/**
+	 * Waits for all scheduled reads to complete.
+	 */
+	void awaitPending() throws IOException
+	{
+		try
+		{
+			ioThread.submit( new Runnable()
+			{
+				public void run()
+				{
+				}
+			} ).get();
+		}
+		catch ( InterruptedException e )
+		{
+			throw new IOException( "Interrupted waiting for read-ahead" );
+		}
+		catch ( ExecutionException e )
+		{
+			throw new IOException( "Read-ahead failed: " + e.getCause() );
+		}
+	}
+
+	synchronized void close()
+	{
+		closed = true;
+		chunks.clear();
+	}
+
+	int getHitCount()
+	{
+		return hits.get();
+	}
+
+	public String toString()
+	{
+		return "ReadAhead[chunkReads=" + chunkReads.get() + ",hits=" +
+			hits.get() + "]";
+	}
+}
@@ -0,0 +1,224 @@
+package org.neo4j.impl.nioneo.store;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of fixed size records kept outside of the java heap. Each
+ * record is stored as a number of <CODE>int</CODE> fields in a slot of a
+ * direct <CODE>ByteBuffer</CODE>, so cached records cost no objects.
+ * <p>
+ * The cache is set associative: a record id maps to one set of
+ * {@link #WAYS} slots and is only looked for in that set. When a set is full
+ * a slot is replaced using the CLOCK algorithm, a hit marks the slot as
+ * referenced and the hand of the set skips (and clears) referenced slots.
+ * Sets are guarded by striped locks so concurrent access to different
+ * records rarely contend.
+ * <p>
+ * Records are copied in and out of the cache, a record returned from
+ * {@link #get(int, int[])} can be modified by the caller without affecting
+ * the cached copy.
+ */
+class RecordCache
+{
+	static final int WAYS = 8;
+
+	private static final int LOCK_STRIPES = 64;
+
+	private static final int NO_ID = -1;
+
+	// id(int)+referenced(int)+fields
+	private static final int SLOT_HEADER_SIZE = 8;
+
+	private final ByteBuffer slots;
+	private final int fieldCount;
+	private final int slotSize;
+	private final int setCount;
+	private final int hands[];
+	private final Object locks[] = new Object[ LOCK_STRIPES ];
+
+	private final AtomicLong hits = new AtomicLong( 0 );
+	private final AtomicLong misses = new AtomicLong( 0 );
+
+	/**
+	 * Creates a cache holding at least <CODE>maxRecords</CODE> records
+	 * (rounded up to a whole number of sets) of <CODE>fieldCount</CODE>
+	 * <CODE>int</CODE> fields each.
+	 *
+	 * @param maxRecords the number of records to cache
+	 * @param fieldCount the number of fields in a record
+	 */
+	RecordCache( int maxRecords, int fieldCount )
+	{
+		if ( maxRecords < 1 || fieldCount < 1 )
+		{
+			throw new IllegalArgumentException( "maxRecords=" + maxRecords +
+				", fieldCount=" + fieldCount );
+		}
+		this.fieldCount = fieldCount;
+		this.slotSize = SLOT_HEADER_SIZE + fieldCount * 4;
+		this.setCount = ( maxRecords + WAYS - 1 ) / WAYS;
+		this.hands = new int[ setCount ];
+		this.slots = ByteBuffer.allocateDirect( setCount * WAYS * slotSize );
+		for ( int i = 0; i < setCount * WAYS; i++ )
+		{
+			slots.putInt( i * slotSize, NO_ID );
+		}
+		for ( int i = 0; i < locks.length; i++ )
+		{
+			locks[i] = new Object();
+		}
+	}
+
+	private int setOf( int id )
+	{
+		return ( id & 0x7fffffff ) % setCount;
+	}
+
+	private Object lockFor( int set )
+	{
+		return locks[ set % LOCK_STRIPES ];
+	}
+
+	// returns the slot number of id or -1 if not cached, must hold lock
+	private int findSlot( int set, int id )
+	{
+		int firstSlot = set * WAYS;
+		for ( int i = firstSlot; i < firstSlot + WAYS; i++ )
+		{
+			if ( slots.getInt( i * slotSize ) == id )
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Copies the cached fields of record <CODE>id</CODE> into
+	 * <CODE>fields</CODE>.
+	 *
+	 * @param id the record id
+	 * @param fields array to copy the fields into
+	 * @return <CODE>true</CODE> if the record was cached
+	 */
+	boolean get( int id, int fields[] )
+	{
+		int set = setOf( id );
+		synchronized ( lockFor( set ) )
+		{
+			int slot = findSlot( set, id );
+			if ( slot == -1 )
+			{
+				misses.incrementAndGet();
+				return false;
+			}
+			int offset = slot * slotSize;
+			slots.putInt( offset + 4, 1 );
+			offset += SLOT_HEADER_SIZE;
+			for ( int i = 0; i < fieldCount; i++ )
+			{
+				fields[i] = slots.getInt( offset + i * 4 );
+			}
+		}
+		hits.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Caches the fields of record <CODE>id</CODE>, replacing a previously
+	 * cached version of the record.
+	 *
+	 * @param id the record id
+	 * @param fields the record fields
+	 */
+	void put( int id, int fields[] )
+	{
+		if ( id == NO_ID )
+		{
+			throw new IllegalArgumentException( "Illegal id " + id );
+		}
+		int set = setOf( id );
+		synchronized ( lockFor( set ) )
+		{
+			int slot = findSlot( set, id );
+			if ( slot == -1 )
+			{
+				slot = findSlot( set, NO_ID );
+			}
+			if ( slot == -1 )
+			{
+				slot = evict( set );
+			}
+			int offset = slot * slotSize;
+			slots.putInt( offset, id );
+			slots.putInt( offset + 4, 0 );
+			offset += SLOT_HEADER_SIZE;
+			for ( int i = 0; i < fieldCount; i++ )
+			{
+				slots.putInt( offset + i * 4, fields[i] );
+			}
+		}
+	}
+
+	// moves the clock hand of a full set to a non referenced slot
+	private int evict( int set )
+	{
+		int firstSlot = set * WAYS;
+		while ( true )
+		{
+			int slot = firstSlot + hands[set];
+			hands[set] = ( hands[set] + 1 ) % WAYS;
+			int referencedOffset = slot * slotSize + 4;
+			if ( slots.getInt( referencedOffset ) == 0 )
+			{
+				return slot;
+			}
+			slots.putInt( referencedOffset, 0 );
+		}
+	}
+
+	/**
+	 * Removes record <CODE>id</CODE> from the cache if cached.
+	 *
+	 * @param id the record id
+	 */
+	void remove( int id )
+	{
+		int set = setOf( id );
+		synchronized ( lockFor( set ) )
+		{
+			int slot = findSlot( set, id );
+			if ( slot != -1 )
+			{
+				slots.putInt( slot * slotSize, NO_ID );
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximum number of records this cache can hold.
+	 *
+	 * @return the number of slots
+	 */
+	int maxSize()
+	{
+		return setCount * WAYS;
+	}
+
+	long getHitCount()
+	{
+		return hits.get();
+	}
+
+	long getMissCount()
+	{
+		return misses.get();
+	}
+
+	public String toString()
+	{
+		return "RecordCache[slots=" + maxSize() + ",hits=" + hits.get() +
+			",misses=" + misses.get() + "]";
+	}
+}
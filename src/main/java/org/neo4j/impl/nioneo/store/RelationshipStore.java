@@ -1,8 +1,6 @@
 package org.neo4j.impl.nioneo.store;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -20,9 +18,15 @@ public class RelationshipStore extends AbstractStore implements Store
 	// second_next_rel_id+next_prop_id(int)
 	private static final int RECORD_SIZE = 33;
 	
-	private Map<Integer,RelationshipRecord> cache = 
-		Collections.synchronizedMap( 
-			new HashMap<Integer,RelationshipRecord>() );
+	// first_node(int)+second_node(int)+rel_type(int)+first_prev_rel_id(int)+
+	// first_next_rel_id+second_prev_rel_id(int)+second_next_rel_id+
+	// next_prop_id(int) of in use records
+	private static final int CACHE_FIELDS = 8;
+	
+	private static final int DEFAULT_CACHE_SIZE = 16384;
+	
+	// created in initStorage, called from the super constructor
+	private RecordCache cache;
 	
 	private PropertyStore propStore = null;
 	
@@ -58,6 +62,25 @@ public class RelationshipStore extends AbstractStore implements Store
 		return RECORD_SIZE;
 	}
 	
+	@Override
+	protected boolean useIdBatches()
+	{
+		return true;
+	}
+	
+	@Override
+	protected void initStorage()
+	{
+		cache = new RecordCache( getRecordCacheSize( DEFAULT_CACHE_SIZE ), 
+			CACHE_FIELDS );
+	}
+	
+	@Override
+	protected void closeStorage()
+	{
+		logger.fine( this + " " + cache );
+	}
+	
 	@Override
 	public void close() throws IOException
 	{
@@ -80,20 +103,33 @@ public class RelationshipStore extends AbstractStore implements Store
 	
 	public RelationshipRecord getRecord( int id ) throws IOException
 	{
-		RelationshipRecord record = cache.get( id );
-		if ( record != null )
+		int fields[] = new int[ CACHE_FIELDS ];
+		if ( cache.get( id, fields ) )
 		{
-			if ( !record.inUse() )
-			{
-				throw new IOException( "Record[" + id + "] not in use" );
-			}
+			RelationshipRecord record = new RelationshipRecord( id, 
+				fields[0], fields[1], fields[2] );
+			record.setInUse( true );
+			record.setFirstPrevRel( fields[3] );
+			record.setFirstNextRel( fields[4] );
+			record.setSecondPrevRel( fields[5] );
+			record.setSecondNextRel( fields[6] );
+			record.setNextProp( fields[7] );
 			return record;
 		}
 		PersistenceWindow window = acquireWindow( id, OperationType.READ );
 		try
 		{
-			record = getRecord( id, window.getBuffer(), false );
-			cache.put( id, record );
+			RelationshipRecord record = getRecord( id, window.getBuffer(), 
+				false );
+			fields[0] = record.getFirstNode();
+			fields[1] = record.getSecondNode();
+			fields[2] = record.getType();
+			fields[3] = record.getFirstPrevRel();
+			fields[4] = record.getFirstNextRel();
+			fields[5] = record.getSecondPrevRel();
+			fields[6] = record.getSecondNextRel();
+			fields[7] = record.getNextProp();
+			cache.put( id, fields );
 			return record;
 		}
 		finally 
@@ -150,6 +186,61 @@ public class RelationshipStore extends AbstractStore implements Store
 		}
 	}
 	
+	/**
+	 * Gets the relationships in <CODE>relIds</CODE>. The ids should be 
+	 * sorted, records in the same persistence window as the previous id are 
+	 * read without acquiring the window again.
+	 * 
+	 * @param relIds the relationship ids in ascending order
+	 * @return the relationship data at the index of each id, 
+	 * <CODE>null</CODE> if the relationship isn't in use
+	 * @throws IOException if unable to read the relationships
+	 */
+	public RelationshipData[] getRelationships( int relIds[] ) 
+		throws IOException
+	{
+		RelationshipData relData[] = new RelationshipData[ relIds.length ];
+		int highId = getHighId();
+		PersistenceWindow window = null;
+		try
+		{
+			for ( int i = 0; i < relIds.length; i++ )
+			{
+				int relId = relIds[i];
+				if ( relId < 0 || relId >= highId )
+				{
+					continue;
+				}
+				if ( window == null || relId < window.position() || 
+					relId >= window.position() + window.size() )
+				{
+					if ( window != null )
+					{
+						releaseWindow( window );
+						window = null;
+					}
+					window = acquireWindow( relId, OperationType.READ );
+				}
+				Buffer buffer = window.getBuffer();
+				buffer.setOffset( 
+					( relId - buffer.position() ) * getRecordSize() );
+				if ( ( buffer.get() & Record.IN_USE.byteValue() ) == 
+					Record.IN_USE.byteValue() )
+				{
+					relData[i] = getRelationship( relId, buffer );
+				}
+			}
+		}
+		finally
+		{
+			if ( window != null )
+			{
+				releaseWindow( window );
+			}
+		}
+		return relData;
+	}
+	
 	private void updateRecord( RelationshipRecord record, Buffer buffer )
 		throws IOException
 	{
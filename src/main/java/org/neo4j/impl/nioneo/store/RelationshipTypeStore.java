@@ -65,6 +65,20 @@ public class RelationshipTypeStore extends AbstractStore implements Store
 		super.flush( txIdentifier );
 	}
 	
+	@Override
+	public void writeOutRows( int txIdentifier ) throws IOException
+	{
+		typeNameStore.writeOutRows( txIdentifier );
+		super.writeOutRows( txIdentifier );
+	}
+	
+	@Override
+	public void flushAll() throws IOException
+	{
+		typeNameStore.flushAll();
+		super.flushAll();
+	}
+	
 	@Override
 	public void forget( int txIdentifier )
 	{
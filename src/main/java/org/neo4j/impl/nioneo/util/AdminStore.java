@@ -11,6 +11,7 @@ import java.util.Properties;
 import java.util.Set;
 import org.neo4j.impl.nioneo.store.AbstractDynamicStore;
 import org.neo4j.impl.nioneo.store.NeoStore;
+import org.neo4j.impl.nioneo.store.PropertyStore;
 import org.neo4j.impl.nioneo.xa.NeoStoreXaDataSource;
 
 
@@ -26,6 +27,8 @@ public class AdminStore
 			"Creates a new store." );
 		System.out.println( "--fsck [filename]\t\t" + 
 			"Check and repair a store" );
+		System.out.println( "--migrate-property-index [filename]\t" + 
+			"Move property keys to a key index (backup store first)" );
 	}
 
 	public static void main( String args[] ) throws IOException, 
@@ -70,6 +73,10 @@ public class AdminStore
 			{
 				fsckStore( args[++i] );
 			}
+			else if ( args[i].equals( "--migrate-property-index" ) )
+			{
+				migratePropertyIndex( args[++i] );
+			}
 			else
 			{
 				usage();
@@ -160,6 +167,42 @@ public class AdminStore
 		NeoStore.createStore( fileName );
 	}
 
+	/**
+	 * Migrates the property store of an old neo store to use a property 
+	 * key index (see {@link PropertyStore#migrateToIndexStore()}). The 
+	 * store must have been shut down cleanly.
+	 * 
+	 * @param fileName the neo store file name
+	 * @throws IOException if unable to migrate the store
+	 */
+	public static void migratePropertyIndex( String fileName ) 
+		throws IOException
+	{
+		String storeName = fileName + ".propertystore.db";
+		if ( !new File( storeName ).exists() )
+		{
+			throw new IOException( "Couldn't find property store " + 
+				storeName );
+		}
+		if ( new File( storeName + ".index" ).exists() )
+		{
+			System.out.println( storeName + " already has a property index" );
+			return;
+		}
+		System.out.print( storeName );
+		PropertyStore store = new PropertyStore( storeName );
+		try
+		{
+			store.makeStoreOk();
+			int keyCount = store.migrateToIndexStore();
+			System.out.println( ".ok " + keyCount + " keys" );
+		}
+		finally
+		{
+			store.close();
+		}
+	}
+
 	public static void fsckStore( String fileName ) throws IOException
 	{
 		File neoStore = new File( fileName );
@@ -256,6 +299,55 @@ public class AdminStore
 		return relTypeSet;
 	}
 
+	private static Set checkPropertyIndexStore( String storeName ) 
+		throws IOException
+	{
+		File idGenerator = new File( storeName + ".id" );
+		if ( idGenerator.exists() )
+		{
+			idGenerator.delete();
+		}
+		Set startBlocks = checkDynamicStore( storeName + ".keys" );
+		// in_use(byte)+key_blockId(int)
+		System.out.print( storeName );
+		ByteBuffer buffer = ByteBuffer.allocate( 5 );
+		FileChannel fileChannel = 
+			new RandomAccessFile( storeName, "rw" ).getChannel();
+		fileChannel.position( 0 );
+		int i = 0;
+		Set<Integer> keyIdSet = new java.util.HashSet<Integer>();
+		while ( fileChannel.read( buffer ) == 5 )
+		{
+			buffer.flip();
+			byte inUse = buffer.get();
+			if ( inUse == RECORD_IN_USE )
+			{
+				int block = buffer.getInt();
+				if ( !startBlocks.remove( block ) )
+				{
+					throw new IOException( "start block[" + block + 
+						"] not found for record " + i );
+				}
+				keyIdSet.add( i );
+			}
+			else if ( inUse != RECORD_NOT_IN_USE )
+			{
+				break;
+			}
+			i++;
+			buffer.clear();
+		}
+		if ( !startBlocks.isEmpty() )
+		{
+			System.out.println( "Stray key blocks found " +
+				startBlocks.size() );
+		}
+		fileChannel.truncate( i * 5 );
+		fileChannel.close();
+		System.out.println( ".ok" );
+		return keyIdSet;
+	}
+
 	private static Set checkPropertyStore( String storeName ) 
 		throws IOException
 	{
@@ -272,6 +364,11 @@ public class AdminStore
 		}
 		Set stringStartBlocks = checkDynamicStore( storeName + ".strings" );
 		Set keyStartBlocks = checkDynamicStore( storeName + ".keys" );
+		Set keyIdSet = null;
+		if ( new File( storeName + ".index" ).exists() )
+		{
+			keyIdSet = checkPropertyIndexStore( storeName + ".index" );
+		}
 		// in_use(byte)+type(int)+key_blockId(int)+prop_blockId(long)+
 		// prev_prop_id(int)+next_prop_id(int)
 		int recordSize = 25;
@@ -353,12 +450,20 @@ public class AdminStore
 							previous + ",(next don't match)] at record " + i );
 					}
 				}
-				if ( type < 1 || type > 6 )
+				if ( type < 1 || type > 11 )
 				{
 					throw new IOException( "Bad property type[" + type + 
 						"] at record " + i );
 				}
-				if ( !keyStartBlocks.remove( key ) )
+				if ( keyIdSet != null )
+				{
+					if ( !keyIdSet.contains( key ) )
+					{
+						throw new IOException( "key id[" + key + 
+							"] not found for record " + i );
+					}
+				}
+				else if ( !keyStartBlocks.remove( key ) )
 				{
 					throw new IOException( "key start block[" + key + 
 						"] not found for record " + i );
@@ -10,6 +10,8 @@ import org.neo4j.impl.nioneo.store.DynamicRecord;
 import org.neo4j.impl.nioneo.store.NeoStore;
 import org.neo4j.impl.nioneo.store.NodeRecord;
 import org.neo4j.impl.nioneo.store.NodeStore;
+import org.neo4j.impl.nioneo.store.PropertyIndexRecord;
+import org.neo4j.impl.nioneo.store.PropertyIndexStore;
 import org.neo4j.impl.nioneo.store.PropertyRecord;
 import org.neo4j.impl.nioneo.store.PropertyStore;
 import org.neo4j.impl.nioneo.store.PropertyType;
@@ -103,10 +105,38 @@ abstract class Command extends XaCommand
 		return record;
 	}
 
+	// store part of the record keys returned by getRecordKeys
+	private static final long NODE_STORE = 1;
+	private static final long REL_STORE = 2;
+	private static final long PROP_STORE = 3;
+	private static final long PROP_KEY_STORE = 4;
+	private static final long STRING_STORE = 5;
+	private static final long ARRAY_STORE = 6;
+	private static final long REL_TYPE_STORE = 7;
+	private static final long REL_TYPE_NAME_STORE = 8;
+	private static final long PROP_INDEX_STORE = 9;
+	private static final long PROP_INDEX_KEY_STORE = 10;
+	
+	static long recordKey( long store, int id )
+	{
+		return ( store << 32 ) | ( id & 0xFFFFFFFFL );
+	}
+	
+	static int addDynamicRecordKeys( long keys[], int index, long store, 
+		Collection<DynamicRecord> records )
+	{
+		for ( DynamicRecord record : records )
+		{
+			keys[index++] = recordKey( store, record.getId() );
+		}
+		return index;
+	}
+
 	private static final byte NODE_COMMAND = (byte) 1;
 	private static final byte PROP_COMMAND = (byte) 2;
 	private static final byte REL_COMMAND = (byte) 3;
 	private static final byte REL_TYPE_COMMAND = (byte) 4;
+	private static final byte PROP_INDEX_COMMAND = (byte) 5;
 	
 	static class NodeCommand extends Command
 	{
@@ -141,6 +171,12 @@ abstract class Command extends XaCommand
 		{
 			return "NodeCommand[" + record + "]";
 		}
+		
+		@Override
+		public long[] getRecordKeys()
+		{
+			return new long[] { recordKey( NODE_STORE, record.getId() ) };
+		}
 
 		@Override
 		public void writeToFile( FileChannel fileChannel, ByteBuffer buffer ) 
@@ -239,6 +275,12 @@ abstract class Command extends XaCommand
 		{
 			return "RelationshipCommand[" + record + "]";
 		}
+		
+		@Override
+		public long[] getRecordKeys()
+		{
+			return new long[] { recordKey( REL_STORE, record.getId() ) };
+		}
 
 		@Override
 		public void writeToFile( FileChannel fileChannel, ByteBuffer buffer ) 
@@ -349,6 +391,22 @@ abstract class Command extends XaCommand
 		{
 			return "PropertyCommand[" + record + "]";
 		}
+		
+		@Override
+		public long[] getRecordKeys()
+		{
+			Collection<DynamicRecord> keyRecords = record.getKeyRecords();
+			Collection<DynamicRecord> valueRecords = record.getValueRecords();
+			long keys[] = 
+				new long[ 1 + keyRecords.size() + valueRecords.size() ];
+			keys[0] = recordKey( PROP_STORE, record.getId() );
+			int index = addDynamicRecordKeys( keys, 1, PROP_KEY_STORE, 
+				keyRecords );
+			long valueStore = record.getType() == PropertyType.ARRAY ? 
+				ARRAY_STORE : STRING_STORE;
+			addDynamicRecordKeys( keys, index, valueStore, valueRecords );
+			return keys;
+		}
 
 		@Override
 		public void writeToFile( FileChannel fileChannel, ByteBuffer buffer ) 
@@ -449,6 +507,8 @@ abstract class Command extends XaCommand
 			case 7: return PropertyType.BYTE;
 			case 8: return PropertyType.CHAR;
 			case 9: return PropertyType.ARRAY;
+			case 10: return PropertyType.SHORT_STRING;
+			case 11: return PropertyType.SHORT_ARRAY;
 			}
 			throw new RuntimeException( "Unkown property type:" + type );
 		}
@@ -511,6 +571,16 @@ abstract class Command extends XaCommand
 		{
 			return "RelationshipTypeCommand[" + record + "]";
 		}
+		
+		@Override
+		public long[] getRecordKeys()
+		{
+			Collection<DynamicRecord> typeRecords = record.getTypeRecords();
+			long keys[] = new long[ 1 + typeRecords.size() ];
+			keys[0] = recordKey( REL_TYPE_STORE, record.getId() );
+			addDynamicRecordKeys( keys, 1, REL_TYPE_NAME_STORE, typeRecords );
+			return keys;
+		}
 
 		@Override
 		public void writeToFile( FileChannel fileChannel, ByteBuffer buffer ) 
@@ -596,6 +666,136 @@ abstract class Command extends XaCommand
 		}
 	}
 	
+	static class PropertyIndexCommand extends Command
+	{
+		private PropertyIndexRecord record;
+		private PropertyIndexStore store;
+		
+		PropertyIndexCommand( PropertyIndexStore store, 
+				PropertyIndexRecord record )
+		{
+			super( record.getId() );
+			this.record = record;
+			this.store = store;
+		}
+
+		@Override
+		public void execute()
+		{
+			if ( isInRecoveryMode() )
+			{
+				logger.fine( this.toString() );
+			}
+			try
+			{
+				store.updateRecord( record );
+			}
+			catch ( IOException e )
+			{
+				throw new RuntimeException( e );
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return "PropertyIndexCommand[" + record + "]";
+		}
+		
+		@Override
+		public long[] getRecordKeys()
+		{
+			Collection<DynamicRecord> keyRecords = record.getKeyRecords();
+			long keys[] = new long[ 1 + keyRecords.size() ];
+			keys[0] = recordKey( PROP_INDEX_STORE, record.getId() );
+			addDynamicRecordKeys( keys, 1, PROP_INDEX_KEY_STORE, keyRecords );
+			return keys;
+		}
+
+		@Override
+		public void writeToFile( FileChannel fileChannel, ByteBuffer buffer ) 
+			throws IOException
+		{
+			// id+in_use(byte)+key_blockId(int)+nr_key_records(int)
+			buffer.clear();
+			byte inUse = record.inUse() ? 
+				Record.IN_USE.byteValue() : Record.NOT_IN_USE.byteValue();
+			buffer.put( PROP_INDEX_COMMAND );
+			buffer.putInt( record.getId() ).put( inUse ).putInt( 
+				record.getKeyBlock() );
+			Collection<DynamicRecord> keyRecords = record.getKeyRecords();
+			buffer.putInt( keyRecords.size() );
+			buffer.flip();
+			fileChannel.write( buffer );
+			for ( DynamicRecord keyRecord : keyRecords )
+			{
+				writeDynamicRecord( keyRecord, fileChannel, buffer );
+			}
+		}
+		
+		static Command readCommand( NeoStore neoStore, FileChannel fileChannel, 
+			ByteBuffer buffer ) throws IOException
+		{
+			// id+in_use(byte)+key_blockId(int)+nr_key_records(int)
+			buffer.clear(); buffer.limit( 13 );
+			if ( fileChannel.read( buffer ) != buffer.limit() )
+			{
+				return null;
+			}
+			buffer.flip();
+			int id = buffer.getInt();
+			byte inUseFlag = buffer.get();
+			boolean inUse = false;
+			if ( ( inUseFlag & Record.IN_USE.byteValue() ) == 
+				Record.IN_USE.byteValue() )
+			{
+				inUse = true;
+			}
+			else if ( inUseFlag != Record.NOT_IN_USE.byteValue() )
+			{
+				throw new IOException( "Illegal in use flag: " + inUseFlag );
+			}
+			PropertyIndexRecord record = new PropertyIndexRecord( id );
+			record.setInUse( inUse );
+			record.setKeyBlock( buffer.getInt() );
+			int nrKeyRecords = buffer.getInt();
+			for ( int i = 0; i < nrKeyRecords; i++ )
+			{
+				DynamicRecord dr = readDynamicRecord( fileChannel, buffer );
+				if ( dr == null )
+				{
+					return null;
+				}
+				record.addKeyRecord( dr );
+			}
+			return new PropertyIndexCommand( 
+				neoStore.getPropertyStore().getIndexStore(), record );
+		}
+
+		@Override
+		public boolean equals( Object o )
+		{
+			if ( !( o instanceof PropertyIndexCommand ) )
+			{
+				return false;
+			}
+			return getKey().equals( ( 
+				( PropertyIndexCommand ) o ).getKey() );
+		}
+	
+		private volatile int hashCode = 0;
+
+		@Override
+		public int hashCode()
+		{
+			if ( hashCode == 0 )
+			{
+				hashCode = 3217 * record.getId();
+			}
+			return hashCode;
+		}
+	}
+	
 	static Command readCommand( NeoStore neoStore, FileChannel fileChannel, 
 			ByteBuffer buffer ) throws IOException
 	{
@@ -616,6 +816,8 @@ abstract class Command extends XaCommand
 				neoStore, fileChannel, buffer );
 			case REL_TYPE_COMMAND: return RelationshipTypeCommand.readCommand( 
 				neoStore, fileChannel, buffer );
+			case PROP_INDEX_COMMAND: return PropertyIndexCommand.readCommand( 
+				neoStore, fileChannel, buffer );
 			default:
 				throw new IOException( "Unkown command type[" + 
 					commandType + "]" );
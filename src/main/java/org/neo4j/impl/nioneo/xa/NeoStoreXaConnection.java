@@ -193,6 +193,20 @@ public class NeoStoreXaConnection extends XaConnectionHelpImpl
 			return nodeStore.loadLightNode( nodeId );
 		}
 		
+		public boolean[] loadLightNodes( int nodeIds[] ) throws IOException 
+		{
+			validate();
+			boolean inUse[] = nodeStore.loadLightNodes( nodeIds );
+			for ( int i = 0; i < nodeIds.length; i++ )
+			{
+				if ( xaCon.getNeoTransaction().nodeCreated( nodeIds[i] ) )
+				{
+					inUse[i] = true;
+				}
+			}
+			return inUse;
+		}
+		
 		// checks for created/deleted in tx else from store
 		public boolean checkNode( int nodeId ) throws IOException
 		{
@@ -236,6 +250,18 @@ public class NeoStoreXaConnection extends XaConnectionHelpImpl
 		}
 		
 		public PropertyData[] getProperties( int nodeId ) throws IOException
+		{
+			return getProperties( nodeId, false );
+		}
+		
+		public PropertyData[] getPropertiesWithValues( int nodeId ) 
+			throws IOException
+		{
+			return getProperties( nodeId, true );
+		}
+		
+		private PropertyData[] getProperties( int nodeId, 
+			boolean loadValues ) throws IOException
 		{
 			validate();
 			if ( xaCon.getNeoTransaction().nodeDeleted( nodeId ) ||
@@ -245,7 +271,8 @@ public class NeoStoreXaConnection extends XaConnectionHelpImpl
 				// for now asume everything in memory
 				return new PropertyData[0];
 			}
-			PropertyData[] propertyData = nodeStore.getProperties( nodeId );
+			PropertyData[] propertyData = 
+				nodeStore.getProperties( nodeId, loadValues );
 			List<PropertyData> propertyDataList = 
 				new ArrayList<PropertyData>();
 			for ( int i = 0; i < propertyData.length; i++ )
@@ -417,6 +444,22 @@ public class NeoStoreXaConnection extends XaConnectionHelpImpl
 			return relStore.getRelationship( id );
 		}
 		
+		public RelationshipData[] getRelationships( int ids[] ) 
+			throws IOException
+		{
+			validate();
+			RelationshipData relData[] = relStore.getRelationships( ids );
+			for ( int i = 0; i < ids.length; i++ )
+			{
+				if ( xaCon.getNeoTransaction().relationshipCreated( ids[i] ) )
+				{
+					relData[i] = xaCon.getNeoTransaction().
+						getCreatedRelationship( ids[i] );
+				}
+			}
+			return relData;
+		}
+		
 		public int nextId() throws IOException
 		{
 			return relStore.nextId();
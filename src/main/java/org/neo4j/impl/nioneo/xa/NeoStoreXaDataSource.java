@@ -46,6 +46,10 @@ public class NeoStoreXaDataSource extends XaDataSource
 	private XaContainer xaContainer = null;
 	private HashMap<Class,Store> idGenerators = null;
 	
+	// defaults for logical log checkpoints
+	private static final long DEFAULT_CHECKPOINT_INTERVAL = 5 * 60 * 1000;
+	private static final long DEFAULT_ROTATION_THRESHOLD = 25 * 1024 * 1024;
+	
 
 	/**
 	 * Creates a <CODE>NeoStoreXaDataSource</CODE> using configuration from
@@ -55,6 +59,12 @@ public class NeoStoreXaDataSource extends XaDataSource
 	 * exist in the config file and in the map passed into this constructor
 	 * will take the value from the map.
 	 * <p>
+	 * The logical log is checkpointed in the background every 
+	 * <CODE>checkpoint_interval</CODE> milliseconds (default 5 minutes) or 
+	 * when it grows larger than <CODE>logical_log_rotation_threshold</CODE> 
+	 * bytes (default 25M, "k" and "M" suffixes allowed). Set either 
+	 * parameter to <CODE>0</CODE> to turn that trigger off.
+	 * <p>
 	 * If <CODE>config</CODE> parameter is set but file doesn't exist an 
 	 * <CODE>IOException</CODE> is thrown. If any problem is found with 
 	 * that configuration file or Neo store can't be loaded an 
@@ -119,6 +129,11 @@ public class NeoStoreXaDataSource extends XaDataSource
 			logger.info(  
 				"Waiting for TM to take care of recovered transactions." );
 		}
+		xaContainer.startCheckpointer( 
+			getLongConfig( config, "checkpoint_interval", 
+				DEFAULT_CHECKPOINT_INTERVAL ), 
+			getLongConfig( config, "logical_log_rotation_threshold", 
+				DEFAULT_ROTATION_THRESHOLD ) );
 		idGenerators = new HashMap<Class,Store>();
 		this.idGenerators.put( Node.class, neoStore.getNodeStore() );
 		this.idGenerators.put( Relationship.class, 
@@ -130,6 +145,37 @@ public class NeoStoreXaDataSource extends XaDataSource
 				neoStore.getPropertyStore() ); 
 	}
 
+	private long getLongConfig( Properties config, String key, 
+		long defaultValue )
+	{
+		String value = config.getProperty( key );
+		if ( value == null )
+		{
+			return defaultValue;
+		}
+		long multiplier = 1;
+		if ( value.endsWith( "M" ) )
+		{
+			multiplier = 1024*1024;
+			value = value.substring( 0, value.length() - 1 );
+		}
+		else if ( value.endsWith( "k" ) )
+		{
+			multiplier = 1024;
+			value = value.substring( 0, value.length() - 1 );
+		}
+		try
+		{
+			return Long.parseLong( value ) * multiplier;
+		}
+		catch ( NumberFormatException e )
+		{
+			logger.info( "Unable to parse " + key + "[" + value + 
+				"], using default " + defaultValue );
+			return defaultValue;
+		}
+	}
+
 	private void autoCreatePath( String store ) throws IOException
 	{
 		String dirs = store.substring( 0, store.lastIndexOf( '/' ) );
@@ -170,6 +216,8 @@ public class NeoStoreXaDataSource extends XaDataSource
 			logger.info( 
 				"Waiting for TM to take care of recovered transactions." );
 		}
+		xaContainer.startCheckpointer( DEFAULT_CHECKPOINT_INTERVAL, 
+			DEFAULT_ROTATION_THRESHOLD );
 		idGenerators = new HashMap<Class,Store>();
 		this.idGenerators.put( Node.class, neoStore.getNodeStore() );
 		this.idGenerators.put( Relationship.class, 
@@ -255,6 +303,11 @@ public class NeoStoreXaDataSource extends XaDataSource
 				throw new RuntimeException( "Unable to make stores ok", e );
 			}
 		}
+		
+		public void flushAll() throws IOException
+		{
+			neoStore.flushAll();
+		}
 	}
 
 	public int nextId( Class clazz )
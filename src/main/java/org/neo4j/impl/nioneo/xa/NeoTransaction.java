@@ -74,6 +74,8 @@ class NeoTransaction extends XaTransaction
 		new ArrayList<Command.RelationshipCommand>();
 	private ArrayList<Command.RelationshipTypeCommand> relTypeCommands = 
 		new ArrayList<Command.RelationshipTypeCommand>();
+	private ArrayList<Command.PropertyIndexCommand> propIndexCommands = 
+		new ArrayList<Command.PropertyIndexCommand>();
 	
 	private NeoStore neoStore;
 	private boolean committed = false;
@@ -90,7 +92,8 @@ class NeoTransaction extends XaTransaction
 		if ( isRecovered() )
 		{
 			if ( nodeCommands.size() == 0 && propCommands.size() == 0 && 
-				relCommands.size() == 0 && relTypeCommands.size() == 0 )
+				relCommands.size() == 0 && relTypeCommands.size() == 0 && 
+				propIndexCommands.size() == 0 )
 			{
 				return true;
 			}
@@ -484,6 +487,11 @@ class NeoTransaction extends XaTransaction
 			relTypeCommands.add( 
 				( Command.RelationshipTypeCommand ) xaCommand );
 		}
+		else if ( xaCommand instanceof Command.PropertyIndexCommand )
+		{
+			propIndexCommands.add( 
+				( Command.PropertyIndexCommand ) xaCommand );
+		}
 		else
 		{
 			throw new RuntimeException( "Unkown command " + xaCommand );
@@ -577,6 +585,7 @@ class NeoTransaction extends XaTransaction
 				getIdentifier() + "]" );
 		}
 		TxInfoManager.getManager().registerMode( isRecovered() );
+		Throwable failure = null;
 		try
 		{
 			committed = true;
@@ -587,6 +596,13 @@ class NeoTransaction extends XaTransaction
 			{
 				command.execute();
 			}
+			// property keys, only recovered from logs written before keys 
+			// were created outside of transactions
+			java.util.Collections.sort( propIndexCommands, sorter );
+			for ( Command.PropertyIndexCommand command : propIndexCommands )
+			{
+				command.execute();
+			}
 			// nodes
 			java.util.Collections.sort( nodeCommands, sorter );
 			for ( Command.NodeCommand command : nodeCommands )
@@ -608,14 +624,36 @@ class NeoTransaction extends XaTransaction
 		}
 		catch ( Throwable t )
 		{
-			logger.log( Level.SEVERE, "Unable to commit tx[" + 
-				getIdentifier() + "]", t );
-			throw new XAException( "Unable to commit" + t );
+			failure = t;
+		}
+		try
+		{
+			// records not memory mapped are written together, also when a
+			// command failed so no rows of this transaction stay pending
+			neoStore.writeOutRows( getIdentifier() );
+		}
+		catch ( Throwable t )
+		{
+			if ( failure == null )
+			{
+				failure = t;
+			}
+			else
+			{
+				logger.log( Level.SEVERE, "Unable to write out tx[" + 
+					getIdentifier() + "]", t );
+			}
 		}
 		finally
 		{
 			TxInfoManager.getManager().unregisterMode();
 		}
+		if ( failure != null )
+		{
+			logger.log( Level.SEVERE, "Unable to commit tx[" + 
+				getIdentifier() + "]", failure );
+			throw new XAException( "Unable to commit" + failure );
+		}
 	}
 	
 	private RelationshipTypeStore getRelationshipTypeStore()
@@ -949,6 +987,21 @@ class NeoTransaction extends XaTransaction
 		}
 	}
 
+	// a value in a dynamic store keeps its type since the freed value 
+	// records are written to the store given by the type of the record
+	private void setChangedType( PropertyRecord propertyRecord, Object value )
+	{
+		PropertyType type = propertyRecord.getType();
+		if ( type == PropertyType.STRING || type == PropertyType.ARRAY )
+		{
+			propertyRecord.clearValueRecords();
+		}
+		else
+		{
+			propertyRecord.setType( getPropertyStore().getType( value ) );
+		}
+	}
+
 	private void relChangeProperty( int propertyId, Object value )
 		throws IOException
 	{
@@ -958,11 +1011,7 @@ class NeoTransaction extends XaTransaction
 			propertyRecord = getPropertyStore().getRecord( propertyId );
 			addPropertyRecord( propertyRecord );
 		}
-		// TODO:
-		if ( propertyRecord.getType() == PropertyType.STRING )
-		{
-			propertyRecord.clearValueRecords();
-		}
+		setChangedType( propertyRecord, value );
 		getPropertyStore().encodeValue( propertyRecord, value );
 		addPropertyRecord( propertyRecord );
 	}
@@ -976,15 +1025,37 @@ class NeoTransaction extends XaTransaction
 			propertyRecord = getPropertyStore().getRecord( propertyId );
 			addPropertyRecord( propertyRecord );
 		}
-		// TODO:
-		if ( propertyRecord.getType() == PropertyType.STRING )
-		{
-			propertyRecord.clearValueRecords();
-		}
+		setChangedType( propertyRecord, value );
 		getPropertyStore().encodeValue( propertyRecord, value );
 		addPropertyRecord( propertyRecord );
 	}
 
+	private void setPropertyKey( PropertyRecord propertyRecord, String key ) 
+		throws IOException
+	{
+		if ( getPropertyStore().getIndexStore() != null )
+		{
+			propertyRecord.setKeyBlock( getPropertyIndex( key ) );
+			return;
+		}
+		int keyBlockId = getPropertyStore().nextKeyBlockId();
+		propertyRecord.setKeyBlock( keyBlockId );
+		Collection<DynamicRecord> keyRecords = 
+			getPropertyStore().allocateKeyRecords( keyBlockId, 
+				key.getBytes() );
+		for ( DynamicRecord keyRecord : keyRecords )
+		{
+			propertyRecord.addKeyRecord( keyRecord );
+		}
+	}
+	
+	// returns the key id, a new key is created in the index store right 
+	// away and isn't rolled back with this tx
+	private int getPropertyIndex( String key ) throws IOException
+	{
+		return getPropertyStore().getIndexStore().createKey( key );
+	}
+
 	private void relAddProperty( int relId, int propertyId, String key, 
 		Object value ) throws IOException
 	{
@@ -1015,15 +1086,7 @@ class NeoTransaction extends XaTransaction
 			prevProp.setPrevProp( propertyId );
 			propertyRecord.setNextProp( prevProp.getId() );
 		}
-		int keyBlockId = getPropertyStore().nextKeyBlockId();
-		propertyRecord.setKeyBlock( keyBlockId );
-		Collection<DynamicRecord> keyRecords = 
-			getPropertyStore().allocateKeyRecords( keyBlockId, 
-				key.getBytes() );
-		for ( DynamicRecord keyRecord : keyRecords )
-		{
-			propertyRecord.addKeyRecord( keyRecord );
-		}
+		setPropertyKey( propertyRecord, key );
 		getPropertyStore().encodeValue( propertyRecord, value );
 		relRecord.setNextProp( propertyId );
 		addPropertyRecord( propertyRecord );
@@ -1059,15 +1122,7 @@ class NeoTransaction extends XaTransaction
 			prevProp.setPrevProp( propertyId );
 			propertyRecord.setNextProp( prevProp.getId() );
 		}
-		int keyBlockId = getPropertyStore().nextKeyBlockId();
-		propertyRecord.setKeyBlock( keyBlockId );
-		Collection<DynamicRecord> keyRecords = 
-			getPropertyStore().allocateKeyRecords( keyBlockId, 
-				key.getBytes() );
-		for ( DynamicRecord keyRecord : keyRecords )
-		{
-			propertyRecord.addKeyRecord( keyRecord );
-		}
+		setPropertyKey( propertyRecord, key );
 		getPropertyStore().encodeValue( propertyRecord, value );
 		nodeRecord.setNextProp( propertyId );
 		addPropertyRecord( propertyRecord );
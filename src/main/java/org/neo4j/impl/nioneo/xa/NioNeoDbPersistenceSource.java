@@ -170,6 +170,23 @@ public class NioNeoDbPersistenceSource implements PersistenceSource
 					return properties;
 					
 				}
+				else if ( operation == 
+					PersistenceManager.LOAD_FULL_NODE_PROPERTIES )
+				{
+					int id = (int) ( ( Node ) param ).getId();
+					PropertyData propData[] = 
+						nodeConsumer.getPropertiesWithValues( id );
+					RawPropertyData properties[] = 
+						new RawPropertyData[ propData.length ];
+					for ( int i = 0; i < propData.length; i++ )
+					{
+						properties[i] = new RawPropertyData(
+							propData[i].getId(), 
+							propData[i].getKey(), 
+							propData[i].getValue() );
+					}
+					return properties;
+				}
 				else if ( operation == PersistenceManager.LOAD_RELATIONSHIPS )
 				{
 					int id = (int) ( ( Node ) param ).getId();
@@ -187,6 +204,29 @@ public class NioNeoDbPersistenceSource implements PersistenceSource
 					}
 					return relationships;
 				}
+				else if ( operation == PersistenceManager.LOAD_LIGHT_NODES )
+				{
+					return nodeConsumer.loadLightNodes( ( int[] ) param );
+				}
+				else if ( operation == PersistenceManager.LOAD_LIGHT_RELS )
+				{
+					int ids[] = ( int[] ) param;
+					RelationshipData relData[] = 
+						relConsumer.getRelationships( ids );
+					RawRelationshipData relationships[] = 
+						new RawRelationshipData[ relData.length ];
+					for ( int i = 0; i < relData.length; i++ )
+					{
+						if ( relData[i] != null )
+						{
+							relationships[i] = new RawRelationshipData( 
+								ids[i], relData[i].firstNode(), 
+								relData[i].secondNode(), 
+								relData[i].relationshipType() );
+						}
+					}
+					return relationships;
+				}
 				else if ( operation == PersistenceManager.LOAD_LIGHT_REL )
 				{
 					int id = ( ( Integer ) param ).intValue();
@@ -37,6 +37,16 @@ public interface NodeEventConsumer
 	 * @throws IOException If unable to check for node 
 	 */
 	public boolean loadLightNode( int nodeId ) throws IOException;
+	
+	/**
+	 * Checks if the nodes exist, see {@link #loadLightNode(int)}. The ids 
+	 * should be sorted by store position.
+	 * 
+	 * @param nodeIds The ids of the nodes in ascending order
+	 * @return True at the index of each node that exists
+	 * @throws IOException If unable to check for the nodes
+	 */
+	public boolean[] loadLightNodes( int nodeIds[] ) throws IOException;
 
 	/**
 	 * Adds a property to the node.
@@ -79,6 +89,17 @@ public interface NodeEventConsumer
 	 */
 	public PropertyData[] getProperties( int nodeId ) throws IOException;
 	
+	/**
+	 * Returns all properties connected to a node with their values loaded 
+	 * in the same pass over the property chain.
+	 * 
+	 * @param nodeId The id of the node
+	 * @return An array containing all properties connected to the node 
+	 * @throws IOException If unable to get the properties
+	 */
+	public PropertyData[] getPropertiesWithValues( int nodeId ) 
+		throws IOException;
+	
 	/**
 	 * Returns all relationships connected to the node.
 	 * 
@@ -82,5 +82,17 @@ public interface RelationshipEventConsumer
 	 * @throws IOException if unable to get the relationship
 	 */
 	public RelationshipData getRelationship( int id ) throws IOException;
+	
+	/**
+	 * Gets the relationships with the given ids. The ids should be sorted 
+	 * by store position.
+	 * 
+	 * @param ids The ids of the relationships in ascending order
+	 * @return The relationship data at the index of each id, 
+	 * <CODE>null</CODE> if not found
+	 * @throws IOException if unable to get the relationships
+	 */
+	public RelationshipData[] getRelationships( int ids[] ) 
+		throws IOException;
 
 }
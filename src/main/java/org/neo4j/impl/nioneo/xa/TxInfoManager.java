@@ -2,8 +2,8 @@ package org.neo4j.impl.nioneo.xa;
 
 import org.neo4j.impl.transaction.xaframework.XaLogicalLog;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Holds information about the current transaction such as recovery mode
@@ -13,7 +13,9 @@ public class TxInfoManager
 {
 	private static TxInfoManager txManager = new TxInfoManager();
 	
-	private Map<Thread,Boolean> txMode = new HashMap<Thread,Boolean>();
+	// recovered transactions may be committed by several threads at once
+	private Map<Thread,Boolean> txMode = 
+		new ConcurrentHashMap<Thread,Boolean>();
 	
 	public static TxInfoManager getManager()
 	{
@@ -33,9 +33,15 @@ public class PersistenceManager
 	public static final Operation LOAD_LIGHT_NODE = 
 											new Operation( "LOAD_LIGHT_NODE");
 
+	public static final Operation LOAD_LIGHT_NODES = 
+		new Operation( "LOAD_LIGHT_NODES" );
+	
 	public static final Operation LOAD_NODE_PROPERTIES = 
 		new Operation( "LOAD_NODE_PROPERTIES" );
 		
+	public static final Operation LOAD_FULL_NODE_PROPERTIES = 
+		new Operation( "LOAD_FULL_NODE_PROPERTIES" );
+		
 	public static final Operation LOAD_REL_PROPERTIES = 
 		new Operation( "LOAD_REL_PROPERTIES" );
 		
@@ -50,6 +56,9 @@ public class PersistenceManager
 	public static final Operation LOAD_LIGHT_REL =  
 											new Operation( "LOAD_LIGHT_REL" );
 		
+	public static final Operation LOAD_LIGHT_RELS =  
+		new Operation( "LOAD_LIGHT_RELS" );
+	
 	/** A constant representing a persistence operation that loads all 
 	 * {@link #loadAllRelationshipTypes relationship types} from
 	 * persistent storage. */
@@ -89,6 +98,20 @@ public class PersistenceManager
 			id );
 	}
 	
+	/**
+	 * Checks which of the nodes in <CODE>ids</CODE> exist in one operation. 
+	 * The ids should be sorted by store position.
+	 * 
+	 * @param ids the node ids in ascending order
+	 * @return <CODE>true</CODE> at the index of each node that exist
+	 * @throws PersistenceException if unable to load the nodes
+	 */
+	public boolean[] loadLightNodes( int ids[] ) throws PersistenceException
+	{
+		return (boolean[]) getResource().performOperation( LOAD_LIGHT_NODES, 
+			ids );
+	}
+	
 	public Object loadPropertyValue( int id )
 		throws PersistenceException
 	{
@@ -109,6 +132,21 @@ public class PersistenceManager
 			LOAD_NODE_PROPERTIES, node );
 	}
 	
+	/**
+	 * Loads all properties of <CODE>node</CODE> with their values, unlike 
+	 * {@link #loadProperties(Node)} that only loads the keys.
+	 * 
+	 * @param node the node
+	 * @return the properties of the node with values
+	 * @throws PersistenceException if unable to load the properties
+	 */
+	public RawPropertyData[] loadFullProperties( Node node )
+		throws PersistenceException
+	{
+		return ( RawPropertyData[] ) getResource().performOperation( 
+			LOAD_FULL_NODE_PROPERTIES, node );
+	}
+	
 	public RawPropertyData[] loadProperties( Relationship relationship )
 		throws PersistenceException
 	{
@@ -123,6 +161,22 @@ public class PersistenceManager
 			LOAD_LIGHT_REL, id );
 	}
 	
+	/**
+	 * Loads the relationships in <CODE>ids</CODE> in one operation. The ids 
+	 * should be sorted by store position.
+	 * 
+	 * @param ids the relationship ids in ascending order
+	 * @return the relationship data at the index of each id, 
+	 * <CODE>null</CODE> if not found
+	 * @throws PersistenceException if unable to load the relationships
+	 */
+	public RawRelationshipData[] loadLightRelationships( int ids[] )
+		throws PersistenceException
+	{
+		return (RawRelationshipData[]) getResource().performOperation( 
+			LOAD_LIGHT_RELS, ids );
+	}
+	
 	public RawRelationshipTypeData[] loadAllRelationshipTypes()
 		throws PersistenceException
 	{
@@ -34,7 +34,8 @@ public class NeoShellServer extends SimpleAppServer
 		return
 			"Welcome to NeoShell\n" +
 			"Available commands: " +
-			"cd env exit export gsh ls man mkrel mv pwd rm rmrel set quit\n" +
+			"cd env exit export gsh ls man mkrel mv pwd rm rmrel set trav " +
+			"quit\n" +
 			"Use man <command> for info about each command.";
 	}
 	
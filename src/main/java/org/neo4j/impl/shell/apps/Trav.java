@@ -0,0 +1,100 @@
+package org.neo4j.impl.shell.apps;
+
+import java.rmi.RemoteException;
+import org.neo4j.api.core.Direction;
+import org.neo4j.api.core.Node;
+import org.neo4j.api.core.RelationshipType;
+import org.neo4j.api.core.ReturnableEvaluator;
+import org.neo4j.api.core.StopEvaluator;
+import org.neo4j.api.core.Traverser.Order;
+import org.neo4j.impl.shell.NeoApp;
+import org.neo4j.impl.traversal.InstrumentedTraverser;
+import org.neo4j.impl.traversal.TraverserFactory;
+import org.neo4j.util.shell.AppCommandParser;
+import org.neo4j.util.shell.OptionValueType;
+import org.neo4j.util.shell.Output;
+import org.neo4j.util.shell.Session;
+import org.neo4j.util.shell.ShellException;
+
+public class Trav extends NeoApp
+{
+	private static final int DEFAULT_MAX_DEPTH = 3;
+	
+	public Trav()
+	{
+		this.addValueType( "t", new OptionContext( OptionValueType.MUST,
+			"The relationship types to traverse, comma separated" ) );
+		this.addValueType( "d", new OptionContext( OptionValueType.MUST,
+			"The direction: " + this.directionAlternatives() + 
+			" or BOTH (default)" ) );
+		this.addValueType( "m", new OptionContext( OptionValueType.MUST,
+			"Max depth, default is " + DEFAULT_MAX_DEPTH ) );
+		this.addValueType( "f", new OptionContext( OptionValueType.NONE,
+			"Depth first, default is breadth first" ) );
+	}
+	
+	@Override
+	public String getDescription()
+	{
+		return "Traverses from the current node and prints the number of " +
+			"nodes visited, relationships expanded, duplicates rejected, " +
+			"cache hits/misses and evaluator time per depth";
+	}
+	
+	@Override
+	protected String exec( AppCommandParser parser, Session session, Output out )
+		throws ShellException, RemoteException
+	{
+		String typeNames = parser.options().get( "t" );
+		if ( typeNames == null )
+		{
+			throw new ShellException( "Must supply relationship types " +
+				"(-t <type1,type2>)" );
+		}
+		String[] names = typeNames.split( "," );
+		Direction direction = this.getDirection( parser.options().get( "d" ),
+			Direction.BOTH );
+		RelationshipType[] types = new RelationshipType[ names.length ];
+		Direction[] directions = new Direction[ names.length ];
+		for ( int i = 0; i < names.length; i++ )
+		{
+			types[i] = this.getRelationshipType( names[i].trim() );
+			directions[i] = direction;
+		}
+		int maxDepth = DEFAULT_MAX_DEPTH;
+		String maxDepthString = parser.options().get( "m" );
+		if ( maxDepthString != null )
+		{
+			try
+			{
+				maxDepth = Integer.parseInt( maxDepthString );
+			}
+			catch ( NumberFormatException e )
+			{
+				maxDepth = -1;
+			}
+			if ( maxDepth < 0 )
+			{
+				throw new ShellException( "Invalid max depth '" + 
+					maxDepthString + "', must be a number >= 0 (-m <depth>)" );
+			}
+		}
+		Order order = parser.options().containsKey( "f" ) ? 
+			Order.DEPTH_FIRST : Order.BREADTH_FIRST;
+		
+		Node node = this.getCurrentNode( session );
+		long start = System.currentTimeMillis();
+		InstrumentedTraverser traverser = TraverserFactory.getFactory().
+			createInstrumentedTraverser( order, node, types, directions,
+			StopEvaluator.END_OF_NETWORK, ReturnableEvaluator.ALL, maxDepth );
+		int count = 0;
+		for ( Node traversedNode : traverser )
+		{
+			count++;
+		}
+		long time = System.currentTimeMillis() - start;
+		out.println( count + " nodes returned in " + time + " ms" );
+		out.print( traverser.getStatistics().toString() );
+		return null;
+	}
+}
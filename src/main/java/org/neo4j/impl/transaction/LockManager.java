@@ -20,6 +20,9 @@ import java.util.Map;
  * <p>
  * LockManager just maps locks to resources and they do all the hard work 
  * together with a resource allocation graph.
+ * <p>
+ * If the resource is a {@link VersionedResource} its version is updated 
+ * when a write lock is acquired or released.
  */
 public class LockManager
 {
@@ -102,6 +105,11 @@ public class LockManager
 			lock.mark();
 		}
 		lock.acquireWriteLock();
+		if ( resource instanceof VersionedResource )
+		{
+			( ( VersionedResource ) resource ).getResourceVersion(
+				).writeLockAcquired();
+		}
 	}
 	
 	/**
@@ -175,7 +183,11 @@ public class LockManager
 			}
 			lock.releaseWriteLock();
 		}		
-		
+		if ( resource instanceof VersionedResource )
+		{
+			( ( VersionedResource ) resource ).getResourceVersion(
+				).writeLockReleased();
+		}
 	}
 	
 	/**
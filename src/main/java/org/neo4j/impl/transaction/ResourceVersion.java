@@ -0,0 +1,67 @@
+package org.neo4j.impl.transaction;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Keeps track of write locks held on a {@link VersionedResource} so the 
+ * resource can be read optimistically. A reader invokes 
+ * {@link #startRead} before reading and {@link #validate} after, if 
+ * validate returns <CODE>false</CODE> a write lock was held (or was acquired 
+ * during the read) and the read has to be done again holding a read lock.
+ * <p>
+ * The write lock is the one taken in {@link LockManager}. Since it is held 
+ * until the transaction commits or rolls back a reader will never validate 
+ * against uncommitted state.
+ */
+public class ResourceVersion
+{
+	private final StampedLock lock = new StampedLock();
+	private int writeHolds = 0;
+	private long writeStamp = 0;
+	
+	/**
+	 * Returns a stamp to validate a read against, <CODE>0</CODE> is 
+	 * returned if the resource is write locked.
+	 * 
+	 * @return A read stamp or 0 if write locked
+	 */
+	public long startRead()
+	{
+		return lock.tryOptimisticRead();
+	}
+	
+	/**
+	 * Returns <CODE>true</CODE> if no write lock has been held on the resource
+	 * since <CODE>stamp</CODE> was returned from {@link #startRead}.
+	 * 
+	 * @param stamp The read stamp
+	 * @return True if the read is valid
+	 */
+	public boolean validate( long stamp )
+	{
+		return stamp != 0 && lock.validate( stamp );
+	}
+	
+	// write locks are reentrant in LockManager, only the first acquire
+	// and last release changes the version
+	synchronized void writeLockAcquired()
+	{
+		if ( writeHolds++ == 0 )
+		{
+			writeStamp = lock.writeLock();
+		}
+	}
+	
+	synchronized void writeLockReleased()
+	{
+		if ( writeHolds == 0 )
+		{
+			throw new IllegalStateException( "No write lock held" );
+		}
+		if ( --writeHolds == 0 )
+		{
+			lock.unlockWrite( writeStamp );
+			writeStamp = 0;
+		}
+	}
+}
@@ -11,6 +11,15 @@ public enum TransactionIsolationLevel
 	 * untill transaction committs.
 	 */
 	READ_COMMITTED,
+	/**
+	 * Like <CODE>READ_COMMITTED</CODE> but reads of committed state already 
+	 * in memory don't take read locks. The read is validated against the 
+	 * {@link ResourceVersion} of the node or relationship instead. If a 
+	 * write lock is held, the state isn't loaded or validation fails the 
+	 * read is done again holding a read lock. Write locks are held until 
+	 * transaction committs.
+	 */
+	READ_COMMITTED_OPTIMISTIC,
 	/**
 	 * Holds both read and write locks until transaction committs.
 	 */
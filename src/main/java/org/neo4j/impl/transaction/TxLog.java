@@ -15,20 +15,36 @@ import java.util.Map;
 
 import javax.transaction.xa.Xid;
 
+import org.neo4j.impl.transaction.xaframework.GroupCommitForcer;
+
 // TODO: 	fixed sized logs (pre-initialize them)
 // 			keep dangling records in memory for log switch
-// 			batch disk forces
 /**
  * This class is made public for testing purposes only, do not use. 
  * <p>
  * The {@link TxManager} uses this class to keep a transaction log for 
  * transaction recovery.
  * <p>
+ * Disk forces of <CODE>MARK_COMMIT</CODE> records are batched between 
+ * concurrent committers using a {@link GroupCommitForcer}.
  */
 public class TxLog
 {
 	private String name = null;
 	private FileChannel fileChannel = null;
+	// held when forcing or replacing/closing the file channel
+	private final Object channelLock = new Object();
+	private final GroupCommitForcer forcer = new GroupCommitForcer( 
+		new GroupCommitForcer.Forceable()
+		{
+			public void forceLog() throws IOException
+			{
+				synchronized ( channelLock )
+				{
+					fileChannel.force( false );
+				}
+			}
+		} );
 	private ByteBuffer buffer = null;
 	// private int totalBytesWritten = 0;
 	private int recordCount = 0;
@@ -81,7 +97,10 @@ public class TxLog
 	 */
 	public void close() throws IOException
 	{
-		fileChannel.close();
+		synchronized ( channelLock )
+		{
+			fileChannel.close();
+		}
 	}
 	
 	/**
@@ -159,7 +178,13 @@ public class TxLog
 	 * @param globalId The global id of the transaction
 	 * @throws IOException If unable to write
 	 */
-	public synchronized void markAsCommitting( byte globalId[] ) 
+	public void markAsCommitting( byte globalId[] ) 
+		throws IOException
+	{
+		forcer.force( writeMarkAsCommitting( globalId ) );
+	}
+	
+	private synchronized long writeMarkAsCommitting( byte globalId[] ) 
 		throws IOException
 	{
 		if ( globalId == null )
@@ -171,8 +196,19 @@ public class TxLog
 			globalId );
 		buffer.flip();
 		fileChannel.write( buffer );
-		fileChannel.force( false );
 		recordCount++;
+		return forcer.appended();
+	}
+	
+	/**
+	 * Returns the group commit forcer used to force <CODE>MARK_COMMIT</CODE> 
+	 * records, can be used to change batch window and size.
+	 * 
+	 * @return the group commit forcer of this log
+	 */
+	public GroupCommitForcer getGroupCommitForcer()
+	{
+		return forcer;
 	}
 	
 	// tx_done(byte)|gid_length(byte)|globalId
@@ -386,6 +422,15 @@ public class TxLog
 		{
 			throw new IllegalArgumentException( "Null filename" );
 		}
+		synchronized ( channelLock )
+		{
+			doSwitchToLogFile( newFile );
+		}
+	}
+	
+	// called holding both this monitor and the channel lock
+	private void doSwitchToLogFile( String newFile ) throws IOException
+	{
 		// copy all dangling records from current log to new log
 		force();
 		Iterator<List<Record>> itr = getDanglingRecords();
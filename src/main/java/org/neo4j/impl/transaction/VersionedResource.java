@@ -0,0 +1,18 @@
+package org.neo4j.impl.transaction;
+
+/**
+ * A resource that can be read without taking a read lock. When a write 
+ * lock is acquired or released on a <CODE>VersionedResource</CODE> the 
+ * {@link LockManager} will update the resource's {@link ResourceVersion} 
+ * so readers can validate what they have read, see 
+ * {@link TransactionIsolationLevel#READ_COMMITTED_OPTIMISTIC}.
+ */
+public interface VersionedResource
+{
+	/**
+	 * Returns the version of this resource.
+	 * 
+	 * @return The resource version
+	 */
+	public ResourceVersion getResourceVersion();
+}
@@ -0,0 +1,209 @@
+package org.neo4j.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A file channel that collects writes in one large reusable direct buffer
+ * before writing them to the underlying channel. Entries and commands
+ * written to the {@link XaLogicalLog} are small so writing them directly
+ * would cost one <CODE>write</CODE> system call each, with this channel a
+ * transaction with thousands of commands is written using a few calls.
+ * <p>
+ * Buffered data is written to the underlying channel when the buffer is
+ * full, when {@link #flush} or {@link #force} is invoked and before any
+ * other operation (read, position, size etc.) is delegated. Writes larger
+ * than the buffer go directly to the underlying channel once the buffer has
+ * been flushed.
+ * <p>
+ * This channel is not thread safe, the logical log only uses it holding its
+ * monitor.
+ */
+class BufferedFileChannel extends FileChannel
+{
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	BufferedFileChannel( FileChannel channel, int bufferSize )
+	{
+		if ( channel == null || bufferSize < 1 )
+		{
+			throw new IllegalArgumentException( "channel=" + channel +
+				", bufferSize=" + bufferSize );
+		}
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect( bufferSize );
+	}
+
+	/**
+	 * Returns the channel this channel writes to.
+	 *
+	 * @return the underlying channel
+	 */
+	FileChannel getChannel()
+	{
+		return channel;
+	}
+
+	/**
+	 * Writes all buffered data to the underlying channel. The data is not
+	 * forced to disk.
+	 *
+	 * @throws IOException if unable to write to the underlying channel
+	 */
+	void flush() throws IOException
+	{
+		if ( buffer.position() == 0 )
+		{
+			return;
+		}
+		buffer.flip();
+		try
+		{
+			while ( buffer.hasRemaining() )
+			{
+				channel.write( buffer );
+			}
+		}
+		finally
+		{
+			buffer.clear();
+		}
+	}
+
+	public int write( ByteBuffer src ) throws IOException
+	{
+		int bytes = src.remaining();
+		if ( bytes > buffer.remaining() )
+		{
+			flush();
+			if ( bytes > buffer.capacity() )
+			{
+				while ( src.hasRemaining() )
+				{
+					channel.write( src );
+				}
+				return bytes;
+			}
+		}
+		buffer.put( src );
+		return bytes;
+	}
+
+	public long write( ByteBuffer[] srcs, int offset, int length )
+		throws IOException
+	{
+		long bytes = 0;
+		for ( int i = offset; i < offset + length; i++ )
+		{
+			bytes += write( srcs[i] );
+		}
+		return bytes;
+	}
+
+	public int write( ByteBuffer src, long position ) throws IOException
+	{
+		flush();
+		return channel.write( src, position );
+	}
+
+	public int read( ByteBuffer dst ) throws IOException
+	{
+		flush();
+		return channel.read( dst );
+	}
+
+	public long read( ByteBuffer[] dsts, int offset, int length )
+		throws IOException
+	{
+		flush();
+		return channel.read( dsts, offset, length );
+	}
+
+	public int read( ByteBuffer dst, long position ) throws IOException
+	{
+		flush();
+		return channel.read( dst, position );
+	}
+
+	public long position() throws IOException
+	{
+		return channel.position() + buffer.position();
+	}
+
+	public FileChannel position( long newPosition ) throws IOException
+	{
+		flush();
+		channel.position( newPosition );
+		return this;
+	}
+
+	public long size() throws IOException
+	{
+		flush();
+		return channel.size();
+	}
+
+	public FileChannel truncate( long size ) throws IOException
+	{
+		flush();
+		channel.truncate( size );
+		return this;
+	}
+
+	public void force( boolean metaData ) throws IOException
+	{
+		flush();
+		channel.force( metaData );
+	}
+
+	public long transferTo( long position, long count,
+		WritableByteChannel target ) throws IOException
+	{
+		flush();
+		return channel.transferTo( position, count, target );
+	}
+
+	public long transferFrom( ReadableByteChannel src, long position,
+		long count ) throws IOException
+	{
+		flush();
+		return channel.transferFrom( src, position, count );
+	}
+
+	public MappedByteBuffer map( MapMode mode, long position, long size )
+		throws IOException
+	{
+		flush();
+		return channel.map( mode, position, size );
+	}
+
+	public FileLock lock( long position, long size, boolean shared )
+		throws IOException
+	{
+		return channel.lock( position, size, shared );
+	}
+
+	public FileLock tryLock( long position, long size, boolean shared )
+		throws IOException
+	{
+		return channel.tryLock( position, size, shared );
+	}
+
+	protected void implCloseChannel() throws IOException
+	{
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+}
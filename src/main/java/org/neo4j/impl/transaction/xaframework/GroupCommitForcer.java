@@ -0,0 +1,243 @@
+package org.neo4j.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Batches disk forces of a log file between concurrent committers (group
+ * commit). A log appends an entry (holding its own lock) and then invokes
+ * {@link #appended} to get a sequence number for that entry. After
+ * releasing its lock the committer invokes {@link #force(long)} with the
+ * sequence number. One of the waiting committers will force the log
+ * covering all entries appended so far while the others wait for that
+ * force to complete, entries appended during a force will be covered by
+ * the next one.
+ * <p>
+ * The thread that is about to force may wait up to the batch window for
+ * more committers to arrive, the window is closed as soon as batch size
+ * committers are waiting. A batch window of <CODE>0</CODE> (default)
+ * forces directly so only committers that arrive during an ongoing force
+ * get batched. Defaults can be changed with the
+ * <CODE>neo.group_commit_window</CODE> (milliseconds) and
+ * <CODE>neo.group_commit_size</CODE> system properties.
+ */
+public class GroupCommitForcer
+{
+	/**
+	 * The log file forced by this forcer.
+	 */
+	public static interface Forceable
+	{
+		/**
+		 * Forces all entries written to the log to disk.
+		 *
+		 * @throws IOException if unable to force the log
+		 */
+		public void forceLog() throws IOException;
+	}
+
+	private final Forceable log;
+	private final AtomicLong appendedSequence = new AtomicLong( 0 );
+	private long forcedSequence = 0;
+	private boolean forcing = false;
+	private int waitingCommitters = 0;
+
+	private volatile long batchWindow;
+	private volatile int batchSize;
+
+	// statistics
+	private long forceCount = 0;
+	private long forcedEntryCount = 0;
+
+	public GroupCommitForcer( Forceable log )
+	{
+		this( log, Long.getLong( "neo.group_commit_window", 0 ),
+			Integer.getInteger( "neo.group_commit_size", 32 ) );
+	}
+
+	public GroupCommitForcer( Forceable log, long batchWindowMillis,
+		int batchSize )
+	{
+		if ( log == null )
+		{
+			throw new IllegalArgumentException( "Null log" );
+		}
+		this.log = log;
+		setBatchWindow( batchWindowMillis );
+		setBatchSize( batchSize );
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds to wait for more committers
+	 * before forcing.
+	 *
+	 * @param batchWindowMillis the batch window, <CODE>0</CODE> to
+	 * force directly
+	 */
+	public void setBatchWindow( long batchWindowMillis )
+	{
+		if ( batchWindowMillis < 0 )
+		{
+			throw new IllegalArgumentException( "Negative batch window " +
+				batchWindowMillis );
+		}
+		this.batchWindow = batchWindowMillis;
+	}
+
+	/**
+	 * Sets the number of waiting committers that will close the batch
+	 * window.
+	 *
+	 * @param batchSize the batch size
+	 */
+	public void setBatchSize( int batchSize )
+	{
+		if ( batchSize < 1 )
+		{
+			throw new IllegalArgumentException( "Illegal batch size " +
+				batchSize );
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Registers an appended log entry. Must be invoked after the entry has
+	 * been written to the log.
+	 *
+	 * @return the sequence number of the entry
+	 */
+	public long appended()
+	{
+		return appendedSequence.incrementAndGet();
+	}
+
+	/**
+	 * Returns when the entry with sequence number <CODE>sequence</CODE>
+	 * has been forced to disk. The caller must not hold the lock used when
+	 * appending entries or there will be nothing to batch.
+	 *
+	 * @param sequence the sequence number returned from {@link #appended}
+	 * @throws IOException if unable to force the log
+	 */
+	public void force( long sequence ) throws IOException
+	{
+		boolean interrupted = false;
+		try
+		{
+			while ( true )
+			{
+				long targetSequence;
+				synchronized ( this )
+				{
+					if ( forcedSequence >= sequence )
+					{
+						return;
+					}
+					if ( forcing )
+					{
+						waitingCommitters++;
+						if ( waitingCommitters + 1 >= batchSize )
+						{
+							// close batch window
+							notifyAll();
+						}
+						interrupted |= doWait( 0 );
+						waitingCommitters--;
+						continue;
+					}
+					forcing = true;
+					interrupted |= waitForBatch();
+					targetSequence = appendedSequence.get();
+				}
+				// force without holding the monitor so committers arriving 
+				// during the force can register for the next one
+				boolean forced = false;
+				try
+				{
+					log.forceLog();
+					forced = true;
+				}
+				finally
+				{
+					synchronized ( this )
+					{
+						forcing = false;
+						if ( forced && targetSequence > forcedSequence )
+						{
+							forceCount++;
+							forcedEntryCount += 
+								targetSequence - forcedSequence;
+							forcedSequence = targetSequence;
+						}
+						notifyAll();
+					}
+				}
+			}
+		}
+		finally
+		{
+			if ( interrupted )
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Forces everything appended so far, used when closing or switching
+	 * log.
+	 *
+	 * @throws IOException if unable to force the log
+	 */
+	public void forceAll() throws IOException
+	{
+		force( appendedSequence.get() );
+	}
+
+	// called with monitor held and forcing flag set
+	private boolean waitForBatch()
+	{
+		boolean interrupted = false;
+		long window = batchWindow;
+		if ( window > 0 )
+		{
+			long deadline = System.currentTimeMillis() + window;
+			long remaining = window;
+			while ( waitingCommitters + 1 < batchSize && remaining > 0 )
+			{
+				interrupted |= doWait( remaining );
+				remaining = deadline - System.currentTimeMillis();
+			}
+		}
+		return interrupted;
+	}
+
+	private boolean doWait( long millis )
+	{
+		try
+		{
+			wait( millis );
+			return false;
+		}
+		catch ( InterruptedException e )
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the number of forces made.
+	 */
+	public synchronized long getForceCount()
+	{
+		return forceCount;
+	}
+
+	/**
+	 * Returns the number of entries covered by the forces made.
+	 */
+	public synchronized long getForcedEntryCount()
+	{
+		return forcedEntryCount;
+	}
+}
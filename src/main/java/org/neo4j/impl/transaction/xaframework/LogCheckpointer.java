@@ -0,0 +1,114 @@
+package org.neo4j.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background thread that checkpoints the {@link XaLogicalLog} by rotating
+ * it (see {@link XaLogicalLog#rotate}). A checkpoint is made when the
+ * checkpoint interval has passed since the last one or when the log has
+ * grown larger than the rotation threshold, whichever comes first. An
+ * interval or threshold of <CODE>0</CODE> turns that trigger off.
+ */
+class LogCheckpointer extends Thread
+{
+	private static Logger log =
+		Logger.getLogger( LogCheckpointer.class.getName() );
+
+	// how often the log size is checked
+	private static final long POLL_INTERVAL = 1000;
+
+	private final XaLogicalLog logicalLog;
+	private final long checkpointInterval;
+	private final long rotationThreshold;
+	private boolean running = true;
+
+	LogCheckpointer( XaLogicalLog logicalLog, long checkpointInterval,
+		long rotationThreshold )
+	{
+		super( "LogCheckpointer" );
+		if ( checkpointInterval < 0 || rotationThreshold < 0 )
+		{
+			throw new IllegalArgumentException( "checkpointInterval=" +
+				checkpointInterval + ", rotationThreshold=" +
+				rotationThreshold );
+		}
+		this.logicalLog = logicalLog;
+		this.checkpointInterval = checkpointInterval;
+		this.rotationThreshold = rotationThreshold;
+		setDaemon( true );
+	}
+
+	public void run()
+	{
+		long lastCheckpoint = System.currentTimeMillis();
+		long pollInterval = POLL_INTERVAL;
+		if ( checkpointInterval > 0 )
+		{
+			pollInterval = Math.min( pollInterval, checkpointInterval );
+		}
+		while ( waitForNextPoll( pollInterval ) )
+		{
+			try
+			{
+				boolean checkpoint = checkpointInterval > 0 &&
+					System.currentTimeMillis() - lastCheckpoint >=
+						checkpointInterval;
+				if ( !checkpoint && rotationThreshold > 0 )
+				{
+					checkpoint = logicalLog.getLogSize() >= rotationThreshold;
+				}
+				if ( checkpoint )
+				{
+					logicalLog.rotate();
+					lastCheckpoint = System.currentTimeMillis();
+				}
+			}
+			catch ( IOException e )
+			{
+				log.log( Level.WARNING, "Unable to checkpoint logical log",
+					e );
+				lastCheckpoint = System.currentTimeMillis();
+			}
+		}
+	}
+
+	// returns false if shut down
+	private synchronized boolean waitForNextPoll( long pollInterval )
+	{
+		if ( running )
+		{
+			try
+			{
+				wait( pollInterval );
+			}
+			catch ( InterruptedException e )
+			{
+				running = false;
+			}
+		}
+		return running;
+	}
+
+	/**
+	 * Stops the checkpointer and waits for an ongoing checkpoint to
+	 * complete.
+	 */
+	void shutdown()
+	{
+		synchronized ( this )
+		{
+			running = false;
+			notifyAll();
+		}
+		try
+		{
+			join();
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
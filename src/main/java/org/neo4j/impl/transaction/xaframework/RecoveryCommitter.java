@@ -0,0 +1,281 @@
+package org.neo4j.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import javax.transaction.xa.XAException;
+
+/**
+ * Commits the one-phase transactions found during a recovery scan of the
+ * {@link XaLogicalLog}. The scan has already been done and all commands
+ * injected so what remains is to apply them to the store.
+ * <p>
+ * Transactions are grouped using the record keys of their commands (see
+ * {@link XaCommand#getRecordKeys}): transactions writing a record in
+ * common end up in the same group. Each group is committed in log order by
+ * one thread and different groups are committed in parallel. Since all
+ * transactions writing a specific record are applied in log order the
+ * final store is the same as after a serial replay. If any recovered
+ * command doesn't know its record keys all transactions are committed
+ * serially.
+ * <p>
+ * The number of threads defaults to the number of available processors
+ * and can be changed with the <CODE>neo.recovery_threads</CODE> system
+ * property.
+ */
+class RecoveryCommitter
+{
+	private static Logger log =
+		Logger.getLogger( RecoveryCommitter.class.getName() );
+
+	private final int threadCount;
+
+	RecoveryCommitter()
+	{
+		this( Integer.getInteger( "neo.recovery_threads",
+			Runtime.getRuntime().availableProcessors() ) );
+	}
+
+	RecoveryCommitter( int threadCount )
+	{
+		if ( threadCount < 1 )
+		{
+			throw new IllegalArgumentException( "Illegal thread count " +
+				threadCount );
+		}
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Commits <CODE>transactions</CODE> (in log order) and returns which
+	 * of them were committed. If a transaction fails to commit the
+	 * transactions after it in the same group are not committed, all other
+	 * groups are completed before an exception is thrown.
+	 *
+	 * @param transactions the recovered transactions in log order
+	 * @param committed set to <CODE>true</CODE> at the index of each
+	 * transaction that was committed
+	 * @throws IOException if any transaction failed to commit
+	 */
+	void commit( List<XaTransaction> transactions, boolean committed[] )
+		throws IOException
+	{
+		long startTime = System.currentTimeMillis();
+		List<List<Integer>> groups = groupTransactions( transactions );
+		int threads = Math.min( threadCount, groups.size() );
+		Throwable failure = null;
+		if ( threads <= 1 )
+		{
+			for ( List<Integer> group : groups )
+			{
+				Throwable t = commitGroup( transactions, group, committed );
+				if ( t != null && failure == null )
+				{
+					failure = t;
+				}
+			}
+		}
+		else
+		{
+			failure = commitParallel( transactions, groups, committed,
+				threads );
+		}
+		long time = System.currentTimeMillis() - startTime;
+		int txCount = 0;
+		long commandCount = 0;
+		for ( int i = 0; i < committed.length; i++ )
+		{
+			if ( committed[i] )
+			{
+				txCount++;
+				commandCount +=
+					transactions.get( i ).getRecoveredCommandCount();
+			}
+		}
+		log.info( "Committed " + txCount + " recovered transactions (" +
+			commandCount + " commands) in " + time + " ms using " +
+			Math.max( threads, 1 ) + " thread(s) and " + groups.size() +
+			" group(s), " + ( commandCount * 1000 / Math.max( time, 1 ) ) +
+			" commands/s" );
+		if ( failure != null )
+		{
+			IOException e = new IOException(
+				"Unable to commit recovered transaction, " + failure );
+			e.initCause( failure );
+			throw e;
+		}
+	}
+
+	private Throwable commitParallel( final List<XaTransaction> transactions,
+		List<List<Integer>> groups, final boolean committed[],
+		int threads ) throws IOException
+	{
+		// start with the largest groups
+		Collections.sort( groups, new Comparator<List<Integer>>()
+			{
+				public int compare( List<Integer> g1, List<Integer> g2 )
+				{
+					return g2.size() - g1.size();
+				}
+			} );
+		ExecutorService executor = Executors.newFixedThreadPool( threads );
+		try
+		{
+			List<Future<Throwable>> results =
+				new ArrayList<Future<Throwable>>( groups.size() );
+			for ( final List<Integer> group : groups )
+			{
+				results.add( executor.submit(
+					new Callable<Throwable>()
+					{
+						public Throwable call()
+						{
+							return commitGroup( transactions, group,
+								committed );
+						}
+					} ) );
+			}
+			Throwable failure = null;
+			for ( Future<Throwable> result : results )
+			{
+				Throwable t;
+				try
+				{
+					t = result.get();
+				}
+				catch ( ExecutionException e )
+				{
+					t = e.getCause();
+				}
+				catch ( InterruptedException e )
+				{
+					Thread.currentThread().interrupt();
+					throw new IOException( "Interrupted during recovery" );
+				}
+				if ( t != null && failure == null )
+				{
+					failure = t;
+				}
+			}
+			return failure;
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	// returns the failure or null if all transactions in group committed
+	private Throwable commitGroup( List<XaTransaction> transactions,
+		List<Integer> group, boolean committed[] )
+	{
+		for ( int index : group )
+		{
+			XaTransaction xaTransaction = transactions.get( index );
+			try
+			{
+				xaTransaction.commit();
+			}
+			catch ( XAException e )
+			{
+				return e;
+			}
+			catch ( RuntimeException e )
+			{
+				return e;
+			}
+			// each index is written by one thread only, visible to the
+			// caller after the executor task has completed
+			committed[index] = true;
+		}
+		return null;
+	}
+
+	// union-find of transactions sharing record keys, groups in log order
+	List<List<Integer>> groupTransactions( List<XaTransaction> transactions )
+	{
+		int count = transactions.size();
+		int parent[] = new int[ count ];
+		boolean serial = false;
+		Map<Long,Integer> keyOwners = new HashMap<Long,Integer>();
+		for ( int i = 0; i < count && !serial; i++ )
+		{
+			parent[i] = i;
+			long keys[] = transactions.get( i ).getRecoveredRecordKeys();
+			if ( keys == null )
+			{
+				serial = true;
+				break;
+			}
+			for ( long key : keys )
+			{
+				Integer owner = keyOwners.put( key, i );
+				if ( owner != null )
+				{
+					union( parent, owner, i );
+				}
+			}
+		}
+		List<List<Integer>> groups = new ArrayList<List<Integer>>();
+		if ( serial )
+		{
+			List<Integer> group = new ArrayList<Integer>( count );
+			for ( int i = 0; i < count; i++ )
+			{
+				group.add( i );
+			}
+			if ( count > 0 )
+			{
+				groups.add( group );
+			}
+			return groups;
+		}
+		Map<Integer,List<Integer>> roots =
+			new LinkedHashMap<Integer,List<Integer>>();
+		for ( int i = 0; i < count; i++ )
+		{
+			int root = find( parent, i );
+			List<Integer> group = roots.get( root );
+			if ( group == null )
+			{
+				group = new ArrayList<Integer>();
+				roots.put( root, group );
+				groups.add( group );
+			}
+			group.add( i );
+		}
+		return groups;
+	}
+
+	private static int find( int parent[], int i )
+	{
+		while ( parent[i] != i )
+		{
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	private static void union( int parent[], int i, int j )
+	{
+		int rootI = find( parent, i );
+		int rootJ = find( parent, j );
+		if ( rootI != rootJ )
+		{
+			parent[Math.max( rootI, rootJ )] = Math.min( rootI, rootJ );
+		}
+	}
+}
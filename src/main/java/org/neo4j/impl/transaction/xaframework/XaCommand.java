@@ -79,6 +79,8 @@ public abstract class XaCommand
 	 * is very small (137 bytes or something). Acccess to writing commands is  
 	 * synchronized, only one command will be written at a time so if you need 
 	 * to write larger data sets the commands can share the same buffer.
+	 * Writes to the file channel are buffered by the logical log so there is 
+	 * no need to collect data in a larger buffer before writing it.
 	 * <p>
 	 * Don't throw an <CODE>IOException</CODE> to imply something is wrong with 
 	 * the command. An exception should only be thrown here if there is a real
@@ -95,6 +97,26 @@ public abstract class XaCommand
 	 */
 	public abstract void writeToFile( FileChannel fileChannel, 
 		ByteBuffer buffer ) throws IOException;
+	
+	/**
+	 * Returns keys identifying the records this command writes when 
+	 * executed. Keys must be unique over all stores of the resource (for 
+	 * example store type and record id combined). During recovery 
+	 * transactions that don't write any record in common are committed in 
+	 * parallel, transactions sharing a key are committed one after another 
+	 * in log order.
+	 * <p>
+	 * The default implementation returns <CODE>null</CODE> meaning the 
+	 * written records are unknown and the command may conflict with any 
+	 * other command, recovered transactions will then be committed serially.
+	 * 
+	 * @return keys of the records written by this command or 
+	 * <CODE>null</CODE> if unknown
+	 */
+	public long[] getRecordKeys()
+	{
+		return null;
+	}
 		
 	/**
 	 * If this command is created by the command factory during a recovery 
@@ -22,6 +22,7 @@ public class XaContainer
 	private XaLogicalLog log = null;
 	private XaResourceManager rm = null;
 	private XaTransactionFactory tf = null;
+	private LogCheckpointer checkpointer = null;
 	
 	/**
 	 * Creates a XaContainer.
@@ -67,11 +68,47 @@ public class XaContainer
 		log.open();
 	}
 	
+	/**
+	 * Starts a background thread that checkpoints the logical log (see 
+	 * {@link XaLogicalLog#rotate}) every <CODE>checkpointInterval</CODE> 
+	 * milliseconds or when the log has grown larger than 
+	 * <CODE>rotationThreshold</CODE> bytes. Set either to <CODE>0</CODE> 
+	 * to turn that trigger off. The logical log must have been opened and 
+	 * the {@link XaTransactionFactory} must implement 
+	 * {@link XaTransactionFactory#flushAll}.
+	 *
+	 * @param checkpointInterval milliseconds between checkpoints
+	 * @param rotationThreshold log size in bytes that triggers a checkpoint
+	 */
+	public synchronized void startCheckpointer( long checkpointInterval, 
+		long rotationThreshold )
+	{
+		if ( checkpointer != null )
+		{
+			throw new IllegalStateException( "Checkpointer already started" );
+		}
+		if ( checkpointInterval == 0 && rotationThreshold == 0 )
+		{
+			return;
+		}
+		checkpointer = new LogCheckpointer( log, checkpointInterval, 
+			rotationThreshold );
+		checkpointer.start();
+	}
+	
 	/** 
 	 * Closes the logical log and nulls out all instances. 
 	 */
 	public void close()
 	{
+		synchronized ( this )
+		{
+			if ( checkpointer != null )
+			{
+				checkpointer.shutdown();
+				checkpointer = null;
+			}
+		}
 		try
 		{
 			if ( log != null )
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.util.HashMap;
 import java.util.Map;
@@ -33,6 +34,21 @@ import javax.transaction.xa.Xid;
  * will be held in memory until the transaction manager tells them to commit.
  * Transaction that already started commit but didn't get flagged as done will
  * be re-committed. 
+ * <p>
+ * Prepare and one-phase commit entries are forced to disk using a 
+ * {@link GroupCommitForcer} so concurrent committers share forces. The 
+ * force is done after the log monitor has been released.
+ * <p>
+ * All writes go through a {@link BufferedFileChannel} so entries and 
+ * commands are collected in one large direct buffer that is written to the 
+ * file when full or when a transaction prepares or commits one-phase. The 
+ * buffer size can be changed with the 
+ * <CODE>neo.logical_log_buffer_size</CODE> system property (bytes).
+ * <p>
+ * The log can be rotated (see {@link #rotate}) to keep it from growing 
+ * without bound. All changes of completed transactions are flushed to the 
+ * store, the entries of active transactions are copied to a new log file 
+ * and the old log file is deleted.
  */
 public class XaLogicalLog
 {
@@ -48,7 +64,11 @@ public class XaLogicalLog
 	// tx one-phase commit
 	private static final byte TX_1P_COMMIT = (byte) 5;
 	
-	private FileChannel fileChannel = null;
+	private static final int WRITE_BUFFER_SIZE = Integer.getInteger( 
+		"neo.logical_log_buffer_size", 256 * 1024 );
+	
+	// replaced when log is rotated, read without monitor when forcing
+	private volatile BufferedFileChannel fileChannel = null;
 	private ByteBuffer buffer = null;
 	private long logCreated = 0;
 	private HashMap<Integer,Xid> xidIdentMap = new HashMap<Integer,Xid>();
@@ -61,6 +81,27 @@ public class XaLogicalLog
 	private XaResourceManager xaRm = null;
 	private XaCommandFactory cf = null;
 	private XaTransactionFactory xaTf = null;
+	private final GroupCommitForcer forcer = new GroupCommitForcer( 
+		new GroupCommitForcer.Forceable()
+		{
+			public void forceLog() throws IOException
+			{
+				// buffer has been flushed holding the log monitor
+				BufferedFileChannel channel = fileChannel;
+				try
+				{
+					channel.getChannel().force( true );
+				}
+				catch ( ClosedChannelException e )
+				{
+					// rotated, entries have been copied and forced 
+					if ( channel == fileChannel )
+					{
+						throw e;
+					}
+				}
+			}
+		} );
 	
 	XaLogicalLog( String fileName, XaResourceManager xaRm, XaCommandFactory cf,   
 		XaTransactionFactory xaTf ) // throws IOException
@@ -75,7 +116,8 @@ public class XaLogicalLog
 	
 	void open() throws IOException
 	{
-		fileChannel = new RandomAccessFile( fileName, "rw" ).getChannel();
+		completeRotation();
+		fileChannel = openChannel();
  		buffer = ByteBuffer.allocateDirect( 9 + Xid.MAXGTRIDSIZE + 
 			Xid.MAXBQUALSIZE );
 		if ( fileChannel.size() != 0 )
@@ -93,6 +135,36 @@ public class XaLogicalLog
 		}		
 	}
 	
+	private BufferedFileChannel openChannel() throws IOException
+	{
+		return new BufferedFileChannel( 
+			new RandomAccessFile( fileName, "rw" ).getChannel(), 
+			WRITE_BUFFER_SIZE );
+	}
+	
+	// if crashed during rotation keep old log if it exists else use new log
+	private void completeRotation() throws IOException
+	{
+		File newLog = new File( fileName + ".rotate" );
+		if ( newLog.exists() )
+		{
+			File oldLog = new File( fileName );
+			if ( oldLog.exists() )
+			{
+				if ( !newLog.delete() )
+				{
+					throw new IOException( "Unable to delete incomplete " + 
+						"rotated log[" + newLog + "]" );
+				}
+			}
+			else if ( !newLog.renameTo( oldLog ) )
+			{
+				throw new IOException( "Unable to rename rotated log[" + 
+					newLog + "] to [" + fileName + "]" );
+			}
+		}
+	}
+	
 	boolean scanIsComplete()
 	{
 		return scanIsComplete;
@@ -191,16 +263,11 @@ public class XaLogicalLog
 	}
 	
 	//[TX_PREPARE][identifier]
-	public synchronized void prepare( int identifier ) throws XAException
+	public void prepare( int identifier ) throws XAException
 	{
-		validate( identifier ); 
 		try
 		{
-			buffer.clear();
-			buffer.put( TX_PREPARE ).putInt( identifier );
-			buffer.flip();
-			fileChannel.write( buffer );
-			force();
+			forcer.force( writePrepare( identifier ) );
 		}
 		catch ( IOException e )
 		{
@@ -209,6 +276,18 @@ public class XaLogicalLog
 		}
 	}
 	
+	private synchronized long writePrepare( int identifier ) 
+		throws XAException, IOException
+	{
+		validate( identifier ); 
+		buffer.clear();
+		buffer.put( TX_PREPARE ).putInt( identifier );
+		buffer.flip();
+		fileChannel.write( buffer );
+		fileChannel.flush();
+		return forcer.appended();
+	}
+	
 	private boolean readTxPrepareEntry() throws IOException
 	{
 		// get the neo tx identifier
@@ -230,16 +309,11 @@ public class XaLogicalLog
 	}
 
 	//[TX_1P_COMMIT][identifier]
-	public synchronized void commitOnePhase( int identifier ) throws XAException
+	public void commitOnePhase( int identifier ) throws XAException
 	{
-		validate( identifier ); 
 		try
 		{
-			buffer.clear();
-			buffer.put( TX_1P_COMMIT ).putInt( identifier );
-			buffer.flip();
-			fileChannel.write( buffer );
-			force();
+			forcer.force( writeOnePhaseCommit( identifier ) );
 		}
 		catch ( IOException e )
 		{
@@ -248,6 +322,18 @@ public class XaLogicalLog
 		}
 	}
 	
+	private synchronized long writeOnePhaseCommit( int identifier ) 
+		throws XAException, IOException
+	{
+		validate( identifier ); 
+		buffer.clear();
+		buffer.put( TX_1P_COMMIT ).putInt( identifier );
+		buffer.flip();
+		fileChannel.write( buffer );
+		fileChannel.flush();
+		return forcer.appended();
+	}
+	
 	private boolean readTxOnePhaseCommit() throws IOException
 	{
 		// get the neo tx identifier
@@ -343,6 +429,7 @@ public class XaLogicalLog
 		command.setRecovered();
 		XaTransaction xaTx = recoveredTxMap.get( identifier );
 		xaTx.injectCommand( command );
+		xaTx.addRecoveredRecordKeys( command.getRecordKeys() );
 		return true;
 	}
 
@@ -367,10 +454,187 @@ public class XaLogicalLog
 		file.delete();
 	}
 	
-	void force() throws IOException
+	synchronized void force() throws IOException
 	{
  		fileChannel.force( true );
 	}
+	
+	/**
+	 * Returns the current size of the logical log in bytes including 
+	 * buffered data not yet written to the file.
+	 * 
+	 * @return the size of the logical log
+	 * @throws IOException if unable to get size
+	 */
+	public synchronized long getLogSize() throws IOException
+	{
+		return fileChannel.position();
+	}
+	
+	/**
+	 * Rotates the logical log. First all changes are flushed to the store 
+	 * via {@link XaTransactionFactory#flushAll}, then the entries of all 
+	 * active transactions are copied to a new log file that replaces this 
+	 * log. No other log entries can be written during rotation.
+	 * <p>
+	 * The new log is written to a temporary file that is renamed once the 
+	 * old log has been deleted so a crash during rotation leaves one 
+	 * complete log file to recover from.
+	 * 
+	 * @throws IOException if unable to rotate the log
+	 */
+	public synchronized void rotate() throws IOException
+	{
+		if ( !scanIsComplete )
+		{
+			throw new IOException( "Unable to rotate log during recovery" );
+		}
+		long startTime = System.currentTimeMillis();
+		long oldSize = fileChannel.position();
+		fileChannel.flush();
+		xaTf.flushAll();
+		String newFileName = fileName + ".rotate";
+		FileChannel newChannel = 
+			new RandomAccessFile( newFileName, "rw" ).getChannel();
+		FileChannel oldChannel = 
+			new RandomAccessFile( fileName, "r" ).getChannel();
+		int copiedEntries;
+		long newCreated = System.currentTimeMillis();
+		try
+		{
+			newChannel.truncate( 0 );
+			buffer.clear();
+			buffer.putLong( newCreated );
+			buffer.flip();
+			newChannel.write( buffer );
+			BufferedFileChannel newBufferedChannel = 
+				new BufferedFileChannel( newChannel, WRITE_BUFFER_SIZE );
+			copiedEntries = copyActiveEntries( oldChannel, 
+				newBufferedChannel );
+			newBufferedChannel.force( true );
+		}
+		finally
+		{
+			oldChannel.close();
+			newChannel.close();
+		}
+		fileChannel.close();
+		if ( !new File( fileName ).delete() )
+		{
+			throw new IOException( "Unable to delete old log[" + fileName + 
+				"]" );
+		}
+		if ( !new File( newFileName ).renameTo( new File( fileName ) ) )
+		{
+			throw new IOException( "Unable to rename rotated log[" + 
+				newFileName + "] to [" + fileName + "]" );
+		}
+		BufferedFileChannel channel = openChannel();
+		channel.position( channel.size() );
+		fileChannel = channel;
+		logCreated = newCreated;
+		log.info( "Rotated logical log " + fileName + " (" + oldSize + 
+			" -> " + fileChannel.position() + " bytes, " + 
+			xidIdentMap.size() + " active transactions, " + copiedEntries + 
+			" entries copied) in " + 
+			( System.currentTimeMillis() - startTime ) + " ms" );
+	}
+	
+	// copies entries of transactions still in xidIdentMap
+	private int copyActiveEntries( FileChannel from, FileChannel to ) 
+		throws IOException
+	{
+		int copied = 0;
+		ByteBuffer startEntry = ByteBuffer.allocate( 11 + Xid.MAXGTRIDSIZE + 
+			Xid.MAXBQUALSIZE );
+		from.position( 8 );
+		while ( true )
+		{
+			buffer.clear(); buffer.limit( 1 );
+			if ( from.read( buffer ) != 1 )
+			{
+				return copied;
+			}
+			buffer.flip();
+			byte entry = buffer.get();
+			if ( entry == TX_START )
+			{
+				// [TX_START][gid.length,bid.length,gid,bid][identifier]
+				// [format id]
+				startEntry.clear(); startEntry.limit( 3 ); 
+				startEntry.position( 1 );
+				if ( from.read( startEntry ) != 2 )
+				{
+					return copied;
+				}
+				byte globalIdLength = startEntry.get( 1 );
+				byte branchIdLength = startEntry.get( 2 );
+				int length = globalIdLength + branchIdLength + 8;
+				startEntry.limit( 3 + length );
+				if ( from.read( startEntry ) != length )
+				{
+					return copied;
+				}
+				int identifier = startEntry.getInt( 
+					3 + globalIdLength + branchIdLength );
+				if ( xidIdentMap.containsKey( identifier ) )
+				{
+					startEntry.put( 0, TX_START );
+					startEntry.flip();
+					to.write( startEntry );
+					copied++;
+				}
+			}
+			else if ( entry == TX_PREPARE || entry == TX_1P_COMMIT || 
+				entry == DONE || entry == COMMAND )
+			{
+				buffer.clear(); buffer.limit( 4 );
+				if ( from.read( buffer ) != 4 )
+				{
+					return copied;
+				}
+				buffer.flip();
+				int identifier = buffer.getInt();
+				XaCommand command = null;
+				if ( entry == COMMAND )
+				{
+					command = cf.readCommand( from, buffer );
+					if ( command == null )
+					{
+						return copied;
+					}
+				}
+				if ( xidIdentMap.containsKey( identifier ) )
+				{
+					buffer.clear();
+					buffer.put( entry ).putInt( identifier );
+					buffer.flip();
+					to.write( buffer );
+					if ( command != null )
+					{
+						command.writeToFile( to, buffer );
+					}
+					copied++;
+				}
+			}
+			else
+			{
+				throw new IOException( "Unable to rotate log, unkown log " + 
+					"entry[" + entry + "]" );
+			}
+		}
+	}
+	
+	/**
+	 * Returns the group commit forcer used to force prepare and one-phase 
+	 * commit entries, can be used to change batch window and size.
+	 * 
+	 * @return the group commit forcer of this log
+	 */
+	public GroupCommitForcer getGroupCommitForcer()
+	{
+		return forcer;
+	}
 
 	private void validate( int identifier ) throws XAException
 	{
@@ -384,6 +648,7 @@ public class XaLogicalLog
 	private void doInternalRecovery() throws IOException
 	{
 		log.info( "Logical log is dirty, recovering..." ); 
+		long startTime = System.currentTimeMillis();
 		// get log creation time
 		buffer.clear(); buffer.limit( 8 ); 
 		if ( fileChannel.read( buffer ) != 8 )
@@ -393,7 +658,7 @@ public class XaLogicalLog
 			fileChannel.close();
 			new File( fileName ).renameTo( new File( fileName + 
 				"_unkown_timestamp_" + System.currentTimeMillis() + ".log" ) );
-			fileChannel = new RandomAccessFile( fileName, "rw" ).getChannel();
+			fileChannel = openChannel();
 			return;
 		}
 		buffer.flip();
@@ -412,6 +677,8 @@ public class XaLogicalLog
 		xaRm.checkXids();
 		log.info( "Prepared 2PC transactions: " + xidIdentMap.size() ); 
 		recoveredTxMap.clear();
+		log.info( "Internal recovery took " + 
+			( System.currentTimeMillis() - startTime ) + " ms" );
 	}
 	
 	void removeNonPreparedTx( int identifier )
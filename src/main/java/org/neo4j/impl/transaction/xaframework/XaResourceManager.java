@@ -21,6 +21,8 @@ public class XaResourceManager
 		new HashMap<XAResource,Xid>();
 	private Map<Xid,XidStatus> xidMap = new HashMap<Xid,XidStatus>();
 	private int recoveredTxCount = 0;
+	// one-phase commits found during recovery scan, in log order
+	private List<Xid> recoveredCommitOrder = new LinkedList<Xid>();
 	
 	private XaLogicalLog log = null;
 	private XaTransactionFactory tf = null;
@@ -242,33 +244,40 @@ public class XaResourceManager
 		}
 	}
 	
-	synchronized int prepare( Xid xid ) throws XAException
+	// the prepare entry is forced to the log without holding the monitor 
+	// so concurrent committers can share the force (group commit)
+	int prepare( Xid xid ) throws XAException
 	{
-		if ( !xidMap.containsKey( xid ) )
+		TransactionStatus txStatus;
+		XaTransaction xaTransaction;
+		synchronized ( this )
 		{
-			throw new XAException( "Unkown xid[" + xid + "]" );
-		}
-		XidStatus status = xidMap.get( xid );
-		TransactionStatus txStatus = status.getTransactionStatus();
-		XaTransaction xaTransaction = txStatus.getTransaction();
-		if ( xaTransaction.isReadOnly() )
-		{
-			log.done( xaTransaction.getIdentifier() );
-			xidMap.remove( xid );
-			if ( xaTransaction.isRecovered() )
+			if ( !xidMap.containsKey( xid ) )
 			{
-				recoveredTxCount--;
-				checkIfRecoveryComplete();
+				throw new XAException( "Unkown xid[" + xid + "]" );
 			}
-			return XAResource.XA_RDONLY;
+			XidStatus status = xidMap.get( xid );
+			txStatus = status.getTransactionStatus();
+			xaTransaction = txStatus.getTransaction();
+			if ( xaTransaction.isReadOnly() )
+			{
+				log.done( xaTransaction.getIdentifier() );
+				xidMap.remove( xid );
+				if ( xaTransaction.isRecovered() )
+				{
+					recoveredTxCount--;
+					checkIfRecoveryComplete();
+				}
+				return XAResource.XA_RDONLY;
+			}
+			xaTransaction.prepare();
 		}
-		else
+		log.prepare( xaTransaction.getIdentifier() );
+		synchronized ( this )
 		{
-			xaTransaction.prepare();
-			log.prepare( xaTransaction.getIdentifier() );
 			txStatus.markAsCommit();
-			return XAResource.XA_OK;
 		}
+		return XAResource.XA_OK;
 	}
 	
 	// called from XaResource internal recovery
@@ -310,9 +319,38 @@ public class XaResourceManager
 		XidStatus status = xidMap.get( xid );
 		TransactionStatus txStatus = status.getTransactionStatus();
 		txStatus.markCommitStarted();
+		recoveredCommitOrder.add( xid );
+	}
+	
+	// the one-phase commit entry is forced to the log without holding the 
+	// monitor so concurrent committers can share the force (group commit), 
+	// the transaction is committed after the force
+	XaTransaction commit( Xid xid, boolean onePhase ) 
+		throws XAException 
+	{
+		XaTransaction xaTransaction;
+		synchronized ( this )
+		{
+			if ( !xidMap.containsKey( xid ) )
+			{
+				throw new XAException( "Unkown xid[" + xid + "]" );
+			}
+			XidStatus status = xidMap.get( xid );
+			xaTransaction = status.getTransactionStatus().getTransaction();
+			if ( onePhase && !xaTransaction.isReadOnly() && 
+				!xaTransaction.isRecovered() )
+			{
+				xaTransaction.prepare();
+			}
+		}
+		if ( onePhase && !xaTransaction.isReadOnly() )
+		{
+			log.commitOnePhase( xaTransaction.getIdentifier() );
+		}
+		return doCommit( xid, onePhase );
 	}
 	
-	synchronized XaTransaction commit( Xid xid, boolean onePhase ) 
+	private synchronized XaTransaction doCommit( Xid xid, boolean onePhase ) 
 		throws XAException 
 	{
 		if ( !xidMap.containsKey( xid ) )
@@ -324,14 +362,6 @@ public class XaResourceManager
 		XaTransaction xaTransaction = txStatus.getTransaction();
 		if ( onePhase )
 		{
-			if ( !xaTransaction.isReadOnly() )
-			{
-				if ( !xaTransaction.isRecovered() )
-				{
-					xaTransaction.prepare();
-				}
-				log.commitOnePhase( xaTransaction.getIdentifier() );
-			}
 			txStatus.markAsCommit();
 		}
 		if ( !txStatus.commit() && txStatus.rollback() )
@@ -448,36 +478,61 @@ public class XaResourceManager
 			XidStatus status = xidMap.get( xid );
 			TransactionStatus txStatus = status.getTransactionStatus();
 			XaTransaction xaTransaction = txStatus.getTransaction();
-			int identifier = xaTransaction.getIdentifier();
-			if ( xaTransaction.isRecovered() )
+			if ( xaTransaction.isRecovered() && !txStatus.commitStarted() && 
+				!txStatus.commit() )
 			{
-				if ( txStatus.commitStarted() )
-				{
-					System.out.println( "Committing 1PC tx " + identifier );
-					try
-					{
-						xaTransaction.commit();
-					}
-					catch ( XAException e )
-					{
-						e.printStackTrace();
-						throw new IOException( 
-							"Unable to commit one-phase transaction " + 
-							identifier + ", " + e );
-					}
-					log.doneInternal( identifier );
-					xidMap.remove( xid );
-					recoveredTxCount--;
-				}
-				else if ( !txStatus.commit() )
+				log.doneInternal( xaTransaction.getIdentifier() );
+				xidMap.remove( xid );
+				recoveredTxCount--;
+			}
+		}
+		commitRecoveredOnePhase();
+		checkIfRecoveryComplete();
+	}
+	
+	// commits one-phase transactions found during recovery, transactions 
+	// that don't write the same records are committed in parallel
+	private void commitRecoveredOnePhase() throws IOException
+	{
+		List<Xid> xids = new ArrayList<Xid>();
+		List<XaTransaction> transactions = new ArrayList<XaTransaction>();
+		for ( Xid xid : recoveredCommitOrder )
+		{
+			XidStatus status = xidMap.get( xid );
+			if ( status == null )
+			{
+				continue;
+			}
+			TransactionStatus txStatus = status.getTransactionStatus();
+			XaTransaction xaTransaction = txStatus.getTransaction();
+			if ( xaTransaction.isRecovered() && txStatus.commitStarted() )
+			{
+				xids.add( xid );
+				transactions.add( xaTransaction );
+			}
+		}
+		recoveredCommitOrder.clear();
+		if ( transactions.isEmpty() )
+		{
+			return;
+		}
+		boolean committed[] = new boolean[ transactions.size() ];
+		try
+		{
+			new RecoveryCommitter().commit( transactions, committed );
+		}
+		finally
+		{
+			for ( int i = 0; i < committed.length; i++ )
+			{
+				if ( committed[i] )
 				{
-					log.doneInternal( xaTransaction.getIdentifier() );
-					xidMap.remove( xid );
+					log.doneInternal( transactions.get( i ).getIdentifier() );
+					xidMap.remove( xids.get( i ) );
 					recoveredTxCount--;
 				}
 			}
 		}
-		checkIfRecoveryComplete();
 	}
 	
 	private void checkIfRecoveryComplete()
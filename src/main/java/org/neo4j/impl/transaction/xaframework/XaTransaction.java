@@ -126,6 +126,12 @@ public abstract class XaTransaction
 	private boolean rolledback = false;
 	private boolean prepared = false;
 	
+	// keys of records written by commands injected during recovery
+	private long recoveredRecordKeys[] = null;
+	private int recoveredRecordKeyCount = 0;
+	private boolean recoveredRecordKeysUnknown = false;
+	private int recoveredCommandCount = 0;
+	
 	
 	public XaTransaction( int identifier, XaLogicalLog log )
 	{
@@ -211,6 +217,61 @@ public abstract class XaTransaction
 	{
 		doAddCommand( command );
 	}
+	
+	// called by the logical log for each command injected during recovery
+	void addRecoveredRecordKeys( long keys[] )
+	{
+		recoveredCommandCount++;
+		if ( keys == null )
+		{
+			recoveredRecordKeysUnknown = true;
+			recoveredRecordKeys = null;
+			recoveredRecordKeyCount = 0;
+			return;
+		}
+		if ( recoveredRecordKeysUnknown )
+		{
+			return;
+		}
+		if ( recoveredRecordKeys == null )
+		{
+			recoveredRecordKeys = new long[ Math.max( 8, keys.length ) ];
+		}
+		else if ( recoveredRecordKeyCount + keys.length > 
+			recoveredRecordKeys.length )
+		{
+			long newKeys[] = new long[ Math.max( 
+				recoveredRecordKeys.length * 2, 
+				recoveredRecordKeyCount + keys.length ) ];
+			System.arraycopy( recoveredRecordKeys, 0, newKeys, 0, 
+				recoveredRecordKeyCount );
+			recoveredRecordKeys = newKeys;
+		}
+		System.arraycopy( keys, 0, recoveredRecordKeys, 
+			recoveredRecordKeyCount, keys.length );
+		recoveredRecordKeyCount += keys.length;
+	}
+	
+	// returns null if any recovered command didn't know its record keys
+	long[] getRecoveredRecordKeys()
+	{
+		if ( recoveredRecordKeysUnknown )
+		{
+			return null;
+		}
+		long keys[] = new long[ recoveredRecordKeyCount ];
+		if ( recoveredRecordKeyCount > 0 )
+		{
+			System.arraycopy( recoveredRecordKeys, 0, keys, 0, 
+				recoveredRecordKeyCount );
+		}
+		return keys;
+	}
+	
+	int getRecoveredCommandCount()
+	{
+		return recoveredCommandCount;
+	}
 
 	/**
 	 * Rollbacks the transaction, calls {@link #doRollback}.
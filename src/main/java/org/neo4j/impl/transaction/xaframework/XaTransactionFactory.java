@@ -1,5 +1,7 @@
 package org.neo4j.impl.transaction.xaframework;
 
+import java.io.IOException;
+
 /**
  * Factory for creating {@link XaTransaction XaTransactions} used during
  * recovery.
@@ -34,4 +36,15 @@ public abstract class XaTransactionFactory
 	 * is complete.
 	 */
 	public void recoveryComplete() {}
+	
+	/**
+	 * This method will be called when the logical log is rotated, before 
+	 * entries of completed transactions are dropped. Implementations must 
+	 * make sure that all changes made by completed transactions are written 
+	 * to disk. This implementation does nothing so override if the logical 
+	 * log of the resource is rotated.
+	 * 
+	 * @throws IOException if unable to flush changes
+	 */
+	public void flushAll() throws IOException {}
 }
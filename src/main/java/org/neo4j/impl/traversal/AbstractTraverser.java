@@ -2,19 +2,15 @@ package org.neo4j.impl.traversal;
 
 import org.neo4j.api.core.Direction;
 import org.neo4j.api.core.Node;
-import org.neo4j.api.core.Relationship;
 import org.neo4j.api.core.RelationshipType;
 import org.neo4j.api.core.ReturnableEvaluator;
 import org.neo4j.api.core.StopEvaluator;
 import org.neo4j.api.core.TraversalPosition;
 import org.neo4j.api.core.Traverser;
+import org.neo4j.impl.core.NodeManager;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Set;
 import java.util.NoSuchElementException;
 
 
@@ -28,14 +24,23 @@ import java.util.NoSuchElementException;
  * <P>
  * The AbstractTraverser contains the logic and functionality that is common
  * to both traverser subtypes. In reality, this means ALL functionality
- * except for the data structure used to store the traverser list (captured
- * via the four abstract operations {@link #initializeList initializeList},
- * {@link #addPositionToList addPositionToList},
- * {@link #getNextPositionFromList getNextPositionFromList} and
- * {@link #listIsEmpty listIsEmpty}) and whether children are processed in
- * natural- or reverse order (captured via the abstract operation
+ * except for the end of the traverser list positions are taken from
+ * (captured via the abstract operation
+ * {@link #getNextPositionFromList getNextPositionFromList}) and whether
+ * children are processed in natural- or reverse order (captured via the
+ * abstract operation
  * {@link #traverseChildrenInNaturalOrder traverserChildrenInNaturalOrder}).
  * <P>
+ * The traversal works on node and relationship ids. Visited nodes are kept
+ * in a {@link NodeIdSet} bit set and positions not yet visited in a
+ * {@link PositionList} of ints, nodes already visited are never added to
+ * the list. A {@link TraversalPositionImpl} is only created for positions
+ * taken from the list and it looks up its nodes and relationship when an
+ * evaluator or the client asks for them.
+ * <P>
+ * An instrumented traversal (see {@link #instrument instrument()}) also
+ * records {@link TraversalStatistics} for each depth and has a max depth.
+ * <P>
  * In order to minimize overhead, the AbstractTraverser caches the result
  * of {@link #hasNext} so that the subsequent implementation of {@link #next} or
  * {@link #nextNode} won't have to redo the traversal.
@@ -44,7 +49,7 @@ import java.util.NoSuchElementException;
  * @see BreadthFirstTraverser
  * @see DepthFirstTraverser
  */
-abstract class AbstractTraverser implements Traverser,Iterator<Node>
+abstract class AbstractTraverser implements InstrumentedTraverser,Iterator<Node>
 {
 	private RelationshipType[]	traversableRels		= null;
 	private Direction[]			traversableDirs		= null;
@@ -54,11 +59,24 @@ abstract class AbstractTraverser implements Traverser,Iterator<Node>
 	private ReturnableEvaluator	returnableEvaluator	= null;
 //	private RandomEvaluator 	randomEvaluator 	= null;
 	
-	private Set<Node> visitedNodes = new HashSet<Node>();
+	private static final NodeManager nodeManager = NodeManager.getManager();
+	
+	// single element arrays of the types above, to look up ids one type
+	// at a time without creating arrays
+	private RelationshipType[][] traversableTypes = null;
+	private RelationshipType[][] preservingTypes = null;
+	private Node startNode = null;
+	
+	private final NodeIdSet visitedNodes = new NodeIdSet();
+	private final PositionList positions = new PositionList();
 	private Node cachedNode	= null;
 	private int returnedNodesCount = 0;
 	private TraversalPositionImpl traversalPosition = null;
 	
+	// set for instrumented traversals only
+	private TraversalStatistics statistics = null;
+	private int maxDepth = Integer.MAX_VALUE;
+	
 	/**
 	 * Creates an AbstractTraverser subclass, for information about the
 	 * arguments please see the documentation of {@link TraverserFactory}.
@@ -90,19 +108,31 @@ abstract class AbstractTraverser implements Traverser,Iterator<Node>
 		// Assign attributes
 		this.traversableRels = traversableRels;
 		this.traversableDirs = traversableDirs;
+		this.traversableTypes = splitTypes( traversableRels );
 		this.preservingRels = preservingRels;
 		this.preservingDirs = preservingDirs;
+		this.preservingTypes = splitTypes( preservingRels );
 		this.stopEvaluator = stopEvaluator;
 		this.returnableEvaluator = returnableEvaluator;
 //		this.randomEvaluator = randomEvaluator;
 		
-		// Initialize the (subclass-specific) traverser list
-		this.initializeList();
-		
 		// Add the first position to the list
-		TraversalPositionImpl firstPos = this.createPosition( startNode, null,
-														  null, 0 );
-		this.addPositionToList( firstPos );
+		this.startNode = startNode;
+		this.positions.addLast( (int) startNode.getId(), -1, -1, 0 );
+	}
+	
+	static RelationshipType[][] splitTypes( RelationshipType[] types )
+	{
+		if ( types == null )
+		{
+			return null;
+		}
+		RelationshipType[][] split = new RelationshipType[types.length][];
+		for ( int i = 0; i < types.length; i++ )
+		{
+			split[i] = new RelationshipType[] { types[i] };
+		}
+		return split;
 	}
 
 	public Iterator<Node> iterator()
@@ -156,24 +186,78 @@ abstract class AbstractTraverser implements Traverser,Iterator<Node>
 		return nodeToReturn;
 	}
 	
+	/**
+	 * Makes this an instrumented traversal that collects statistics in
+	 * <CODE>statistics</CODE> and doesn't expand nodes deeper than
+	 * <CODE>maxDepth</CODE>. Must be invoked before the traversal starts.
+	 */
+	void instrument( TraversalStatistics statistics, int maxDepth )
+	{
+		this.statistics = statistics;
+		this.maxDepth = maxDepth;
+	}
+	
+	public TraversalStatistics getStatistics()
+	{
+		return this.statistics;
+	}
+	
 	// Traverses to the next node and returns it, or null if there are
 	// no more nodes in this traversal
 	private Node traverseToNextNode()
+	{
+		if ( this.statistics == null )
+		{
+			return this.traverseToNextNode( null );
+		}
+		boolean startedRecording = nodeManager.startCacheRecording();
+		try
+		{
+			return this.traverseToNextNode( this.statistics );
+		}
+		finally
+		{
+			if ( startedRecording )
+			{
+				nodeManager.stopCacheRecording();
+			}
+		}
+	}
+	
+	private Node traverseToNextNode( TraversalStatistics stats )
 	{
 		Node nodeToReturn = null;
 		
-		while ( !this.listIsEmpty() && nodeToReturn == null )
+		while ( !this.positions.isEmpty() && nodeToReturn == null )
 		{
 			// Get next node from the list
-			TraversalPositionImpl currentPos = this.getNextPositionFromList();
-			traversalPosition = currentPos;
-			Node currentNode = currentPos.currentNode();
+			int slot = this.getNextPositionFromList( this.positions );
+			int currentNodeId = positions.getNodeId( slot );
 			
 			// Make sure we haven't visited this node before: add() returns
 			// true if the set doesn't contain the node -- which means that
-			// we're fine.
-			if ( visitedNodes.add(currentNode) )
+			// we're fine. The node may have been added to the list more
+			// than once before it was visited.
+			if ( !visitedNodes.add( currentNodeId ) )
+			{
+				if ( stats != null )
+				{
+					stats.duplicateRejected( positions.getDepth( slot ) );
+				}
+			}
+			else
 			{
+				TraversalPositionImpl currentPos = this.createPosition( slot );
+				traversalPosition = currentPos;
+				long cacheHits = 0;
+				long cacheMisses = 0;
+				if ( stats != null )
+				{
+					stats.nodeVisited( currentPos.depth() );
+					cacheHits = nodeManager.getRecordedCacheHits();
+					cacheMisses = nodeManager.getRecordedCacheMisses();
+				}
+				
 				// Update position with however many nodes we've returned
 				// from the traversal up until now, this may be used to
 				// determine whether we should stop and/or return currentPos
@@ -181,37 +265,83 @@ abstract class AbstractTraverser implements Traverser,Iterator<Node>
 				
 				// If we're not stopping, then add related nodes to the list
 				// or current position not valid (last trav rel deleted)
-				if ( !currentPos.isValid() || 
-					!this.stopEvaluator.isStopNode(currentPos) )
+				if ( ( !currentPos.isValid() || 
+					!this.isStopNode( currentPos, stats ) ) && 
+					currentPos.depth() < this.maxDepth )
 				{
 					// Add the nodes at the end of all traversable- and
 					// preserving relationships
 					this.addEndNodesToList( currentPos,
-											this.traversableRels,
+											this.traversableTypes,
 											this.traversableDirs );
 					this.addEndNodesToList( currentPos,
-											this.preservingRels,
+											this.preservingTypes,
 											this.preservingDirs );
 				}
 				
 				// Check if we should return currentPos
 				if ( currentPos.isValid() && 
-					this.returnableEvaluator.isReturnableNode(currentPos) )
+					this.isReturnableNode( currentPos, stats ) )
 				{
 					this.returnedNodesCount++;
 					nodeToReturn = currentPos.currentNode();
 				}
+				
+				if ( stats != null )
+				{
+					stats.cacheAccessed( currentPos.depth(), 
+						nodeManager.getRecordedCacheHits() - cacheHits, 
+						nodeManager.getRecordedCacheMisses() - cacheMisses );
+				}
 			}
 		}
 		
 		return nodeToReturn;
 	}
 	
+	private boolean isStopNode( TraversalPositionImpl currentPos, 
+		TraversalStatistics stats )
+	{
+		if ( stats == null )
+		{
+			return this.stopEvaluator.isStopNode( currentPos );
+		}
+		long start = System.nanoTime();
+		try
+		{
+			return this.stopEvaluator.isStopNode( currentPos );
+		}
+		finally
+		{
+			stats.evaluatorTime( currentPos.depth(), 
+				System.nanoTime() - start );
+		}
+	}
+	
+	private boolean isReturnableNode( TraversalPositionImpl currentPos, 
+		TraversalStatistics stats )
+	{
+		if ( stats == null )
+		{
+			return this.returnableEvaluator.isReturnableNode( currentPos );
+		}
+		long start = System.nanoTime();
+		try
+		{
+			return this.returnableEvaluator.isReturnableNode( currentPos );
+		}
+		finally
+		{
+			stats.evaluatorTime( currentPos.depth(), 
+				System.nanoTime() - start );
+		}
+	}
+	
 	// Adds the nodes at the end or start (depending on 'dirs') of all
 	// relationships of a type in 'relTypes' that are attached to the
 	// node in 'currentPos' to the list
 	private void addEndNodesToList( TraversalPositionImpl currentPos,
-									RelationshipType[] relTypes,
+									RelationshipType[][] relTypes,
 									Direction[] dirs )
 	{
 		if ( relTypes == null )
@@ -220,99 +350,64 @@ abstract class AbstractTraverser implements Traverser,Iterator<Node>
 		}
 		
 		// Get the node and compute new depth
-		Node currentNode = currentPos.currentNode();
+		int currentNodeId = currentPos.currentNodeId();
 		int newDepth = currentPos.depth() + 1;
 		
 		// For all relationship types...
 		for ( int i = 0; i < relTypes.length; i++ )
 		{
-			// ... get all rels of that type and direction from currentNode
-			Iterable<Relationship> rels = null;
-			if ( dirs == null || dirs[i] == Direction.BOTH || dirs[i] == null )
+			// ... get the ids of all rels of that type and direction from
+			// currentNode
+			Direction dir = Direction.BOTH;
+			if ( dirs != null && dirs[i] != null )
 			{
-				rels = currentNode.getRelationships( relTypes[i] );
-//				if ( randomEvaluator != null && 
-//					randomEvaluator.shouldRandomize( currentPos, relTypes[i] ) )
-//				{
-//					rels = randomizeRelationships( rels );
-//				}
+				dir = dirs[i];
 			}
-			else
+			int[] relIds = nodeManager.getRelationshipIds( currentNodeId, 
+				relTypes[i], dir );
+			if ( this.statistics != null )
 			{
-				rels = currentNode.getRelationships( relTypes[i], dirs[i] );
-//				if ( randomEvaluator != null && 
-//					randomEvaluator.shouldRandomize( currentPos, relTypes[i] ) )
-//				{
-//					rels = randomizeRelationships( rels );
-//				}
+				this.statistics.relationshipsExpanded( newDepth - 1, 
+					relIds.length );
+			}
+			for ( int relId : relIds )
+			{
+				this.processRel( currentNodeId, relId, newDepth );
 			}
-			
-			// The order we process relationships is really irrelevant, but
-			// as long as we have a non-deterministic ordering in
-			// currentNode.getRelationship(), we'll have to resort to ugly
-			// hacks like this to be able to return the branches in the
-			// the order that people generally expect.
-			
-//			if ( this.traverseChildrenInNaturalOrder() )
-//			{
-				for ( Relationship rel : rels )
-				{
-					this.processRel( currentNode, rel, newDepth );
-				}
-//			}
-//			else
-//			{
-//				Relationship relArray[] = getRelationshipArray( rels );
-//				for ( int j = relArray.length; --j >= 0; )
-//				{
-//					this.processRel( currentNode, relArray[j], newDepth );
-//				}
-//			}
 		}
 	}
 
-//	private Relationship[] getRelationshipArray( 
-//		Iterable<Relationship> relsIterable )
-//	{
-//		ArrayList<Relationship> relList = new ArrayList<Relationship>();
-//		for ( Relationship rel : relsIterable )
-//		{
-//			relList.add( rel );
-//		}
-//		return relList.toArray( new Relationship[ relList.size() ] );
-//	}
-	
-	// TODO, write unit test to verify RandomEvaluator stuff
-//	private Relationship[] randomizeRelationships( Relationship rel[] )
-//	{
-//		java.util.List relsList = java.util.Arrays.asList( rel );
-//		java.util.Collections.shuffle( relsList );
-//		return ( Relationship[] ) relsList.toArray( 
-//			new Relationship[ rel.length ] );
-//	}
-	
-	private void processRel( Node currentNode, Relationship rel, int newDepth )
+	private void processRel( int currentNodeId, int relId, int newDepth )
 	{
-		Node endNode = rel.getOtherNode( currentNode );
-		TraversalPositionImpl newPos = this.createPosition(
-										endNode, currentNode, rel,
-										newDepth );
-		this.addPositionToList( newPos );
+		int endNodeId = nodeManager.getOtherNodeId( relId, currentNodeId );
+		// skip deleted relationships and nodes already visited
+		if ( endNodeId == -1 )
+		{
+			return;
+		}
+		if ( !visitedNodes.contains( endNodeId ) )
+		{
+			this.positions.addLast( endNodeId, currentNodeId, relId, 
+				newDepth );
+		}
+		else if ( this.statistics != null )
+		{
+			this.statistics.duplicateRejected( newDepth );
+		}
 	}
 	
-	// Creates a traversal position populated with the specified data
-	private TraversalPositionImpl createPosition(
-												Node currentNode,
-												Node previousNode,
-												Relationship lastRelTraversed,
-												int currentDepth
-											)
+	// Creates a traversal position from the position in 'slot' of the list
+	private TraversalPositionImpl createPosition( int slot )
 	{
+		if ( positions.getDepth( slot ) == 0 )
+		{
+			return new TraversalPositionImpl( this.startNode );
+		}
 		return new TraversalPositionImpl(
-										currentNode,
-										previousNode,
-										lastRelTraversed,
-										currentDepth
+										positions.getNodeId( slot ),
+										positions.getPreviousNodeId( slot ),
+										positions.getRelationshipId( slot ),
+										positions.getDepth( slot )
 									);
 	}
 	
@@ -338,16 +433,13 @@ abstract class AbstractTraverser implements Traverser,Iterator<Node>
 	// javadoc: see Traverser
 	public Traverser sort( NodeSortInfo<Node> nsi )
 	{
-		ArrayList<Node> tempList = new ArrayList<Node>();
-		
-		// Traverse and get all remaining nodes
-		while ( this.hasNext() )
-		{
-			tempList.add( this.nextNode() );
-		}
-		
-		Collections.sort( tempList, nsi );
-		return new SortedTraverser( tempList );
+		return NodeSorter.sort( this, nsi, Integer.MAX_VALUE );
+	}
+	
+	// javadoc: see Traverser
+	public Traverser sort( NodeSortInfo<Node> nsi, int maxCount )
+	{
+		return NodeSorter.sort( this, nsi, maxCount );
 	}
 	
 	public TraversalPosition currentPosition()
@@ -356,28 +448,12 @@ abstract class AbstractTraverser implements Traverser,Iterator<Node>
 	}
 
 	/**
-	 * Instantiates the underlying container used to store future traversal
-	 * positions. This operation is required to overcome, ehum, "limitations"
-	 * in the way java resolves constructors and field initialization
-	 * in complex inheritance hierarchies.
-	 */
-	abstract void initializeList();
-	
-	/**
-	 * Adds <CODE>position</CODE> to the end of the list.
-	 */
-	abstract void addPositionToList( TraversalPositionImpl position );
-	
-	/**
-	 * Returns the next position from the list.
-	 */
-	abstract TraversalPositionImpl getNextPositionFromList();
-	
-	/**
-	 * Returns <CODE>true</CODE> if there are no more nodes
-	 * to traverse in the list, <CODE>false</CODE> otherwise.
+	 * Removes the next position to visit from <CODE>positions</CODE>, 
+	 * which is never empty when this method is invoked.
+	 * 
+	 * @return the slot of the removed position
 	 */
-	abstract boolean listIsEmpty();
+	abstract int getNextPositionFromList( PositionList positions );
 	
 	/**
 	 * Returns <CODE>true</CODE> if the traverser subtype wants
@@ -18,11 +18,8 @@ import org.neo4j.api.core.StopEvaluator;
  * @see AbstractTraverser
  * @see DepthFirstTraverser
  */
-// TODO: document reason for initializeList() and the declaration of 'nodeQueue'
 class BreadthFirstTraverser extends AbstractTraverser
 {
-	private java.util.LinkedList<TraversalPositionImpl> nodeQueue;
-	
 	/**
 	 * Creates a BreadthFirstTraverser according the contract of
 	 * {@link AbstractTraverser#AbstractTraverser AbstractTraverser}.
@@ -44,28 +41,13 @@ class BreadthFirstTraverser extends AbstractTraverser
 			   returnableEvaluator, randomEvaluator );
 	}
 	
-	void addPositionToList( TraversalPositionImpl position )
-	{
-		this.nodeQueue.addLast( position );
-	}
-	
-	TraversalPositionImpl getNextPositionFromList()
-	{
-		return this.nodeQueue.removeFirst();
-	}
-	
-	boolean listIsEmpty()
+	int getNextPositionFromList( PositionList positions )
 	{
-		return this.nodeQueue.isEmpty();
+		return positions.removeFirst();
 	}
 	
 	final boolean traverseChildrenInNaturalOrder()
 	{
 		return true;
 	}
-	
-	void initializeList()
-	{
-		this.nodeQueue = new java.util.LinkedList<TraversalPositionImpl>();
-	}
 }
@@ -0,0 +1,91 @@
+package org.neo4j.impl.traversal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe version of {@link NodeIdSet} used when a traversal is 
+ * expanded by many threads. Ids up to the capacity given at creation (the 
+ * highest node id in use when the traversal starts) are kept in a bit set 
+ * updated with compare and set, higher ids (nodes created during the 
+ * traversal) in a concurrent map.
+ */
+class ConcurrentNodeIdSet
+{
+	private final AtomicLongArray bits;
+	private final int capacity;
+	private final Map<Integer,Boolean> overflow = 
+		new ConcurrentHashMap<Integer,Boolean>();
+	private final AtomicInteger size = new AtomicInteger( 0 );
+	
+	/**
+	 * Creates a set that can hold ids up to <CODE>maxId</CODE> in its bit 
+	 * set.
+	 * 
+	 * @param maxId the highest expected id
+	 */
+	ConcurrentNodeIdSet( int maxId )
+	{
+		this.bits = new AtomicLongArray( ( Math.max( maxId, 63 ) >> 6 ) + 1 );
+		this.capacity = bits.length() << 6;
+	}
+	
+	/**
+	 * Adds <CODE>id</CODE> to the set. If many threads add the same id 
+	 * concurrently exactly one of them gets <CODE>true</CODE> back.
+	 * 
+	 * @param id the node id
+	 * @return <CODE>true</CODE> if the id wasn't already in the set
+	 */
+	boolean add( int id )
+	{
+		if ( id < 0 )
+		{
+			throw new IllegalArgumentException( "Illegal node id " + id );
+		}
+		if ( id >= capacity )
+		{
+			if ( overflow.put( id, Boolean.TRUE ) == null )
+			{
+				size.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+		int word = id >> 6;
+		long mask = 1L << ( id & 63 );
+		while ( true )
+		{
+			long current = bits.get( word );
+			if ( ( current & mask ) != 0 )
+			{
+				return false;
+			}
+			if ( bits.compareAndSet( word, current, current | mask ) )
+			{
+				size.incrementAndGet();
+				return true;
+			}
+		}
+	}
+	
+	boolean contains( int id )
+	{
+		if ( id < 0 )
+		{
+			return false;
+		}
+		if ( id >= capacity )
+		{
+			return overflow.containsKey( id );
+		}
+		return ( bits.get( id >> 6 ) & ( 1L << ( id & 63 ) ) ) != 0;
+	}
+	
+	int size()
+	{
+		return size.get();
+	}
+}
@@ -18,11 +18,8 @@ import org.neo4j.api.core.StopEvaluator;
  * @see AbstractTraverser
  * @see BreadthFirstTraverser
  */
-// TODO: document reason for initializeList() and the declaration of 'stack'
 class DepthFirstTraverser extends AbstractTraverser
 {
-	private java.util.Stack<TraversalPositionImpl> stack;
-	
 	/**
 	 * Creates a DepthFirstTraverser according the contract of
 	 * {@link AbstractTraverser#AbstractTraverser AbstractTraverser}.
@@ -44,29 +41,13 @@ class DepthFirstTraverser extends AbstractTraverser
 			   returnableEvaluator, randomEvaluator );
 	}
 	
-	void addPositionToList( TraversalPositionImpl position )
-	{
-		this.stack.push( position );
-	}
-	
-	TraversalPositionImpl getNextPositionFromList()
+	int getNextPositionFromList( PositionList positions )
 	{
-		return this.stack.pop();
-	}
-	
-	boolean listIsEmpty()
-	{
-		return this.stack.empty();
+		return positions.removeLast();
 	}
 	
 	final boolean traverseChildrenInNaturalOrder()
 	{
 		return false;
 	}
-	
-	void initializeList()
-	{
-		this.stack = new java.util.Stack<TraversalPositionImpl>();
-	}
-	
 }
@@ -0,0 +1,23 @@
+package org.neo4j.impl.traversal;
+
+import org.neo4j.api.core.Traverser;
+
+/**
+ * A traverser that can collect {@link TraversalStatistics} while it
+ * traverses, created with
+ * {@link TraverserFactory#createInstrumentedTraverser
+ * createInstrumentedTraverser()}. Breadth- and depth-first traversers
+ * created by the other factory methods also implement this interface but
+ * collect nothing.
+ */
+public interface InstrumentedTraverser extends Traverser
+{
+	/**
+	 * Returns the statistics of this traversal so far, the numbers are
+	 * complete when the traverser has returned its last node.
+	 *
+	 * @return the statistics or <CODE>null</CODE> if this traversal isn't
+	 * instrumented
+	 */
+	public TraversalStatistics getStatistics();
+}
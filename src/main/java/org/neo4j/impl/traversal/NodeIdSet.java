@@ -0,0 +1,115 @@
+package org.neo4j.impl.traversal;
+
+/**
+ * Set of visited node ids kept as a paged bit set. Node ids are allocated
+ * densely from zero by the id generator so one bit per possible id is both
+ * smaller and faster than a hash set of nodes. The bits are kept in pages
+ * of <CODE>PAGE_SIZE</CODE> ids that are only allocated when an id in them
+ * is added, so a traversal of a few nodes with high ids only pays for the
+ * page table (one reference per page up to the highest id) and the pages
+ * it touches. This class is not thread safe.
+ */
+class NodeIdSet
+{
+	private static final int PAGE_SHIFT = 12;
+	// ids per page, a page is PAGE_SIZE / 64 longs (512 bytes)
+	private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	
+	private long[][] pages;
+	private int size = 0;
+	
+	NodeIdSet()
+	{
+		this( PAGE_SIZE * 16 );
+	}
+	
+	/**
+	 * Creates a set with a page table for ids up to
+	 * <CODE>expectedMaxId</CODE> before it has to grow. No pages are
+	 * allocated until ids are added.
+	 * 
+	 * @param expectedMaxId the highest id expected to be added
+	 */
+	NodeIdSet( int expectedMaxId )
+	{
+		int pageCount = ( Math.max( expectedMaxId, 0 ) >> PAGE_SHIFT ) + 1;
+		pages = new long[ pageCount ][];
+	}
+	
+	/**
+	 * Adds <CODE>id</CODE> to the set.
+	 * 
+	 * @param id the node id
+	 * @return <CODE>true</CODE> if the id wasn't already in the set
+	 */
+	boolean add( int id )
+	{
+		if ( id < 0 )
+		{
+			throw new IllegalArgumentException( "Illegal node id " + id );
+		}
+		int pageIndex = id >> PAGE_SHIFT;
+		if ( pageIndex >= pages.length )
+		{
+			long[][] newPages =
+				new long[ Math.max( pageIndex + 1, pages.length * 2 ) ][];
+			System.arraycopy( pages, 0, newPages, 0, pages.length );
+			pages = newPages;
+		}
+		long[] page = pages[pageIndex];
+		if ( page == null )
+		{
+			page = new long[ PAGE_SIZE >> 6 ];
+			pages[pageIndex] = page;
+		}
+		int word = ( id & PAGE_MASK ) >> 6;
+		long mask = 1L << ( id & 63 );
+		if ( ( page[word] & mask ) != 0 )
+		{
+			return false;
+		}
+		page[word] |= mask;
+		size++;
+		return true;
+	}
+	
+	boolean contains( int id )
+	{
+		int pageIndex = id >> PAGE_SHIFT;
+		if ( id < 0 || pageIndex >= pages.length )
+		{
+			return false;
+		}
+		long[] page = pages[pageIndex];
+		if ( page == null )
+		{
+			return false;
+		}
+		return ( page[( id & PAGE_MASK ) >> 6] & ( 1L << ( id & 63 ) ) ) != 0;
+	}
+	
+	int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Returns the number of bit pages allocated, used by tests to check
+	 * that sparse ids don't allocate bits for the ids below them.
+	 * 
+	 * @return the number of allocated pages
+	 */
+	int getPageCount()
+	{
+		int count = 0;
+		for ( long[] page : pages )
+		{
+			if ( page != null )
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+}
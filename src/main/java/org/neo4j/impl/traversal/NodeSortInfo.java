@@ -92,6 +92,16 @@ public abstract class NodeSortInfo<T extends Node> implements Comparator<T>
 			}
 		}
 
+		String getKey()
+		{
+			return key;
+		}
+		
+		int getDirection()
+		{
+			return direction;
+		}
+
 		/**
 		 * Compares its two arguments, see {@link Comparator#compare} for more 
 		 * information.
@@ -0,0 +1,371 @@
+package org.neo4j.impl.traversal;
+
+import org.neo4j.api.core.Node;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Sorts nodes as specified by a {@link NodeSortInfo}, keeping only the
+ * first <CODE>maxCount</CODE> nodes in sort order. Nodes are added one at a
+ * time, when more than <CODE>maxCount</CODE> nodes have been added the
+ * kept nodes form a heap with the last node in sort order at the root so
+ * each following node is compared to the root only and either dropped or
+ * swapped in. Sorting <CODE>n</CODE> nodes this way is
+ * <CODE>O(n log maxCount)</CODE> and memory is bound by
+ * <CODE>maxCount</CODE>.
+ * <p>
+ * For a {@link NodeSortInfo.PropertySortInfo} the sort property is read
+ * once per node when it is added, <CODE>Integer</CODE> values are kept in a
+ * primitive array and the comparisons never touch the nodes. Other sort
+ * infos are handed the nodes.
+ * <p>
+ * The sorted nodes are returned by {@link #iterator()} which turns the
+ * kept nodes into a heap with the first node at the root and removes one
+ * node per invocation of <CODE>next()</CODE>, so taking the first few
+ * nodes doesn't pay for sorting the rest. Nodes with equal sort keys are
+ * returned in the order they were added.
+ */
+class NodeSorter
+{
+	private static final byte NULL_KEY = 0;
+	private static final byte INT_KEY = 1;
+	private static final byte STRING_KEY = 2;
+	private static final byte OTHER_KEY = 3;
+
+	private final NodeSortInfo<Node> nsi;
+	private final String propertyKey;
+	private final int direction;
+	private final int maxCount;
+
+	// entries are slots in the arrays below, heap holds slots
+	private Node[] nodes;
+	private byte[] keyTypes;
+	private int[] intKeys;
+	private Object[] objectKeys;
+	private int[] addOrder;
+	private int[] heap;
+	private int size = 0;
+	private int addedCount = 0;
+	private boolean bounded = false;
+
+	/**
+	 * Creates a sorter keeping the first <CODE>maxCount</CODE> nodes.
+	 *
+	 * @param nsi how the nodes should be sorted
+	 * @param maxCount the number of nodes to keep
+	 */
+	NodeSorter( NodeSortInfo<Node> nsi, int maxCount )
+	{
+		if ( nsi == null || maxCount < 0 )
+		{
+			throw new IllegalArgumentException( "nsi=" + nsi +
+				", maxCount=" + maxCount );
+		}
+		this.nsi = nsi;
+		if ( nsi instanceof NodeSortInfo.PropertySortInfo )
+		{
+			NodeSortInfo.PropertySortInfo<Node> propertySortInfo =
+				( NodeSortInfo.PropertySortInfo<Node> ) nsi;
+			this.propertyKey = propertySortInfo.getKey();
+			this.direction = propertySortInfo.getDirection();
+		}
+		else
+		{
+			this.propertyKey = null;
+			this.direction = 1;
+		}
+		this.maxCount = maxCount;
+		int capacity = Math.min( maxCount, 64 );
+		nodes = new Node[capacity];
+		keyTypes = new byte[capacity];
+		intKeys = new int[capacity];
+		objectKeys = new Object[capacity];
+		addOrder = new int[capacity];
+		heap = new int[capacity];
+	}
+
+	/**
+	 * Sorts the nodes returned by <CODE>nodes</CODE>.
+	 *
+	 * @param nodes the nodes to sort
+	 * @param nsi how the nodes should be sorted
+	 * @param maxCount the maximum number of nodes to return
+	 * @return a traverser returning the first <CODE>maxCount</CODE> nodes in
+	 * sort order
+	 */
+	static SortedTraverser sort( Iterator<Node> nodes, NodeSortInfo<Node> nsi,
+		int maxCount )
+	{
+		NodeSorter sorter = new NodeSorter( nsi, maxCount );
+		while ( nodes.hasNext() )
+		{
+			sorter.add( nodes.next() );
+		}
+		return new SortedTraverser( sorter.iterator() );
+	}
+
+	/**
+	 * Adds a node, the node is dropped if <CODE>maxCount</CODE> nodes that
+	 * come before it in sort order have already been added.
+	 *
+	 * @param node the node to add
+	 */
+	void add( Node node )
+	{
+		int order = addedCount++;
+		if ( size < maxCount )
+		{
+			if ( size == nodes.length )
+			{
+				grow();
+			}
+			int slot = size;
+			set( slot, node, order );
+			heap[size++] = slot;
+			return;
+		}
+		if ( maxCount == 0 )
+		{
+			return;
+		}
+		if ( !bounded )
+		{
+			// last node in sort order at the root
+			heapify( false );
+			bounded = true;
+		}
+		int root = heap[0];
+		Node rootNode = nodes[root];
+		byte rootKeyType = keyTypes[root];
+		int rootIntKey = intKeys[root];
+		Object rootObjectKey = objectKeys[root];
+		int rootOrder = addOrder[root];
+		set( root, node, order );
+		if ( compare( root, rootNode, rootKeyType, rootIntKey,
+			rootObjectKey, rootOrder ) < 0 )
+		{
+			siftDown( 0, size, false );
+		}
+		else
+		{
+			// not among the first, put the root back
+			nodes[root] = rootNode;
+			keyTypes[root] = rootKeyType;
+			intKeys[root] = rootIntKey;
+			objectKeys[root] = rootObjectKey;
+			addOrder[root] = rootOrder;
+		}
+	}
+
+	private void grow()
+	{
+		int capacity = (int) Math.min( (long) nodes.length * 2, maxCount );
+		Node[] newNodes = new Node[capacity];
+		System.arraycopy( nodes, 0, newNodes, 0, size );
+		nodes = newNodes;
+		byte[] newKeyTypes = new byte[capacity];
+		System.arraycopy( keyTypes, 0, newKeyTypes, 0, size );
+		keyTypes = newKeyTypes;
+		intKeys = copyOf( intKeys, capacity );
+		Object[] newObjectKeys = new Object[capacity];
+		System.arraycopy( objectKeys, 0, newObjectKeys, 0, size );
+		objectKeys = newObjectKeys;
+		addOrder = copyOf( addOrder, capacity );
+		heap = copyOf( heap, capacity );
+	}
+
+	private int[] copyOf( int[] array, int length )
+	{
+		int[] newArray = new int[length];
+		System.arraycopy( array, 0, newArray, 0, size );
+		return newArray;
+	}
+
+	// stores node and its sort key in slot
+	private void set( int slot, Node node, int order )
+	{
+		nodes[slot] = node;
+		addOrder[slot] = order;
+		intKeys[slot] = 0;
+		objectKeys[slot] = null;
+		if ( propertyKey == null )
+		{
+			keyTypes[slot] = OTHER_KEY;
+			return;
+		}
+		Object value = node.getProperty( propertyKey, null );
+		if ( value == null )
+		{
+			keyTypes[slot] = NULL_KEY;
+		}
+		else if ( value instanceof Integer )
+		{
+			keyTypes[slot] = INT_KEY;
+			intKeys[slot] = ( Integer ) value;
+		}
+		else if ( value instanceof String )
+		{
+			keyTypes[slot] = STRING_KEY;
+			objectKeys[slot] = value;
+		}
+		else
+		{
+			keyTypes[slot] = OTHER_KEY;
+		}
+	}
+
+	// compares two slots in sort order, ties broken by add order
+	private int compare( int slot1, int slot2 )
+	{
+		return compare( slot1, nodes[slot2], keyTypes[slot2], intKeys[slot2],
+			objectKeys[slot2], addOrder[slot2] );
+	}
+
+	private int compare( int slot, Node node2, byte keyType2, int intKey2,
+		Object objectKey2, int order2 )
+	{
+		int result;
+		if ( propertyKey == null )
+		{
+			result = nsi.compare( nodes[slot], node2 );
+		}
+		else
+		{
+			result = compareKeys( keyTypes[slot], intKeys[slot],
+				objectKeys[slot], keyType2, intKey2, objectKey2 );
+		}
+		if ( result != 0 )
+		{
+			return result;
+		}
+		return addOrder[slot] < order2 ? -1 : ( addOrder[slot] == order2 ?
+			0 : 1 );
+	}
+
+	// same order as NodeSortInfo.PropertySortInfo.compare
+	private int compareKeys( byte type1, int int1, Object object1,
+		byte type2, int int2, Object object2 )
+	{
+		if ( type1 == NULL_KEY )
+		{
+			return ( type2 == NULL_KEY ? 0 : -1 ) * direction;
+		}
+		if ( type2 == NULL_KEY )
+		{
+			return direction;
+		}
+		if ( type1 == INT_KEY )
+		{
+			if ( type2 == INT_KEY )
+			{
+				return ( int1 < int2 ? -1 : ( int1 == int2 ? 0 : 1 ) ) *
+					direction;
+			}
+			if ( type2 == STRING_KEY )
+			{
+				// alpha numeric
+				return String.valueOf( int1 ).compareTo( ( String ) object2 )
+					* direction;
+			}
+			return direction;
+		}
+		if ( type1 == STRING_KEY )
+		{
+			if ( type2 == STRING_KEY )
+			{
+				return ( ( String ) object1 ).compareTo( ( String ) object2 )
+					* direction;
+			}
+			if ( type2 == INT_KEY )
+			{
+				return ( ( String ) object1 ).compareTo( String.valueOf(
+					int2 ) ) * direction;
+			}
+			return direction;
+		}
+		if ( type2 == INT_KEY || type2 == STRING_KEY )
+		{
+			return -1 * direction;
+		}
+		return 0;
+	}
+
+	// true if slot1 should be closer to the root than slot2
+	private boolean above( int slot1, int slot2, boolean firstAtRoot )
+	{
+		int result = compare( slot1, slot2 );
+		return firstAtRoot ? result < 0 : result > 0;
+	}
+
+	private void heapify( boolean firstAtRoot )
+	{
+		for ( int i = size / 2 - 1; i >= 0; i-- )
+		{
+			siftDown( i, size, firstAtRoot );
+		}
+	}
+
+	private void siftDown( int index, int heapSize, boolean firstAtRoot )
+	{
+		int slot = heap[index];
+		while ( true )
+		{
+			int child = index * 2 + 1;
+			if ( child >= heapSize )
+			{
+				break;
+			}
+			if ( child + 1 < heapSize &&
+				above( heap[child + 1], heap[child], firstAtRoot ) )
+			{
+				child++;
+			}
+			if ( !above( heap[child], slot, firstAtRoot ) )
+			{
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = slot;
+	}
+
+	/**
+	 * Returns the kept nodes in sort order, no more nodes may be added.
+	 *
+	 * @return an iterator removing one node from the sorter per
+	 * <CODE>next()</CODE>
+	 */
+	Iterator<Node> iterator()
+	{
+		heapify( true );
+		return new Iterator<Node>()
+		{
+			public boolean hasNext()
+			{
+				return size > 0;
+			}
+
+			public Node next()
+			{
+				if ( size == 0 )
+				{
+					throw new NoSuchElementException();
+				}
+				int slot = heap[0];
+				Node node = nodes[slot];
+				nodes[slot] = null;
+				objectKeys[slot] = null;
+				heap[0] = heap[--size];
+				siftDown( 0, size, true );
+				return node;
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -0,0 +1,450 @@
+package org.neo4j.impl.traversal;
+
+import org.neo4j.api.core.Direction;
+import org.neo4j.api.core.Node;
+import org.neo4j.api.core.RelationshipType;
+import org.neo4j.api.core.ReturnableEvaluator;
+import org.neo4j.api.core.StopEvaluator;
+import org.neo4j.api.core.TraversalPosition;
+import org.neo4j.api.core.Traverser;
+import org.neo4j.impl.command.TransactionCache;
+import org.neo4j.impl.core.NodeManager;
+import org.neo4j.impl.transaction.TransactionFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import javax.transaction.UserTransaction;
+
+/**
+ * A breadth-first traverser that expands each depth of the traversal on
+ * many threads. The nodes at one depth (the frontier) are split into ranges
+ * that are expanded by tasks in a {@link ForkJoinPool}, the nodes found are
+ * claimed in a {@link ConcurrentNodeIdSet} so each node is visited once.
+ * When all tasks are done their results are merged, in frontier order, into
+ * the nodes to return and the frontier of the next depth. A depth is only
+ * expanded when all nodes of the previous depth have been returned.
+ * <P>
+ * Each task runs in a transaction of its own, so the tasks see the
+ * committed node space only. If the calling transaction has created,
+ * changed or deleted nodes or relationships the traversal is done on the
+ * calling thread instead, since the tasks would neither see the changes nor
+ * be able to read lock what the calling transaction has write locked. Small
+ * frontiers are also expanded on the calling thread.
+ * <P>
+ * <B>Evaluator contract:</B> the stop and returnable evaluators are
+ * invoked concurrently from the pool threads and must therefore be thread
+ * safe and only depend on the position passed to them. Since the nodes of
+ * a depth are evaluated in no particular order:
+ * <UL>
+ *	<LI>{@link TraversalPosition#returnedNodesCount()} is the number of
+ *		nodes returned from previous depths, not counting nodes at the
+ *		current depth.
+ *	<LI>{@link TraversalPosition#previousNode()} and
+ *		{@link TraversalPosition#lastRelationshipTraversed()} is one of the
+ *		possible ways to reach the node at the shortest depth, which one may
+ *		change between runs.
+ * </UL>
+ * Evaluators that only look at the depth, the current node or its
+ * properties, like {@link StopEvaluator#END_OF_NETWORK},
+ * {@link StopEvaluator#DEPTH_ONE}, {@link ReturnableEvaluator#ALL} and
+ * {@link ReturnableEvaluator#ALL_BUT_START_NODE}, are safe. Evaluators that
+ * count nodes, keep state between invocations or stop after a number of
+ * returned nodes are not, use a {@link BreadthFirstTraverser} for them.
+ *
+ * @see TraverserFactory#createParallelTraverser
+ */
+class ParallelBreadthFirstTraverser implements Traverser, Iterator<Node>
+{
+	// frontier ranges smaller than this are expanded by a single task
+	private static final int TASK_SIZE = 512;
+
+	private static final NodeManager nodeManager = NodeManager.getManager();
+
+	private static ForkJoinPool sharedPool = null;
+
+	private final ForkJoinPool pool;
+	private final Node startNode;
+	private final RelationshipType[][] traversableTypes;
+	private final Direction[] traversableDirs;
+	private final StopEvaluator stopEvaluator;
+	private final ReturnableEvaluator returnableEvaluator;
+
+	private final ConcurrentNodeIdSet visitedNodes;
+	private Frontier frontier;
+	private int depth = 0;
+	private List<TraversalPositionImpl> positionsToReturn =
+		Collections.emptyList();
+	private int nextToReturn = 0;
+	private int returnedNodesCount = 0;
+	private TraversalPositionImpl traversalPosition = null;
+
+	/**
+	 * Creates a parallel traverser, for information about the arguments
+	 * please see the documentation of {@link TraverserFactory}.
+	 *
+	 * @param pool the pool to expand the traversal in
+	 */
+	ParallelBreadthFirstTraverser
+						(
+							ForkJoinPool pool,
+							Node startNode,
+							RelationshipType[] traversableRels,
+							Direction[] traversableDirs,
+							StopEvaluator stopEvaluator,
+							ReturnableEvaluator returnableEvaluator
+						)
+	{
+		if ( pool == null ||
+			 startNode == null ||
+			 traversableRels == null ||
+			 stopEvaluator == null ||
+			 returnableEvaluator == null )
+		{
+			String s =	"pool = " + pool + ", startNode = " + startNode +
+						", traversableRels = " + traversableRels +
+						", stopEvaluator = " + stopEvaluator +
+						", returnableEvaluator = " + returnableEvaluator;
+			throw new IllegalArgumentException( "null argument(s): " + s );
+		}
+		this.pool = pool;
+		this.startNode = startNode;
+		this.traversableTypes =
+			AbstractTraverser.splitTypes( traversableRels );
+		this.traversableDirs = traversableDirs;
+		this.stopEvaluator = stopEvaluator;
+		this.returnableEvaluator = returnableEvaluator;
+		int startNodeId = (int) startNode.getId();
+		this.visitedNodes = new ConcurrentNodeIdSet( Math.max( startNodeId,
+			nodeManager.getHighestPossibleIdInUse( Node.class ) ) );
+		this.visitedNodes.add( startNodeId );
+		this.frontier = new Frontier();
+		this.frontier.add( startNodeId, -1, -1 );
+	}
+
+	/**
+	 * Returns the pool used by parallel traversers not given a pool of
+	 * their own, it has one thread per available processor.
+	 *
+	 * @return the shared pool
+	 */
+	static synchronized ForkJoinPool getSharedPool()
+	{
+		if ( sharedPool == null )
+		{
+			sharedPool = new ForkJoinPool(
+				Runtime.getRuntime().availableProcessors() );
+		}
+		return sharedPool;
+	}
+
+	public Iterator<Node> iterator()
+	{
+		return this;
+	}
+
+	// javadoc: see java.util.Iterator or Traverser
+	public boolean hasNext()
+	{
+		while ( nextToReturn == positionsToReturn.size() &&
+			frontier.size() > 0 )
+		{
+			expandFrontier();
+		}
+		return nextToReturn < positionsToReturn.size();
+	}
+
+	// javadoc: see java.util.Iterator or Traverser
+	public Node next()
+	{
+		return this.nextNode();
+	}
+
+	// javadoc: see java.util.Iterator or Traverser
+	public Node nextNode()
+	{
+		if ( !hasNext() )
+		{
+			throw new NoSuchElementException();
+		}
+		traversalPosition = positionsToReturn.get( nextToReturn++ );
+		returnedNodesCount++;
+		return traversalPosition.currentNode();
+	}
+
+	// visits all nodes in the frontier, collecting the positions to return
+	// and the frontier of the next depth
+	private void expandFrontier()
+	{
+		ExpandTask task = new ExpandTask( frontier, depth, returnedNodesCount,
+			0, frontier.size() );
+		LevelResult result;
+		if ( frontier.size() <= TASK_SIZE ||
+			TransactionCache.getCache().hasChanges() )
+		{
+			result = task.expand();
+		}
+		else
+		{
+			result = pool.invoke( task );
+		}
+		positionsToReturn = result.positionsToReturn;
+		nextToReturn = 0;
+		frontier = result.nextFrontier;
+		depth++;
+	}
+
+	// javadoc: see Traverser
+	public Collection<Node> getAllNodes()
+	{
+		List<Node> tempList = new ArrayList<Node>();
+		while ( this.hasNext() )
+		{
+			tempList.add( this.nextNode() );
+		}
+		return tempList;
+	}
+
+	// javadoc: see java.util.Iterator
+	public void remove() { throw new UnsupportedOperationException(); }
+
+	// javadoc: see Traverser
+	public Traverser sort( NodeSortInfo<Node> nsi )
+	{
+		return NodeSorter.sort( this, nsi, Integer.MAX_VALUE );
+	}
+	
+	// javadoc: see Traverser
+	public Traverser sort( NodeSortInfo<Node> nsi, int maxCount )
+	{
+		return NodeSorter.sort( this, nsi, maxCount );
+	}
+
+	public TraversalPosition currentPosition()
+	{
+		return traversalPosition;
+	}
+
+	/**
+	 * Positions at one depth of the traversal, kept as ids in growable int
+	 * arrays.
+	 */
+	private static class Frontier
+	{
+		private int[] nodeIds = new int[16];
+		private int[] previousNodeIds = new int[16];
+		private int[] relIds = new int[16];
+		private int size = 0;
+
+		void add( int nodeId, int previousNodeId, int relId )
+		{
+			if ( size == nodeIds.length )
+			{
+				ensureCapacity( size + 1 );
+			}
+			nodeIds[size] = nodeId;
+			previousNodeIds[size] = previousNodeId;
+			relIds[size] = relId;
+			size++;
+		}
+
+		void addAll( Frontier other )
+		{
+			ensureCapacity( size + other.size );
+			System.arraycopy( other.nodeIds, 0, nodeIds, size, other.size );
+			System.arraycopy( other.previousNodeIds, 0, previousNodeIds, size,
+				other.size );
+			System.arraycopy( other.relIds, 0, relIds, size, other.size );
+			size += other.size;
+		}
+
+		private void ensureCapacity( int capacity )
+		{
+			if ( capacity <= nodeIds.length )
+			{
+				return;
+			}
+			int newLength = Math.max( capacity, nodeIds.length * 2 );
+			nodeIds = copyOf( nodeIds, newLength );
+			previousNodeIds = copyOf( previousNodeIds, newLength );
+			relIds = copyOf( relIds, newLength );
+		}
+
+		private static int[] copyOf( int[] array, int length )
+		{
+			int[] newArray = new int[length];
+			System.arraycopy( array, 0, newArray, 0, array.length );
+			return newArray;
+		}
+
+		int size()
+		{
+			return size;
+		}
+	}
+
+	/**
+	 * Result of expanding a range of a frontier.
+	 */
+	private static class LevelResult
+	{
+		private final List<TraversalPositionImpl> positionsToReturn =
+			new ArrayList<TraversalPositionImpl>();
+		private final Frontier nextFrontier = new Frontier();
+
+		// appends the result of the range following this one
+		void append( LevelResult other )
+		{
+			positionsToReturn.addAll( other.positionsToReturn );
+			nextFrontier.addAll( other.nextFrontier );
+		}
+	}
+
+	/**
+	 * Expands a range of a frontier, ranges bigger than
+	 * {@link #TASK_SIZE} are split in two tasks.
+	 */
+	private class ExpandTask extends RecursiveTask<LevelResult>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Frontier frontier;
+		private final int depth;
+		private final int returnedNodesCount;
+		private final int from;
+		private final int to;
+
+		ExpandTask( Frontier frontier, int depth, int returnedNodesCount,
+			int from, int to )
+		{
+			this.frontier = frontier;
+			this.depth = depth;
+			this.returnedNodesCount = returnedNodesCount;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected LevelResult compute()
+		{
+			if ( to - from <= TASK_SIZE )
+			{
+				return expandInTransaction();
+			}
+			int middle = ( from + to ) >>> 1;
+			ExpandTask first = new ExpandTask( frontier, depth,
+				returnedNodesCount, from, middle );
+			ExpandTask second = new ExpandTask( frontier, depth,
+				returnedNodesCount, middle, to );
+			second.fork();
+			LevelResult result = first.compute();
+			result.append( second.join() );
+			return result;
+		}
+
+		// no task is forked or joined while the transaction is open, so a
+		// pool thread never runs two transactions at once
+		private LevelResult expandInTransaction()
+		{
+			UserTransaction tx = TransactionFactory.getUserTransaction();
+			try
+			{
+				tx.begin();
+			}
+			catch ( Exception e )
+			{
+				throw new RuntimeException(
+					"Unable to begin traversal transaction", e );
+			}
+			boolean success = false;
+			try
+			{
+				LevelResult result = expand();
+				success = true;
+				return result;
+			}
+			finally
+			{
+				try
+				{
+					if ( success )
+					{
+						tx.commit();
+					}
+					else
+					{
+						tx.rollback();
+					}
+				}
+				catch ( Exception e )
+				{
+					if ( success )
+					{
+						throw new RuntimeException(
+							"Unable to commit traversal transaction", e );
+					}
+				}
+			}
+		}
+
+		LevelResult expand()
+		{
+			LevelResult result = new LevelResult();
+			for ( int i = from; i < to; i++ )
+			{
+				TraversalPositionImpl currentPos;
+				if ( depth == 0 )
+				{
+					currentPos = new TraversalPositionImpl( startNode );
+				}
+				else
+				{
+					currentPos = new TraversalPositionImpl(
+						frontier.nodeIds[i], frontier.previousNodeIds[i],
+						frontier.relIds[i], depth );
+				}
+				currentPos.setReturnedNodesCount( returnedNodesCount );
+				boolean valid = currentPos.isValid();
+				if ( !valid || !stopEvaluator.isStopNode( currentPos ) )
+				{
+					addEndNodes( currentPos.currentNodeId(),
+						result.nextFrontier );
+				}
+				if ( valid && returnableEvaluator.isReturnableNode(
+					currentPos ) )
+				{
+					result.positionsToReturn.add( currentPos );
+				}
+			}
+			return result;
+		}
+
+		private void addEndNodes( int currentNodeId, Frontier nextFrontier )
+		{
+			for ( int i = 0; i < traversableTypes.length; i++ )
+			{
+				Direction dir = Direction.BOTH;
+				if ( traversableDirs != null && traversableDirs[i] != null )
+				{
+					dir = traversableDirs[i];
+				}
+				int[] relIds = nodeManager.getRelationshipIds( currentNodeId,
+					traversableTypes[i], dir );
+				for ( int relId : relIds )
+				{
+					int endNodeId = nodeManager.getOtherNodeId( relId,
+						currentNodeId );
+					// the thread that claims the node adds it
+					if ( endNodeId != -1 && visitedNodes.add( endNodeId ) )
+					{
+						nextFrontier.add( endNodeId, currentNodeId, relId );
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package org.neo4j.impl.traversal;
+
+/**
+ * The nodes reached by a path search, each with the node and relationship 
+ * it was reached through and its depth. Kept in an open addressing table 
+ * of <CODE>int</CODE>s keyed on node id so no objects are created per 
+ * node. Following the previous node ids from any node in the tree leads 
+ * back to the node the search started from (whose previous node id is 
+ * <CODE>-1</CODE>). This class is not thread safe.
+ */
+class PathTree
+{
+	private static final int FREE = -1;
+	// node id, previous node id, relationship id, depth
+	private static final int FIELDS = 4;
+	
+	private int[] table;
+	private int size = 0;
+	
+	PathTree()
+	{
+		table = newTable( 64 );
+	}
+	
+	private static int[] newTable( int capacity )
+	{
+		int[] newTable = new int[capacity * FIELDS];
+		for ( int i = 0; i < newTable.length; i += FIELDS )
+		{
+			newTable[i] = FREE;
+		}
+		return newTable;
+	}
+	
+	private int capacity()
+	{
+		return table.length / FIELDS;
+	}
+	
+	// returns the slot of nodeId or the free slot it should go in
+	private int slotOf( int nodeId )
+	{
+		int mask = capacity() - 1;
+		int h = nodeId * 0x9E3779B9;
+		int slot = ( h ^ ( h >>> 16 ) ) & mask;
+		while ( table[slot * FIELDS] != FREE && 
+			table[slot * FIELDS] != nodeId )
+		{
+			slot = ( slot + 1 ) & mask;
+		}
+		return slot;
+	}
+	
+	/**
+	 * Adds a node to the tree or changes how it is reached if already in 
+	 * the tree.
+	 * 
+	 * @param nodeId the node id
+	 * @param previousNodeId the node it is reached from, -1 for the root
+	 * @param relId the relationship it is reached through, -1 for the root
+	 * @param depth the number of relationships from the root
+	 */
+	void put( int nodeId, int previousNodeId, int relId, int depth )
+	{
+		if ( nodeId < 0 )
+		{
+			throw new IllegalArgumentException( "Illegal node id " + nodeId );
+		}
+		if ( ( size + 1 ) * 4 > capacity() * 3 )
+		{
+			rehash();
+		}
+		int offset = slotOf( nodeId ) * FIELDS;
+		if ( table[offset] == FREE )
+		{
+			size++;
+		}
+		table[offset] = nodeId;
+		table[offset + 1] = previousNodeId;
+		table[offset + 2] = relId;
+		table[offset + 3] = depth;
+	}
+	
+	private void rehash()
+	{
+		int[] oldTable = table;
+		table = newTable( capacity() * 2 );
+		for ( int i = 0; i < oldTable.length; i += FIELDS )
+		{
+			if ( oldTable[i] != FREE )
+			{
+				int offset = slotOf( oldTable[i] ) * FIELDS;
+				System.arraycopy( oldTable, i, table, offset, FIELDS );
+			}
+		}
+	}
+	
+	boolean contains( int nodeId )
+	{
+		return nodeId >= 0 && table[slotOf( nodeId ) * FIELDS] == nodeId;
+	}
+	
+	// returns field of nodeId, the node must be in the tree
+	private int get( int nodeId, int field )
+	{
+		int offset = slotOf( nodeId ) * FIELDS;
+		if ( table[offset] != nodeId )
+		{
+			throw new IllegalArgumentException( "Node[" + nodeId + 
+				"] not in tree" );
+		}
+		return table[offset + field];
+	}
+	
+	int getPreviousNodeId( int nodeId )
+	{
+		return get( nodeId, 1 );
+	}
+	
+	int getRelationshipId( int nodeId )
+	{
+		return get( nodeId, 2 );
+	}
+	
+	int getDepth( int nodeId )
+	{
+		return get( nodeId, 3 );
+	}
+	
+	int size()
+	{
+		return size;
+	}
+}
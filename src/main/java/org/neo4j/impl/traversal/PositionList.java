@@ -0,0 +1,129 @@
+package org.neo4j.impl.traversal;
+
+/**
+ * Array backed double ended queue of traversal positions that haven't been 
+ * visited yet. A position is stored as four <CODE>int</CODE>s (node id, 
+ * previous node id, id of the relationship traversed to get there and 
+ * depth) in a ring buffer, so queueing a position creates no objects. 
+ * Breadth first traversers take positions from the front, depth first 
+ * traversers from the back.
+ * <p>
+ * The remove operations return the slot the position was stored in, the 
+ * values of the slot can be read with the get methods until the next 
+ * position is added. This class is not thread safe.
+ */
+class PositionList
+{
+	private static final int FIELDS = 4;
+	
+	private int[] positions;
+	// index of first position
+	private int head = 0;
+	private int size = 0;
+	
+	PositionList()
+	{
+		positions = new int[ 64 * FIELDS ];
+	}
+	
+	private int capacity()
+	{
+		return positions.length / FIELDS;
+	}
+	
+	/**
+	 * Adds a position to the end of the list.
+	 * 
+	 * @param nodeId id of the node at the position
+	 * @param previousNodeId id of the previous node or -1
+	 * @param relId id of the last relationship traversed or -1
+	 * @param depth depth of the position
+	 */
+	void addLast( int nodeId, int previousNodeId, int relId, int depth )
+	{
+		if ( size == capacity() )
+		{
+			grow();
+		}
+		int offset = ( ( head + size ) % capacity() ) * FIELDS;
+		positions[offset] = nodeId;
+		positions[offset + 1] = previousNodeId;
+		positions[offset + 2] = relId;
+		positions[offset + 3] = depth;
+		size++;
+	}
+	
+	// doubles the capacity and moves head to index 0
+	private void grow()
+	{
+		int[] newPositions = new int[ positions.length * 2 ];
+		int headOffset = head * FIELDS;
+		int firstPart = positions.length - headOffset;
+		System.arraycopy( positions, headOffset, newPositions, 0, firstPart );
+		System.arraycopy( positions, 0, newPositions, firstPart, headOffset );
+		positions = newPositions;
+		head = 0;
+	}
+	
+	/**
+	 * Removes the first position.
+	 * 
+	 * @return the slot of the removed position
+	 */
+	int removeFirst()
+	{
+		if ( size == 0 )
+		{
+			throw new java.util.NoSuchElementException();
+		}
+		int slot = head;
+		head = ( head + 1 ) % capacity();
+		size--;
+		return slot;
+	}
+	
+	/**
+	 * Removes the last position.
+	 * 
+	 * @return the slot of the removed position
+	 */
+	int removeLast()
+	{
+		if ( size == 0 )
+		{
+			throw new java.util.NoSuchElementException();
+		}
+		size--;
+		return ( head + size ) % capacity();
+	}
+	
+	int getNodeId( int slot )
+	{
+		return positions[slot * FIELDS];
+	}
+	
+	int getPreviousNodeId( int slot )
+	{
+		return positions[slot * FIELDS + 1];
+	}
+	
+	int getRelationshipId( int slot )
+	{
+		return positions[slot * FIELDS + 2];
+	}
+	
+	int getDepth( int slot )
+	{
+		return positions[slot * FIELDS + 3];
+	}
+	
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+	
+	int size()
+	{
+		return size;
+	}
+}
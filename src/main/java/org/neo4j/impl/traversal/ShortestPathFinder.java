@@ -0,0 +1,338 @@
+package org.neo4j.impl.traversal;
+
+import org.neo4j.api.core.Direction;
+import org.neo4j.api.core.Node;
+import org.neo4j.api.core.RelationshipType;
+import org.neo4j.impl.core.NodeManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Finds paths between two nodes following relationships of given types in
+ * given directions, the types and directions are given the same way as to
+ * {@link TraverserFactory#createTraverser createTraverser()}. Directions
+ * are seen from the start node of the path.
+ * <P>
+ * {@link #findShortestPath findShortestPath()} is a bidirectional
+ * breadth-first search: one search starts from each end of the path and
+ * the search with the smaller frontier is expanded one depth at a time
+ * until the two meet. For paths of length <CODE>n</CODE> in a node space
+ * where nodes have <CODE>b</CODE> relationships this visits about
+ * <CODE>2 * b^(n/2)</CODE> nodes instead of the <CODE>b^n</CODE> a
+ * breadth-first traverser from one of the nodes visits.
+ * <P>
+ * {@link #findCheapestPath findCheapestPath()} is Dijkstra's algorithm
+ * using a number property of the relationships as cost.
+ * <P>
+ * Paths are returned as a list of alternating nodes and relationships,
+ * starting with the start node and ending with the end node. The searches
+ * work on node and relationship ids, only the nodes and relationships of
+ * the returned path are created. A finder has no state of its own and can
+ * be used by many threads, each search must be run in a transaction.
+ */
+public final class ShortestPathFinder
+{
+	private static final NodeManager nodeManager = NodeManager.getManager();
+
+	private final RelationshipType[][] types;
+	private final Direction[] dirs;
+
+	/**
+	 * Creates a finder following <CODE>types</CODE> in directions
+	 * <CODE>dirs</CODE>.
+	 * @param types the relationship types paths can have
+	 * @param dirs the direction each type can be followed in
+	 * @throws IllegalArgumentException if one or more of the parameters are
+	 * invalid
+	 */
+	public ShortestPathFinder( RelationshipType[] types, Direction[] dirs )
+	{
+		if ( types == null || dirs == null )
+		{
+			throw new IllegalArgumentException(
+				"Relationship types array and directions array can't be " +
+				"null: types[" + types + "] dirs[" + dirs + "]" );
+		}
+		if ( types.length != dirs.length )
+		{
+			throw new IllegalArgumentException(
+				"Length of relationship types array isn't equal to " +
+				"length of directions array: types.length[" + types.length +
+				"] != dirs.length[" + dirs.length + "]" );
+		}
+		this.types = AbstractTraverser.splitTypes( types );
+		this.dirs = dirs;
+	}
+
+	/**
+	 * Creates a finder following a single relationship type.
+	 * @param type the relationship type paths can have
+	 * @param dir the direction the type can be followed in
+	 */
+	public ShortestPathFinder( RelationshipType type, Direction dir )
+	{
+		this( new RelationshipType[] { type }, new Direction[] { dir } );
+	}
+
+	/**
+	 * Returns one of the shortest paths from <CODE>startNode</CODE> to
+	 * <CODE>endNode</CODE>.
+	 * @param startNode the start node
+	 * @param endNode the end node
+	 * @return the path as alternating nodes and relationships or
+	 * <CODE>null</CODE> if there is no path
+	 */
+	public List<Object> findShortestPath( Node startNode, Node endNode )
+	{
+		return findShortestPath( startNode, endNode, Integer.MAX_VALUE );
+	}
+
+	/**
+	 * Returns one of the shortest paths from <CODE>startNode</CODE> to
+	 * <CODE>endNode</CODE> of at most <CODE>maxLength</CODE> relationships.
+	 * @param startNode the start node
+	 * @param endNode the end node
+	 * @param maxLength the maximum number of relationships in the path
+	 * @return the path as alternating nodes and relationships or
+	 * <CODE>null</CODE> if there is no such path
+	 */
+	public List<Object> findShortestPath( Node startNode, Node endNode,
+		int maxLength )
+	{
+		Search forward = new Search( (int) startNode.getId(), false );
+		Search backward = new Search( (int) endNode.getId(), true );
+		if ( forward.tree.contains( backward.rootNodeId ) )
+		{
+			return createPath( forward.tree, null, forward.rootNodeId );
+		}
+		while ( forward.frontierSize > 0 && backward.frontierSize > 0 &&
+			forward.depth + backward.depth < maxLength )
+		{
+			// grow the smaller frontier
+			int meetingNodeId;
+			if ( forward.frontierSize <= backward.frontierSize )
+			{
+				meetingNodeId = forward.expand( backward );
+			}
+			else
+			{
+				meetingNodeId = backward.expand( forward );
+			}
+			if ( meetingNodeId != -1 )
+			{
+				return createPath( forward.tree, backward.tree,
+					meetingNodeId );
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * One side of a bidirectional search.
+	 */
+	private class Search
+	{
+		private final int rootNodeId;
+		private final boolean reverse;
+		private final PathTree tree = new PathTree();
+		private int[] frontier = new int[16];
+		private int frontierSize = 0;
+		private int depth = 0;
+
+		Search( int rootNodeId, boolean reverse )
+		{
+			this.rootNodeId = rootNodeId;
+			this.reverse = reverse;
+			tree.put( rootNodeId, -1, -1, 0 );
+			frontier[frontierSize++] = rootNodeId;
+		}
+
+		// expands all nodes in the frontier, returns a node also reached
+		// by the other search or -1
+		int expand( Search other )
+		{
+			int[] nextFrontier = new int[ Math.max( frontierSize * 2, 16 ) ];
+			int nextFrontierSize = 0;
+			for ( int i = 0; i < frontierSize; i++ )
+			{
+				int nodeId = frontier[i];
+				for ( int j = 0; j < types.length; j++ )
+				{
+					int[] relIds = nodeManager.getRelationshipIds( nodeId,
+						types[j], getDirection( j, reverse ) );
+					for ( int relId : relIds )
+					{
+						int otherNodeId = nodeManager.getOtherNodeId( relId,
+							nodeId );
+						if ( otherNodeId == -1 ||
+							tree.contains( otherNodeId ) )
+						{
+							continue;
+						}
+						tree.put( otherNodeId, nodeId, relId, depth + 1 );
+						// all searched depths of the other side have been
+						// checked, the first meeting is a shortest path
+						if ( other.tree.contains( otherNodeId ) )
+						{
+							return otherNodeId;
+						}
+						if ( nextFrontierSize == nextFrontier.length )
+						{
+							int[] newFrontier =
+								new int[ nextFrontier.length * 2 ];
+							System.arraycopy( nextFrontier, 0, newFrontier, 0,
+								nextFrontierSize );
+							nextFrontier = newFrontier;
+						}
+						nextFrontier[nextFrontierSize++] = otherNodeId;
+					}
+				}
+			}
+			frontier = nextFrontier;
+			frontierSize = nextFrontierSize;
+			depth++;
+			return -1;
+		}
+	}
+
+	private Direction getDirection( int index, boolean reverse )
+	{
+		Direction dir = dirs[index] == null ? Direction.BOTH : dirs[index];
+		return reverse ? dir.reverse() : dir;
+	}
+
+	/**
+	 * Returns the path from <CODE>startNode</CODE> to <CODE>endNode</CODE>
+	 * with the lowest sum of relationship costs. The cost of a relationship
+	 * is the value of its <CODE>costProperty</CODE> property which must be
+	 * a non-negative number.
+	 * @param startNode the start node
+	 * @param endNode the end node
+	 * @param costProperty the property holding relationship costs
+	 * @return the path as alternating nodes and relationships or
+	 * <CODE>null</CODE> if there is no path
+	 * @throws IllegalArgumentException if a relationship followed doesn't
+	 * have a valid cost
+	 */
+	public List<Object> findCheapestPath( Node startNode, Node endNode,
+		String costProperty )
+	{
+		int startNodeId = (int) startNode.getId();
+		int endNodeId = (int) endNode.getId();
+		PathTree tree = new PathTree();
+		tree.put( startNodeId, -1, -1, 0 );
+		Map<Integer,Double> costs = new HashMap<Integer,Double>();
+		costs.put( startNodeId, 0.0 );
+		NodeIdSet settledNodes = new NodeIdSet();
+		PriorityQueue<QueueEntry> queue = new PriorityQueue<QueueEntry>();
+		queue.add( new QueueEntry( startNodeId, 0 ) );
+		while ( !queue.isEmpty() )
+		{
+			QueueEntry entry = queue.poll();
+			int nodeId = entry.nodeId;
+			// nodes are queued again when a cheaper path is found, skip
+			// the older entries
+			if ( !settledNodes.add( nodeId ) )
+			{
+				continue;
+			}
+			if ( nodeId == endNodeId )
+			{
+				return createPath( tree, null, endNodeId );
+			}
+			int depth = tree.getDepth( nodeId );
+			for ( int i = 0; i < types.length; i++ )
+			{
+				int[] relIds = nodeManager.getRelationshipIds( nodeId,
+					types[i], getDirection( i, false ) );
+				for ( int relId : relIds )
+				{
+					int otherNodeId = nodeManager.getOtherNodeId( relId,
+						nodeId );
+					if ( otherNodeId == -1 ||
+						settledNodes.contains( otherNodeId ) )
+					{
+						continue;
+					}
+					double cost = entry.cost + getCost( relId, costProperty );
+					Double knownCost = costs.get( otherNodeId );
+					if ( knownCost == null || cost < knownCost )
+					{
+						costs.put( otherNodeId, cost );
+						tree.put( otherNodeId, nodeId, relId, depth + 1 );
+						queue.add( new QueueEntry( otherNodeId, cost ) );
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static double getCost( int relId, String costProperty )
+	{
+		Object value = nodeManager.getRelationshipById( relId ).getProperty(
+			costProperty, null );
+		if ( !( value instanceof Number ) ||
+			( ( Number ) value ).doubleValue() < 0 )
+		{
+			throw new IllegalArgumentException( "Relationship[" + relId +
+				"] has no valid cost, " + costProperty + "=" + value );
+		}
+		return ( ( Number ) value ).doubleValue();
+	}
+
+	private static class QueueEntry implements Comparable<QueueEntry>
+	{
+		private final int nodeId;
+		private final double cost;
+
+		QueueEntry( int nodeId, double cost )
+		{
+			this.nodeId = nodeId;
+			this.cost = cost;
+		}
+
+		public int compareTo( QueueEntry other )
+		{
+			return Double.compare( cost, other.cost );
+		}
+	}
+
+	// creates the path from the root of startTree to meetingNodeId followed
+	// by the path from meetingNodeId to the root of endTree (if not null)
+	private static List<Object> createPath( PathTree startTree,
+		PathTree endTree, int meetingNodeId )
+	{
+		List<Object> path = new ArrayList<Object>();
+		int nodeId = meetingNodeId;
+		while ( nodeId != -1 )
+		{
+			path.add( nodeManager.getNodeById( nodeId ) );
+			int relId = startTree.getRelationshipId( nodeId );
+			if ( relId != -1 )
+			{
+				path.add( nodeManager.getRelationshipById( relId ) );
+			}
+			nodeId = startTree.getPreviousNodeId( nodeId );
+		}
+		Collections.reverse( path );
+		if ( endTree != null )
+		{
+			nodeId = meetingNodeId;
+			int relId = endTree.getRelationshipId( nodeId );
+			while ( relId != -1 )
+			{
+				path.add( nodeManager.getRelationshipById( relId ) );
+				nodeId = endTree.getPreviousNodeId( nodeId );
+				path.add( nodeManager.getNodeById( nodeId ) );
+				relId = endTree.getRelationshipId( nodeId );
+			}
+		}
+		return path;
+	}
+}
@@ -6,7 +6,6 @@ import org.neo4j.api.core.Traverser;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Iterator;
 
@@ -20,18 +19,29 @@ import java.util.Iterator;
  */
 class SortedTraverser implements Traverser
 {
-	private Iterator nodesIterator = null;
+	private Iterator<Node> nodesIterator = null;
 	
 	/**
 	 * Creates a sorted traverser from the sorted list of <CODE>nodes</CODE>
 	 * 
 	 * @param nodes the list of sorted nodes
 	 */
-	SortedTraverser( List nodes )
+	SortedTraverser( List<Node> nodes )
 	{
 		this.nodesIterator = nodes.iterator();
 	}
 	
+	/**
+	 * Creates a sorted traverser returning the nodes of 
+	 * <CODE>nodesIterator</CODE>, which returns them in sort order.
+	 * 
+	 * @param nodesIterator the sorted nodes
+	 */
+	SortedTraverser( Iterator<Node> nodesIterator )
+	{
+		this.nodesIterator = nodesIterator;
+	}
+	
 	// javadoc: see java.util.Iterator
 	public Object next()
 	{
@@ -50,7 +60,7 @@ class SortedTraverser implements Traverser
 	// javadoc: see Traverser
 	public Node nextNode()
 	{
-		return (Node) nodesIterator.next();
+		return nodesIterator.next();
 	}
 	
 	// javadoc: see Traverser
@@ -72,16 +82,13 @@ class SortedTraverser implements Traverser
 	// javadoc: see Traverser
 	public Traverser sort( NodeSortInfo<Node> nsi )
 	{
-		ArrayList<Node> tempList = new ArrayList<Node>();
-		
-		// Traverse and get all remaining nodes
-		while ( this.hasNext() )
-		{
-			tempList.add( this.nextNode() );
-		}
-		
-		Collections.sort( tempList, nsi );
-		return new SortedTraverser( tempList );
+		return NodeSorter.sort( nodesIterator, nsi, Integer.MAX_VALUE );
+	}
+	
+	// javadoc: see Traverser
+	public Traverser sort( NodeSortInfo<Node> nsi, int maxCount )
+	{
+		return NodeSorter.sort( nodesIterator, nsi, maxCount );
 	}
 
 	public TraversalPosition currentPosition()
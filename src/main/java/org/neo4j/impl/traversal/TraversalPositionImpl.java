@@ -5,24 +5,42 @@ import org.neo4j.api.core.Relationship;
 import org.neo4j.api.core.TraversalPosition;
 import org.neo4j.impl.core.NodeManager;
 
+/**
+ * A position in a traversal kept as node and relationship ids. The 
+ * {@link Node} and {@link Relationship} objects are only looked up when 
+ * asked for, so evaluators that only look at the depth or the returned 
+ * nodes count never cause them to be created.
+ */
 class TraversalPositionImpl implements TraversalPosition
 {
+	private static final NodeManager nodeManager = NodeManager.getManager();
+	
+	private final int			currentNodeId;
+	private final int			previousNodeId;
+	private final int			lastRelTraversedId;
+	private int					currentDepth		= -1;
+	private int					returnedNodesCount	= -1;
+	
 	private Node				currentNode			= null;
 	private Node				previousNode		= null;
 	private Relationship		lastRelTraversed	= null;
-	private int					currentDepth		= -1;
-	private int					returnedNodesCount	= -1;
 
+	TraversalPositionImpl( Node currentNode )
+	{
+		this( (int) currentNode.getId(), -1, -1, 0 );
+		this.currentNode = currentNode;
+	}
+	
 	TraversalPositionImpl(
-						Node currentNode,
-						Node previousNode,
-						Relationship lastRelTraversed,
+						int currentNodeId,
+						int previousNodeId,
+						int lastRelTraversedId,
 						int currentDepth
 					 )
 	{
-		this.currentNode = currentNode;
-		this.previousNode = previousNode;
-		this.lastRelTraversed = lastRelTraversed;
+		this.currentNodeId = currentNodeId;
+		this.previousNodeId = previousNodeId;
+		this.lastRelTraversedId = lastRelTraversedId;
 		this.currentDepth = currentDepth;
 	}
 	
@@ -31,18 +49,36 @@ class TraversalPositionImpl implements TraversalPosition
 		this.returnedNodesCount = returnedNodesCount;
 	}
 	
+	int currentNodeId()
+	{
+		return this.currentNodeId;
+	}
+	
 	public Node currentNode()
 	{
+		if ( this.currentNode == null )
+		{
+			this.currentNode = nodeManager.getNodeById( currentNodeId );
+		}
 		return this.currentNode;
 	}
 	
 	public Node previousNode()
 	{
+		if ( this.previousNode == null && previousNodeId != -1 )
+		{
+			this.previousNode = nodeManager.getNodeById( previousNodeId );
+		}
 		return this.previousNode;
 	}
 	
 	public Relationship lastRelationshipTraversed()
 	{
+		if ( this.lastRelTraversed == null && lastRelTraversedId != -1 )
+		{
+			this.lastRelTraversed = nodeManager.getRelationshipById( 
+				lastRelTraversedId );
+		}
 		return this.lastRelTraversed;
 	}
 	
@@ -58,11 +94,10 @@ class TraversalPositionImpl implements TraversalPosition
 	
 	boolean isValid()
 	{
-		if ( lastRelTraversed == null )
+		if ( lastRelTraversedId == -1 )
 		{
 			return true;
 		}
-		return NodeManager.getManager().isValidRelationship( 
-			lastRelTraversed );
+		return nodeManager.isValidRelationship( lastRelTraversedId );
 	}
 }
@@ -0,0 +1,230 @@
+package org.neo4j.impl.traversal;
+
+/**
+ * Numbers collected per depth by an instrumented traversal, see
+ * {@link TraverserFactory#createInstrumentedTraverser
+ * createInstrumentedTraverser()}. For each depth it holds:
+ * <UL>
+ *	<LI>nodes visited, nodes at that depth taken from the traversal list
+ *		and given to the evaluators.
+ *	<LI>relationships expanded, relationships followed from nodes at that
+ *		depth.
+ *	<LI>duplicates rejected, nodes reached at that depth that had already
+ *		been visited.
+ *	<LI>cache hits and misses, node and relationship lookups in the
+ *		{@link org.neo4j.impl.core.NodeManager NodeManager} caches made while
+ *		visiting nodes at that depth, including the lookups evaluators make.
+ *	<LI>evaluator time, time spent in the stop and returnable evaluators
+ *		for nodes at that depth.
+ * </UL>
+ * The numbers are updated as the traversal goes, {@link #toString()} gives
+ * a table suitable for printing.
+ */
+public class TraversalStatistics
+{
+	private int depthCount = 0;
+	private long[] nodesVisited = new long[8];
+	private long[] relationshipsExpanded = new long[8];
+	private long[] duplicatesRejected = new long[8];
+	private long[] cacheHits = new long[8];
+	private long[] cacheMisses = new long[8];
+	private long[] evaluatorNanos = new long[8];
+
+	// makes sure depth has a slot
+	private void ensureDepth( int depth )
+	{
+		if ( depth >= nodesVisited.length )
+		{
+			int length = Math.max( depth + 1, nodesVisited.length * 2 );
+			nodesVisited = copyOf( nodesVisited, length );
+			relationshipsExpanded = copyOf( relationshipsExpanded, length );
+			duplicatesRejected = copyOf( duplicatesRejected, length );
+			cacheHits = copyOf( cacheHits, length );
+			cacheMisses = copyOf( cacheMisses, length );
+			evaluatorNanos = copyOf( evaluatorNanos, length );
+		}
+		if ( depth >= depthCount )
+		{
+			depthCount = depth + 1;
+		}
+	}
+
+	private static long[] copyOf( long[] array, int length )
+	{
+		long[] newArray = new long[length];
+		System.arraycopy( array, 0, newArray, 0, array.length );
+		return newArray;
+	}
+
+	void nodeVisited( int depth )
+	{
+		ensureDepth( depth );
+		nodesVisited[depth]++;
+	}
+
+	void relationshipsExpanded( int depth, int count )
+	{
+		ensureDepth( depth );
+		relationshipsExpanded[depth] += count;
+	}
+
+	void duplicateRejected( int depth )
+	{
+		ensureDepth( depth );
+		duplicatesRejected[depth]++;
+	}
+
+	void cacheAccessed( int depth, long hits, long misses )
+	{
+		ensureDepth( depth );
+		cacheHits[depth] += hits;
+		cacheMisses[depth] += misses;
+	}
+
+	void evaluatorTime( int depth, long nanos )
+	{
+		ensureDepth( depth );
+		evaluatorNanos[depth] += nanos;
+	}
+
+	/**
+	 * Returns the number of depths with statistics, one more than the
+	 * deepest depth reached.
+	 *
+	 * @return the number of depths
+	 */
+	public int getDepthCount()
+	{
+		return depthCount;
+	}
+
+	private long get( long[] values, int depth )
+	{
+		if ( depth < 0 || depth >= depthCount )
+		{
+			return 0;
+		}
+		return values[depth];
+	}
+
+	private long total( long[] values )
+	{
+		long total = 0;
+		for ( int i = 0; i < depthCount; i++ )
+		{
+			total += values[i];
+		}
+		return total;
+	}
+
+	public long getNodesVisited( int depth )
+	{
+		return get( nodesVisited, depth );
+	}
+
+	public long getRelationshipsExpanded( int depth )
+	{
+		return get( relationshipsExpanded, depth );
+	}
+
+	public long getDuplicatesRejected( int depth )
+	{
+		return get( duplicatesRejected, depth );
+	}
+
+	public long getCacheHits( int depth )
+	{
+		return get( cacheHits, depth );
+	}
+
+	public long getCacheMisses( int depth )
+	{
+		return get( cacheMisses, depth );
+	}
+
+	/**
+	 * Returns the time spent in evaluators for nodes at
+	 * <CODE>depth</CODE>.
+	 *
+	 * @param depth the depth
+	 * @return the time in nanoseconds
+	 */
+	public long getEvaluatorNanos( int depth )
+	{
+		return get( evaluatorNanos, depth );
+	}
+
+	public long getTotalNodesVisited()
+	{
+		return total( nodesVisited );
+	}
+
+	public long getTotalRelationshipsExpanded()
+	{
+		return total( relationshipsExpanded );
+	}
+
+	public long getTotalDuplicatesRejected()
+	{
+		return total( duplicatesRejected );
+	}
+
+	public long getTotalCacheHits()
+	{
+		return total( cacheHits );
+	}
+
+	public long getTotalCacheMisses()
+	{
+		return total( cacheMisses );
+	}
+
+	public long getTotalEvaluatorNanos()
+	{
+		return total( evaluatorNanos );
+	}
+
+	public String toString()
+	{
+		StringBuffer buf = new StringBuffer();
+		appendRow( buf, "depth", "nodes", "rels", "dups", "hits", "misses",
+			"eval(ms)" );
+		for ( int i = 0; i < depthCount; i++ )
+		{
+			appendRow( buf, String.valueOf( i ),
+				String.valueOf( nodesVisited[i] ),
+				String.valueOf( relationshipsExpanded[i] ),
+				String.valueOf( duplicatesRejected[i] ),
+				String.valueOf( cacheHits[i] ),
+				String.valueOf( cacheMisses[i] ),
+				formatMillis( evaluatorNanos[i] ) );
+		}
+		appendRow( buf, "total", String.valueOf( getTotalNodesVisited() ),
+			String.valueOf( getTotalRelationshipsExpanded() ),
+			String.valueOf( getTotalDuplicatesRejected() ),
+			String.valueOf( getTotalCacheHits() ),
+			String.valueOf( getTotalCacheMisses() ),
+			formatMillis( getTotalEvaluatorNanos() ) );
+		return buf.toString();
+	}
+
+	private static String formatMillis( long nanos )
+	{
+		long micros = nanos / 1000;
+		String fraction = String.valueOf( 1000 + micros % 1000 ).substring( 1 );
+		return micros / 1000 + "." + fraction;
+	}
+
+	private static void appendRow( StringBuffer buf, String... columns )
+	{
+		for ( String column : columns )
+		{
+			for ( int i = column.length(); i < 10; i++ )
+			{
+				buf.append( ' ' );
+			}
+			buf.append( column );
+		}
+		buf.append( '\n' );
+	}
+}
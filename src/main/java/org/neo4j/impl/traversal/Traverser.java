@@ -79,4 +79,17 @@ public interface Traverser extends org.neo4j.api.core.Traverser
 	 * @return a sorted traverser for all remaining nodes
 	 */
 	public Traverser sort( NodeSortInfo<Node> nsi );
+	
+	/**
+	 * Returns a Traverser for the first <CODE>maxCount</CODE> remaining 
+	 * nodes sorted as specified by <CODE>NodeSortInfo</CODE>. All remaining 
+	 * nodes are traversed but only <CODE>maxCount</CODE> of them are kept, 
+	 * use this rather than {@link #sort(NodeSortInfo)} when only the top 
+	 * nodes are needed. The sort property of each node is read once.
+	 *
+	 * @param nsi encapsulates how the nodes should be sorted
+	 * @param maxCount the maximum number of nodes to return
+	 * @return a sorted traverser for the first <CODE>maxCount</CODE> nodes
+	 */
+	public Traverser sort( NodeSortInfo<Node> nsi, int maxCount );
 }
@@ -8,6 +8,8 @@ import org.neo4j.api.core.StopEvaluator;
 import org.neo4j.api.core.Traverser;
 import org.neo4j.api.core.Traverser.Order;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * The factory for {@link Traverser} instances. The TraverserFactory is
  * responsible for creating and parameterizing traversers. It has a single
@@ -36,6 +38,14 @@ import org.neo4j.api.core.Traverser.Order;
  *		this parameter to affect the selection of nodes from the traversal.
  * </UL>
  * <P>
+ * Reachability queries with wide frontiers can be run breadth-first on many
+ * threads using {@link #createParallelTraverser createParallelTraverser()},
+ * see {@link ParallelBreadthFirstTraverser} for the contract the evaluators
+ * must follow. Paths between two nodes are best found with a
+ * {@link ShortestPathFinder} rather than a traverser. To see where the time
+ * of a traversal goes use
+ * {@link #createInstrumentedTraverser createInstrumentedTraverser()}.
+ * <P>
  * The factory methods treat all parameters as immutable and thus do not modify
  * them. This guarantees that the client can optimize by reusing parameters
  * between invocations of <CODE>createTraverser()</CODE>.
@@ -264,4 +274,124 @@ public final class TraverserFactory
 												traversalOrder );
 		}
 	}
+
+	/**
+	 * Creates a parameterized traverser that collects 
+	 * {@link TraversalStatistics} per depth and doesn't traverse past 
+	 * <CODE>maxDepth</CODE>. Nodes at <CODE>maxDepth</CODE> are evaluated 
+	 * but not expanded, as if the stop evaluator had stopped them. 
+	 * Collecting the statistics slows the traversal down slightly.
+	 * @param traversalOrder the traversal order, either
+	 * {@link Order#DEPTH_FIRST} or {@link Order#BREADTH_FIRST}
+	 * @param startNode the start node for the new traverser
+	 * @param traversableRels the relationship types that the new traverser
+	 * will traverse
+	 * @param traversableDirs the directions that the traversable
+	 * relationships will be traversed in
+	 * @param stopEvaluator the client hook for limiting the traversal size
+	 * @param returnableEvaluator the client hook for evaluating nodes before
+	 * they are returned 
+	 * @param maxDepth the depth of the deepest nodes to traverse
+	 * @throws IllegalArgumentException if one or more of the parameters are
+	 * invalid
+	 */
+	public InstrumentedTraverser createInstrumentedTraverser(
+										Order traversalOrder,
+										Node startNode,
+										RelationshipType[] traversableRels,
+										Direction[] traversableDirs,
+										StopEvaluator stopEvaluator,
+										ReturnableEvaluator returnableEvaluator,
+										int maxDepth
+									)
+	{
+		if ( maxDepth < 0 )
+		{
+			throw new IllegalArgumentException( "Negative max depth: " + 
+				maxDepth );
+		}
+		AbstractTraverser traverser = ( AbstractTraverser ) createTraverser( 
+			traversalOrder, startNode, traversableRels, traversableDirs, 
+			stopEvaluator, returnableEvaluator );
+		traverser.instrument( new TraversalStatistics(), maxDepth );
+		return traverser;
+	}
+
+	/**
+	 * Creates a breadth-first traverser that expands each depth of the
+	 * traversal in the shared pool of parallel traversers, one thread per
+	 * available processor. The evaluators are invoked concurrently and must
+	 * follow the contract described in
+	 * {@link ParallelBreadthFirstTraverser}.
+	 * @param startNode the start node for the new traverser
+	 * @param traversableRels the relationship types that the new traverser
+	 * will traverse
+	 * @param traversableDirs the directions that the traversable
+	 * relationships will be traversed in
+	 * @param stopEvaluator the client hook for limiting the traversal size
+	 * @param returnableEvaluator the client hook for evaluating nodes before
+	 * they are returned 
+	 * @throws IllegalArgumentException if one or more of the parameters are
+	 * invalid
+	 */
+	public Traverser createParallelTraverser(
+										Node startNode,
+										RelationshipType[] traversableRels,
+										Direction[] traversableDirs,
+										StopEvaluator stopEvaluator,
+										ReturnableEvaluator returnableEvaluator
+									)
+	{
+		return createParallelTraverser( 
+			ParallelBreadthFirstTraverser.getSharedPool(), startNode, 
+			traversableRels, traversableDirs, stopEvaluator, 
+			returnableEvaluator );
+	}
+
+	/**
+	 * Creates a breadth-first traverser that expands each depth of the
+	 * traversal in <CODE>pool</CODE>. The evaluators are invoked
+	 * concurrently and must follow the contract described in
+	 * {@link ParallelBreadthFirstTraverser}.
+	 * @param pool the pool to run the expansion in
+	 * @param startNode the start node for the new traverser
+	 * @param traversableRels the relationship types that the new traverser
+	 * will traverse
+	 * @param traversableDirs the directions that the traversable
+	 * relationships will be traversed in
+	 * @param stopEvaluator the client hook for limiting the traversal size
+	 * @param returnableEvaluator the client hook for evaluating nodes before
+	 * they are returned 
+	 * @throws IllegalArgumentException if one or more of the parameters are
+	 * invalid
+	 */
+	public Traverser createParallelTraverser(
+										ForkJoinPool pool,
+										Node startNode,
+										RelationshipType[] traversableRels,
+										Direction[] traversableDirs,
+										StopEvaluator stopEvaluator,
+										ReturnableEvaluator returnableEvaluator
+									)
+	{
+		if ( traversableRels == null || traversableDirs == null )
+		{
+			throw new IllegalArgumentException( 
+				"Using this constructor requires that traversable " +
+				"relationships array and traversable directions array " +
+				"isn't null: travRels[" + traversableRels + "] " + 
+				"travDirs[" + traversableDirs + "]" );
+		}
+		if ( traversableRels.length != traversableDirs.length )
+		{
+			throw new IllegalArgumentException(
+				"Length of traversable relationships array isn't equal to " +
+				"length of traversable directions array: " +
+				"travRels.length[" + traversableRels.length + "] != " + 
+				"travDirs.length[" + traversableDirs.length + "]" );
+		}
+		return new ParallelBreadthFirstTraverser( pool, startNode, 
+			traversableRels, traversableDirs, stopEvaluator, 
+			returnableEvaluator );
+	}
 }
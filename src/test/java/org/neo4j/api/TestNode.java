@@ -124,6 +124,28 @@ public class TestNode extends TestCase
         { }
     }
 
+    public void testGetNodesById()
+    {
+        Node node1 = NodeManager.getManager().createNode();
+        Node node2 = NodeManager.getManager().createNode();
+        int ids[] = new int[] { (int) node2.getId(), (int) node1.getId(), 
+            (int) node2.getId() };
+        Node nodes[] = NodeManager.getManager().getNodesById( ids );
+        assertEquals( 3, nodes.length );
+        assertEquals( node2, nodes[0] );
+        assertEquals( node1, nodes[1] );
+        assertEquals( node2, nodes[2] );
+        node2.delete();
+        try
+        {
+            NodeManager.getManager().getNodesById( ids );
+            fail( "Node[" + node2.getId() + "] should be deleted." );
+        }
+        catch ( NotFoundException e )
+        { }
+        node1.delete();
+    }
+
     public void testDeletedNode()
     {
         // do some evil stuff
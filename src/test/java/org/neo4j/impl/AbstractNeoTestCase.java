@@ -0,0 +1,63 @@
+package org.neo4j.impl;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.neo4j.api.core.EmbeddedNeo;
+import org.neo4j.api.core.RelationshipType;
+
+/**
+ * Base class for tests that need a running {@link EmbeddedNeo}. A new empty
+ * store is created in <CODE>storeDir</CODE> before each test and the store
+ * is shut down and deleted after it. Subclasses that build a graph in
+ * <CODE>setUp()</CODE> or end transactions in <CODE>tearDown()</CODE>
+ * override them and call the super implementation first and last.
+ * <p>
+ * The subclasses are run like any other test case with
+ * <CODE>junit.textui.TestRunner &lt;class&gt;</CODE>.
+ */
+public abstract class AbstractNeoTestCase extends TestCase
+{
+    private final Class<? extends RelationshipType> relTypes;
+    private final String storeDir;
+    private EmbeddedNeo neo;
+
+    protected AbstractNeoTestCase( String testName,
+        Class<? extends RelationshipType> relTypes, String storeDir )
+    {
+        super( testName );
+        this.relTypes = relTypes;
+        this.storeDir = storeDir;
+    }
+
+    public void setUp() throws Exception
+    {
+        deleteDir( new File( storeDir ) );
+        neo = new EmbeddedNeo( relTypes, storeDir );
+    }
+
+    public void tearDown() throws Exception
+    {
+        neo.shutdown();
+        deleteDir( new File( storeDir ) );
+    }
+
+    protected EmbeddedNeo getNeo()
+    {
+        return neo;
+    }
+
+    protected static void deleteDir( File dir )
+    {
+        File files[] = dir.listFiles();
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                deleteDir( file );
+            }
+        }
+        dir.delete();
+    }
+}
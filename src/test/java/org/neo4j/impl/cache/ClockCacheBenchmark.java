@@ -0,0 +1,107 @@
+package org.neo4j.impl.cache;
+
+import java.util.Random;
+
+/**
+ * Compares the throughput of {@link LruCache} and {@link ClockCache} under
+ * a mixed load of gets and adds from 1 to <CODE>maxThreads</CODE> threads.
+ * Not part of the unit test suite, run with:
+ * <pre>
+ * java org.neo4j.impl.cache.ClockCacheBenchmark [maxThreads]
+ * </pre>
+ */
+public class ClockCacheBenchmark
+{
+    private static final int KEY_COUNT = 20000;
+    private static final int CACHE_SIZE = 5000;
+    private static final int OPERATIONS_PER_THREAD = 2000000;
+    private static final int RUNS = 3;
+
+    public static void main( String[] args ) throws Exception
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt( args[0] ) : 8;
+        // warm up both implementations
+        runMixedLoad( new LruCache<Integer,Integer>( "LruCache",
+            CACHE_SIZE ), 2 );
+        runMixedLoad( new ClockCache<Integer,Integer>( "ClockCache",
+            CACHE_SIZE ), 2 );
+        System.out.println( "threads  LruCache ops/s  ClockCache ops/s" );
+        for ( int threads = 1; threads <= maxThreads; threads *= 2 )
+        {
+            long lru = 0;
+            long clock = 0;
+            for ( int i = 0; i < RUNS; i++ )
+            {
+                lru = Math.max( lru, runMixedLoad(
+                    new LruCache<Integer,Integer>( "LruCache", CACHE_SIZE ),
+                    threads ) );
+                clock = Math.max( clock, runMixedLoad(
+                    new ClockCache<Integer,Integer>( "ClockCache",
+                        CACHE_SIZE ), threads ) );
+            }
+            System.out.println( String.format( "%7d  %14d  %16d", threads,
+                lru, clock ) );
+        }
+    }
+
+    // gets on a skewed key distribution, every tenth miss adds the key,
+    // returns operations per second
+    private static long runMixedLoad( final Cache<Integer,Integer> cache,
+        int threadCount ) throws Exception
+    {
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            final long seed = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    Random random = new Random( seed );
+                    try
+                    {
+                        for ( int j = 0; j < OPERATIONS_PER_THREAD; j++ )
+                        {
+                            int key = random.nextInt( KEY_COUNT );
+                            if ( random.nextBoolean() )
+                            {
+                                key = key % CACHE_SIZE;
+                            }
+                            Integer value = cache.get( key );
+                            if ( value == null && random.nextInt( 10 ) == 0 )
+                            {
+                                cache.add( key, key );
+                            }
+                            else if ( value != null && value != key )
+                            {
+                                throw new RuntimeException( "Bad value " +
+                                    value + " for " + key );
+                            }
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        failure[0] = t;
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        long time = System.nanoTime() - start;
+        if ( failure[0] != null )
+        {
+            throw new RuntimeException( "Cache load failed", failure[0] );
+        }
+        return (long) threadCount * OPERATIONS_PER_THREAD * 1000000000L /
+            Math.max( time, 1 );
+    }
+}
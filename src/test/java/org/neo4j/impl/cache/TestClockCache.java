@@ -0,0 +1,204 @@
+package org.neo4j.impl.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestClockCache extends TestCase
+{
+    private static final int KEY_COUNT = 20000;
+    private static final int CACHE_SIZE = 5000;
+    private static final int OPERATIONS_PER_THREAD = 500000;
+
+    public TestClockCache( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestClockCache.class );
+        return suite;
+    }
+
+    private static class CleanedCache extends ClockCache<Integer,Integer>
+    {
+        private final List<Integer> cleaned = new ArrayList<Integer>();
+
+        CleanedCache( int maxSize )
+        {
+            super( "TestCache", maxSize );
+        }
+
+        protected void elementCleaned( Integer element )
+        {
+            cleaned.add( element );
+        }
+    }
+
+    public void testAddGetRemove()
+    {
+        ClockCache<Integer,Integer> cache =
+            new ClockCache<Integer,Integer>( "TestCache", 10 );
+        for ( int i = 0; i < 10; i++ )
+        {
+            cache.add( i, i * 2 );
+        }
+        assertEquals( 10, cache.size() );
+        assertEquals( new Integer( 6 ), cache.get( 3 ) );
+        assertEquals( new Integer( 6 ), cache.remove( 3 ) );
+        assertEquals( null, cache.get( 3 ) );
+        assertEquals( null, cache.remove( 3 ) );
+        cache.add( 4, 4 );
+        assertEquals( new Integer( 4 ), cache.get( 4 ) );
+        assertEquals( 9, cache.size() );
+        cache.clear();
+        assertEquals( 0, cache.size() );
+        try
+        {
+            cache.get( null );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+    }
+
+    public void testEvictsNotReferenced()
+    {
+        CleanedCache cache = new CleanedCache( 4 );
+        for ( int i = 0; i < 4; i++ )
+        {
+            cache.add( i, i );
+        }
+        cache.get( 0 );
+        cache.get( 2 );
+        cache.add( 4, 4 );
+        cache.add( 5, 5 );
+        assertEquals( 4, cache.size() );
+        assertEquals( 2, cache.cleaned.size() );
+        assertTrue( cache.cleaned.contains( 1 ) );
+        assertTrue( cache.cleaned.contains( 3 ) );
+        assertEquals( new Integer( 0 ), cache.get( 0 ) );
+        assertEquals( new Integer( 2 ), cache.get( 2 ) );
+    }
+
+    public void testResize()
+    {
+        CleanedCache cache = new CleanedCache( 100 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            cache.add( i, i );
+        }
+        cache.resize( 40 );
+        assertEquals( 40, cache.maxSize() );
+        assertEquals( 40, cache.size() );
+        assertEquals( 60, cache.cleaned.size() );
+        cache.resize( 200 );
+        for ( int i = 100; i < 200; i++ )
+        {
+            cache.add( i, i );
+        }
+        assertEquals( 140, cache.size() );
+        assertEquals( 60, cache.cleaned.size() );
+    }
+
+    public void testAddRemoveChurn()
+    {
+        CleanedCache cache = new CleanedCache( 10 );
+        for ( int i = 0; i < 100000; i++ )
+        {
+            cache.add( i, i );
+            cache.remove( i );
+        }
+        cache.add( 1, 1 );
+        assertEquals( 1, cache.size() );
+        assertEquals( 0, cache.cleaned.size() );
+    }
+
+    public void testConcurrentMixedLoad() throws Exception
+    {
+        for ( int threads = 1; threads <= 8; threads *= 2 )
+        {
+            ClockCache<Integer,Integer> cache =
+                new ClockCache<Integer,Integer>( "ClockCache", CACHE_SIZE );
+            long hits = runMixedLoad( cache, threads );
+            // half the gets are on keys that fit in the cache
+            assertTrue( hits > (long) threads * OPERATIONS_PER_THREAD / 4 );
+        }
+    }
+
+    // gets on a skewed key distribution, every tenth miss adds the key,
+    // returns the number of hits
+    private long runMixedLoad( final Cache<Integer,Integer> cache,
+        int threadCount ) throws Exception
+    {
+        final Throwable[] failure = new Throwable[1];
+        final AtomicLong hits = new AtomicLong();
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            final long seed = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    Random random = new Random( seed );
+                    try
+                    {
+                        for ( int j = 0; j < OPERATIONS_PER_THREAD; j++ )
+                        {
+                            int key = random.nextInt( KEY_COUNT );
+                            if ( random.nextBoolean() )
+                            {
+                                key = key % CACHE_SIZE;
+                            }
+                            Integer value = cache.get( key );
+                            if ( value == null && random.nextInt( 10 ) == 0 )
+                            {
+                                cache.add( key, key );
+                            }
+                            else if ( value != null )
+                            {
+                                if ( value != key )
+                                {
+                                    throw new RuntimeException( "Bad value " +
+                                        value + " for " + key );
+                                }
+                                hits.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        failure[0] = t;
+                    }
+                }
+            };
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        if ( failure[0] != null )
+        {
+            fail( "Cache load failed: " + failure[0] );
+        }
+        assertTrue( cache.size() <= cache.maxSize() + threadCount );
+        return hits.get();
+    }
+}
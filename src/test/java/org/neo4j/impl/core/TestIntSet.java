@@ -0,0 +1,127 @@
+package org.neo4j.impl.core;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestIntSet extends TestCase
+{
+    private static final int RELATIONSHIP_COUNT = 100000;
+
+    public TestIntSet( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestIntSet.class );
+        return suite;
+    }
+
+    public void testAddRemoveContains()
+    {
+        IntSet set = new IntSet();
+        assertTrue( set.add( 0 ) );
+        assertTrue( set.add( 7 ) );
+        assertFalse( set.add( 7 ) );
+        assertEquals( 2, set.size() );
+        assertTrue( set.contains( 0 ) );
+        assertTrue( set.contains( 7 ) );
+        assertFalse( set.contains( 8 ) );
+        assertTrue( set.remove( 0 ) );
+        assertFalse( set.remove( 0 ) );
+        assertFalse( set.contains( 0 ) );
+        assertEquals( 1, set.size() );
+        try
+        {
+            set.add( -1 );
+            fail( "Negative value should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+    }
+
+    public void testRandomAgainstHashSet()
+    {
+        Random random = new Random( 1 );
+        IntSet set = new IntSet();
+        Set<Integer> expected = new HashSet<Integer>();
+        for ( int i = 0; i < 200000; i++ )
+        {
+            int value = random.nextInt( 5000 );
+            if ( random.nextInt( 3 ) == 0 )
+            {
+                assertEquals( expected.remove( value ), set.remove( value ) );
+            }
+            else
+            {
+                assertEquals( expected.add( value ), set.add( value ) );
+            }
+        }
+        assertEquals( expected.size(), set.size() );
+        int[] values = set.toArray();
+        assertEquals( expected.size(), values.length );
+        for ( int value : values )
+        {
+            assertTrue( expected.contains( value ) );
+        }
+        for ( int i = 0; i < 5000; i++ )
+        {
+            assertEquals( expected.contains( i ), set.contains( i ) );
+        }
+    }
+
+    public void testCopyTo()
+    {
+        IntSet set = new IntSet();
+        for ( int i = 10; i < 20; i++ )
+        {
+            set.add( i );
+        }
+        int[] target = new int[12];
+        assertEquals( 12, set.copyTo( target, 2 ) );
+        Arrays.sort( target, 2, 12 );
+        for ( int i = 0; i < 10; i++ )
+        {
+            assertEquals( 10 + i, target[i + 2] );
+        }
+    }
+
+    public void testManyRelationshipIds()
+    {
+        IntSet set = new IntSet();
+        for ( int i = 0; i < RELATIONSHIP_COUNT; i++ )
+        {
+            // ids above the Integer cache
+            assertTrue( set.add( i + 1000 ) );
+        }
+        assertEquals( RELATIONSHIP_COUNT, set.size() );
+        for ( int i = 0; i < RELATIONSHIP_COUNT; i += 2 )
+        {
+            assertTrue( set.remove( i + 1000 ) );
+        }
+        assertEquals( RELATIONSHIP_COUNT / 2, set.size() );
+        for ( int i = 0; i < RELATIONSHIP_COUNT; i++ )
+        {
+            assertEquals( i % 2 == 1, set.contains( i + 1000 ) );
+        }
+        int[] values = set.toArray();
+        Arrays.sort( values );
+        for ( int i = 0; i < values.length; i++ )
+        {
+            assertEquals( i * 2 + 1001, values[i] );
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.neo4j.impl.core;
+
+import javax.transaction.UserTransaction;
+
+import org.neo4j.api.core.Node;
+import org.neo4j.api.core.Relationship;
+import org.neo4j.api.core.RelationshipType;
+import org.neo4j.impl.AbstractNeoTestCase;
+import org.neo4j.impl.transaction.TransactionFactory;
+import org.neo4j.impl.transaction.TransactionIsolationLevel;
+
+public class TestOptimisticReadCommitted extends AbstractNeoTestCase
+{
+    private static final String STORE_DIR = "var/optimistic";
+    private static final int WRITES = 200;
+
+    enum MyRelTypes implements RelationshipType
+    {
+        TEST
+    }
+
+    private Node node;
+    private Relationship rel;
+
+    public TestOptimisticReadCommitted( String testName )
+    {
+        super( testName, MyRelTypes.class, STORE_DIR );
+    }
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        UserTransaction ut = TransactionFactory.getUserTransaction();
+        ut.begin();
+        node = getNeo().createNode();
+        Node other = getNeo().createNode();
+        rel = node.createRelationshipTo( other, MyRelTypes.TEST );
+        node.setProperty( "value", 0 );
+        rel.setProperty( "value", 0 );
+        ut.commit();
+        // load the properties and relationships so they are read from memory
+        ut.begin();
+        node.getPropertyKeys();
+        node.getRelationships();
+        rel.getPropertyKeys();
+        ut.commit();
+    }
+
+    private static void beginOptimistic() throws Exception
+    {
+        TransactionFactory.getUserTransaction().begin();
+        TransactionFactory.setTransactionIsolationLevel(
+            TransactionIsolationLevel.READ_COMMITTED_OPTIMISTIC );
+    }
+
+    public void testReadWaitsForWriteLock() throws Exception
+    {
+        final Object[] values = new Object[2];
+        final Throwable[] failure = new Throwable[1];
+        final Object writtenLock = new Object();
+        final boolean[] written = new boolean[1];
+        final Object commitLock = new Object();
+        final boolean[] commit = new boolean[1];
+        Thread writer = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    UserTransaction ut = TransactionFactory.getUserTransaction();
+                    ut.begin();
+                    node.setProperty( "value", 1 );
+                    rel.setProperty( "value", 1 );
+                    synchronized ( writtenLock )
+                    {
+                        written[0] = true;
+                        writtenLock.notifyAll();
+                    }
+                    synchronized ( commitLock )
+                    {
+                        while ( !commit[0] )
+                        {
+                            commitLock.wait();
+                        }
+                    }
+                    ut.commit();
+                }
+                catch ( Throwable t )
+                {
+                    failure[0] = t;
+                }
+            }
+        };
+        Thread reader = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    beginOptimistic();
+                    values[0] = node.getProperty( "value" );
+                    values[1] = rel.getProperty( "value" );
+                    TransactionFactory.getUserTransaction().commit();
+                }
+                catch ( Throwable t )
+                {
+                    failure[0] = t;
+                }
+            }
+        };
+        writer.start();
+        synchronized ( writtenLock )
+        {
+            while ( !written[0] )
+            {
+                writtenLock.wait();
+            }
+        }
+        reader.start();
+        try
+        {
+            // the node is write locked, the reader waits for the read lock
+            reader.join( 500 );
+            assertTrue( reader.isAlive() );
+            assertNull( values[0] );
+        }
+        finally
+        {
+            synchronized ( commitLock )
+            {
+                commit[0] = true;
+                commitLock.notifyAll();
+            }
+            writer.join();
+            reader.join();
+        }
+        assertNull( "" + failure[0], failure[0] );
+        assertEquals( 1, values[0] );
+        assertEquals( 1, values[1] );
+    }
+
+    public void testReadsNeverSeeUncommittedWrites() throws Exception
+    {
+        final Throwable[] failure = new Throwable[1];
+        Thread writer = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    UserTransaction ut = TransactionFactory.getUserTransaction();
+                    Node other = null;
+                    for ( int i = 1; i <= WRITES; i++ )
+                    {
+                        // changed in memory while the write locks are held,
+                        // then undone
+                        ut.begin();
+                        if ( other == null )
+                        {
+                            other = getNeo().createNode();
+                            ut.commit();
+                            ut.begin();
+                        }
+                        node.setProperty( "value", -1 );
+                        node.setProperty( "extra", -1 );
+                        rel.setProperty( "value", -1 );
+                        node.createRelationshipTo( other, MyRelTypes.TEST );
+                        ut.rollback();
+                        ut.begin();
+                        node.setProperty( "value", i );
+                        rel.setProperty( "value", i );
+                        ut.commit();
+                    }
+                }
+                catch ( Throwable t )
+                {
+                    failure[0] = t;
+                }
+            }
+        };
+        writer.start();
+        try
+        {
+            int lastNodeValue = 0;
+            int lastRelValue = 0;
+            int reads = 0;
+            while ( writer.isAlive() || reads == 0 )
+            {
+                beginOptimistic();
+                try
+                {
+                    int nodeValue = ( Integer ) node.getProperty( "value" );
+                    int relValue = ( Integer ) rel.getProperty( "value" );
+                    assertTrue( nodeValue >= lastNodeValue );
+                    assertTrue( relValue >= lastRelValue );
+                    assertFalse( node.hasProperty( "extra" ) );
+                    for ( String key : node.getPropertyKeys() )
+                    {
+                        assertEquals( "value", key );
+                    }
+                    for ( Object value : rel.getPropertyValues() )
+                    {
+                        assertTrue( ( Integer ) value >= lastRelValue );
+                    }
+                    int relCount = 0;
+                    for ( Relationship relationship : node.getRelationships() )
+                    {
+                        assertEquals( rel, relationship );
+                        relCount++;
+                    }
+                    assertEquals( 1, relCount );
+                    lastNodeValue = nodeValue;
+                    lastRelValue = relValue;
+                    reads++;
+                }
+                finally
+                {
+                    TransactionFactory.getUserTransaction().commit();
+                }
+            }
+        }
+        finally
+        {
+            writer.join();
+        }
+        assertNull( "" + failure[0], failure[0] );
+        beginOptimistic();
+        assertEquals( WRITES, node.getProperty( "value" ) );
+        assertEquals( WRITES, rel.getProperty( "value" ) );
+        TransactionFactory.getUserTransaction().commit();
+    }
+}
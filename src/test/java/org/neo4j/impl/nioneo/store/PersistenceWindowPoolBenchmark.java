@@ -0,0 +1,148 @@
+package org.neo4j.impl.nioneo.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Measures random record reads per second through a
+ * {@link PersistenceWindowPool} from 1 to <CODE>maxThreads</CODE> threads,
+ * with the whole store, half the store and none of it memory mapped.
+ * Not part of the unit test suite, run with:
+ * <pre>
+ * java org.neo4j.impl.nioneo.store.PersistenceWindowPoolBenchmark [maxThreads]
+ * </pre>
+ */
+public class PersistenceWindowPoolBenchmark
+{
+    private static final int RECORD_SIZE = 9;
+    private static final int RECORD_COUNT = 100000;
+    private static final int READS_PER_THREAD = 500000;
+
+    public static void main( String[] args ) throws Exception
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt( args[0] ) : 16;
+        File file = File.createTempFile( "windowpool", ".db" );
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        FileChannel channel = raf.getChannel();
+        try
+        {
+            ByteBuffer buf = ByteBuffer.allocate( RECORD_SIZE * RECORD_COUNT );
+            for ( int i = 0; i < RECORD_COUNT; i++ )
+            {
+                buf.put( (byte) 1 ).putInt( i ).putInt( -i );
+            }
+            buf.flip();
+            channel.write( buf, 0 );
+            channel.force( false );
+            int storeSize = RECORD_SIZE * RECORD_COUNT;
+            System.out.println( "threads  mapped reads/s  " +
+                "half mapped reads/s  rows reads/s" );
+            for ( int threads = 1; threads <= maxThreads; threads *= 2 )
+            {
+                System.out.println( String.format( "%7d  %14d  %19d  %12d",
+                    threads, run( channel, storeSize * 2, threads ),
+                    run( channel, storeSize / 2, threads ),
+                    run( channel, 0, threads ) ) );
+            }
+        }
+        finally
+        {
+            channel.close();
+            raf.close();
+            file.delete();
+        }
+    }
+
+    // best of three runs on a warmed up pool
+    private static long run( FileChannel channel, int mappedMem,
+        int threadCount ) throws Exception
+    {
+        PersistenceWindowPool pool = new PersistenceWindowPool( "benchmark",
+            RECORD_SIZE, channel, mappedMem );
+        try
+        {
+            runReaders( pool, threadCount );
+            long best = 0;
+            for ( int i = 0; i < 3; i++ )
+            {
+                best = Math.max( best, runReaders( pool, threadCount ) );
+            }
+            return best;
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+    private static long runReaders( final PersistenceWindowPool pool,
+        int threadCount ) throws Exception
+    {
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            final long seed = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    Random random = new Random( seed );
+                    try
+                    {
+                        for ( int j = 0; j < READS_PER_THREAD; j++ )
+                        {
+                            int id = random.nextInt( RECORD_COUNT );
+                            if ( read( pool, id ) != id )
+                            {
+                                throw new RuntimeException( "Bad record " +
+                                    id );
+                            }
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        failure[0] = t;
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        long time = System.nanoTime() - start;
+        if ( failure[0] != null )
+        {
+            throw new RuntimeException( "Reader failed", failure[0] );
+        }
+        return (long) threadCount * READS_PER_THREAD * 1000000000L /
+            Math.max( time, 1 );
+    }
+
+    private static int read( PersistenceWindowPool pool, int id )
+        throws IOException
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.READ );
+        try
+        {
+            Buffer buffer = window.getBuffer();
+            buffer.setOffset( ( id - buffer.position() ) * RECORD_SIZE );
+            buffer.get();
+            return buffer.getInt();
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+}
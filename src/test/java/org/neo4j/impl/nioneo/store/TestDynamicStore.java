@@ -0,0 +1,141 @@
+package org.neo4j.impl.nioneo.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestDynamicStore extends TestCase
+{
+    private File dir;
+
+    public TestDynamicStore( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestDynamicStore.class );
+        return suite;
+    }
+
+    public void setUp() throws IOException
+    {
+        dir = File.createTempFile( "dynstore", "" );
+        dir.delete();
+        dir.mkdir();
+    }
+
+    public void tearDown()
+    {
+        for ( File file : dir.listFiles() )
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private String fileName( String name )
+    {
+        return new File( dir, name ).getPath();
+    }
+
+    private int store( AbstractDynamicStore store, 
+        java.util.Collection<DynamicRecord> records ) throws IOException
+    {
+        int startBlock = Record.NO_NEXT_BLOCK.intValue();
+        for ( DynamicRecord record : records )
+        {
+            if ( startBlock == Record.NO_NEXT_BLOCK.intValue() )
+            {
+                startBlock = record.getId();
+            }
+            store.updateRecord( record );
+        }
+        return startBlock;
+    }
+
+    public void testStrings() throws IOException
+    {
+        DynamicStringStore.createStore( fileName( "strings" ), 30 );
+        DynamicStringStore store = 
+            new DynamicStringStore( fileName( "strings" ) );
+        StringBuffer buf = new StringBuffer();
+        for ( int i = 0; i < 2000; i++ )
+        {
+            buf.append( (char) ( 'a' + i % 26 ) );
+        }
+        String strings[] = new String[] { "", "name", 
+            "exactly thirty bytes long str.", buf.substring( 0, 31 ), 
+            buf.toString() };
+        int blocks[] = new int[ strings.length ];
+        for ( int i = 0; i < strings.length; i++ )
+        {
+            int blockId = store.nextBlockId();
+            blocks[i] = store( store, store.allocateRecords( blockId, 
+                strings[i].getBytes() ) );
+        }
+        for ( int i = strings.length - 1; i >= 0; i-- )
+        {
+            assertEquals( strings[i], store.getString( blocks[i] ) );
+            assertTrue( Arrays.equals( strings[i].getBytes(), 
+                store.get( blocks[i] ) ) );
+        }
+        store.close();
+    }
+
+    public void testArrays() throws IOException
+    {
+        DynamicArrayStore.createStore( fileName( "arrays" ), 30 );
+        DynamicArrayStore store = 
+            new DynamicArrayStore( fileName( "arrays" ) );
+        int ints[] = new int[ 100 ];
+        long longs[] = new long[ 50 ];
+        boolean bools[] = new boolean[ 20 ];
+        for ( int i = 0; i < ints.length; i++ )
+        {
+            ints[i] = i * 31;
+        }
+        for ( int i = 0; i < longs.length; i++ )
+        {
+            longs[i] = Long.MAX_VALUE - i;
+        }
+        for ( int i = 0; i < bools.length; i++ )
+        {
+            bools[i] = i % 3 == 0;
+        }
+        String strings[] = new String[] { "name", "", 
+            "a string longer than a single block" };
+        boolean eightBools[] = new boolean[] { true, false, true, true, 
+            false, false, true, true };
+        Object arrays[] = new Object[] { ints, longs, bools, strings, 
+            eightBools };
+        int blocks[] = new int[ arrays.length ];
+        for ( int i = 0; i < arrays.length; i++ )
+        {
+            int blockId = store.nextBlockId();
+            blocks[i] = store( store, store.allocateRecords( blockId, 
+                arrays[i] ) );
+        }
+        assertTrue( Arrays.equals( ints, (int[]) store.getArray( 
+            blocks[0] ) ) );
+        assertTrue( Arrays.equals( longs, (long[]) store.getArray( 
+            blocks[1] ) ) );
+        assertTrue( Arrays.equals( bools, (boolean[]) store.getArray( 
+            blocks[2] ) ) );
+        assertTrue( Arrays.equals( strings, (String[]) store.getArray( 
+            blocks[3] ) ) );
+        assertTrue( Arrays.equals( eightBools, (boolean[]) store.getArray( 
+            blocks[4] ) ) );
+        store.close();
+    }
+}
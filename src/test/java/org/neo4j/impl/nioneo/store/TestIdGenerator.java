@@ -0,0 +1,254 @@
+package org.neo4j.impl.nioneo.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestIdGenerator extends TestCase
+{
+    private File file;
+
+    public TestIdGenerator( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestIdGenerator.class );
+        return suite;
+    }
+
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile( "idgenerator", ".id" );
+        file.delete();
+        IdGenerator.createGenerator( file.getPath() );
+    }
+
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    public void testFreeIdsReusedAfterClose() throws IOException
+    {
+        // grab size smaller than freed ids so several batches are written
+        IdGenerator idGenerator = new IdGenerator( file.getPath(), 16 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertEquals( i, idGenerator.nextId() );
+        }
+        for ( int i = 0; i < 100; i += 2 )
+        {
+            idGenerator.freeId( i );
+        }
+        assertEquals( 50, idGenerator.getNumberOfIdsInUse() );
+        // freed ids are not reused in the same session
+        assertEquals( 100, idGenerator.nextId() );
+        idGenerator.close();
+
+        idGenerator = new IdGenerator( file.getPath(), 16 );
+        assertEquals( 101, idGenerator.getHighId() );
+        assertEquals( 51, idGenerator.getNumberOfIdsInUse() );
+        Set<Integer> ids = new HashSet<Integer>();
+        for ( int i = 0; i < 50; i++ )
+        {
+            int id = idGenerator.nextId();
+            assertEquals( 0, id % 2 );
+            assertTrue( id < 100 );
+            assertTrue( ids.add( id ) );
+        }
+        assertEquals( 101, idGenerator.nextId() );
+        int batch[] = new int[ 10 ];
+        idGenerator.nextIds( batch );
+        for ( int i = 0; i < batch.length; i++ )
+        {
+            assertEquals( 102 + i, batch[i] );
+        }
+        idGenerator.close();
+        try
+        {
+            idGenerator.nextId();
+            fail( "Closed id generator returned id" );
+        }
+        catch ( IOException e )
+        { // good
+        }
+    }
+
+    public void testConcurrentNextId() throws Exception
+    {
+        final IdGenerator idGenerator = 
+            new IdGenerator( file.getPath(), 16 );
+        for ( int i = 0; i < 40; i++ )
+        {
+            idGenerator.nextId();
+        }
+        for ( int i = 0; i < 40; i++ )
+        {
+            idGenerator.freeId( i );
+        }
+        idGenerator.close();
+        final IdGenerator reopened = new IdGenerator( file.getPath(), 16 );
+        final int idsPerThread = 1000;
+        final int result[][] = new int[ 4 ][ idsPerThread ];
+        Thread threads[] = new Thread[ result.length ];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final int[] threadIds = result[i];
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for ( int j = 0; j < idsPerThread; j++ )
+                        {
+                            threadIds[j] = reopened.nextId();
+                        }
+                    }
+                    catch ( IOException e )
+                    {
+                        throw new RuntimeException( e );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        Set<Integer> ids = new HashSet<Integer>();
+        for ( int[] threadIds : result )
+        {
+            for ( int id : threadIds )
+            {
+                assertTrue( "Duplicate id " + id, ids.add( id ) );
+            }
+        }
+        // all defraged ids used before new ones
+        assertEquals( result.length * idsPerThread, reopened.getHighId() );
+        reopened.close();
+    }
+
+    public void testStoreReleasesIdsOfFinishedThreads() throws Exception
+    {
+        File storeFile = File.createTempFile( "idbatch", ".nodestore" );
+        storeFile.delete();
+        NodeStore.createStore( storeFile.getPath() );
+        final NodeStore store = new NodeStore( storeFile.getPath() );
+        try
+        {
+            int inUse = store.getNumberOfIdsInUse();
+            final int threadCount = 50;
+            for ( int i = 0; i < threadCount; i++ )
+            {
+                // each thread reserves a batch of ids but only uses one
+                Thread thread = new Thread()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            store.nextId();
+                        }
+                        catch ( IOException e )
+                        {
+                            throw new RuntimeException( e );
+                        }
+                    }
+                };
+                thread.start();
+                thread.join();
+            }
+            // a new thread returns the unused ids of the finished ones
+            store.nextId();
+            assertEquals( inUse + threadCount + 1, 
+                store.getNumberOfIdsInUse() );
+        }
+        finally
+        {
+            store.close();
+            new File( storeFile.getPath() + ".id" ).delete();
+            storeFile.delete();
+        }
+    }
+
+    public void testStoreReturnsReservedIdsOnClose() throws Exception
+    {
+        File storeFile = File.createTempFile( "idbatch", ".nodestore" );
+        storeFile.delete();
+        NodeStore.createStore( storeFile.getPath() );
+        NodeStore store = new NodeStore( storeFile.getPath() );
+        int inUse = store.getNumberOfIdsInUse();
+        Set<Integer> used = new HashSet<Integer>();
+        for ( int i = 0; i < 3; i++ )
+        {
+            used.add( store.nextId() );
+        }
+        // the rest of the batch is reserved but not counted as in use
+        assertEquals( inUse + 3, store.getNumberOfIdsInUse() );
+        int highId = store.getHighId();
+        assertTrue( highId > inUse + 3 );
+        store.close();
+        NodeStore reopened = new NodeStore( storeFile.getPath() );
+        try
+        {
+            // close wrote the reserved ids to the .id file as free ids
+            assertEquals( inUse + 3, reopened.getNumberOfIdsInUse() );
+            for ( int i = 0; i < highId - inUse - 3; i++ )
+            {
+                int id = reopened.nextId();
+                assertTrue( id < highId );
+                assertTrue( "Duplicate id " + id, used.add( id ) );
+            }
+        }
+        finally
+        {
+            reopened.close();
+            new File( storeFile.getPath() + ".id" ).delete();
+            storeFile.delete();
+        }
+    }
+
+    public void testOnlyRecordStoresReserveIds() throws Exception
+    {
+        File dir = File.createTempFile( "idbatch", "" );
+        dir.delete();
+        dir.mkdir();
+        String fileName = new File( dir, "index" ).getPath();
+        PropertyIndexStore.createStore( fileName );
+        PropertyIndexStore store = new PropertyIndexStore( fileName );
+        try
+        {
+            int highId = store.getHighId();
+            store.createKey( "a" );
+            store.createKey( "b" );
+            store.createKey( "c" );
+            // few keys or types are created, no ids reserved for them
+            assertEquals( highId + 3, store.getHighId() );
+            assertEquals( highId + 3, store.getNumberOfIdsInUse() );
+        }
+        finally
+        {
+            store.close();
+            for ( File file : dir.listFiles() )
+            {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+}
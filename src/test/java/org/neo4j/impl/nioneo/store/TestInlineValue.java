@@ -0,0 +1,160 @@
+package org.neo4j.impl.nioneo.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestInlineValue extends TestCase
+{
+    private File dir;
+
+    public TestInlineValue( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestInlineValue.class );
+        return suite;
+    }
+
+    public void setUp() throws IOException
+    {
+        dir = File.createTempFile( "inline", "" );
+        dir.delete();
+        dir.mkdir();
+    }
+
+    public void tearDown()
+    {
+        for ( File file : dir.listFiles() )
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testShortStrings()
+    {
+        String strings[] = new String[] { "", "a", "abcdefg", "Grüße",
+            "0", "2008-06-17", "-12.5 +3,4:", "12345678901234" };
+        for ( String string : strings )
+        {
+            assertTrue( string, InlineValue.canInline( string ) );
+            assertEquals( string, InlineValue.decodeString(
+                InlineValue.encodeString( string ) ) );
+        }
+        assertFalse( InlineValue.canInline( "abcdefgh" ) );
+        assertFalse( InlineValue.canInline( "123456789012345" ) );
+        assertFalse( InlineValue.canInline( "Ā" ) );
+    }
+
+    public void testSmallArrays()
+    {
+        assertArray( new int[] { 0, 1, -1, 7, -8 } );
+        assertArray( new int[] { Integer.MAX_VALUE } );
+        assertArray( new int[] {} );
+        assertArray( new long[] { 1l << 46 } );
+        assertArray( new long[] { -( 1l << 47 ) } );
+        assertArray( new long[] { 1, -1, 2, -2, 3, -3, 4, -4 } );
+        assertArray( new byte[] { Byte.MIN_VALUE, Byte.MAX_VALUE, 0, 3 } );
+        assertArray( new char[] { 'a', 'b', '￿' } );
+        boolean bools[] = new boolean[ 48 ];
+        bools[0] = true;
+        bools[47] = true;
+        assertArray( bools );
+
+        assertFalse( InlineValue.canInline( new int[] { 1, 2, 3, 4, 5, 6, 7,
+            8, 9, 10, 11, 12 } ) );
+        assertFalse( InlineValue.canInline( new long[] { 1l << 47 } ) );
+        assertFalse( InlineValue.canInline( new boolean[ 49 ] ) );
+        assertFalse( InlineValue.canInline( new double[] { 1 } ) );
+        assertFalse( InlineValue.canInline( new Integer[] { 1 } ) );
+        assertFalse( InlineValue.canInline( new String[] { "a" } ) );
+    }
+
+    private void assertArray( Object array )
+    {
+        assertTrue( InlineValue.canInline( array ) );
+        Object decoded = InlineValue.decodeArray(
+            InlineValue.encodeArray( array ) );
+        assertEquals( array.getClass(), decoded.getClass() );
+        if ( array instanceof int[] )
+        {
+            assertTrue( Arrays.equals( (int[]) array, (int[]) decoded ) );
+        }
+        else if ( array instanceof long[] )
+        {
+            assertTrue( Arrays.equals( (long[]) array, (long[]) decoded ) );
+        }
+        else if ( array instanceof byte[] )
+        {
+            assertTrue( Arrays.equals( (byte[]) array, (byte[]) decoded ) );
+        }
+        else if ( array instanceof char[] )
+        {
+            assertTrue( Arrays.equals( (char[]) array, (char[]) decoded ) );
+        }
+        else
+        {
+            assertTrue( Arrays.equals( (boolean[]) array,
+                (boolean[]) decoded ) );
+        }
+    }
+
+    public void testStoreDoesNotUseDynamicStores() throws IOException
+    {
+        String fileName = new File( dir, "props" ).getPath();
+        PropertyStore.createStore( fileName );
+        new PropertyStore( fileName ).close();
+        long stringsSize = new File( fileName + ".strings" ).length();
+        long arraysSize = new File( fileName + ".arrays" ).length();
+        PropertyStore store = new PropertyStore( fileName );
+
+        Object values[] = new Object[] { "name", "42", new int[] { 1, 2 },
+            "a long string value" };
+        int ids[] = new int[ values.length ];
+        for ( int i = 0; i < values.length; i++ )
+        {
+            ids[i] = store.nextId();
+            PropertyRecord record = new PropertyRecord( ids[i],
+                store.getType( values[i] ) );
+            record.setInUse( true );
+            int keyBlockId = store.nextKeyBlockId();
+            record.setKeyBlock( keyBlockId );
+            for ( DynamicRecord keyRecord :
+                store.allocateKeyRecords( keyBlockId, "key".getBytes() ) )
+            {
+                record.addKeyRecord( keyRecord );
+            }
+            store.encodeValue( record, values[i] );
+            store.updateRecord( record );
+        }
+        assertEquals( PropertyType.SHORT_STRING,
+            store.getRecord( ids[0] ).getType() );
+        assertEquals( PropertyType.SHORT_ARRAY,
+            store.getRecord( ids[2] ).getType() );
+        assertEquals( PropertyType.STRING,
+            store.getRecord( ids[3] ).getType() );
+        assertEquals( "name", store.getPropertyValue( ids[0] ) );
+        assertEquals( "42", store.getPropertyValue( ids[1] ) );
+        assertTrue( Arrays.equals( new int[] { 1, 2 },
+            (int[]) store.getPropertyValue( ids[2] ) ) );
+        assertEquals( "a long string value",
+            store.getPropertyValue( ids[3] ) );
+        store.close();
+        // only the long string went to a dynamic store
+        assertTrue( new File( fileName + ".strings" ).length() > stringsSize );
+        assertEquals( arraysSize, new File( fileName + ".arrays" ).length() );
+    }
+}
@@ -0,0 +1,463 @@
+package org.neo4j.impl.nioneo.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestPersistenceWindowPool extends TestCase
+{
+    private static final int RECORD_SIZE = 9;
+    private static final int RECORD_COUNT = 100000;
+    private static final int READS_PER_THREAD = 100000;
+
+    private File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+
+    public TestPersistenceWindowPool( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestPersistenceWindowPool.class );
+        return suite;
+    }
+
+    public void setUp() throws Exception
+    {
+        file = File.createTempFile( "windowpool", ".db" );
+        raf = new RandomAccessFile( file, "rw" );
+        channel = raf.getChannel();
+        writeRecords( channel, 0, RECORD_COUNT );
+    }
+
+    public void tearDown() throws Exception
+    {
+        channel.close();
+        raf.close();
+        file.delete();
+    }
+
+    public void testConcurrentReadsMappedAndRows() throws Exception
+    {
+        // half the store memory mapped, the rest goes through rows
+        PersistenceWindowPool pool = new PersistenceWindowPool(
+            "test", RECORD_SIZE, channel, RECORD_SIZE * RECORD_COUNT / 2 );
+        for ( int threads = 1; threads <= 16; threads *= 2 )
+        {
+            runReaders( pool, threads );
+        }
+        pool.close();
+    }
+
+    public void testWriteThenRead() throws Exception
+    {
+        PersistenceWindowPool pool = new PersistenceWindowPool(
+            "test", RECORD_SIZE, channel, 0 );
+        for ( int i = 0; i < 1000; i++ )
+        {
+            PersistenceWindow window = pool.acquire( i, OperationType.WRITE );
+            try
+            {
+                Buffer buffer = window.getBuffer();
+                buffer.setOffset( ( i - buffer.position() ) * RECORD_SIZE );
+                buffer.put( (byte) 1 ).putInt( i * 2 ).putInt( -i * 2 );
+            }
+            finally
+            {
+                pool.release( window );
+            }
+        }
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertEquals( i * 2, read( pool, i ) );
+        }
+        pool.close();
+    }
+
+    public void testSharedBudgetFollowsMisses() throws Exception
+    {
+        File otherFile = File.createTempFile( "windowpool", ".db" );
+        RandomAccessFile otherRaf = new RandomAccessFile( otherFile, "rw" );
+        FileChannel otherChannel = otherRaf.getChannel();
+        try
+        {
+            writeRecords( otherChannel, 0, RECORD_COUNT );
+            // room for one of the stores, the first one gets it all
+            MappedMemoryBudget budget =
+                new MappedMemoryBudget( RECORD_SIZE * RECORD_COUNT );
+            PersistenceWindowPool idle = new PersistenceWindowPool(
+                "idle", RECORD_SIZE, channel, budget );
+            PersistenceWindowPool busy = new PersistenceWindowPool(
+                "busy", RECORD_SIZE, otherChannel, budget );
+            assertTrue( idle.getMappedMemory() > busy.getMappedMemory() );
+            Random random = new Random( 1 );
+            for ( int i = 0; i < 100; i++ )
+            {
+                for ( int j = 0; j < 1000; j++ )
+                {
+                    int id = random.nextInt( RECORD_COUNT );
+                    assertEquals( id, read( busy, id ) );
+                }
+                // lets the idle store give back memory over its quota
+                assertEquals( i, read( idle, i ) );
+                assertTrue( budget.getUsed() <= budget.getTotal() );
+            }
+            assertTrue( busy.getQuota() > idle.getQuota() );
+            assertTrue( busy.getMappedMemory() > idle.getMappedMemory() );
+            idle.close();
+            busy.close();
+            assertEquals( 0, budget.getUsed() );
+        }
+        finally
+        {
+            otherChannel.close();
+            otherRaf.close();
+            otherFile.delete();
+        }
+    }
+
+    public void testRemapOnGrowth() throws Exception
+    {
+        // 1% of the store, gives the max number of bricks
+        PersistenceWindowPool pool = new PersistenceWindowPool(
+            "test", RECORD_SIZE, channel, RECORD_SIZE * RECORD_COUNT / 100 );
+        int brickSize = pool.getBrickSize();
+        assertTrue( brickSize > 0 );
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertEquals( i, read( pool, i ) );
+        }
+        writeRecords( channel, RECORD_COUNT, RECORD_COUNT * 3 );
+        int last = RECORD_COUNT * 4 - 1;
+        assertEquals( last, read( pool, last ) );
+        assertTrue( pool.getBrickSize() >= brickSize * 4 );
+        Random random = new Random( 2 );
+        for ( int i = 0; i < 10000; i++ )
+        {
+            int id = random.nextInt( RECORD_COUNT * 4 );
+            assertEquals( id, read( pool, id ) );
+        }
+        pool.close();
+    }
+
+    public void testRowWritesDeferredToWriteOut() throws Exception
+    {
+        PersistenceWindowPool pool = new PersistenceWindowPool(
+            "test", RECORD_SIZE, channel, 0 );
+        int txIdentifier = 7;
+        // two runs of adjacent records and one single record
+        int positions[] = new int[ 3001 ];
+        for ( int i = 0; i < 1000; i++ )
+        {
+            positions[i] = 2000 - i;
+            positions[1000 + i] = 5000 + i;
+            positions[2000 + i] = 3000 + i;
+        }
+        positions[3000] = 9000;
+        for ( int position : positions )
+        {
+            PersistenceWindow window = pool.acquire( position,
+                OperationType.WRITE, txIdentifier );
+            try
+            {
+                Buffer buffer = window.getBuffer();
+                buffer.setOffset( ( position - buffer.position() ) *
+                    RECORD_SIZE );
+                buffer.put( (byte) 1 ).putInt( -position ).putInt( position );
+            }
+            finally
+            {
+                pool.release( window );
+            }
+        }
+        for ( int position : positions )
+        {
+            // not in the file yet but visible through the pool
+            assertEquals( position, readFromFile( position ) );
+            assertEquals( -position, read( pool, position ) );
+        }
+        pool.writeOutRows( txIdentifier );
+        for ( int position : positions )
+        {
+            assertEquals( -position, readFromFile( position ) );
+            assertEquals( -position, read( pool, position ) );
+        }
+        assertEquals( 1000, readFromFile( 1000 ) );
+        assertEquals( 4000, readFromFile( 4000 ) );
+        pool.close();
+    }
+
+    public void testWriteOutLeavesRowsUnmarked() throws Exception
+    {
+        PersistenceWindowPool pool = new PersistenceWindowPool(
+            "test", RECORD_SIZE, channel, 0 );
+        int txIdentifier = 7;
+        for ( int position = 100; position < 110; position++ )
+        {
+            PersistenceWindow window = pool.acquire( position,
+                OperationType.WRITE, txIdentifier );
+            try
+            {
+                Buffer buffer = window.getBuffer();
+                buffer.setOffset( ( position - buffer.position() ) *
+                    RECORD_SIZE );
+                buffer.put( (byte) 1 ).putInt( -position ).putInt( position );
+            }
+            finally
+            {
+                pool.release( window );
+            }
+        }
+        pool.writeOutRows( txIdentifier );
+        for ( int position = 100; position < 110; position++ )
+        {
+            PersistenceWindow window = pool.acquire( position,
+                OperationType.READ );
+            try
+            {
+                LockableWindow row = ( LockableWindow ) window;
+                assertTrue( row instanceof PersistenceRow );
+                // only the lock of this thread, no marks left
+                assertFalse( row.isMarked() );
+                // as a thread that has marked the row in acquire but not
+                // yet locked it
+                row.mark();
+                assertTrue( row.isMarked() );
+                row.unMark();
+            }
+            finally
+            {
+                pool.release( window );
+            }
+            assertEquals( -position, read( pool, position ) );
+        }
+        pool.close();
+    }
+
+    public void testPendingRowUsedAfterBrickMapped() throws Exception
+    {
+        // room for the whole store, all bricks mapped
+        PersistenceWindowPool pool = new PersistenceWindowPool(
+            "test", RECORD_SIZE, channel, RECORD_SIZE * RECORD_COUNT * 2 );
+        int txIdentifier = 7;
+        // past the last brick, written through a row while the store is
+        // expanded with a newly mapped brick covering the record
+        writeRecords( channel, RECORD_COUNT, 100 );
+        int position = RECORD_COUNT + 10;
+        int bricks = pool.getMappedMemory();
+        write( pool, position, -position, txIdentifier );
+        assertTrue( pool.getMappedMemory() > bricks );
+        assertEquals( position, readFromFile( position ) );
+        assertEquals( -position, read( pool, position ) );
+        // a later write of the same commit goes to the row too
+        write( pool, position, position * 2, txIdentifier );
+        assertEquals( position * 2, read( pool, position ) );
+        pool.writeOutRows( txIdentifier );
+        assertEquals( position * 2, readFromFile( position ) );
+        assertEquals( position * 2, read( pool, position ) );
+        // written out, back to the brick
+        write( pool, position, position * 3, -1 );
+        assertEquals( position * 3, read( pool, position ) );
+        pool.close();
+        assertEquals( position * 3, readFromFile( position ) );
+    }
+
+    public void testForgetDiscardsPendingRows() throws Exception
+    {
+        PersistenceWindowPool pool = new PersistenceWindowPool(
+            "test", RECORD_SIZE, channel, 0 );
+        int forgotten = 7;
+        int committed = 8;
+        for ( int position = 100; position < 110; position++ )
+        {
+            write( pool, position, -position, forgotten );
+        }
+        // also written by another transaction, kept for that one
+        write( pool, 200, -200, forgotten );
+        write( pool, 200, 400, committed );
+        assertEquals( -100, read( pool, 100 ) );
+        pool.forget( forgotten );
+        for ( int position = 100; position < 110; position++ )
+        {
+            // read from the file again
+            assertEquals( position, read( pool, position ) );
+        }
+        assertEquals( 400, read( pool, 200 ) );
+        // nothing of the forgotten transaction written out
+        pool.writeOutRows( forgotten );
+        assertEquals( 200, readFromFile( 200 ) );
+        pool.writeOutRows( committed );
+        assertEquals( 400, readFromFile( 200 ) );
+        pool.flushAll();
+        for ( int position = 100; position < 110; position++ )
+        {
+            assertEquals( position, readFromFile( position ) );
+        }
+        pool.close();
+    }
+
+    private static void write( PersistenceWindowPool pool, int position,
+        int value, int txIdentifier ) throws IOException
+    {
+        PersistenceWindow window = pool.acquire( position,
+            OperationType.WRITE, txIdentifier );
+        try
+        {
+            Buffer buffer = window.getBuffer();
+            buffer.setOffset( ( position - buffer.position() ) * RECORD_SIZE );
+            buffer.put( (byte) 1 ).putInt( value ).putInt( -value );
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+
+    private int readFromFile( int id ) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate( RECORD_SIZE );
+        channel.read( buf, (long) id * RECORD_SIZE );
+        buf.flip();
+        buf.get();
+        return buf.getInt();
+    }
+
+    public void testSequentialReadAhead() throws Exception
+    {
+        PersistenceWindowPool pool = new PersistenceWindowPool(
+            "test", RECORD_SIZE, channel, 0 );
+        for ( int i = 0; i < RECORD_COUNT; i++ )
+        {
+            assertEquals( i, read( pool, i ) );
+        }
+        assertTrue( pool.getReadAhead().getHitCount() > 0 );
+        pool.close();
+    }
+
+    public void testWriteInvalidatesReadAhead() throws Exception
+    {
+        PersistenceWindowPool pool = new PersistenceWindowPool(
+            "test", RECORD_SIZE, channel, 0 );
+        ReadAhead readAhead = pool.getReadAhead();
+        for ( int i = 0; i < 10; i++ )
+        {
+            assertEquals( i, read( pool, i ) );
+        }
+        readAhead.awaitPending();
+        PersistenceWindow window = pool.acquire( 100, OperationType.WRITE );
+        try
+        {
+            Buffer buffer = window.getBuffer();
+            buffer.setOffset( ( 100 - buffer.position() ) * RECORD_SIZE );
+            buffer.put( (byte) 1 ).putInt( -100 ).putInt( 100 );
+        }
+        finally
+        {
+            pool.release( window );
+        }
+        // push the written row out of the row pool of its stripe
+        for ( int i = 1; i <= 16; i++ )
+        {
+            read( pool, 100 + i * 32 );
+        }
+        int hits = readAhead.getHitCount();
+        assertEquals( -100, read( pool, 100 ) );
+        assertEquals( hits, readAhead.getHitCount() );
+        // the following (64k) chunk was prefetched too and is still valid
+        int next = 64 * 1024 / RECORD_SIZE + 100;
+        assertEquals( next, read( pool, next ) );
+        assertEquals( hits + 1, readAhead.getHitCount() );
+        pool.close();
+    }
+
+    private static void writeRecords( FileChannel channel, int start,
+        int count ) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate( RECORD_SIZE * count );
+        for ( int i = start; i < start + count; i++ )
+        {
+            buf.put( (byte) 1 ).putInt( i ).putInt( -i );
+        }
+        buf.flip();
+        channel.write( buf, (long) start * RECORD_SIZE );
+        channel.force( false );
+    }
+
+    private void runReaders( final PersistenceWindowPool pool, int threadCount )
+        throws Exception
+    {
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            final long seed = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    Random random = new Random( seed );
+                    try
+                    {
+                        for ( int j = 0; j < READS_PER_THREAD; j++ )
+                        {
+                            int id = random.nextInt( RECORD_COUNT );
+                            if ( read( pool, id ) != id )
+                            {
+                                throw new RuntimeException( "Bad record " +
+                                    id );
+                            }
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        failure[0] = t;
+                    }
+                }
+            };
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        if ( failure[0] != null )
+        {
+            fail( "Reader failed: " + failure[0] );
+        }
+    }
+
+    private static int read( PersistenceWindowPool pool, int id )
+        throws IOException
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.READ );
+        try
+        {
+            Buffer buffer = window.getBuffer();
+            buffer.setOffset( ( id - buffer.position() ) * RECORD_SIZE );
+            buffer.get();
+            return buffer.getInt();
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.neo4j.impl.nioneo.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestPropertyIndexStore extends TestCase
+{
+    private static final String KEYS[] = new String[] { "name", "age",
+        "name", "a_very_long_property_key_using_several_blocks", "age" };
+
+    private File dir;
+    private String fileName;
+
+    public TestPropertyIndexStore( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestPropertyIndexStore.class );
+        return suite;
+    }
+
+    public void setUp() throws IOException
+    {
+        dir = File.createTempFile( "propindex", "" );
+        dir.delete();
+        dir.mkdir();
+        fileName = new File( dir, "props" ).getPath();
+        PropertyStore.createStore( fileName );
+    }
+
+    public void tearDown()
+    {
+        for ( File file : dir.listFiles() )
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private int[] addProperties( PropertyStore store ) throws IOException
+    {
+        int ids[] = new int[ KEYS.length ];
+        for ( int i = 0; i < KEYS.length; i++ )
+        {
+            ids[i] = store.nextId();
+            PropertyRecord record = new PropertyRecord( ids[i],
+                PropertyType.INT );
+            record.setInUse( true );
+            PropertyIndexStore indexStore = store.getIndexStore();
+            if ( indexStore == null )
+            {
+                int keyBlockId = store.nextKeyBlockId();
+                record.setKeyBlock( keyBlockId );
+                for ( DynamicRecord keyRecord : store.allocateKeyRecords(
+                    keyBlockId, KEYS[i].getBytes() ) )
+                {
+                    record.addKeyRecord( keyRecord );
+                }
+            }
+            else
+            {
+                record.setKeyBlock( indexStore.createKey( KEYS[i] ) );
+            }
+            store.encodeValue( record, i );
+            store.updateRecord( record );
+        }
+        return ids;
+    }
+
+    private void assertKeys( PropertyStore store, int ids[] )
+        throws IOException
+    {
+        for ( int i = 0; i < ids.length; i++ )
+        {
+            PropertyData data[] = store.getProperties( ids[i] );
+            assertEquals( 1, data.length );
+            assertEquals( KEYS[i], data[0].getKey() );
+            assertNull( data[0].getValue() );
+            assertEquals( i, store.getPropertyValue( ids[i] ) );
+            data = store.getProperties( ids[i], true );
+            assertEquals( KEYS[i], data[0].getKey() );
+            assertEquals( i, data[0].getValue() );
+        }
+    }
+
+    public void testKeyIndex() throws IOException
+    {
+        PropertyStore store = new PropertyStore( fileName );
+        assertNotNull( store.getIndexStore() );
+        int ids[] = addProperties( store );
+        assertEquals( 3, store.getIndexStore().getKeyCount() );
+        assertKeys( store, ids );
+        store.close();
+
+        store = new PropertyStore( fileName );
+        assertEquals( 3, store.getIndexStore().getKeyCount() );
+        assertEquals( 1, store.getIndexStore().getKeyId( "age" ) );
+        assertKeys( store, ids );
+        store.close();
+    }
+
+    public void testMigrateOldStore() throws IOException
+    {
+        // old stores have no index
+        new File( fileName + ".index" ).delete();
+        new File( fileName + ".index.id" ).delete();
+        new File( fileName + ".index.keys" ).delete();
+        new File( fileName + ".index.keys.id" ).delete();
+        PropertyStore store = new PropertyStore( fileName );
+        assertNull( store.getIndexStore() );
+        int ids[] = addProperties( store );
+        assertKeys( store, ids );
+        store.close();
+
+        store = new PropertyStore( fileName );
+        assertEquals( 3, store.migrateToIndexStore() );
+        assertKeys( store, ids );
+        try
+        {
+            store.migrateToIndexStore();
+            fail( "Migrated twice" );
+        }
+        catch ( IOException e )
+        { // good
+        }
+        store.close();
+
+        store = new PropertyStore( fileName );
+        assertNotNull( store.getIndexStore() );
+        assertKeys( store, ids );
+        // new properties use the migrated keys
+        int moreIds[] = addProperties( store );
+        assertEquals( 3, store.getIndexStore().getKeyCount() );
+        assertKeys( store, moreIds );
+        store.close();
+    }
+
+    public void testConcurrentKeyCreation() throws Exception
+    {
+        final PropertyStore store = new PropertyStore( fileName );
+        final int keyCount = 20;
+        final int ids[][] = new int[ 8 ][ keyCount ];
+        final Throwable failure[] = new Throwable[1];
+        Thread threads[] = new Thread[ ids.length ];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final int thread = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        // each thread creates the keys in its own order
+                        for ( int j = 0; j < keyCount; j++ )
+                        {
+                            int key = ( j + thread * 3 ) % keyCount;
+                            ids[thread][key] = store.getIndexStore()
+                                .createKey( "key" + key );
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        failure[0] = t;
+                    }
+                }
+            };
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertNull( failure[0] );
+        PropertyIndexStore indexStore = store.getIndexStore();
+        assertEquals( keyCount, indexStore.getKeyCount() );
+        Set<Integer> distinct = new HashSet<Integer>();
+        for ( int key = 0; key < keyCount; key++ )
+        {
+            for ( int thread = 1; thread < ids.length; thread++ )
+            {
+                assertEquals( ids[0][key], ids[thread][key] );
+            }
+            assertTrue( distinct.add( ids[0][key] ) );
+            assertEquals( "key" + key, indexStore.getKey( ids[0][key] ) );
+        }
+        // in the file before any transaction used them
+        RandomAccessFile file = new RandomAccessFile( fileName + ".index",
+            "r" );
+        try
+        {
+            for ( int keyId : distinct )
+            {
+                file.seek( keyId * 5 );
+                assertEquals( Record.IN_USE.byteValue(), file.readByte() );
+            }
+        }
+        finally
+        {
+            file.close();
+        }
+        store.close();
+
+        PropertyStore reopened = new PropertyStore( fileName );
+        indexStore = reopened.getIndexStore();
+        assertEquals( keyCount, indexStore.getKeyCount() );
+        assertEquals( ids[0][7], indexStore.createKey( "key7" ) );
+        reopened.close();
+    }
+}
@@ -0,0 +1,124 @@
+package org.neo4j.impl.nioneo.store;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestRecordCache extends TestCase
+{
+    public TestRecordCache( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestRecordCache.class );
+        return suite;
+    }
+
+    public void testPutGetRemove()
+    {
+        RecordCache cache = new RecordCache( 64, 3 );
+        int fields[] = new int[3];
+        assertTrue( !cache.get( 5, fields ) );
+        cache.put( 5, new int[] { 1, 2, 3 } );
+        assertTrue( cache.get( 5, fields ) );
+        assertEquals( 1, fields[0] );
+        assertEquals( 2, fields[1] );
+        assertEquals( 3, fields[2] );
+        cache.put( 5, new int[] { 4, 5, 6 } );
+        assertTrue( cache.get( 5, fields ) );
+        assertEquals( 4, fields[0] );
+        cache.remove( 5 );
+        assertTrue( !cache.get( 5, fields ) );
+        assertEquals( 2, cache.getHitCount() );
+        assertEquals( 2, cache.getMissCount() );
+    }
+
+    public void testClockEviction()
+    {
+        // a single set, every id competes for the same slots
+        RecordCache cache = new RecordCache( RecordCache.WAYS, 1 );
+        assertEquals( RecordCache.WAYS, cache.maxSize() );
+        int fields[] = new int[1];
+        for ( int i = 0; i < RecordCache.WAYS; i++ )
+        {
+            cache.put( i, new int[] { i } );
+        }
+        // reference all but id 3, it should be the one evicted
+        for ( int i = 0; i < RecordCache.WAYS; i++ )
+        {
+            if ( i != 3 )
+            {
+                assertTrue( cache.get( i, fields ) );
+            }
+        }
+        cache.put( 100, new int[] { 100 } );
+        assertTrue( !cache.get( 3, fields ) );
+        assertTrue( cache.get( 100, fields ) );
+        assertEquals( 100, fields[0] );
+        for ( int i = 0; i < RecordCache.WAYS; i++ )
+        {
+            if ( i != 3 )
+            {
+                assertTrue( cache.get( i, fields ) );
+                assertEquals( i, fields[0] );
+            }
+        }
+    }
+
+    public void testNodeStoreReturnsCopies() throws IOException
+    {
+        File file = File.createTempFile( "recordcache", ".nodestore" );
+        file.delete();
+        NodeStore.createStore( file.getPath() );
+        NodeStore store = new NodeStore( file.getPath() );
+        try
+        {
+            NodeRecord record = new NodeRecord( store.nextId() );
+            record.setInUse( true );
+            record.setNextRel( 7 );
+            record.setNextProp( 9 );
+            store.updateRecord( record );
+            int id = record.getId();
+
+            NodeRecord first = store.getRecord( id );
+            first.setNextRel( 42 );
+            NodeRecord cached = store.getRecord( id );
+            assertTrue( first != cached );
+            assertEquals( 7, cached.getNextRel() );
+            assertEquals( 9, cached.getNextProp() );
+
+            // updates must invalidate the cached record
+            record.setNextRel( 11 );
+            store.updateRecord( record );
+            assertEquals( 11, store.getRecord( id ).getNextRel() );
+
+            record.setInUse( false );
+            store.updateRecord( record );
+            try
+            {
+                store.getRecord( id );
+                fail( "Deleted record should not be found" );
+            }
+            catch ( IOException e )
+            { // good
+            }
+        }
+        finally
+        {
+            store.close();
+            file.delete();
+            new File( file.getPath() + ".id" ).delete();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.neo4j.impl.nioneo.xa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.transaction.xa.XAException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.neo4j.impl.nioneo.store.NeoStore;
+import org.neo4j.impl.nioneo.store.NodeRecord;
+import org.neo4j.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.impl.transaction.xaframework.XaCommand;
+import org.neo4j.impl.transaction.xaframework.XaCommandFactory;
+import org.neo4j.impl.transaction.xaframework.XaContainer;
+import org.neo4j.impl.transaction.xaframework.XaLogicalLog;
+import org.neo4j.impl.transaction.xaframework.XaTransaction;
+import org.neo4j.impl.transaction.xaframework.XaTransactionFactory;
+
+public class TestNeoTransactionCommit extends TestCase
+{
+    private static final int NODE_RECORD_SIZE = 9;
+
+    private File dir;
+    private String fileName;
+    private NeoStore neoStore;
+    private XaContainer container;
+
+    public TestNeoTransactionCommit( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestNeoTransactionCommit.class );
+        return suite;
+    }
+
+    public void setUp() throws IOException
+    {
+        dir = File.createTempFile( "neotx", "" );
+        dir.delete();
+        dir.mkdir();
+        fileName = new File( dir, "neo" ).getPath();
+        NeoStore.createStore( fileName );
+        // no mapped memory, all records are written through rows
+        neoStore = new NeoStore( fileName );
+        container = XaContainer.create( fileName + ".log",
+            new XaCommandFactory()
+            {
+                public XaCommand readCommand( FileChannel fileChannel,
+                    ByteBuffer buffer )
+                {
+                    return null;
+                }
+            },
+            new XaTransactionFactory()
+            {
+                public XaTransaction create( int identifier )
+                {
+                    return new RecoveredTransaction( identifier,
+                        getLogicalLog() );
+                }
+            } );
+        container.openLogicalLog();
+        TxInfoManager.getManager().setRealLog( container.getLogicalLog() );
+    }
+
+    public void tearDown() throws IOException
+    {
+        TxInfoManager.getManager().setRealLog( null );
+        container.close();
+        neoStore.close();
+        for ( File file : dir.listFiles() )
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * A transaction committed without prepare, as during recovery.
+     */
+    private class RecoveredTransaction extends NeoTransaction
+    {
+        RecoveredTransaction( int identifier, XaLogicalLog log )
+        {
+            super( identifier, log, neoStore );
+            setRecovered();
+        }
+    }
+
+    private static class FailingCommand extends Command.RelationshipCommand
+    {
+        FailingCommand()
+        {
+            super( null, new RelationshipRecord( 0, 0, 0, 0 ) );
+        }
+
+        @Override
+        public void execute()
+        {
+            throw new RuntimeException( "Command failed" );
+        }
+    }
+
+    private Command.NodeCommand createNode( int id )
+    {
+        NodeRecord record = new NodeRecord( id );
+        record.setInUse( true );
+        return new Command.NodeCommand( neoStore.getNodeStore(), record );
+    }
+
+    private boolean nodeInUseInFile( int id ) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(
+            fileName + ".nodestore.db", "r" );
+        try
+        {
+            if ( file.length() <= (long) id * NODE_RECORD_SIZE )
+            {
+                return false;
+            }
+            file.seek( (long) id * NODE_RECORD_SIZE );
+            return file.readByte() == 1;
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    private NeoTransaction startTx( int number ) throws XAException
+    {
+        XaLogicalLog log = container.getLogicalLog();
+        return new RecoveredTransaction( log.start( new XidImpl(
+            new byte[] { (byte) number }, new byte[] { 1 } ) ), log );
+    }
+
+    public void testCommandFailingPartwayThroughCommit() throws Exception
+    {
+        NeoTransaction tx = startTx( 1 );
+        // nodes are executed before relationships
+        tx.injectCommand( createNode( 0 ) );
+        tx.injectCommand( createNode( 1 ) );
+        tx.injectCommand( new FailingCommand() );
+        try
+        {
+            tx.commit();
+            fail( "Failing command should fail the commit" );
+        }
+        catch ( XAException e )
+        { // good
+        }
+        // records of the commands executed are written out, not left
+        // pending for the identifier
+        assertTrue( nodeInUseInFile( 0 ) );
+        assertTrue( nodeInUseInFile( 1 ) );
+
+        // and the next transaction commits as usual
+        tx = startTx( 2 );
+        tx.injectCommand( createNode( 2 ) );
+        tx.commit();
+        assertTrue( nodeInUseInFile( 2 ) );
+    }
+}
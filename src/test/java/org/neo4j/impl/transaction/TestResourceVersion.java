@@ -0,0 +1,120 @@
+package org.neo4j.impl.transaction;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestResourceVersion extends TestCase
+{
+    public TestResourceVersion( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestResourceVersion.class );
+        return suite;
+    }
+
+    private static class Resource implements VersionedResource
+    {
+        private final ResourceVersion version = new ResourceVersion();
+
+        public ResourceVersion getResourceVersion()
+        {
+            return version;
+        }
+    }
+
+    public void testReadValidatesWithoutWriter()
+    {
+        ResourceVersion version = new ResourceVersion();
+        long stamp = version.startRead();
+        assertTrue( stamp != 0 );
+        assertTrue( version.validate( stamp ) );
+        assertFalse( version.validate( 0 ) );
+    }
+
+    public void testReadFailsWhileWriteLocked()
+    {
+        ResourceVersion version = new ResourceVersion();
+        version.writeLockAcquired();
+        assertEquals( 0, version.startRead() );
+        // reentrant, still locked until the last release
+        version.writeLockAcquired();
+        version.writeLockReleased();
+        assertEquals( 0, version.startRead() );
+        version.writeLockReleased();
+        long stamp = version.startRead();
+        assertTrue( stamp != 0 );
+        assertTrue( version.validate( stamp ) );
+        try
+        {
+            version.writeLockReleased();
+            fail( "Release without write lock should throw exception" );
+        }
+        catch ( IllegalStateException e )
+        { // good
+        }
+    }
+
+    public void testWriterReleasedDuringRead()
+    {
+        ResourceVersion version = new ResourceVersion();
+        long stamp = version.startRead();
+        version.writeLockAcquired();
+        assertFalse( version.validate( stamp ) );
+        version.writeLockReleased();
+        // the write lock was held during the read, it has to be retried
+        assertFalse( version.validate( stamp ) );
+        stamp = version.startRead();
+        assertTrue( version.validate( stamp ) );
+    }
+
+    public void testLockManagerUpdatesVersion() throws Exception
+    {
+        final LockManager lockManager = LockManager.getManager();
+        final Resource resource = new Resource();
+        ResourceVersion version = resource.getResourceVersion();
+        long stamp = version.startRead();
+        lockManager.getWriteLock( resource );
+        assertEquals( 0, version.startRead() );
+        lockManager.getWriteLock( resource );
+        lockManager.releaseWriteLock( resource );
+        assertEquals( 0, version.startRead() );
+        lockManager.releaseWriteLock( resource );
+        assertFalse( version.validate( stamp ) );
+        stamp = version.startRead();
+        assertTrue( stamp != 0 );
+        // read locks don't change the version
+        lockManager.getReadLock( resource );
+        lockManager.releaseReadLock( resource );
+        assertTrue( version.validate( stamp ) );
+
+        // a write lock taken and released by another thread during the read
+        Thread writer = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    lockManager.getWriteLock( resource );
+                    lockManager.releaseWriteLock( resource );
+                }
+                catch ( Exception e )
+                {
+                    throw new RuntimeException( e );
+                }
+            }
+        };
+        writer.start();
+        writer.join();
+        assertFalse( version.validate( stamp ) );
+    }
+}
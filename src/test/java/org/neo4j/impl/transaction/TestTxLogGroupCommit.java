@@ -0,0 +1,206 @@
+package org.neo4j.impl.transaction;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.neo4j.impl.transaction.xaframework.GroupCommitForcer;
+
+public class TestTxLogGroupCommit extends TestCase
+{
+    private static final int COMMITS_PER_THREAD = 200;
+
+    public TestTxLogGroupCommit( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestTxLogGroupCommit.class );
+        return suite;
+    }
+
+    private static class CountingLog implements GroupCommitForcer.Forceable
+    {
+        private int forces = 0;
+
+        public void forceLog()
+        {
+            try
+            {
+                Thread.sleep( 5 );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            synchronized ( this )
+            {
+                forces++;
+            }
+        }
+    }
+
+    public void testForcesAreBatched() throws Exception
+    {
+        CountingLog log = new CountingLog();
+        final GroupCommitForcer forcer = new GroupCommitForcer( log, 0, 32 );
+        final long sequences[] = new long[8];
+        Thread[] threads = new Thread[sequences.length];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final int index = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        long sequence;
+                        synchronized ( forcer )
+                        {
+                            sequence = forcer.appended();
+                        }
+                        sequences[index] = sequence;
+                        forcer.force( sequence );
+                    }
+                    catch ( IOException e )
+                    {
+                        throw new RuntimeException( e );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertEquals( 8, forcer.getForcedEntryCount() );
+        assertTrue( forcer.getForceCount() <= 8 );
+        assertEquals( forcer.getForceCount(), log.forces );
+        // already forced entries return directly
+        forcer.force( sequences[0] );
+        assertEquals( forcer.getForceCount(), log.forces );
+    }
+
+    public void testBatchWindowClosedBySize() throws Exception
+    {
+        CountingLog log = new CountingLog();
+        final GroupCommitForcer forcer =
+            new GroupCommitForcer( log, 10000, 4 );
+        Thread[] threads = new Thread[4];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        forcer.force( forcer.appended() );
+                    }
+                    catch ( IOException e )
+                    {
+                        throw new RuntimeException( e );
+                    }
+                }
+            };
+        }
+        long start = System.currentTimeMillis();
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertTrue( System.currentTimeMillis() - start < 10000 );
+        assertEquals( 4, forcer.getForcedEntryCount() );
+    }
+
+    public void testConcurrentCommits() throws Exception
+    {
+        File file = File.createTempFile( "tx_group_commit", ".log" );
+        file.deleteOnExit();
+        for ( int threads = 1; threads <= 16; threads *= 2 )
+        {
+            TxLog txLog = new TxLog( file.getPath() );
+            try
+            {
+                txLog.truncate();
+                GroupCommitForcer forcer = txLog.getGroupCommitForcer();
+                long forcesBefore = forcer.getForceCount();
+                long entriesBefore = forcer.getForcedEntryCount();
+                runCommits( txLog, threads );
+                int commits = threads * COMMITS_PER_THREAD;
+                // every mark commit forced, at most one force each
+                assertEquals( commits,
+                    forcer.getForcedEntryCount() - entriesBefore );
+                assertTrue( forcer.getForceCount() - forcesBefore <= commits );
+                assertEquals( commits * 4, txLog.getRecordCount() );
+                assertFalse( txLog.getDanglingRecords().hasNext() );
+            }
+            finally
+            {
+                txLog.close();
+            }
+        }
+        file.delete();
+    }
+
+    private void runCommits( final TxLog txLog, int threadCount )
+        throws Exception
+    {
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            final int threadId = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for ( int j = 0; j < COMMITS_PER_THREAD; j++ )
+                        {
+                            byte globalId[] = ( "tx-" + threadId + "-" + j )
+                                .getBytes();
+                            txLog.txStart( globalId );
+                            txLog.addBranch( globalId, new byte[] { 1 } );
+                            txLog.markAsCommitting( globalId );
+                            txLog.txDone( globalId );
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        failure[0] = t;
+                    }
+                }
+            };
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        if ( failure[0] != null )
+        {
+            fail( "Commit failed: " + failure[0] );
+        }
+    }
+}
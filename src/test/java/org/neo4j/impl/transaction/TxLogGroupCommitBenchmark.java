@@ -0,0 +1,103 @@
+package org.neo4j.impl.transaction;
+
+import java.io.File;
+
+import org.neo4j.impl.transaction.xaframework.GroupCommitForcer;
+
+/**
+ * Measures commits per second and forces per commit of a {@link TxLog}
+ * with group commit from 1 to <CODE>maxThreads</CODE> committing threads.
+ * Not part of the unit test suite, run with:
+ * <pre>
+ * java org.neo4j.impl.transaction.TxLogGroupCommitBenchmark [maxThreads]
+ * </pre>
+ */
+public class TxLogGroupCommitBenchmark
+{
+    private static final int COMMITS_PER_THREAD = 500;
+
+    public static void main( String[] args ) throws Exception
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt( args[0] ) : 16;
+        File file = File.createTempFile( "tx_group_commit", ".log" );
+        file.deleteOnExit();
+        // warm up
+        run( file, 2 );
+        System.out.println( "threads  commits/s  forces/commit" );
+        for ( int threads = 1; threads <= maxThreads; threads *= 2 )
+        {
+            System.out.println( run( file, threads ) );
+        }
+        file.delete();
+    }
+
+    // returns commits/s and forces/commit for the thread count
+    private static String run( File file, int threadCount ) throws Exception
+    {
+        TxLog txLog = new TxLog( file.getPath() );
+        try
+        {
+            txLog.truncate();
+            GroupCommitForcer forcer = txLog.getGroupCommitForcer();
+            long forcesBefore = forcer.getForceCount();
+            long commitsPerSecond = runCommits( txLog, threadCount );
+            long forces = forcer.getForceCount() - forcesBefore;
+            return String.format( "%7d  %9d  %13.3f", threadCount,
+                commitsPerSecond,
+                (float) forces / ( threadCount * COMMITS_PER_THREAD ) );
+        }
+        finally
+        {
+            txLog.close();
+        }
+    }
+
+    private static long runCommits( final TxLog txLog, int threadCount )
+        throws Exception
+    {
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            final int threadId = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for ( int j = 0; j < COMMITS_PER_THREAD; j++ )
+                        {
+                            byte globalId[] = ( "tx-" + threadId + "-" + j )
+                                .getBytes();
+                            txLog.txStart( globalId );
+                            txLog.addBranch( globalId, new byte[] { 1 } );
+                            txLog.markAsCommitting( globalId );
+                            txLog.txDone( globalId );
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        failure[0] = t;
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        long time = System.nanoTime() - start;
+        if ( failure[0] != null )
+        {
+            throw new RuntimeException( "Commit failed", failure[0] );
+        }
+        return (long) threadCount * COMMITS_PER_THREAD * 1000000000L /
+            Math.max( time, 1 );
+    }
+}
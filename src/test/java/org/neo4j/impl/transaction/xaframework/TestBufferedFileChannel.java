@@ -0,0 +1,155 @@
+package org.neo4j.impl.transaction.xaframework;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestBufferedFileChannel extends TestCase
+{
+    private static final int COMMAND_COUNT = 10000;
+
+    private File file;
+
+    public TestBufferedFileChannel( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestBufferedFileChannel.class );
+        return suite;
+    }
+
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile( "buffered_channel", ".log" );
+    }
+
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    private FileChannel openChannel() throws IOException
+    {
+        FileChannel channel = new RandomAccessFile( file, "rw" ).getChannel();
+        channel.truncate( 0 );
+        return channel;
+    }
+
+    public void testWriteFlushAndRead() throws IOException
+    {
+        BufferedFileChannel channel =
+            new BufferedFileChannel( openChannel(), 64 );
+        ByteBuffer buffer = ByteBuffer.allocate( 200 );
+        for ( int i = 0; i < 20; i++ )
+        {
+            buffer.clear();
+            buffer.putInt( i );
+            buffer.flip();
+            channel.write( buffer );
+        }
+        assertEquals( 80, channel.position() );
+        // larger than the buffer capacity
+        buffer.clear();
+        for ( int i = 20; i < 50; i++ )
+        {
+            buffer.putInt( i );
+        }
+        buffer.flip();
+        assertEquals( 120, channel.write( buffer ) );
+        assertEquals( 200, channel.position() );
+        buffer.clear();
+        buffer.putInt( 50 );
+        buffer.flip();
+        channel.write( buffer );
+        // not yet written to the file
+        assertEquals( 200, channel.getChannel().size() );
+        channel.flush();
+        assertEquals( 204, channel.getChannel().size() );
+
+        channel.position( 0 );
+        ByteBuffer readBuffer = ByteBuffer.allocate( 204 );
+        assertEquals( 204, channel.read( readBuffer ) );
+        readBuffer.flip();
+        for ( int i = 0; i <= 50; i++ )
+        {
+            assertEquals( i, readBuffer.getInt() );
+        }
+        channel.close();
+        assertFalse( channel.getChannel().isOpen() );
+    }
+
+    public void testCloseFlushes() throws IOException
+    {
+        BufferedFileChannel channel =
+            new BufferedFileChannel( openChannel(), 1024 );
+        ByteBuffer buffer = ByteBuffer.allocate( 8 );
+        buffer.putLong( 42 );
+        buffer.flip();
+        channel.write( buffer );
+        channel.close();
+        assertEquals( 8, file.length() );
+    }
+
+    public void testCommandWritesMatchUnbuffered() throws IOException
+    {
+        FileChannel channel = openChannel();
+        writeCommands( channel );
+        channel.close();
+        byte[] unbuffered = readFile();
+        BufferedFileChannel bufferedChannel =
+            new BufferedFileChannel( openChannel(), 256 * 1024 );
+        writeCommands( bufferedChannel );
+        bufferedChannel.close();
+        assertEquals( COMMAND_COUNT * 23, file.length() );
+        assertTrue( Arrays.equals( unbuffered, readFile() ) );
+    }
+
+    private byte[] readFile() throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try
+        {
+            byte[] bytes = new byte[ (int) raf.length() ];
+            raf.readFully( bytes );
+            return bytes;
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    // writes command sized entries as XaLogicalLog.writeCommand does
+    private void writeCommands( FileChannel channel ) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect( 137 );
+        for ( int i = 0; i < COMMAND_COUNT; i++ )
+        {
+            buffer.clear();
+            buffer.put( (byte) 3 ).putInt( 1 );
+            buffer.flip();
+            channel.write( buffer );
+            buffer.clear();
+            buffer.put( (byte) 1 ).putInt( i ).put( (byte) 1 ).putInt(
+                -1 ).putInt( -1 ).putInt( 0 );
+            buffer.flip();
+            channel.write( buffer );
+        }
+        channel.force( false );
+    }
+}
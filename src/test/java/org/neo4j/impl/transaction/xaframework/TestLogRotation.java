@@ -0,0 +1,207 @@
+package org.neo4j.impl.transaction.xaframework;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.transaction.xa.XAException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestLogRotation extends TestCase
+{
+    private File logFile;
+    private List<Integer> executed = new ArrayList<Integer>();
+    private int flushCount = 0;
+
+    public TestLogRotation( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestLogRotation.class );
+        return suite;
+    }
+
+    public void setUp() throws IOException
+    {
+        logFile = File.createTempFile( "rotation", ".log" );
+        logFile.delete();
+    }
+
+    public void tearDown()
+    {
+        logFile.delete();
+        new File( logFile.getPath() + ".rotate" ).delete();
+    }
+
+    private class ValueCommand extends XaCommand
+    {
+        private final int value;
+
+        ValueCommand( int value )
+        {
+            this.value = value;
+        }
+
+        public void execute()
+        {
+            executed.add( value );
+        }
+
+        public void writeToFile( FileChannel fileChannel, ByteBuffer buffer )
+            throws IOException
+        {
+            buffer.clear();
+            buffer.putInt( value );
+            buffer.flip();
+            fileChannel.write( buffer );
+        }
+    }
+
+    private class ValueCommandFactory extends XaCommandFactory
+    {
+        public XaCommand readCommand( FileChannel fileChannel,
+            ByteBuffer buffer ) throws IOException
+        {
+            buffer.clear(); buffer.limit( 4 );
+            if ( fileChannel.read( buffer ) != 4 )
+            {
+                return null;
+            }
+            buffer.flip();
+            return new ValueCommand( buffer.getInt() );
+        }
+    }
+
+    private class ValueTransaction extends XaTransaction
+    {
+        private final List<XaCommand> commands = new ArrayList<XaCommand>();
+
+        ValueTransaction( int identifier, XaLogicalLog log )
+        {
+            super( identifier, log );
+        }
+
+        public boolean isReadOnly()
+        {
+            return commands.isEmpty();
+        }
+
+        protected void doAddCommand( XaCommand command )
+        {
+            commands.add( command );
+        }
+
+        protected void doRollback()
+        {
+        }
+
+        protected void doPrepare()
+        {
+        }
+
+        protected void doCommit() throws XAException
+        {
+            for ( XaCommand command : commands )
+            {
+                command.execute();
+            }
+        }
+    }
+
+    private class ValueTransactionFactory extends XaTransactionFactory
+    {
+        public XaTransaction create( int identifier )
+        {
+            return new ValueTransaction( identifier, getLogicalLog() );
+        }
+
+        public void flushAll()
+        {
+            flushCount++;
+        }
+    }
+
+    private XaContainer openContainer() throws IOException
+    {
+        XaContainer container = XaContainer.create( logFile.getPath(),
+            new ValueCommandFactory(), new ValueTransactionFactory() );
+        container.openLogicalLog();
+        return container;
+    }
+
+    private int startTx( XaLogicalLog log, int number, int values[] )
+        throws Exception
+    {
+        int identifier = log.start( new XidImpl( new byte[] {
+            (byte) number }, new byte[] { 1 }, 0 ) );
+        for ( int value : values )
+        {
+            log.writeCommand( new ValueCommand( value ), identifier );
+        }
+        return identifier;
+    }
+
+    public void testRotateKeepsActiveTransactions() throws Exception
+    {
+        XaContainer container = openContainer();
+        XaLogicalLog log = container.getLogicalLog();
+        // completed transaction with many commands
+        int values[] = new int[1000];
+        int identifier = startTx( log, 1, values );
+        log.commitOnePhase( identifier );
+        log.done( identifier );
+        // committed but not done and not yet committed transactions
+        int committing = startTx( log, 2, new int[] { 7, 8 } );
+        log.commitOnePhase( committing );
+        startTx( log, 3, new int[] { 5 } );
+
+        long sizeBefore = log.getLogSize();
+        log.rotate();
+        assertEquals( 1, flushCount );
+        assertTrue( log.getLogSize() < sizeBefore / 10 );
+        assertFalse( new File( logFile.getPath() + ".rotate" ).exists() );
+
+        // log keeps working after rotation
+        identifier = startTx( log, 4, new int[] { 9 } );
+        log.commitOnePhase( identifier );
+
+        // crash, recover from the rotated log
+        XaContainer recovered = openContainer();
+        assertEquals( 3, executed.size() );
+        assertEquals( new Integer( 7 ), executed.get( 0 ) );
+        assertEquals( new Integer( 8 ), executed.get( 1 ) );
+        assertEquals( new Integer( 9 ), executed.get( 2 ) );
+        assertFalse( recovered.getResourceManager().hasRecoveredTransactions() );
+        recovered.close();
+    }
+
+    public void testCrashDuringRotation() throws Exception
+    {
+        XaContainer container = openContainer();
+        XaLogicalLog log = container.getLogicalLog();
+        int identifier = startTx( log, 1, new int[] { 3 } );
+        log.commitOnePhase( identifier );
+        // incomplete rotated log left behind, old log must be used
+        File rotated = new File( logFile.getPath() + ".rotate" );
+        rotated.createNewFile();
+        XaContainer recovered = openContainer();
+        assertFalse( rotated.exists() );
+        assertEquals( 1, executed.size() );
+        assertEquals( new Integer( 3 ), executed.get( 0 ) );
+        recovered.close();
+    }
+}
@@ -0,0 +1,220 @@
+package org.neo4j.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.transaction.xa.XAException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestRecoveryCommitter extends TestCase
+{
+    private static final int TX_COUNT = 2000;
+    private static final int RECORD_COUNT = 5000;
+
+    private XaLogicalLog log;
+
+    public TestRecoveryCommitter( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestRecoveryCommitter.class );
+        return suite;
+    }
+
+    public void setUp()
+    {
+        log = new XaLogicalLog( "recovery_test", null, null, null );
+    }
+
+    // writes its transaction identifier to a record
+    private static class WriteCommand extends XaCommand
+    {
+        private final int record;
+
+        WriteCommand( int record )
+        {
+            this.record = record;
+        }
+
+        public void execute()
+        {
+        }
+
+        public void writeToFile( FileChannel fileChannel, ByteBuffer buffer )
+        {
+        }
+
+        public long[] getRecordKeys()
+        {
+            return new long[] { record };
+        }
+    }
+
+    private static class UnknownCommand extends WriteCommand
+    {
+        UnknownCommand( int record )
+        {
+            super( record );
+        }
+
+        public long[] getRecordKeys()
+        {
+            return null;
+        }
+    }
+
+    private static class RecoveredTransaction extends XaTransaction
+    {
+        private final List<WriteCommand> commands =
+            new ArrayList<WriteCommand>();
+        private final Map<Integer,Integer> store;
+
+        RecoveredTransaction( int identifier, XaLogicalLog log,
+            Map<Integer,Integer> store )
+        {
+            super( identifier, log );
+            this.store = store;
+            setRecovered();
+        }
+
+        void inject( WriteCommand command )
+        {
+            injectCommand( command );
+            addRecoveredRecordKeys( command.getRecordKeys() );
+        }
+
+        public boolean isReadOnly()
+        {
+            return false;
+        }
+
+        protected void doAddCommand( XaCommand command )
+        {
+            commands.add( (WriteCommand) command );
+        }
+
+        protected void doRollback()
+        {
+        }
+
+        protected void doPrepare()
+        {
+        }
+
+        protected void doCommit() throws XAException
+        {
+            for ( WriteCommand command : commands )
+            {
+                synchronized ( store )
+                {
+                    store.put( command.record, getIdentifier() );
+                }
+                Thread.yield();
+            }
+        }
+    }
+
+    private List<XaTransaction> createTransactions(
+        Map<Integer,Integer> store, boolean withUnknown )
+    {
+        Random random = new Random( 7 );
+        List<XaTransaction> transactions = new ArrayList<XaTransaction>();
+        for ( int i = 0; i < TX_COUNT; i++ )
+        {
+            RecoveredTransaction tx =
+                new RecoveredTransaction( i + 1, log, store );
+            int commandCount = 1 + random.nextInt( 5 );
+            for ( int j = 0; j < commandCount; j++ )
+            {
+                int record = random.nextInt( RECORD_COUNT );
+                if ( withUnknown && i == TX_COUNT / 2 && j == 0 )
+                {
+                    tx.inject( new UnknownCommand( record ) );
+                }
+                else
+                {
+                    tx.inject( new WriteCommand( record ) );
+                }
+            }
+            transactions.add( tx );
+        }
+        return transactions;
+    }
+
+    public void testSameResultAsSerialReplay() throws IOException
+    {
+        Map<Integer,Integer> serialStore = new HashMap<Integer,Integer>();
+        List<XaTransaction> serial = createTransactions( serialStore, false );
+        boolean serialCommitted[] = new boolean[ serial.size() ];
+        new RecoveryCommitter( 1 ).commit( serial, serialCommitted );
+
+        Map<Integer,Integer> parallelStore = new HashMap<Integer,Integer>();
+        List<XaTransaction> parallel =
+            createTransactions( parallelStore, false );
+        boolean parallelCommitted[] = new boolean[ parallel.size() ];
+        RecoveryCommitter committer = new RecoveryCommitter( 4 );
+        assertTrue( committer.groupTransactions( parallel ).size() > 1 );
+        committer.commit( parallel, parallelCommitted );
+
+        for ( int i = 0; i < TX_COUNT; i++ )
+        {
+            assertTrue( serialCommitted[i] );
+            assertTrue( parallelCommitted[i] );
+        }
+        assertEquals( serialStore, parallelStore );
+    }
+
+    public void testGroupsKeepLogOrder()
+    {
+        List<XaTransaction> transactions =
+            createTransactions( new HashMap<Integer,Integer>(), false );
+        List<List<Integer>> groups =
+            new RecoveryCommitter( 4 ).groupTransactions( transactions );
+        Map<Long,Integer> keyGroup = new HashMap<Long,Integer>();
+        int total = 0;
+        for ( int g = 0; g < groups.size(); g++ )
+        {
+            List<Integer> group = groups.get( g );
+            total += group.size();
+            for ( int i = 1; i < group.size(); i++ )
+            {
+                assertTrue( group.get( i - 1 ) < group.get( i ) );
+            }
+            for ( int index : group )
+            {
+                for ( long key :
+                    transactions.get( index ).getRecoveredRecordKeys() )
+                {
+                    Integer previous = keyGroup.put( key, g );
+                    assertTrue( previous == null || previous == g );
+                }
+            }
+        }
+        assertEquals( TX_COUNT, total );
+    }
+
+    public void testUnknownKeysCommitSerially()
+    {
+        List<XaTransaction> transactions =
+            createTransactions( new HashMap<Integer,Integer>(), true );
+        assertEquals( 1, new RecoveryCommitter( 4 ).groupTransactions(
+            transactions ).size() );
+    }
+}
@@ -0,0 +1,69 @@
+package org.neo4j.impl.traversal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestConcurrentNodeIdSet extends TestCase
+{
+    public TestConcurrentNodeIdSet( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestConcurrentNodeIdSet.class );
+        return suite;
+    }
+
+    public void testAddBeyondCapacity()
+    {
+        ConcurrentNodeIdSet set = new ConcurrentNodeIdSet( 100 );
+        assertTrue( set.add( 100 ) );
+        assertTrue( !set.add( 100 ) );
+        assertTrue( set.add( 5000 ) );
+        assertTrue( !set.add( 5000 ) );
+        assertTrue( set.contains( 5000 ) );
+        assertTrue( !set.contains( 5001 ) );
+        assertEquals( 2, set.size() );
+    }
+
+    public void testEachIdClaimedOnce() throws Exception
+    {
+        final int idCount = 20000;
+        final ConcurrentNodeIdSet set = new ConcurrentNodeIdSet( idCount / 2 );
+        final AtomicInteger claimed = new AtomicInteger( 0 );
+        Thread threads[] = new Thread[4];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    for ( int id = 0; id < idCount; id++ )
+                    {
+                        if ( set.add( id ) )
+                        {
+                            claimed.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertEquals( idCount, claimed.get() );
+        assertEquals( idCount, set.size() );
+    }
+}
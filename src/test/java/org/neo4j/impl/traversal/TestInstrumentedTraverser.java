@@ -0,0 +1,219 @@
+package org.neo4j.impl.traversal;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.transaction.UserTransaction;
+
+import org.neo4j.api.core.Direction;
+import org.neo4j.api.core.Node;
+import org.neo4j.api.core.RelationshipType;
+import org.neo4j.api.core.ReturnableEvaluator;
+import org.neo4j.api.core.StopEvaluator;
+import org.neo4j.api.core.TraversalPosition;
+import org.neo4j.api.core.Traverser;
+import org.neo4j.impl.AbstractNeoTestCase;
+import org.neo4j.impl.core.NodeManager;
+import org.neo4j.impl.transaction.TransactionFactory;
+
+public class TestInstrumentedTraverser extends AbstractNeoTestCase
+{
+    private static final String STORE_DIR = "var/instrumented";
+    // well above the time to evaluate a node even on a loaded machine
+    private static final long SLEEP_MILLIS = 50;
+
+    enum MyRelTypes implements RelationshipType
+    {
+        KNOWS
+    }
+
+    private static final RelationshipType[] TYPES =
+        new RelationshipType[] { MyRelTypes.KNOWS };
+    private static final Direction[] DIRS =
+        new Direction[] { Direction.OUTGOING };
+
+    private UserTransaction ut;
+    private long[] ids;
+
+    public TestInstrumentedTraverser( String testName )
+    {
+        super( testName, MyRelTypes.class, STORE_DIR );
+    }
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        ut = TransactionFactory.getUserTransaction();
+        // root -> a, b, c; a -> d; b -> d; d -> e
+        ut.begin();
+        Node[] nodes = new Node[6];
+        ids = new long[nodes.length];
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            nodes[i] = getNeo().createNode();
+            ids[i] = nodes[i].getId();
+        }
+        for ( int i = 1; i <= 3; i++ )
+        {
+            nodes[0].createRelationshipTo( nodes[i], MyRelTypes.KNOWS );
+        }
+        nodes[1].createRelationshipTo( nodes[4], MyRelTypes.KNOWS );
+        nodes[2].createRelationshipTo( nodes[4], MyRelTypes.KNOWS );
+        nodes[4].createRelationshipTo( nodes[5], MyRelTypes.KNOWS );
+        ut.commit();
+        // nothing cached, the first traversal loads from persistence
+        NodeManager.getManager().clearCache();
+        ut.begin();
+    }
+
+    public void tearDown() throws Exception
+    {
+        ut.commit();
+        super.tearDown();
+    }
+
+    /**
+     * Returns all nodes, sleeping for the nodes at depth one and recording
+     * the depths evaluated.
+     */
+    private static class SleepingEvaluator implements ReturnableEvaluator
+    {
+        private final Set<Integer> depths = new HashSet<Integer>();
+
+        public boolean isReturnableNode( TraversalPosition position )
+        {
+            depths.add( position.depth() );
+            if ( position.depth() == 1 )
+            {
+                try
+                {
+                    Thread.sleep( SLEEP_MILLIS );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return true;
+        }
+    }
+
+    private InstrumentedTraverser createTraverser( Traverser.Order order,
+        ReturnableEvaluator evaluator, int maxDepth )
+    {
+        return TraverserFactory.getFactory().createInstrumentedTraverser(
+            order, getNeo().getNodeById( ids[0] ), TYPES, DIRS,
+            StopEvaluator.END_OF_NETWORK, evaluator, maxDepth );
+    }
+
+    private static Set<Long> traverse( Traverser traverser )
+    {
+        Set<Long> nodeIds = new HashSet<Long>();
+        for ( Node node : traverser )
+        {
+            assertTrue( nodeIds.add( node.getId() ) );
+        }
+        return nodeIds;
+    }
+
+    private Set<Long> ids( int... indexes )
+    {
+        Set<Long> set = new HashSet<Long>();
+        for ( int index : indexes )
+        {
+            set.add( ids[index] );
+        }
+        return set;
+    }
+
+    private static Set<Integer> depths( Integer... depths )
+    {
+        return new HashSet<Integer>( Arrays.asList( depths ) );
+    }
+
+    public void testStatisticsPerDepth()
+    {
+        SleepingEvaluator evaluator = new SleepingEvaluator();
+        InstrumentedTraverser traverser = createTraverser(
+            Traverser.Order.BREADTH_FIRST, evaluator, 2 );
+        // d is reached from both a and b, e is past the max depth
+        assertEquals( ids( 0, 1, 2, 3, 4 ), traverse( traverser ) );
+        TraversalStatistics stats = traverser.getStatistics();
+        assertEquals( 3, stats.getDepthCount() );
+        assertEquals( 1, stats.getNodesVisited( 0 ) );
+        assertEquals( 3, stats.getNodesVisited( 1 ) );
+        assertEquals( 1, stats.getNodesVisited( 2 ) );
+        assertEquals( 0, stats.getNodesVisited( 3 ) );
+        assertEquals( 3, stats.getRelationshipsExpanded( 0 ) );
+        assertEquals( 2, stats.getRelationshipsExpanded( 1 ) );
+        // d is at max depth and not expanded
+        assertEquals( 0, stats.getRelationshipsExpanded( 2 ) );
+        assertEquals( 0, stats.getDuplicatesRejected( 0 ) );
+        assertEquals( 0, stats.getDuplicatesRejected( 1 ) );
+        assertEquals( 1, stats.getDuplicatesRejected( 2 ) );
+        assertEquals( 5, stats.getTotalNodesVisited() );
+        assertEquals( 5, stats.getTotalRelationshipsExpanded() );
+        assertEquals( 1, stats.getTotalDuplicatesRejected() );
+        assertEquals( depths( 0, 1, 2 ), evaluator.depths );
+
+        // the nodes are loaded from persistence the first time they are
+        // visited, the start node when the traverser was created
+        assertEquals( 0, stats.getCacheMisses( 0 ) );
+        assertEquals( 3, stats.getCacheMisses( 1 ) );
+        assertEquals( 1, stats.getCacheMisses( 2 ) );
+        assertEquals( 4, stats.getTotalCacheMisses() );
+        long[] lookups = new long[3];
+        for ( int depth = 0; depth < 3; depth++ )
+        {
+            lookups[depth] = stats.getCacheHits( depth ) +
+                stats.getCacheMisses( depth );
+        }
+        // only the nodes at depth one are slow
+        long sleepNanos = SLEEP_MILLIS * 1000000;
+        assertTrue( stats.getEvaluatorNanos( 1 ) >= 3 * sleepNanos );
+        assertTrue( stats.getEvaluatorNanos( 0 ) < sleepNanos );
+        assertTrue( stats.getEvaluatorNanos( 2 ) < sleepNanos );
+        assertEquals( stats.getEvaluatorNanos( 0 ) +
+            stats.getEvaluatorNanos( 1 ) + stats.getEvaluatorNanos( 2 ),
+            stats.getTotalEvaluatorNanos() );
+
+        // cached the second time
+        traverser = createTraverser( Traverser.Order.BREADTH_FIRST,
+            ReturnableEvaluator.ALL, 2 );
+        assertEquals( ids( 0, 1, 2, 3, 4 ), traverse( traverser ) );
+        stats = traverser.getStatistics();
+        assertEquals( 0, stats.getTotalCacheMisses() );
+        for ( int depth = 0; depth < 3; depth++ )
+        {
+            assertTrue( stats.getCacheHits( depth ) > 0 );
+            assertEquals( lookups[depth], stats.getCacheHits( depth ) );
+        }
+    }
+
+    public void testMaxDepth()
+    {
+        SleepingEvaluator evaluator = new SleepingEvaluator();
+        InstrumentedTraverser traverser = createTraverser(
+            Traverser.Order.DEPTH_FIRST, evaluator, 1 );
+        assertEquals( ids( 0, 1, 2, 3 ), traverse( traverser ) );
+        TraversalStatistics stats = traverser.getStatistics();
+        assertEquals( 2, stats.getDepthCount() );
+        assertEquals( 3, stats.getNodesVisited( 1 ) );
+        assertEquals( 0, stats.getRelationshipsExpanded( 1 ) );
+        assertEquals( 0, stats.getTotalDuplicatesRejected() );
+        assertEquals( depths( 0, 1 ), evaluator.depths );
+
+        traverser = createTraverser( Traverser.Order.BREADTH_FIRST,
+            ReturnableEvaluator.ALL, 0 );
+        assertEquals( ids( 0 ), traverse( traverser ) );
+        assertEquals( 1, traverser.getStatistics().getDepthCount() );
+        assertEquals( 0,
+            traverser.getStatistics().getTotalRelationshipsExpanded() );
+
+        traverser = createTraverser( Traverser.Order.BREADTH_FIRST,
+            ReturnableEvaluator.ALL, Integer.MAX_VALUE );
+        assertEquals( ids( 0, 1, 2, 3, 4, 5 ), traverse( traverser ) );
+        assertEquals( 4, traverser.getStatistics().getDepthCount() );
+    }
+}
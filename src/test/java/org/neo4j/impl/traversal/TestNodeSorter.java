@@ -0,0 +1,141 @@
+package org.neo4j.impl.traversal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.neo4j.api.core.Node;
+
+public class TestNodeSorter extends TestCase
+{
+    public TestNodeSorter( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestNodeSorter.class );
+        return suite;
+    }
+
+    private static final String KEY = "score";
+
+    // node with id and a single property, counts property reads
+    private static Node createNode( final int id, final Object value,
+        final int[] propertyReads )
+    {
+        return (Node) Proxy.newProxyInstance( Node.class.getClassLoader(),
+            new Class<?>[] { Node.class }, new InvocationHandler()
+            {
+                public Object invoke( Object proxy, Method method,
+                    Object[] args )
+                {
+                    String name = method.getName();
+                    if ( name.equals( "getId" ) )
+                    {
+                        return (long) id;
+                    }
+                    if ( name.equals( "getProperty" ) )
+                    {
+                        propertyReads[0]++;
+                        return value != null ? value :
+                            ( args.length > 1 ? args[1] : null );
+                    }
+                    if ( name.equals( "toString" ) )
+                    {
+                        return "Node[" + id + "]";
+                    }
+                    if ( name.equals( "hashCode" ) )
+                    {
+                        return id;
+                    }
+                    if ( name.equals( "equals" ) )
+                    {
+                        return proxy == args[0];
+                    }
+                    throw new UnsupportedOperationException( name );
+                }
+            } );
+    }
+
+    private List<Node> sorted( List<Node> nodes, boolean descending,
+        int maxCount )
+    {
+        NodeSorter sorter = new NodeSorter(
+            new NodeSortInfo.PropertySortInfo<Node>( KEY, descending ),
+            maxCount );
+        for ( Node node : nodes )
+        {
+            sorter.add( node );
+        }
+        List<Node> result = new ArrayList<Node>();
+        Iterator<Node> itr = sorter.iterator();
+        while ( itr.hasNext() )
+        {
+            result.add( itr.next() );
+        }
+        return result;
+    }
+
+    public void testSameOrderAsPropertySortInfo()
+    {
+        Random random = new Random( 17 );
+        int[] reads = new int[1];
+        List<Node> nodes = new ArrayList<Node>();
+        for ( int i = 0; i < 2000; i++ )
+        {
+            Object value;
+            switch ( random.nextInt( 4 ) )
+            {
+                case 0: value = null; break;
+                case 1: value = "s" + random.nextInt( 100 ); break;
+                case 2: value = Double.valueOf( random.nextInt( 10 ) ); break;
+                default: value = random.nextInt( 100 ) - 50;
+            }
+            nodes.add( createNode( i, value, reads ) );
+        }
+        for ( boolean descending : new boolean[] { false, true } )
+        {
+            List<Node> expected = new ArrayList<Node>( nodes );
+            Collections.sort( expected,
+                new NodeSortInfo.PropertySortInfo<Node>( KEY, descending ) );
+            assertEquals( expected, sorted( nodes, descending,
+                Integer.MAX_VALUE ) );
+            assertEquals( expected.subList( 0, 20 ), sorted( nodes,
+                descending, 20 ) );
+        }
+    }
+
+    public void testKeyReadOncePerNode()
+    {
+        int[] reads = new int[1];
+        List<Node> nodes = new ArrayList<Node>();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            nodes.add( createNode( i, ( i * 7919 ) % 1000, reads ) );
+        }
+        List<Node> top = sorted( nodes, true, 5 );
+        assertEquals( 1000, reads[0] );
+        assertEquals( 5, top.size() );
+        for ( int i = 0; i < 5; i++ )
+        {
+            assertEquals( ( 999 - i ), ( top.get( i ).getId() * 7919 ) % 1000 );
+        }
+        assertEquals( 0, sorted( nodes, false, 0 ).size() );
+    }
+}
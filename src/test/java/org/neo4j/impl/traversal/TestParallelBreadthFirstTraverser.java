@@ -0,0 +1,218 @@
+package org.neo4j.impl.traversal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.transaction.Status;
+import javax.transaction.Transaction;
+import javax.transaction.UserTransaction;
+
+import org.neo4j.api.core.Direction;
+import org.neo4j.api.core.Node;
+import org.neo4j.api.core.RelationshipType;
+import org.neo4j.api.core.ReturnableEvaluator;
+import org.neo4j.api.core.StopEvaluator;
+import org.neo4j.api.core.TraversalPosition;
+import org.neo4j.api.core.Traverser;
+import org.neo4j.impl.AbstractNeoTestCase;
+import org.neo4j.impl.command.TransactionCache;
+import org.neo4j.impl.transaction.TransactionFactory;
+
+public class TestParallelBreadthFirstTraverser extends AbstractNeoTestCase
+{
+    private static final String STORE_DIR = "var/paralleltraverser";
+    // more than ParallelBreadthFirstTraverser.TASK_SIZE nodes per depth
+    private static final int WIDTH = 600;
+
+    enum MyRelTypes implements RelationshipType
+    {
+        KNOWS
+    }
+
+    private static final RelationshipType[] TYPES =
+        new RelationshipType[] { MyRelTypes.KNOWS };
+    private static final Direction[] DIRS =
+        new Direction[] { Direction.OUTGOING };
+
+    private ForkJoinPool pool;
+    private UserTransaction ut;
+    private Node root;
+
+    public TestParallelBreadthFirstTraverser( String testName )
+    {
+        super( testName, MyRelTypes.class, STORE_DIR );
+    }
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        pool = new ForkJoinPool( 4 );
+        ut = TransactionFactory.getUserTransaction();
+        // root -> WIDTH children -> WIDTH grandchildren, each child also
+        // knows the next child and the next child's grandchild so nodes are
+        // reached more than once
+        ut.begin();
+        root = getNeo().createNode();
+        Node[] children = new Node[WIDTH];
+        Node[] grandChildren = new Node[WIDTH];
+        for ( int i = 0; i < WIDTH; i++ )
+        {
+            children[i] = getNeo().createNode();
+            grandChildren[i] = getNeo().createNode();
+            root.createRelationshipTo( children[i], MyRelTypes.KNOWS );
+            children[i].createRelationshipTo( grandChildren[i],
+                MyRelTypes.KNOWS );
+        }
+        for ( int i = 0; i < WIDTH; i++ )
+        {
+            int next = ( i + 1 ) % WIDTH;
+            children[i].createRelationshipTo( children[next],
+                MyRelTypes.KNOWS );
+            children[i].createRelationshipTo( grandChildren[next],
+                MyRelTypes.KNOWS );
+        }
+        ut.commit();
+        ut.begin();
+    }
+
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            ut.rollback();
+        }
+        catch ( Exception e )
+        { // already ended by the test
+        }
+        pool.shutdown();
+        super.tearDown();
+    }
+
+    // node -> depth it was returned at, fails on duplicates
+    private static Map<Node,Integer> depths( Traverser traverser )
+    {
+        Map<Node,Integer> depths = new HashMap<Node,Integer>();
+        for ( Node node : traverser )
+        {
+            Integer depth = traverser.currentPosition().depth();
+            assertNull( "Node returned twice " + node,
+                depths.put( node, depth ) );
+        }
+        return depths;
+    }
+
+    private Map<Node,Integer> serialDepths( StopEvaluator stopEvaluator )
+    {
+        return depths( TraverserFactory.getFactory().createTraverser(
+            Traverser.Order.BREADTH_FIRST, root, TYPES, DIRS, stopEvaluator,
+            ReturnableEvaluator.ALL ) );
+    }
+
+    private Map<Node,Integer> parallelDepths( StopEvaluator stopEvaluator,
+        ReturnableEvaluator returnableEvaluator )
+    {
+        return depths( TraverserFactory.getFactory().createParallelTraverser(
+            pool, root, TYPES, DIRS, stopEvaluator, returnableEvaluator ) );
+    }
+
+    /**
+     * Returns all nodes, recording the thread and transaction each node
+     * was evaluated in.
+     */
+    private static class RecordingEvaluator implements ReturnableEvaluator
+    {
+        private final Set<Thread> threads = new HashSet<Thread>();
+        private final Set<Transaction> transactions =
+            new HashSet<Transaction>();
+
+        public boolean isReturnableNode( TraversalPosition position )
+        {
+            Transaction tx;
+            try
+            {
+                tx = TransactionFactory.getTransactionManager().
+                    getTransaction();
+            }
+            catch ( Exception e )
+            {
+                throw new RuntimeException( e );
+            }
+            synchronized ( this )
+            {
+                threads.add( Thread.currentThread() );
+                if ( tx != null )
+                {
+                    transactions.add( tx );
+                }
+            }
+            return true;
+        }
+    }
+
+    public void testSameNodesAndDepthsAsBreadthFirst()
+    {
+        Map<Node,Integer> expected =
+            serialDepths( StopEvaluator.END_OF_NETWORK );
+        assertEquals( 1 + 2 * WIDTH, expected.size() );
+        assertEquals( expected, parallelDepths( StopEvaluator.END_OF_NETWORK,
+            ReturnableEvaluator.ALL ) );
+
+        expected = serialDepths( StopEvaluator.DEPTH_ONE );
+        assertEquals( 1 + WIDTH, expected.size() );
+        assertEquals( expected, parallelDepths( StopEvaluator.DEPTH_ONE,
+            ReturnableEvaluator.ALL ) );
+    }
+
+    public void testWideDepthsExpandedInTaskTransactions() throws Exception
+    {
+        Transaction callerTx =
+            TransactionFactory.getTransactionManager().getTransaction();
+        RecordingEvaluator evaluator = new RecordingEvaluator();
+        Map<Node,Integer> depths = parallelDepths(
+            StopEvaluator.END_OF_NETWORK, evaluator );
+        assertEquals( serialDepths( StopEvaluator.END_OF_NETWORK ), depths );
+        // the start node is evaluated on the calling thread, the wide
+        // depths in the pool, in transactions of their own
+        assertTrue( evaluator.threads.contains( Thread.currentThread() ) );
+        assertTrue( evaluator.threads.size() > 1 );
+        assertTrue( evaluator.transactions.contains( callerTx ) );
+        // at least two tasks for each of the two wide depths
+        assertTrue( evaluator.transactions.size() >= 5 );
+        // and the task transactions have ended
+        for ( Transaction tx : evaluator.transactions )
+        {
+            if ( tx != callerTx )
+            {
+                assertEquals( Status.STATUS_NO_TRANSACTION, tx.getStatus() );
+            }
+        }
+        assertEquals( Status.STATUS_ACTIVE, callerTx.getStatus() );
+    }
+
+    public void testChangesInCallingTransactionTraversedOnCallingThread()
+    {
+        Node added = getNeo().createNode();
+        root.createRelationshipTo( added, MyRelTypes.KNOWS );
+        Node addedChild = getNeo().createNode();
+        added.createRelationshipTo( addedChild, MyRelTypes.KNOWS );
+        assertTrue( TransactionCache.getCache().hasChanges() );
+
+        RecordingEvaluator evaluator = new RecordingEvaluator();
+        Map<Node,Integer> depths = parallelDepths(
+            StopEvaluator.END_OF_NETWORK, evaluator );
+        assertEquals( serialDepths( StopEvaluator.END_OF_NETWORK ), depths );
+        assertEquals( 3 + 2 * WIDTH, depths.size() );
+        assertEquals( Integer.valueOf( 1 ), depths.get( added ) );
+        assertEquals( Integer.valueOf( 2 ), depths.get( addedChild ) );
+        List<Thread> expectedThreads = new ArrayList<Thread>();
+        expectedThreads.add( Thread.currentThread() );
+        assertEquals( expectedThreads,
+            new ArrayList<Thread>( evaluator.threads ) );
+        assertEquals( 1, evaluator.transactions.size() );
+    }
+}
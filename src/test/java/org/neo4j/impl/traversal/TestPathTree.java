@@ -0,0 +1,68 @@
+package org.neo4j.impl.traversal;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestPathTree extends TestCase
+{
+    public TestPathTree( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestPathTree.class );
+        return suite;
+    }
+
+    public void testPathBackToRoot()
+    {
+        PathTree tree = new PathTree();
+        tree.put( 0, -1, -1, 0 );
+        // a chain 0 <- 1 <- 2 ... long enough to rehash a few times
+        for ( int i = 1; i < 1000; i++ )
+        {
+            tree.put( i * 7, ( i - 1 ) * 7, 10000 + i, i );
+        }
+        assertEquals( 1000, tree.size() );
+        int nodeId = 999 * 7;
+        int length = 0;
+        while ( tree.getPreviousNodeId( nodeId ) != -1 )
+        {
+            assertEquals( 10000 + nodeId / 7, tree.getRelationshipId( nodeId ) );
+            assertEquals( nodeId / 7, tree.getDepth( nodeId ) );
+            nodeId = tree.getPreviousNodeId( nodeId );
+            length++;
+        }
+        assertEquals( 0, nodeId );
+        assertEquals( 999, length );
+        assertTrue( !tree.contains( 1 ) );
+        assertTrue( !tree.contains( -1 ) );
+    }
+
+    public void testPutReplaces()
+    {
+        PathTree tree = new PathTree();
+        tree.put( 5, -1, -1, 0 );
+        tree.put( 6, 5, 1, 3 );
+        tree.put( 6, 5, 2, 1 );
+        assertEquals( 2, tree.size() );
+        assertEquals( 2, tree.getRelationshipId( 6 ) );
+        assertEquals( 1, tree.getDepth( 6 ) );
+        try
+        {
+            tree.getDepth( 7 );
+            fail( "Node not in tree" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.neo4j.impl.traversal;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestPositionList extends TestCase
+{
+    public TestPositionList( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestPositionList.class );
+        return suite;
+    }
+
+    public void testQueueOrderAcrossGrowth()
+    {
+        PositionList list = new PositionList();
+        int next = 0;
+        // keep the ring buffer wrapped around when it grows
+        for ( int i = 0; i < 50; i++ )
+        {
+            list.addLast( i, i - 1, i * 2, i * 3 );
+        }
+        for ( int i = 0; i < 40; i++ )
+        {
+            assertEquals( next++, list.getNodeId( list.removeFirst() ) );
+        }
+        for ( int i = 50; i < 1000; i++ )
+        {
+            list.addLast( i, i - 1, i * 2, i * 3 );
+        }
+        assertEquals( 960, list.size() );
+        while ( !list.isEmpty() )
+        {
+            int slot = list.removeFirst();
+            assertEquals( next, list.getNodeId( slot ) );
+            assertEquals( next - 1, list.getPreviousNodeId( slot ) );
+            assertEquals( next * 2, list.getRelationshipId( slot ) );
+            assertEquals( next * 3, list.getDepth( slot ) );
+            next++;
+        }
+        assertEquals( 1000, next );
+    }
+
+    public void testStackOrder()
+    {
+        PositionList list = new PositionList();
+        for ( int i = 0; i < 100; i++ )
+        {
+            list.addLast( i, -1, -1, 0 );
+        }
+        assertEquals( 0, list.getNodeId( list.removeFirst() ) );
+        for ( int i = 99; i > 0; i-- )
+        {
+            assertEquals( i, list.getNodeId( list.removeLast() ) );
+        }
+        assertTrue( list.isEmpty() );
+        try
+        {
+            list.removeLast();
+            fail( "Empty list should throw" );
+        }
+        catch ( java.util.NoSuchElementException e )
+        { // good
+        }
+    }
+
+    public void testNodeIdSet()
+    {
+        NodeIdSet set = new NodeIdSet( 10 );
+        assertTrue( set.add( 0 ) );
+        assertTrue( set.add( 63 ) );
+        assertTrue( set.add( 64 ) );
+        assertTrue( !set.add( 63 ) );
+        // grows past initial capacity
+        assertTrue( set.add( 100000 ) );
+        assertTrue( set.contains( 100000 ) );
+        assertTrue( set.contains( 0 ) );
+        assertTrue( !set.contains( 1 ) );
+        assertTrue( !set.contains( 99999 ) );
+        assertTrue( !set.contains( 1 << 30 ) );
+        assertEquals( 4, set.size() );
+    }
+
+    public void testNodeIdSetOnlyAllocatesPagesInUse()
+    {
+        NodeIdSet set = new NodeIdSet();
+        assertEquals( 0, set.getPageCount() );
+        // a traversal starting far up in a big store
+        int startId = 50000000;
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertTrue( set.add( startId + i * 3 ) );
+        }
+        assertTrue( set.add( 7 ) );
+        assertEquals( 2, set.getPageCount() );
+        assertEquals( 101, set.size() );
+        assertTrue( set.contains( startId + 297 ) );
+        assertTrue( !set.contains( startId + 298 ) );
+        assertTrue( !set.contains( startId - 1 ) );
+        assertTrue( !set.contains( 8 ) );
+        assertTrue( !set.add( 7 ) );
+    }
+}
@@ -0,0 +1,222 @@
+package org.neo4j.impl.traversal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.transaction.UserTransaction;
+
+import org.neo4j.api.core.Direction;
+import org.neo4j.api.core.Node;
+import org.neo4j.api.core.Relationship;
+import org.neo4j.api.core.RelationshipType;
+import org.neo4j.impl.AbstractNeoTestCase;
+import org.neo4j.impl.transaction.TransactionFactory;
+
+public class TestShortestPathFinder extends AbstractNeoTestCase
+{
+    private static final String STORE_DIR = "var/shortestpath";
+    private static final String COST = "cost";
+
+    enum MyRelTypes implements RelationshipType
+    {
+        KNOWS, LIKES
+    }
+
+    private UserTransaction ut;
+
+    public TestShortestPathFinder( String testName )
+    {
+        super( testName, MyRelTypes.class, STORE_DIR );
+    }
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        ut = TransactionFactory.getUserTransaction();
+        ut.begin();
+    }
+
+    public void tearDown() throws Exception
+    {
+        ut.rollback();
+        super.tearDown();
+    }
+
+    private Node[] createNodes( int count )
+    {
+        Node[] nodes = new Node[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            nodes[i] = getNeo().createNode();
+        }
+        return nodes;
+    }
+
+    private static Relationship knows( Node from, Node to )
+    {
+        return from.createRelationshipTo( to, MyRelTypes.KNOWS );
+    }
+
+    private static Relationship knows( Node from, Node to, Object cost )
+    {
+        Relationship rel = knows( from, to );
+        rel.setProperty( COST, cost );
+        return rel;
+    }
+
+    private static void assertPath( List<Object> path, Object... expected )
+    {
+        assertEquals( Arrays.asList( expected ), path );
+    }
+
+    public void testShortestOfTwoPaths()
+    {
+        // a -> b -> c -> d -> e and a -> x -> e
+        Node[] nodes = createNodes( 6 );
+        Node a = nodes[0], e = nodes[4], x = nodes[5];
+        for ( int i = 0; i < 4; i++ )
+        {
+            knows( nodes[i], nodes[i + 1] );
+        }
+        Relationship ax = knows( a, x );
+        Relationship xe = knows( x, e );
+        ShortestPathFinder finder =
+            new ShortestPathFinder( MyRelTypes.KNOWS, Direction.OUTGOING );
+        assertPath( finder.findShortestPath( a, e ), a, ax, x, xe, e );
+        // the path of length four is found when the shortcut is gone
+        ax.delete();
+        List<Object> path = finder.findShortestPath( a, e );
+        assertEquals( 9, path.size() );
+        for ( int i = 0; i < 5; i++ )
+        {
+            assertEquals( nodes[i], path.get( i * 2 ) );
+        }
+    }
+
+    public void testMaxLength()
+    {
+        Node[] nodes = createNodes( 4 );
+        Relationship[] rels = new Relationship[3];
+        for ( int i = 0; i < 3; i++ )
+        {
+            rels[i] = knows( nodes[i], nodes[i + 1] );
+        }
+        ShortestPathFinder finder =
+            new ShortestPathFinder( MyRelTypes.KNOWS, Direction.BOTH );
+        assertNull( finder.findShortestPath( nodes[0], nodes[3], 1 ) );
+        assertNull( finder.findShortestPath( nodes[0], nodes[3], 2 ) );
+        assertPath( finder.findShortestPath( nodes[0], nodes[3], 3 ),
+            nodes[0], rels[0], nodes[1], rels[1], nodes[2], rels[2],
+            nodes[3] );
+        assertPath( finder.findShortestPath( nodes[3], nodes[2], 1 ),
+            nodes[3], rels[2], nodes[2] );
+        assertNull( finder.findShortestPath( nodes[0], createNodes( 1 )[0] ) );
+    }
+
+    public void testStartNodeIsEndNode()
+    {
+        Node[] nodes = createNodes( 2 );
+        knows( nodes[0], nodes[1] );
+        knows( nodes[1], nodes[0] );
+        ShortestPathFinder finder =
+            new ShortestPathFinder( MyRelTypes.KNOWS, Direction.OUTGOING );
+        assertPath( finder.findShortestPath( nodes[0], nodes[0] ), nodes[0] );
+        assertPath( finder.findShortestPath( nodes[0], nodes[0], 0 ),
+            nodes[0] );
+        // found before the relationships, which have no cost, are read
+        assertPath( finder.findCheapestPath( nodes[0], nodes[0], COST ),
+            nodes[0] );
+    }
+
+    public void testDirectionsSeenFromStartNode()
+    {
+        // a -KNOWS-> b <-LIKES- c -KNOWS-> d <-LIKES- e
+        Node[] nodes = createNodes( 5 );
+        Relationship[] rels = new Relationship[4];
+        for ( int i = 0; i < 4; i += 2 )
+        {
+            rels[i] = knows( nodes[i], nodes[i + 1] );
+            rels[i + 1] = nodes[i + 2].createRelationshipTo( nodes[i + 1],
+                MyRelTypes.LIKES );
+        }
+        ShortestPathFinder finder = new ShortestPathFinder(
+            new RelationshipType[] { MyRelTypes.KNOWS, MyRelTypes.LIKES },
+            new Direction[] { Direction.OUTGOING, Direction.INCOMING } );
+        // the search from e follows the directions reversed
+        assertPath( finder.findShortestPath( nodes[0], nodes[4] ),
+            nodes[0], rels[0], nodes[1], rels[1], nodes[2], rels[2],
+            nodes[3], rels[3], nodes[4] );
+        assertPath( finder.findShortestPath( nodes[2], nodes[4] ),
+            nodes[2], rels[2], nodes[3], rels[3], nodes[4] );
+        assertNull( finder.findShortestPath( nodes[4], nodes[0] ) );
+        // c likes b, incoming seen from b
+        assertPath( finder.findShortestPath( nodes[1], nodes[2] ),
+            nodes[1], rels[1], nodes[2] );
+        assertNull( finder.findShortestPath( nodes[2], nodes[1] ) );
+
+        ShortestPathFinder reversed = new ShortestPathFinder(
+            new RelationshipType[] { MyRelTypes.KNOWS, MyRelTypes.LIKES },
+            new Direction[] { Direction.INCOMING, Direction.OUTGOING } );
+        assertPath( reversed.findShortestPath( nodes[4], nodes[2] ),
+            nodes[4], rels[3], nodes[3], rels[2], nodes[2] );
+        assertNull( reversed.findShortestPath( nodes[0], nodes[4] ) );
+    }
+
+    public void testCheapestPathLongerThanShortest()
+    {
+        // a -> b costs 10, a -> c -> d -> b costs 3
+        Node[] nodes = createNodes( 4 );
+        Node a = nodes[0], b = nodes[1], c = nodes[2], d = nodes[3];
+        Relationship ab = knows( a, b, 10 );
+        Relationship ac = knows( a, c, 1 );
+        Relationship cd = knows( c, d, 1.5 );
+        Relationship db = knows( d, b, 0.5 );
+        ShortestPathFinder finder =
+            new ShortestPathFinder( MyRelTypes.KNOWS, Direction.OUTGOING );
+        assertPath( finder.findShortestPath( a, b ), a, ab, b );
+        assertPath( finder.findCheapestPath( a, b, COST ),
+            a, ac, c, cd, d, db, b );
+        assertNull( finder.findCheapestPath( b, a, COST ) );
+        // a cheaper direct relationship wins
+        ab.setProperty( COST, 2 );
+        assertPath( finder.findCheapestPath( a, b, COST ), a, ab, b );
+    }
+
+    public void testInvalidCost()
+    {
+        Node[] nodes = createNodes( 3 );
+        Relationship first = knows( nodes[0], nodes[1], 1 );
+        Relationship second = knows( nodes[1], nodes[2] );
+        ShortestPathFinder finder =
+            new ShortestPathFinder( MyRelTypes.KNOWS, Direction.OUTGOING );
+        try
+        {
+            finder.findCheapestPath( nodes[0], nodes[2], COST );
+            fail( "Missing cost should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        second.setProperty( COST, -1 );
+        try
+        {
+            finder.findCheapestPath( nodes[0], nodes[2], COST );
+            fail( "Negative cost should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        second.setProperty( COST, "1" );
+        try
+        {
+            finder.findCheapestPath( nodes[0], nodes[2], COST );
+            fail( "Cost that isn't a number should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        second.setProperty( COST, 0 );
+        assertPath( finder.findCheapestPath( nodes[0], nodes[2], COST ),
+            nodes[0], first, nodes[1], second, nodes[2] );
+    }
+}
@@ -0,0 +1,61 @@
+package org.neo4j.impl.traversal;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestTraversalStatistics extends TestCase
+{
+    public TestTraversalStatistics( String testName )
+    {
+        super( testName );
+    }
+
+    public static void main( java.lang.String[] args )
+    {
+        junit.textui.TestRunner.run( suite() );
+    }
+
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite( TestTraversalStatistics.class );
+        return suite;
+    }
+
+    public void testPerDepthAndTotals()
+    {
+        TraversalStatistics stats = new TraversalStatistics();
+        assertEquals( 0, stats.getDepthCount() );
+        stats.nodeVisited( 0 );
+        stats.relationshipsExpanded( 0, 3 );
+        for ( int i = 0; i < 3; i++ )
+        {
+            stats.nodeVisited( 1 );
+            stats.relationshipsExpanded( 1, 4 );
+        }
+        stats.duplicateRejected( 2 );
+        stats.duplicateRejected( 2 );
+        // grows past the initial number of depths
+        stats.nodeVisited( 20 );
+        stats.cacheAccessed( 1, 5, 2 );
+        stats.cacheAccessed( 20, 1, 1 );
+        stats.evaluatorTime( 1, 2500000 );
+
+        assertEquals( 21, stats.getDepthCount() );
+        assertEquals( 1, stats.getNodesVisited( 0 ) );
+        assertEquals( 3, stats.getNodesVisited( 1 ) );
+        assertEquals( 12, stats.getRelationshipsExpanded( 1 ) );
+        assertEquals( 2, stats.getDuplicatesRejected( 2 ) );
+        assertEquals( 0, stats.getNodesVisited( 21 ) );
+        assertEquals( 5, stats.getTotalNodesVisited() );
+        assertEquals( 15, stats.getTotalRelationshipsExpanded() );
+        assertEquals( 6, stats.getTotalCacheHits() );
+        assertEquals( 3, stats.getTotalCacheMisses() );
+        assertEquals( 2500000, stats.getEvaluatorNanos( 1 ) );
+
+        String table = stats.toString();
+        assertTrue( table.indexOf( "2.500" ) != -1 );
+        // header, one row per depth and totals
+        assertEquals( 23, table.split( "\n" ).length );
+    }
+}